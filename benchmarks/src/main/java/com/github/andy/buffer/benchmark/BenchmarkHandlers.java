@@ -0,0 +1,89 @@
+package com.github.andy.buffer.benchmark;
+
+import com.github.andy.buffer.group.BufferGroupHandler;
+import com.github.andy.buffer.group.BufferGroupStrategy;
+import com.github.andy.buffer.group.BufferLongGroupStrategy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基准测试使用的分组策略和分组处理
+ */
+public final class BenchmarkHandlers {
+
+    /**
+     * 模拟IO时每次分组处理的耗时
+     */
+    static final long SIMULATED_IO_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private BenchmarkHandlers() {
+    }
+
+    /**
+     * @param handler noop：不做处理；io：每个分组park固定时长模拟一次批量IO
+     */
+    public static BufferGroupHandler<Long, Long, Long> newHandler(String handler) {
+        if ("noop".equals(handler)) {
+            return new NoopBufferGroupHandler();
+        }
+        if ("io".equals(handler)) {
+            return new SimulatedIoBufferGroupHandler(SIMULATED_IO_NANOS);
+        }
+        throw new IllegalArgumentException("unknown handler: " + handler);
+    }
+
+    /**
+     * 按实体取模分组
+     *
+     * @param cardinality 分组数
+     */
+    public static BufferGroupStrategy<Long, Long> newModGroupStrategy(final long cardinality) {
+        return new BufferGroupStrategy<Long, Long>() {
+            @Override
+            public Long doGroup(Long element) throws Exception {
+                return element % cardinality;
+            }
+        };
+    }
+
+    public static BufferLongGroupStrategy<Long> newModLongGroupStrategy(final long cardinality) {
+        return new BufferLongGroupStrategy<Long>() {
+            @Override
+            public long doLongGroup(Long element) throws Exception {
+                return element % cardinality;
+            }
+
+            @Override
+            public Long doGroup(Long element) throws Exception {
+                return doLongGroup(element);
+            }
+        };
+    }
+
+    static class NoopBufferGroupHandler implements BufferGroupHandler<Long, Long, Long> {
+
+        @Override
+        public Map<Long, Long> handle(Long group, List<Long> elements) throws Exception {
+            return null;
+        }
+    }
+
+    static class SimulatedIoBufferGroupHandler implements BufferGroupHandler<Long, Long, Long> {
+
+        private final long ioNanos;
+
+        SimulatedIoBufferGroupHandler(long ioNanos) {
+            this.ioNanos = ioNanos;
+        }
+
+        @Override
+        public Map<Long, Long> handle(Long group, List<Long> elements) throws Exception {
+            LockSupport.parkNanos(ioNanos);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.github.andy.buffer.benchmark;
+
+import com.github.andy.buffer.group.BufferGroupProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * consumeBatchSize与consumeWaitTimeoutMs组合下，8个生产者submit到get()的延迟及吞吐量
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConsumeBatchBenchmark {
+
+    @Param({"16", "64", "256"})
+    public int consumeBatchSize;
+
+    @Param({"0", "1", "10"})
+    public int consumeWaitTimeoutMs;
+
+    @Param({"noop", "io"})
+    public String handler;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private BufferGroupProcessor<Long, Long, Long> processor;
+
+    @Setup
+    public void setUp() {
+        processor = BufferGroupProcessor.<Long, Long, Long>newBuilder()
+                .bufferQueueSize(4096)
+                .consumeBatchSize(consumeBatchSize)
+                .consumeWaitTimeoutMs(consumeWaitTimeoutMs)
+                .bufferGroupStrategy(BenchmarkHandlers.newModGroupStrategy(16))
+                .bufferGroupHandler(BenchmarkHandlers.newHandler(handler))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        processor.shutdown();
+        processor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Object submitAndGet() throws Exception {
+        return processor.submit(sequence.incrementAndGet()).get();
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.github.andy.buffer.benchmark;
+
+import com.github.andy.buffer.group.BufferGroupProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同分组基数下一批实体的分组及处理耗时
+ * <p>
+ * 每次提交一整批（batchSize个）实体并等待全部完成，消费线程一次取出整批后分组，
+ * 处理为noop，耗时主要为分组及分组任务的分发。
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GroupingBenchmark {
+
+    @Param({"1", "16", "1024"})
+    public long groupCardinality;
+
+    @Param({"1024"})
+    public int batchSize;
+
+    /**
+     * 是否使用long分组策略
+     */
+    @Param({"false", "true"})
+    public boolean longGroup;
+
+    private List<Long> elements;
+
+    private BufferGroupProcessor<Long, Long, Long> processor;
+
+    @Setup
+    public void setUp() {
+        elements = new ArrayList<>(batchSize);
+        for (long i = 0; i < batchSize; i++) {
+            elements.add(i);
+        }
+
+        processor = BufferGroupProcessor.<Long, Long, Long>newBuilder()
+                .bufferQueueSize(batchSize * 4)
+                .consumeBatchSize(batchSize)
+                .consumeWaitTimeoutMs(0)
+                .bufferGroupStrategy(longGroup
+                        ? BenchmarkHandlers.newModLongGroupStrategy(groupCardinality)
+                        : BenchmarkHandlers.newModGroupStrategy(groupCardinality))
+                .bufferGroupHandler(BenchmarkHandlers.newHandler("noop"))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        processor.shutdown();
+        processor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Object groupBatch() throws Exception {
+        return processor.submitAll(elements).get();
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.github.andy.buffer.benchmark;
+
+import com.github.andy.buffer.group.shard.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ShardBufferProcessor按索引路由与ShardBufferProcessorV2按KEY、按long KEY路由的submit吞吐量对比
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShardRoutingBenchmark {
+
+    @Param({"4", "64"})
+    public int shards;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ShardBufferProcessor<Long, Long, Long> shardProcessor;
+
+    private ShardBufferProcessorV2<Long, Long, Long, Long> shardProcessorV2;
+
+    private ShardBufferProcessorV2<Long, Long, Long, Long> longShardProcessorV2;
+
+    @Setup
+    public void setUp() {
+        shardProcessor = ShardBufferProcessor.<Long, Long, Long>newBuilder()
+                .bufferQueueSize(4096)
+                .consumeBatchSize(64)
+                .maxConsumeIntervalSleepMs(1)
+                .bufferGroupHandler(BenchmarkHandlers.newHandler("noop"))
+                .shardBufferProcessorSize(shards)
+                .shardBufferProcessorStrategy(new ShardBufferProcessorStrategy<Long>() {
+                    @Override
+                    public int routeIDX(int processorsCount, Long element) {
+                        return (int) (element % processorsCount);
+                    }
+                })
+                .build();
+
+        shardProcessorV2 = ShardBufferProcessorV2.<Long, Long, Long, Long>newBuilder()
+                .bufferQueueSize(4096)
+                .consumeBatchSize(64)
+                .consumeWaitTimeoutMs(1)
+                .bufferGroupHandler(BenchmarkHandlers.newHandler("noop"))
+                .shardBufferProcessorIniter(new ShardBufferProcessorIniter<Long, Long, Long, Long>() {
+                    @Override
+                    public void init(ShardBufferProcessorContainer<Long, Long, Long, Long> bufferProcessorContainer) {
+                        for (long i = 0; i < shards; i++) {
+                            bufferProcessorContainer.add(i);
+                        }
+                    }
+                })
+                .shardBufferProcessorStrategy(new ShardBufferProcessorStrategyV2<Long, Long>() {
+                    @Override
+                    public Long routeSK(Long element) {
+                        return element % shards;
+                    }
+                })
+                .build();
+
+        longShardProcessorV2 = ShardBufferProcessorV2.<Long, Long, Long, Long>newBuilder()
+                .bufferQueueSize(4096)
+                .consumeBatchSize(64)
+                .consumeWaitTimeoutMs(1)
+                .bufferGroupHandler(BenchmarkHandlers.newHandler("noop"))
+                .autoCreateProcessors(true)
+                .shardBufferProcessorStrategy(new ShardBufferProcessorLongStrategyV2<Long>() {
+                    @Override
+                    public long routeLongSK(Long element) {
+                        return element % shards;
+                    }
+
+                    @Override
+                    public Long routeSK(Long element) {
+                        return element % shards;
+                    }
+                })
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        shardProcessor.shutdown();
+        shardProcessorV2.shutdown();
+        longShardProcessorV2.shutdown();
+        shardProcessor.awaitTermination(10, TimeUnit.SECONDS);
+        shardProcessorV2.awaitTermination(10, TimeUnit.SECONDS);
+        longShardProcessorV2.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Object shardSubmit() throws InterruptedException {
+        return shardProcessor.submit(sequence.incrementAndGet());
+    }
+
+    @Benchmark
+    public Object shardV2Submit() throws InterruptedException {
+        return shardProcessorV2.submit(sequence.incrementAndGet());
+    }
+
+    @Benchmark
+    public Object shardV2LongSubmit() throws InterruptedException {
+        return longShardProcessorV2.submit(sequence.incrementAndGet());
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.github.andy.buffer.benchmark;
+
+import com.github.andy.buffer.group.BufferGroupProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BufferGroupProcessor.submit的吞吐量，及submit到BufferFuture.get()的端到端延迟，生产者线程数分别为1、4、16
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SubmitBenchmark {
+
+    @Param({"noop", "io"})
+    public String handler;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private BufferGroupProcessor<Long, Long, Long> processor;
+
+    @Setup
+    public void setUp() {
+        processor = BufferGroupProcessor.<Long, Long, Long>newBuilder()
+                .bufferQueueSize(4096)
+                .consumeBatchSize(64)
+                .consumeWaitTimeoutMs(1)
+                .bufferGroupStrategy(BenchmarkHandlers.newModGroupStrategy(16))
+                .bufferGroupHandler(BenchmarkHandlers.newHandler(handler))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        processor.shutdown();
+        processor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object submit1() throws InterruptedException {
+        return processor.submit(sequence.incrementAndGet());
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object submit4() throws InterruptedException {
+        return processor.submit(sequence.incrementAndGet());
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object submit16() throws InterruptedException {
+        return processor.submit(sequence.incrementAndGet());
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object submitAndGet1() throws Exception {
+        return processor.submit(sequence.incrementAndGet()).get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object submitAndGet4() throws Exception {
+        return processor.submit(sequence.incrementAndGet()).get();
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object submitAndGet16() throws Exception {
+        return processor.submit(sequence.incrementAndGet()).get();
+    }
+
+}
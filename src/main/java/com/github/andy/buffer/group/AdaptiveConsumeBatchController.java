@@ -0,0 +1,137 @@
+package com.github.andy.buffer.group;
+
+/**
+ * 以目标延迟为约束的自适应消费批量控制器
+ * <p>
+ * 批量大小按AIMD调整：缓冲队列有积压、取满批量且处理耗时低于目标延迟时加性增大，
+ * 处理耗时超过目标延迟时减半；
+ * 等待时长取目标延迟减去处理耗时后的剩余预算，且只在按到达速率预计能等到后续实体、缓冲队列无积压时等待，
+ * 低负载时不等待以降低延迟，高负载时以更大的批量提高吞吐。
+ */
+public class AdaptiveConsumeBatchController implements ConsumeBatchController {
+
+    /**
+     * 指数加权移动平均的新样本权重
+     */
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final int minBatchSize;
+
+    private final int maxBatchSize;
+
+    private final long maxWaitNanos;
+
+    private final long targetLatencyNanos;
+
+    /**
+     * 加性增大的步长
+     */
+    private final int increaseStep;
+
+    private volatile int batchSize;
+
+    private volatile long waitTimeoutNanos;
+
+    /**
+     * BufferGroupHandler.handle耗时的移动平均，由处理线程更新，并发更新时允许丢失样本
+     */
+    private volatile long handleNanos;
+
+    /**
+     * 以下字段只由消费线程读写
+     */
+    private double arrivalRatePerNanos;
+
+    private long lastTakenNanos = System.nanoTime();
+
+    private int lastQueueSize;
+
+    private long lastDecreaseNanos;
+
+    public AdaptiveConsumeBatchController(int minBatchSize, int maxBatchSize, long maxWaitNanos, long targetLatencyNanos,
+                                          int initialBatchSize, long initialWaitTimeoutNanos) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWaitNanos;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.increaseStep = Math.max(1, (maxBatchSize - minBatchSize) / 32);
+        this.batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+        this.waitTimeoutNanos = Math.max(0, Math.min(maxWaitNanos, initialWaitTimeoutNanos));
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public long getWaitTimeoutNanos() {
+        return waitTimeoutNanos;
+    }
+
+    @Override
+    public void onBatchTaken(int takenSize, int queueSize) {
+        long now = System.nanoTime();
+        updateArrivalRate(now, takenSize, queueSize);
+        adjustBatchSize(now, takenSize, queueSize);
+        adjustWaitTimeout(queueSize);
+    }
+
+    @Override
+    public void onGroupHandled(int elementsSize, long handleNanos) {
+        long current = this.handleNanos;
+        this.handleNanos = current == 0 ? handleNanos : (long) (current + EWMA_ALPHA * (handleNanos - current));
+    }
+
+    public long getHandleNanos() {
+        return handleNanos;
+    }
+
+    public double getArrivalRatePerSecond() {
+        return arrivalRatePerNanos * 1e9;
+    }
+
+    private void updateArrivalRate(long now, int takenSize, int queueSize) {
+        long elapsedNanos = now - lastTakenNanos;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+
+        // 两次取出之间到达的实体 = 本次取出的 + 队列增长的
+        int arrivals = Math.max(0, takenSize + queueSize - lastQueueSize);
+        double rate = (double) arrivals / elapsedNanos;
+        arrivalRatePerNanos = arrivalRatePerNanos == 0 ? rate : arrivalRatePerNanos + EWMA_ALPHA * (rate - arrivalRatePerNanos);
+        lastTakenNanos = now;
+        lastQueueSize = queueSize;
+    }
+
+    private void adjustBatchSize(long now, int takenSize, int queueSize) {
+        int current = batchSize;
+        if (handleNanos > targetLatencyNanos) {
+            // 处理耗时超过目标延迟，每个目标延迟周期最多减半一次
+            if (now - lastDecreaseNanos >= targetLatencyNanos && current > minBatchSize) {
+                batchSize = Math.max(minBatchSize, current / 2);
+                lastDecreaseNanos = now;
+            }
+            return;
+        }
+
+        if (queueSize > 0 && takenSize >= current && current < maxBatchSize) {
+            batchSize = Math.min(maxBatchSize, current + increaseStep);
+        }
+    }
+
+    private void adjustWaitTimeout(int queueSize) {
+        long budgetNanos = Math.min(maxWaitNanos, targetLatencyNanos - handleNanos);
+        if (queueSize > 0 || budgetNanos <= 0 || arrivalRatePerNanos * budgetNanos < 1) {
+            // 有积压时无需等待，预算内预计等不到后续实体时等待只会增加延迟
+            waitTimeoutNanos = 0;
+            return;
+        }
+
+        // 等待到预计能凑满批量或预算用完
+        double fillNanos = batchSize / arrivalRatePerNanos;
+        waitTimeoutNanos = (long) Math.min(budgetNanos, fillNanos);
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.github.andy.buffer.group;
+
+import java.util.List;
+
+/**
+ * 批量提交的缓冲处理Future，全部实体处理完成后完成，结果按提交顺序排列；
+ * 任一实体处理失败时以第一个失败实体的异常完成
+ */
+public interface BufferBatchFuture<R> extends BufferFuture<List<R>> {
+
+    /**
+     * 按提交顺序排列的每个实体的Future
+     */
+    List<BufferFuture<R>> getFutures();
+}
@@ -0,0 +1,123 @@
+package com.github.andy.buffer.group;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量提交的缓冲处理FutureTask，汇总每个实体的Future
+ * <p>
+ * 首次获取汇总结果或注册回调时才在每个实体的Future上注册计数回调，只使用getFutures时没有额外开销。
+ */
+public class BufferBatchFutureTask<R> extends BufferFutureTask<Void, List<R>> implements BufferBatchFuture<R> {
+
+    private final List<BufferFuture<R>> futures;
+
+    private final AtomicInteger remaining;
+
+    private final AtomicBoolean listening = new AtomicBoolean();
+
+    public BufferBatchFutureTask(List<? extends BufferFuture<R>> futures) {
+        super(null);
+        this.futures = Collections.unmodifiableList(new ArrayList<BufferFuture<R>>(futures));
+        this.remaining = new AtomicInteger(futures.size());
+
+        if (this.futures.isEmpty()) {
+            completeSuccess(Collections.<R>emptyList());
+        }
+    }
+
+    @Override
+    public List<BufferFuture<R>> getFutures() {
+        return futures;
+    }
+
+    @Override
+    public List<R> get() throws InterruptedException, ExecutionException {
+        listen();
+        return super.get();
+    }
+
+    @Override
+    public List<R> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        listen();
+        return super.get(timeout, unit);
+    }
+
+    @Override
+    public boolean isDone() {
+        listen();
+        return super.isDone();
+    }
+
+    /**
+     * 取消全部实体
+     */
+    @Override
+    public boolean cancel() {
+        boolean cancelled = false;
+        for (BufferFuture<R> future : futures) {
+            cancelled |= future.cancel();
+        }
+        return super.cancel() || cancelled;
+    }
+
+    @Override
+    public void addListener(BufferFutureListener<? super List<R>> listener, Executor executor) {
+        listen();
+        super.addListener(listener, executor);
+    }
+
+    private void listen() {
+        if (listening.get() || !listening.compareAndSet(false, true)) {
+            return;
+        }
+
+        BufferFutureListener<R> countDownListener = new BufferFutureListener<R>() {
+            @Override
+            public void onSuccess(R result) {
+                countDown();
+            }
+
+            @Override
+            public void onFailure(Exception ex) {
+                countDown();
+            }
+        };
+        for (BufferFuture<R> future : this.futures) {
+            future.addListener(countDownListener, null);
+        }
+    }
+
+    private void countDown() {
+        if (remaining.decrementAndGet() == 0) {
+            completeResults();
+        }
+    }
+
+    private void completeResults() {
+        List<R> results = new ArrayList<>(futures.size());
+        for (BufferFuture<R> future : futures) {
+            try {
+                // 全部已完成，不会阻塞
+                results.add(future.get());
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                completeFail(cause instanceof Exception ? (Exception) cause : ex);
+                return;
+            } catch (CancellationException ex) {
+                completeFail(ex);
+                return;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                completeFail(ex);
+                return;
+            }
+        }
+        completeSuccess(results);
+    }
+
+}
@@ -1,12 +1,19 @@
 package com.github.andy.buffer.group;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
  * 缓冲处理Future
  * <p>
+ * get之外的方法均有默认实现，只实现get的已有实现类不需修改；默认的回调注册在回调线程中阻塞等待完成，
+ * 缓冲处理器返回的Future均覆盖为完成时直接回调。
+ * <p>
  * Created by yanshanguang on 17/12/8.
  */
 public interface BufferFuture<R> {
@@ -14,4 +21,88 @@ public interface BufferFuture<R> {
     R get() throws InterruptedException, ExecutionException;
 
     R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException;
+
+    default boolean isDone() {
+        try {
+            get(0, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException ex) {
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | CancellationException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * 取消处理，未完成时以CancellationException完成；仍在缓冲队列或等待处理线程的实体不再交给分组处理
+     *
+     * @return 本次调用完成取消时返回true，已完成或不支持取消时返回false
+     */
+    default boolean cancel() {
+        return false;
+    }
+
+    default boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * 注册完成回调，在缓冲处理器配置的回调线程池中执行，未配置时在完成处理的线程中执行；已完成时立即执行
+     */
+    default void addListener(BufferFutureListener<? super R> listener) {
+        addListener(listener, null);
+    }
+
+    /**
+     * 注册完成回调，在指定的线程池中执行，executor为null时在完成处理的线程中执行；已完成时立即执行
+     * <p>
+     * 默认实现未完成时在executor（为null时在ForkJoinPool.commonPool）中阻塞等待完成后回调
+     */
+    default void addListener(final BufferFutureListener<? super R> listener, Executor executor) {
+        Runnable notifyTask = new Runnable() {
+            @Override
+            public void run() {
+                R result;
+                try {
+                    result = get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    listener.onFailure(cause instanceof Exception ? (Exception) cause : ex);
+                    return;
+                } catch (CancellationException | InterruptedException ex) {
+                    listener.onFailure(ex);
+                    return;
+                }
+                listener.onSuccess(result);
+            }
+        };
+
+        if (isDone()) {
+            notifyTask.run();
+        } else {
+            (executor != null ? executor : ForkJoinPool.commonPool()).execute(notifyTask);
+        }
+    }
+
+    /**
+     * 转换为CompletableFuture，用于非阻塞地组合后续处理
+     */
+    default CompletableFuture<R> toCompletableFuture() {
+        final CompletableFuture<R> completableFuture = new CompletableFuture<>();
+        addListener(new BufferFutureListener<R>() {
+            @Override
+            public void onSuccess(R result) {
+                completableFuture.complete(result);
+            }
+
+            @Override
+            public void onFailure(Exception ex) {
+                completableFuture.completeExceptionally(ex);
+            }
+        }, null);
+        return completableFuture;
+    }
 }
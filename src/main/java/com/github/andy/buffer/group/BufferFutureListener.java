@@ -0,0 +1,11 @@
+package com.github.andy.buffer.group;
+
+/**
+ * 缓冲处理Future完成时的回调
+ */
+public interface BufferFutureListener<R> {
+
+    void onSuccess(R result);
+
+    void onFailure(Exception ex);
+}
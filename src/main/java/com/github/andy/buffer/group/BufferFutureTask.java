@@ -1,40 +1,120 @@
 package com.github.andy.buffer.group;
 
+import com.github.andy.buffer.group.exception.BufferExpiredException;
+
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * 缓冲处理器的Queue中的FutureTask实体
  * <p>
+ * 结果通过CAS一次性写入，等待结果的线程和完成回调以栈的形式挂在waiters上，
+ * 完成时将栈替换为COMPLETED并逐个unpark等待线程、执行回调。
+ * <p>
  * Created by yanshanguang on 17/12/8.
  */
 public class BufferFutureTask<E, R> implements BufferFuture<R> {
 
+    private static final Logger LOGGER = Logger.getLogger(BufferFutureTask.class.getName());
+
+    private static final AtomicReferenceFieldUpdater<BufferFutureTask, Object> RESULT_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(BufferFutureTask.class, Object.class, "result");
+
+    private static final AtomicReferenceFieldUpdater<BufferFutureTask, WaitNode> WAITERS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(BufferFutureTask.class, WaitNode.class, "waiters");
+
+    private static final AtomicIntegerFieldUpdater<BufferFutureTask> POOL_REFS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(BufferFutureTask.class, "poolRefs");
+
+    /**
+     * 从对象池取出时的引用数：提交线程及处理流程各一个
+     */
+    private static final int POOL_HOLDERS = 2;
+
+    /**
+     * 结果为null时的占位
+     */
+    private static final Object NULL_RESULT = new Object();
+
     /**
-     * 待处理的实体
+     * 完成后waiters栈的标记，此后注册的回调直接执行
      */
-    private final E element;
+    private static final WaitNode COMPLETED = new WaitNode(null, null, null);
 
     /**
-     * 响应结果的Future
+     * 待处理的实体，复用时重置
      */
-    private final FutureTask<R> futureTask;
+    private E element;
 
     /**
-     * 最终返回的结果，通过state读写
+     * 最终返回的结果，null表示未完成，完成后为结果值、NULL_RESULT或FailResult
      */
     private volatile Object result;
 
+    /**
+     * 等待结果的线程及完成回调的栈
+     */
+    private volatile WaitNode waiters;
+
+    /**
+     * 取出该FutureTask的对象池，不从对象池获取时为null
+     */
+    private BufferFutureTaskPool<E, R> pool;
+
+    /**
+     * 对象池引用数，提交线程返回及处理流程完成时各释放一次，归零时归还对象池
+     */
+    private volatile int poolRefs;
+
+    /**
+     * 提交到缓冲处理器的时间，仅统计阶段耗时时记录
+     */
+    long submitNanos;
+
+    /**
+     * 提交时计算的分组，按分组路由消费线程时记录，消费时不再分组
+     */
+    private Object group;
+
+    private boolean grouped;
+
+    /**
+     * 交给分组处理的截止时间，超过后不再处理，hasDeadline为false时无截止时间
+     */
+    private long deadlineNanos;
+
+    private boolean hasDeadline;
+
+    /**
+     * 处理失败的次数，开启重试时记录
+     */
+    private int failedAttempts;
+
+    /**
+     * 未指定线程池时执行完成回调的线程池，null时在完成处理的线程中执行
+     */
+    private final Executor callbackExecutor;
+
     public BufferFutureTask(E element) {
+        this(element, null);
+    }
+
+    public BufferFutureTask(E element, Executor callbackExecutor) {
         this.element = element;
-        this.futureTask = new FutureTask<R>(new Callable<R>() {
-            @Override
-            public R call() throws Exception {
-                if (result instanceof Exception) {
-                    throw (Exception) result;
-                }
-                return (R) result;
-            }
-        });
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * 创建已失败完成的FutureTask，用于未进入缓冲队列即被拒绝的实体
+     */
+    public static <E, R> BufferFutureTask<E, R> newFailedTask(E element, Exception ex) {
+        BufferFutureTask<E, R> bufferFutureTask = new BufferFutureTask<E, R>(element);
+        bufferFutureTask.completeFail(ex);
+        return bufferFutureTask;
     }
 
     public E getElement() {
@@ -43,32 +123,353 @@ public class BufferFutureTask<E, R> implements BufferFuture<R> {
 
     @Override
     public R get() throws InterruptedException, ExecutionException {
-        return futureTask.get();
+        Object result = this.result;
+        if (result == null) {
+            result = awaitDone(false, 0L);
+        }
+        return report(result);
     }
 
     @Override
     public R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        return futureTask.get(timeout, unit);
+        Object result = this.result;
+        if (result == null && (result = awaitDone(true, unit.toNanos(timeout))) == null) {
+            throw new TimeoutException();
+        }
+        return report(result);
+    }
+
+    @Override
+    public boolean isDone() {
+        return result != null;
+    }
+
+    @Override
+    public boolean cancel() {
+        return complete(new FailResult(new CancellationException("[buffer-processor] 实体已取消处理！")));
+    }
+
+    @Override
+    public boolean isCancelled() {
+        Object result = this.result;
+        return result instanceof FailResult && ((FailResult) result).ex instanceof CancellationException;
+    }
+
+    @Override
+    public void addListener(BufferFutureListener<? super R> listener) {
+        addListener(listener, callbackExecutor);
+    }
+
+    @Override
+    public void addListener(BufferFutureListener<? super R> listener, Executor executor) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+
+        WaitNode node = new WaitNode(null, listener, executor);
+        for (; ; ) {
+            WaitNode head = waiters;
+            if (head == COMPLETED) {
+                fireListener(node);
+                return;
+            }
+
+            node.next = head;
+            if (WAITERS_UPDATER.compareAndSet(this, head, node)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<R> toCompletableFuture() {
+        final CompletableFuture<R> completableFuture = new CompletableFuture<>();
+        addListener(new BufferFutureListener<R>() {
+            @Override
+            public void onSuccess(R result) {
+                completableFuture.complete(result);
+            }
+
+            @Override
+            public void onFailure(Exception ex) {
+                completableFuture.completeExceptionally(ex);
+            }
+        });
+        return completableFuture;
     }
 
     protected void completeSuccess(R result) {
-        complete(result);
+        complete(result != null ? result : NULL_RESULT);
+    }
+
+    /**
+     * @return 本次调用完成时返回true，已完成时返回false
+     */
+    protected boolean completeFail(Exception ex) {
+        return complete(new FailResult(ex));
+    }
+
+    private boolean complete(Object result) {
+        if (RESULT_UPDATER.compareAndSet(this, null, result)) {
+            // 唤醒等待线程获取结果
+            finishCompletion();
+
+            // 完成后处理流程不再使用，释放处理流程的引用
+            BufferFutureTaskPool<E, R> pool = this.pool;
+            if (pool != null) {
+                pool.release(this);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void finishCompletion() {
+        WaitNode node = WAITERS_UPDATER.getAndSet(this, COMPLETED);
+        while (node != null && node != COMPLETED) {
+            Thread thread = node.thread;
+            if (thread != null) {
+                node.thread = null;
+                LockSupport.unpark(thread);
+            } else if (node.listener != null) {
+                fireListener(node);
+            }
+            node = node.next;
+        }
+    }
+
+    private void fireListener(final WaitNode node) {
+        if (node.executor == null) {
+            notifyListener(node.listener);
+            return;
+        }
+
+        try {
+            node.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    notifyListener(node.listener);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // 回调线程池拒绝时在当前线程中执行
+            notifyListener(node.listener);
+        }
     }
 
-    protected void completeFail(Exception ex) {
-        complete(ex);
+    @SuppressWarnings("unchecked")
+    private void notifyListener(BufferFutureListener<? super R> listener) {
+        Object result = this.result;
+        try {
+            if (result instanceof FailResult) {
+                listener.onFailure(((FailResult) result).ex);
+            } else {
+                listener.onSuccess(result == NULL_RESULT ? null : (R) result);
+            }
+        } catch (RuntimeException ex) {
+            // 回调异常不影响其他回调及完成处理的线程
+            LOGGER.log(Level.WARNING, "[buffer-processor] 执行完成回调异常！", ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private R report(Object result) throws ExecutionException {
+        if (result == NULL_RESULT) {
+            return null;
+        }
+        if (result instanceof FailResult) {
+            Exception ex = ((FailResult) result).ex;
+            if (ex instanceof CancellationException) {
+                throw (CancellationException) ex;
+            }
+            throw new ExecutionException(ex);
+        }
+        return (R) result;
+    }
+
+    /**
+     * 等待完成，超时返回null
+     */
+    private Object awaitDone(boolean timed, long nanos) throws InterruptedException {
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        WaitNode node = null;
+        boolean queued = false;
+        for (; ; ) {
+            if (Thread.interrupted()) {
+                removeWaiter(node);
+                throw new InterruptedException();
+            }
+
+            Object result = this.result;
+            if (result != null) {
+                if (node != null) {
+                    node.thread = null;
+                }
+                return result;
+            }
+
+            if (node == null) {
+                if (timed && nanos <= 0L) {
+                    return null;
+                }
+                node = new WaitNode(Thread.currentThread(), null, null);
+            } else if (!queued) {
+                WaitNode head = waiters;
+                if (head == COMPLETED) {
+                    // 已完成，下一轮读取结果
+                    continue;
+                }
+                node.next = head;
+                queued = WAITERS_UPDATER.compareAndSet(this, head, node);
+            } else if (timed) {
+                nanos = deadline - System.nanoTime();
+                if (nanos <= 0L) {
+                    removeWaiter(node);
+                    return this.result;
+                }
+                LockSupport.parkNanos(this, nanos);
+            } else {
+                LockSupport.park(this);
+            }
+        }
     }
 
-    private void complete(Object result) {
-        if (this.result == null) {
-            synchronized (this) {
-                if (this.result == null) {
-                    this.result = result;
-                    // 唤醒等待线程获取结果
-                    futureTask.run();
+    /**
+     * 移除超时或中断的等待节点，遇到竞争时从头重试
+     */
+    private void removeWaiter(WaitNode node) {
+        if (node == null) {
+            return;
+        }
+
+        node.thread = null;
+        retry:
+        for (; ; ) {
+            for (WaitNode pred = null, q = waiters, s; q != null && q != COMPLETED; q = s) {
+                s = q.next;
+                if (q.thread != null || q.listener != null) {
+                    pred = q;
+                } else if (pred != null) {
+                    pred.next = s;
+                    if (pred.thread == null && pred.listener == null) {
+                        continue retry;
+                    }
+                } else if (!WAITERS_UPDATER.compareAndSet(this, q, s)) {
+                    continue retry;
                 }
             }
+            break;
+        }
+    }
+
+    Object getGroup() {
+        return group;
+    }
+
+    boolean isGrouped() {
+        return grouped;
+    }
+
+    void setGroup(Object group) {
+        this.group = group;
+        this.grouped = true;
+    }
+
+    /**
+     * 取消或超过截止时间的失败，共享该实体结果的其他实体需重新处理
+     */
+    static boolean isAbandonFailure(Exception ex) {
+        return ex instanceof CancellationException || ex instanceof BufferExpiredException;
+    }
+
+    void setDeadlineNanos(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+        this.hasDeadline = true;
+    }
+
+    /**
+     * 已取消或超过截止时间，不再交给分组处理
+     */
+    boolean isAbandoned(long nowNanos) {
+        return result != null || (hasDeadline && nowNanos - deadlineNanos >= 0);
+    }
+
+    /**
+     * 记录一次处理失败，返回累计的失败次数
+     */
+    int recordFailedAttempt() {
+        return ++failedAttempts;
+    }
+
+    boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * 释放一个对象池引用
+     *
+     * @return 引用归零，可以归还对象池时返回true
+     */
+    boolean releasePoolRef() {
+        return POOL_REFS_UPDATER.decrementAndGet(this) == 0;
+    }
+
+    /**
+     * 不再归还对象池，用于完成后仍可能被缓冲队列引用的FutureTask
+     */
+    void detachPool() {
+        POOL_REFS_UPDATER.incrementAndGet(this);
+    }
+
+    /**
+     * 从对象池取出后重新初始化
+     */
+    void reuse(E element, BufferFutureTaskPool<E, R> pool) {
+        this.element = element;
+        this.pool = pool;
+        this.poolRefs = POOL_HOLDERS;
+        this.group = null;
+        this.grouped = false;
+        this.hasDeadline = false;
+        this.failedAttempts = 0;
+        this.waiters = null;
+        this.result = null;
+    }
+
+    /**
+     * 归还对象池前释放引用
+     */
+    void recycle() {
+        this.element = null;
+        this.group = null;
+        this.waiters = null;
+        this.result = null;
+    }
+
+    private static final class WaitNode {
+
+        volatile Thread thread;
+
+        final BufferFutureListener listener;
+
+        final Executor executor;
+
+        volatile WaitNode next;
+
+        WaitNode(Thread thread, BufferFutureListener listener, Executor executor) {
+            this.thread = thread;
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private static final class FailResult {
+
+        final Exception ex;
+
+        FailResult(Exception ex) {
+            this.ex = ex;
         }
     }
 
-}
\ No newline at end of file
+}
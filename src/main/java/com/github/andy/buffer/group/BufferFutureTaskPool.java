@@ -0,0 +1,102 @@
+package com.github.andy.buffer.group;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * execute提交时复用的FutureTask对象池
+ * <p>
+ * 基于预分配槽位和序号的有界无锁多生产者多消费者队列，取出和归还都不加锁也不分配节点；
+ * 池空时新建FutureTask，池满时丢弃归还的FutureTask。
+ * <p>
+ * 取出的FutureTask由提交线程和处理流程共同持有，提交线程返回时及FutureTask完成时各调用一次release，
+ * 两者都释放后才归还，避免提交线程仍在使用或仍在处理中的FutureTask被复用。
+ */
+class BufferFutureTaskPool<E, R> {
+
+    private final AtomicReferenceArray<BufferFutureTask<E, R>> slots;
+
+    /**
+     * 槽位序号，等于写入位置时可写，等于写入位置+1时可取
+     */
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong releaseIndex = new AtomicLong();
+
+    private final AtomicLong acquireIndex = new AtomicLong();
+
+    BufferFutureTaskPool(int size) {
+        // 只有一个槽位时序号无法区分可写与可取，至少两个槽位
+        int slotSize = Integer.highestOneBit(Math.max(size, 2));
+        if (slotSize < size) {
+            slotSize <<= 1;
+        }
+
+        this.slots = new AtomicReferenceArray<>(slotSize);
+        this.sequences = new AtomicLongArray(slotSize);
+        for (int i = 0; i < slotSize; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = slotSize - 1;
+    }
+
+    BufferFutureTask<E, R> acquire(E element) {
+        BufferFutureTask<E, R> bufferFutureTask = poll();
+        if (bufferFutureTask == null) {
+            bufferFutureTask = new BufferFutureTask<E, R>(null);
+        }
+
+        bufferFutureTask.reuse(element, this);
+        return bufferFutureTask;
+    }
+
+    /**
+     * 释放FutureTask的一个引用，全部释放后归还
+     */
+    void release(BufferFutureTask<E, R> bufferFutureTask) {
+        if (!bufferFutureTask.releasePoolRef()) {
+            return;
+        }
+
+        bufferFutureTask.recycle();
+
+        for (; ; ) {
+            long index = releaseIndex.get();
+            int offset = (int) index & mask;
+            long diff = sequences.get(offset) - index;
+            if (diff == 0) {
+                if (releaseIndex.compareAndSet(index, index + 1)) {
+                    slots.lazySet(offset, bufferFutureTask);
+                    sequences.set(offset, index + 1);
+                    return;
+                }
+            } else if (diff < 0) {
+                // 池已满
+                return;
+            }
+        }
+    }
+
+    private BufferFutureTask<E, R> poll() {
+        for (; ; ) {
+            long index = acquireIndex.get();
+            int offset = (int) index & mask;
+            long diff = sequences.get(offset) - (index + 1);
+            if (diff == 0) {
+                if (acquireIndex.compareAndSet(index, index + 1)) {
+                    BufferFutureTask<E, R> bufferFutureTask = slots.get(offset);
+                    slots.lazySet(offset, null);
+                    sequences.set(offset, index + mask + 1);
+                    return bufferFutureTask;
+                }
+            } else if (diff < 0) {
+                // 池为空
+                return null;
+            }
+        }
+    }
+
+}
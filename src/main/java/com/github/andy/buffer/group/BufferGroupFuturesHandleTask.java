@@ -0,0 +1,273 @@
+package com.github.andy.buffer.group;
+
+import com.github.andy.buffer.group.metrics.BufferProcessStage;
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分组处理任务：在处理线程中以分组调用分组处理，并按处理结果完成分组内实体的Future
+ */
+class BufferGroupFuturesHandleTask<E, G, R> implements Runnable {
+
+    private final BufferGroupProcessor<E, G, R> processor;
+
+    private final G group;
+
+    /**
+     * 按long分组时的分组KEY，此时group为null，需要分组对象时再装箱
+     */
+    private final long longGroup;
+
+    private final boolean longGrouped;
+
+    private final List<BufferFutureTask<E, R>> bufferFutureTasks;
+
+    private final ConsumeBatchController consumeBatchController;
+
+    /**
+     * 所属的合并分组，完成后提交合并的待处理实体，未开启合并时为null
+     */
+    private final GroupCoalescer<E, G, R>.CoalescingGroup coalescingGroup;
+
+    /**
+     * 重试拆分的深度，未拆分的批次为0
+     */
+    private final int bisectDepth;
+
+    /**
+     * 提交到处理线程池的时间，仅统计阶段耗时时记录
+     */
+    private final long createNanos;
+
+    BufferGroupFuturesHandleTask(BufferGroupProcessor<E, G, R> processor, G group,
+                                 List<BufferFutureTask<E, R>> bufferFutureTasks,
+                                 ConsumeBatchController consumeBatchController,
+                                 GroupCoalescer<E, G, R>.CoalescingGroup coalescingGroup) {
+        this(processor, group, 0L, false, bufferFutureTasks, consumeBatchController, coalescingGroup, 0);
+    }
+
+    /**
+     * 重试批次的处理任务
+     */
+    BufferGroupFuturesHandleTask(BufferGroupProcessor<E, G, R> processor, G group,
+                                 List<BufferFutureTask<E, R>> bufferFutureTasks,
+                                 ConsumeBatchController consumeBatchController, int bisectDepth) {
+        this(processor, group, 0L, false, bufferFutureTasks, consumeBatchController, null, bisectDepth);
+    }
+
+    BufferGroupFuturesHandleTask(BufferGroupProcessor<E, G, R> processor, long longGroup,
+                                 List<BufferFutureTask<E, R>> bufferFutureTasks,
+                                 ConsumeBatchController consumeBatchController) {
+        this(processor, null, longGroup, true, bufferFutureTasks, consumeBatchController, null, 0);
+    }
+
+    private BufferGroupFuturesHandleTask(BufferGroupProcessor<E, G, R> processor, G group, long longGroup,
+                                         boolean longGrouped, List<BufferFutureTask<E, R>> bufferFutureTasks,
+                                         ConsumeBatchController consumeBatchController,
+                                         GroupCoalescer<E, G, R>.CoalescingGroup coalescingGroup, int bisectDepth) {
+        this.processor = processor;
+        this.group = group;
+        this.longGroup = longGroup;
+        this.longGrouped = longGrouped;
+        this.bufferFutureTasks = bufferFutureTasks;
+        this.consumeBatchController = consumeBatchController;
+        this.coalescingGroup = coalescingGroup;
+        this.bisectDepth = bisectDepth;
+        this.createNanos = processor.metricsTiming ? System.nanoTime() : 0L;
+        if (processor.isRetryEnabled()) {
+            processor.pendingHandles.incrementAndGet();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private G getGroup() {
+        return longGrouped ? (G) Long.valueOf(longGroup) : group;
+    }
+
+    int groupHashCode() {
+        if (longGrouped) {
+            return Long.hashCode(longGroup);
+        }
+        return group != null ? group.hashCode() : 0;
+    }
+
+    /**
+     * 提交到处理线程池失败，以提交失败的异常完成
+     */
+    void completeFail(Exception ex) {
+        processor.metrics.recordReject(bufferFutureTasks.size());
+        BufferGroupProcessor.completeFails(bufferFutureTasks, ex);
+        afterRun();
+    }
+
+    /**
+     * 停止时未执行的处理任务以失败响应
+     */
+    void completeRejected() {
+        BufferGroupProcessor.completeFails(bufferFutureTasks, processor.newRejectedException());
+        afterRun();
+    }
+
+    @Override
+    public void run() {
+        try {
+            doHandle();
+        } finally {
+            afterRun();
+        }
+    }
+
+    private void afterRun() {
+        if (coalescingGroup != null) {
+            coalescingGroup.afterHandle();
+        }
+        if (processor.isRetryEnabled()) {
+            processor.finishPendingHandle();
+        }
+    }
+
+    private void doHandle() {
+
+        // 丢弃等待处理线程期间取消或超过截止时间的实体
+        List<BufferFutureTask<E, R>> handleFutureTasks = processor.removeAbandonedFutureTasks(bufferFutureTasks);
+        if (handleFutureTasks.isEmpty()) {
+            return;
+        }
+
+        // 准备待处理的分组对象
+        List<E> elements = getTaskElements(handleFutureTasks);
+
+        // 执行分组对象处理
+        Map<E, R> elementResultsMap = null;
+        BufferGroupHandleResult<E, R> handleResult = null;
+        long handleStartNanos = System.nanoTime();
+        if (processor.metricsTiming) {
+            processor.metrics.recordStage(BufferProcessStage.EXECUTOR_WAIT, handleStartNanos - createNanos);
+        }
+        try {
+            if (processor.bufferGroupResultHandler != null) {
+                handleResult = processor.bufferGroupResultHandler.handle(getGroup(), elements);
+            } else if (processor.longGroupHandler != null && longGrouped) {
+                elementResultsMap = processor.longGroupHandler.handle(longGroup, elements);
+            } else if (processor.longGroupHandler != null && group != null) {
+                elementResultsMap = processor.longGroupHandler.handle(((Long) group).longValue(), elements);
+            } else {
+                elementResultsMap = processor.bufferGroupHandler.handle(getGroup(), elements);
+            }
+        } catch (Exception ex) {
+            afterHandle(elements.size(), handleStartNanos);
+            // 完成分组对象处理异常结果响应，开启重试时重新处理
+            retryOrCompleteFails(handleFutureTasks, ex);
+            return;
+        }
+
+        long completeStartNanos = afterHandle(elements.size(), handleStartNanos);
+
+        // 完成分组对象处理正常结果响应
+        if (handleResult != null) {
+            completeHandleResult(handleFutureTasks, handleResult);
+        } else {
+            completeSuccessResults(handleFutureTasks, elementResultsMap);
+        }
+        if (processor.metricsTiming) {
+            processor.metrics.recordStage(BufferProcessStage.COMPLETION, System.nanoTime() - completeStartNanos);
+        }
+    }
+
+    /**
+     * 记录处理耗时，返回处理结束时间
+     */
+    private long afterHandle(int elementsSize, long handleStartNanos) {
+        long handleEndNanos = System.nanoTime();
+        consumeBatchController.onGroupHandled(elementsSize, handleEndNanos - handleStartNanos);
+        if (processor.metricsTiming) {
+            processor.metrics.recordStage(BufferProcessStage.HANDLE, handleEndNanos - handleStartNanos);
+        }
+        return handleEndNanos;
+    }
+
+    private void retryOrCompleteFails(List<BufferFutureTask<E, R>> failedFutureTasks, Exception ex) {
+        GroupRetryScheduler<E, G, R> retryScheduler = processor.retryScheduler;
+        if (retryScheduler == null) {
+            processor.metrics.recordHandleFail(failedFutureTasks.size());
+            BufferGroupProcessor.completeFails(failedFutureTasks, ex);
+            return;
+        }
+
+        retryScheduler.retryOrCompleteFails(getGroup(), failedFutureTasks, ex, consumeBatchController, bisectDepth);
+    }
+
+    /**
+     * 按逐个实体的处理结果完成，需重试的实体未达到最大处理次数时退避后重试
+     */
+    private void completeHandleResult(List<BufferFutureTask<E, R>> handleFutureTasks,
+                                      BufferGroupHandleResult<E, R> handleResult) {
+        GroupRetryScheduler<E, G, R> retryScheduler = processor.retryScheduler;
+        Map<E, R> successResults = handleResult.getSuccessResults();
+        Map<E, Exception> failures = handleResult.getFailures();
+        Map<E, Exception> retryFailures = handleResult.getRetryFailures();
+        List<BufferFutureTask<E, R>> retryFutureTasks = null;
+        int maxFailedAttempts = 0;
+        int failCount = 0;
+        for (BufferFutureTask<E, R> bufferFutureTask : handleFutureTasks) {
+            E element = bufferFutureTask.getElement();
+            Exception failure = failures.get(element);
+            if (failure == null && (failure = retryFailures.get(element)) != null && retryScheduler != null) {
+                int failedAttempts = bufferFutureTask.recordFailedAttempt();
+                if (failedAttempts < retryScheduler.getMaxAttempts()) {
+                    if (retryFutureTasks == null) {
+                        retryFutureTasks = new ArrayList<>();
+                    }
+                    retryFutureTasks.add(bufferFutureTask);
+                    maxFailedAttempts = Math.max(maxFailedAttempts, failedAttempts);
+                    continue;
+                }
+            }
+
+            if (failure != null) {
+                failCount++;
+                bufferFutureTask.completeFail(failure);
+            } else {
+                bufferFutureTask.completeSuccess(successResults.get(element));
+            }
+        }
+
+        if (failCount > 0) {
+            processor.metrics.recordHandleFail(failCount);
+        }
+        if (retryFutureTasks != null) {
+            retryScheduler.scheduleRetry(getGroup(), Collections.singletonList(retryFutureTasks),
+                    retryScheduler.nextRetryDelayNanos(maxFailedAttempts), consumeBatchController, 0);
+        }
+    }
+
+    private List<E> getTaskElements(List<BufferFutureTask<E, R>> handleFutureTasks) {
+        List<E> elements = Lists.newArrayListWithCapacity(handleFutureTasks.size());
+        for (BufferFutureTask<E, R> bufferFutureTask : handleFutureTasks) {
+            elements.add(bufferFutureTask.getElement());
+        }
+
+        return elements;
+    }
+
+    private void completeSuccessResults(List<BufferFutureTask<E, R>> handleFutureTasks, Map<E, R> elementResultsMap) {
+        if (elementResultsMap != null && !elementResultsMap.isEmpty()) {
+            // 完成响应Future结果为分组处理结果
+            for (BufferFutureTask<E, R> bufferFutureTask : handleFutureTasks) {
+                E element = bufferFutureTask.getElement();
+                R result = elementResultsMap.get(element);
+                bufferFutureTask.completeSuccess(result);
+            }
+        } else {
+            // 完成响应Future结果为null
+            for (BufferFutureTask<E, R> bufferFutureTask : handleFutureTasks) {
+                bufferFutureTask.completeSuccess(null);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.github.andy.buffer.group;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分组处理结果：逐个实体的成功结果、失败异常及需重试的异常
+ * <p>
+ * 未记录的实体以null结果成功完成；失败的实体以其异常完成，不再重试；
+ * 需重试的实体在开启重试且未达到最大处理次数时重新处理，否则以其异常完成。
+ */
+public class BufferGroupHandleResult<E, R> {
+
+    private final Map<E, R> successResults = new HashMap<>();
+
+    private Map<E, Exception> failures;
+
+    private Map<E, Exception> retryFailures;
+
+    /**
+     * 记录实体的成功结果
+     */
+    public BufferGroupHandleResult<E, R> success(E element, R result) {
+        successResults.put(element, result);
+        return this;
+    }
+
+    /**
+     * 记录多个实体的成功结果
+     */
+    public BufferGroupHandleResult<E, R> successAll(Map<? extends E, ? extends R> results) {
+        successResults.putAll(results);
+        return this;
+    }
+
+    /**
+     * 记录实体处理失败，不再重试
+     */
+    public BufferGroupHandleResult<E, R> fail(E element, Exception ex) {
+        if (failures == null) {
+            failures = new HashMap<>();
+        }
+        failures.put(element, ex);
+        return this;
+    }
+
+    /**
+     * 记录实体暂时处理失败，需重试
+     */
+    public BufferGroupHandleResult<E, R> retry(E element, Exception ex) {
+        if (retryFailures == null) {
+            retryFailures = new HashMap<>();
+        }
+        retryFailures.put(element, ex);
+        return this;
+    }
+
+    public Map<E, R> getSuccessResults() {
+        return successResults;
+    }
+
+    public Map<E, Exception> getFailures() {
+        return failures != null ? failures : Collections.<E, Exception>emptyMap();
+    }
+
+    public Map<E, Exception> getRetryFailures() {
+        return retryFailures != null ? retryFailures : Collections.<E, Exception>emptyMap();
+    }
+
+}
@@ -1,41 +1,199 @@
 package com.github.andy.buffer.group;
 
+import com.github.andy.buffer.group.exception.BufferExpiredException;
+import com.github.andy.buffer.group.exception.BufferOverflowException;
+import com.github.andy.buffer.group.exception.BufferRejectedException;
 import com.github.andy.buffer.group.exception.GroupFailException;
+import com.github.andy.buffer.group.metrics.BufferProcessStage;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetrics;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsJmx;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsSnapshot;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsSource;
+import com.github.andy.buffer.group.queue.BufferQueues;
+import com.github.andy.buffer.group.queue.DroppableBufferQueue;
+import com.github.andy.buffer.group.queue.MpscRingBufferQueue;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Queues;
 
+import javax.management.ObjectName;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 实体缓冲分组处理器
  * <p>
+ * 实体写入消费分道的缓冲队列，由分道的消费线程按批次取出、分组后提交到处理线程池。默认只有一个分道和一个消费线程；
+ * consumerThreads大于1时，多个消费线程共享一个分道并行取出互不重叠的批次，或开启groupAffineConsumers后
+ * 每个消费线程一个分道，实体在提交时按分组路由，同一分组的实体总由同一消费线程按提交顺序取出。
+ * <p>
+ * 开启orderedGroupLanes后，分组按hash固定到一个串行分道，同一分组的批次按取出顺序逐个处理、不会并发，
+ * 不同分道的分组仍在处理线程池中并行处理。
+ * <p>
+ * 开启groupCoalesceMaxSize后，分组处理中时该分组后续批次的实体暂存在分组的待处理列表中，前一次处理完成后合并为一次处理；
+ * 待处理实体达到groupCoalesceMaxSize或最早实体等待超过groupCoalesceMaxDelayMs时不再等待前一次处理完成，立即提交处理。
+ * <p>
+ * 开启deduplicateElements后，相等的实体（按equals）在批次内及处理中只处理一次，重复实体的Future以同一结果完成。
+ * <p>
+ * 设置resultCache后，命中处理结果缓存的实体在提交时即完成，不进入缓冲队列；未命中的实体与同key正在加载的实体共享结果。
+ * <p>
+ * 已取消或超过截止时间的实体在分组前及交给分组处理前被丢弃，过载时不再处理调用方已放弃的实体。
+ * <p>
+ * 设置bufferGroupResultHandler后逐个实体完成处理结果；开启retryMaxAttempts后，整个分组处理异常或需重试的实体
+ * 在退避后作为分组重新处理，开启retryBisectBatches时整批重试用尽处理次数的分组对半拆分重试以隔离导致失败的实体。
+ * <p>
+ * 设置bufferPriorityStrategy后，缓冲队列按优先级分道，每批按权重取出各优先级的实体，高优先级实体不再排在大批低优先级实体之后。
+ * <p>
+ * 分组策略实现BufferLongGroupStrategy时，消费线程用复用的long分组索引分组，不装箱实体的分组、不创建HashMap；
+ * 分组处理实现BufferLongGroupHandler时以long分组调用。
+ * <p>
  * Created by yanshanguang on 17/12/8.
  */
-public class BufferGroupProcessor<E, G, R> {
+public class BufferGroupProcessor<E, G, R> implements BufferProcessorMetricsSource {
 
-    private final BlockingQueue<BufferFutureTask<E, R>> bufferQueue;
+    /**
+     * 运行中，接收提交并消费
+     */
+    private static final int STATE_RUNNING = 0;
 
-    private final int consumeBatchSize;
+    /**
+     * 已关闭，拒绝新提交，消费并处理完已缓冲的实体后终止
+     */
+    private static final int STATE_SHUTDOWN = 1;
+
+    /**
+     * 已停止，拒绝新提交，已缓冲未处理的实体以失败响应
+     */
+    private static final int STATE_STOP = 2;
+
+    /**
+     * DROP_OLDEST策略丢弃最早实体后重新写入的最大次数
+     */
+    private static final int MAX_DROP_OLDEST_TIMES = 3;
 
-    private final int consumeWaitTimeoutMs;
+    /**
+     * 消费分道，groupAffineConsumers时每个消费线程一个，否则只有一个
+     */
+    private final ConsumeLane<E, R>[] consumeLanes;
+
+    private final int bufferQueueSize;
+
+    private final int consumeBatchSize;
 
     private final BufferGroupStrategy<E, G> bufferGroupStrategy;
 
-    private final BufferGroupHandler<E, G, R> bufferGroupHandler;
+    final BufferGroupHandler<E, G, R> bufferGroupHandler;
+
+    final BufferGroupResultHandler<E, G, R> bufferGroupResultHandler;
+
+    /**
+     * 分组策略为long分组时按long分组，否则为null
+     */
+    private final BufferLongGroupStrategy<E> longGroupStrategy;
+
+    /**
+     * 分组处理为long分组时以long分组调用，否则为null
+     */
+    final BufferLongGroupHandler<E, R> longGroupHandler;
+
+    /**
+     * 消费线程复用的long分组索引，未设置long分组策略时为null
+     */
+    private final ThreadLocal<LongGroupIndex> longGroupIndexes;
+
+    final ConsumeIdleStrategy consumeIdleStrategy;
+
+    private final BufferOverflowPolicy overflowPolicy;
+
+    /**
+     * execute提交时复用的FutureTask对象池，未启用时为null
+     */
+    private final BufferFutureTaskPool<E, R> futureTaskPool;
+
+    /**
+     * BufferFuture完成回调的默认线程池，null时在完成处理的线程中执行
+     */
+    private final Executor callbackExecutor;
+
+    final BufferProcessorMetrics metrics;
+
+    /**
+     * 是否统计阶段耗时，否时不读取时钟
+     */
+    final boolean metricsTiming;
+
+    /**
+     * 注册到JMX的监控统计，终止时注销
+     */
+    private volatile ObjectName metricsObjectName;
 
     private final ExecutorService consumeExecutorService;
 
     private final ExecutorService processExecutorService;
 
-    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * 按分组顺序处理的串行分道，分组按hash固定到一个分道，未开启时为null
+     */
+    final SerialExecutor[] orderedGroupLanes;
+
+    /**
+     * 合并分组，未开启合并时为null
+     */
+    private final GroupCoalescer<E, G, R> groupCoalescer;
+
+    /**
+     * 已提交未完成的合并分组处理任务、开启重试时的处理任务及待重试的批次数，关闭时待其归零后关闭处理线程池
+     */
+    final AtomicInteger pendingHandles = new AtomicInteger();
+
+    /**
+     * 消费线程已全部退出，等待合并分组处理及重试完成后关闭处理线程池
+     */
+    private volatile boolean handlesDraining;
+
+    /**
+     * 实体去重，未开启去重时为null
+     */
+    private final ElementDeduplicator<E, R> elementDeduplicator;
+
+    /**
+     * 处理结果缓存，未设置时为null
+     */
+    private final BufferResultCache<E, R> resultCache;
+
+    /**
+     * 实体默认的处理截止时间，0表示无截止时间
+     */
+    private final long elementDeadlineNanos;
+
+    /**
+     * 分组处理重试，未开启重试时为null
+     */
+    final GroupRetryScheduler<E, G, R> retryScheduler;
+
+    /**
+     * 正在消费的消费线程数
+     */
+    final AtomicInteger runningConsumers = new AtomicInteger();
 
-    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicInteger state = new AtomicInteger(STATE_RUNNING);
+
+    /**
+     * 未退出消费循环的分道数，最后一个分道退出时终止处理线程池
+     */
+    private final AtomicInteger activeConsumeLanes;
+
+    /**
+     * 全部消费线程退出消费循环后计数，标记处理器已终止
+     */
+    private final CountDownLatch terminationLatch = new CountDownLatch(1);
 
     public BufferGroupProcessor(int bufferQueueSize,
                                 int consumeBatchSize,
@@ -43,16 +201,134 @@ public class BufferGroupProcessor<E, G, R> {
                                 BufferGroupStrategy<E, G> bufferGroupStrategy,
                                 BufferGroupHandler<E, G, R> bufferGroupHandler,
                                 ExecutorService processExecutorService) {
-        this.bufferQueue = new LinkedBlockingQueue<>(bufferQueueSize);
-        this.consumeBatchSize = consumeBatchSize;
-        this.consumeWaitTimeoutMs = consumeWaitTimeoutMs;
-        this.bufferGroupStrategy = bufferGroupStrategy;
-        this.bufferGroupHandler = bufferGroupHandler;
-        this.consumeExecutorService = Executors.newSingleThreadExecutor();
+        this(new BufferGroupProcessorConfig<E, G, R>()
+                        .setBufferQueueSize(bufferQueueSize)
+                        .setConsumeBatchSize(consumeBatchSize)
+                        .setConsumeWaitTimeoutMs(consumeWaitTimeoutMs)
+                        .setBufferGroupStrategy(bufferGroupStrategy)
+                        .setBufferGroupHandler(bufferGroupHandler),
+                processExecutorService);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BufferGroupProcessor(BufferGroupProcessorConfig<E, G, R> config,
+                                ExecutorService processExecutorService) {
+        this.bufferQueueSize = config.getBufferQueueSize();
+        this.consumeBatchSize = config.getConsumeBatchSize();
+        this.bufferGroupStrategy = config.getBufferGroupStrategy();
+        this.bufferGroupHandler = config.getBufferGroupHandler();
+        this.bufferGroupResultHandler = config.getBufferGroupResultHandler();
+        Preconditions.checkArgument(bufferGroupHandler != null ^ bufferGroupResultHandler != null,
+                "bufferGroupHandler与bufferGroupResultHandler必须设置且只能设置一个。");
+        this.longGroupStrategy = bufferGroupStrategy instanceof BufferLongGroupStrategy
+                ? (BufferLongGroupStrategy<E>) bufferGroupStrategy : null;
+        this.longGroupHandler = bufferGroupHandler instanceof BufferLongGroupHandler
+                ? (BufferLongGroupHandler<E, R>) bufferGroupHandler : null;
+        this.longGroupIndexes = longGroupStrategy != null ? new ThreadLocal<LongGroupIndex>() {
+            @Override
+            protected LongGroupIndex initialValue() {
+                return new LongGroupIndex();
+            }
+        } : null;
+        this.consumeIdleStrategy = config.getConsumeIdleStrategy();
+        this.overflowPolicy = config.getOverflowPolicy();
+
+        int consumerThreads = config.getConsumerThreads();
+        Preconditions.checkArgument(consumerThreads > 0, "consumerThreads必须大于0。");
+        Preconditions.checkArgument(!config.isGroupAffineConsumers() || bufferGroupStrategy != null,
+                "groupAffineConsumers需要设置bufferGroupStrategy。");
+        boolean groupAffine = config.isGroupAffineConsumers() && consumerThreads > 1;
+        int laneCount = groupAffine ? consumerThreads : 1;
+        int laneWorkers = groupAffine ? 1 : consumerThreads;
+        this.consumeLanes = new ConsumeLane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            consumeLanes[i] = new ConsumeLane<E, R>(this, config, laneWorkers);
+        }
+        this.activeConsumeLanes = new AtomicInteger(laneCount);
+
+        boolean ringQueue = consumeLanes[0].bufferQueue instanceof MpscRingBufferQueue;
+        Preconditions.checkArgument(overflowPolicy != BufferOverflowPolicy.DROP_OLDEST
+                        || consumeLanes[0].bufferQueue instanceof DroppableBufferQueue,
+                "溢出策略DROP_OLDEST需要缓冲队列实现DroppableBufferQueue。");
+        Preconditions.checkArgument(laneWorkers == 1 || !ringQueue,
+                "MPSC环形缓冲队列只支持单个消费线程，多个消费线程需开启groupAffineConsumers。");
+        boolean priorityQueue = config.getBufferPriorityStrategy() != null;
+        Preconditions.checkArgument(!priorityQueue || config.getBufferQueueFactory() == BufferQueues.linkedBlocking(),
+                "bufferPriorityStrategy不能与自定义的bufferQueueFactory同时设置。");
+        Preconditions.checkArgument(laneWorkers == 1 || !priorityQueue,
+                "bufferPriorityStrategy只支持单个消费线程，多个消费线程需开启groupAffineConsumers。");
+
+        this.futureTaskPool = config.getFutureTaskPoolSize() > 0
+                ? new BufferFutureTaskPool<E, R>(config.getFutureTaskPoolSize()) : null;
+        this.callbackExecutor = config.getCallbackExecutor();
+        this.metrics = config.getMetricsFactory().create();
+        this.metricsTiming = metrics.isTimingEnabled();
+        this.consumeExecutorService = newConsumeExecutorService(consumerThreads, config.isVirtualConsumeThread());
         this.processExecutorService = processExecutorService;
+
+        int orderedGroupLaneCount = config.getOrderedGroupLanes();
+        Preconditions.checkArgument(orderedGroupLaneCount >= 0, "orderedGroupLanes必须大于等于0。");
+        Preconditions.checkArgument(orderedGroupLaneCount == 0 || laneWorkers == 1,
+                "orderedGroupLanes需要单个消费线程或开启groupAffineConsumers。");
+        Preconditions.checkArgument(orderedGroupLaneCount == 0 || overflowPolicy != BufferOverflowPolicy.CALLER_RUNS,
+                "orderedGroupLanes不支持溢出策略CALLER_RUNS。");
+        this.orderedGroupLanes = orderedGroupLaneCount > 0 ? new SerialExecutor[orderedGroupLaneCount] : null;
+        for (int i = 0; i < orderedGroupLaneCount; i++) {
+            orderedGroupLanes[i] = new SerialExecutor(processExecutorService);
+        }
+
+        int groupCoalesceMaxSize = config.getGroupCoalesceMaxSize();
+        Preconditions.checkArgument(groupCoalesceMaxSize >= 0, "groupCoalesceMaxSize必须大于等于0。");
+        Preconditions.checkArgument(config.getGroupCoalesceMaxDelayMs() >= 0, "groupCoalesceMaxDelayMs必须大于等于0。");
+        this.groupCoalescer = groupCoalesceMaxSize > 0 ? new GroupCoalescer<E, G, R>(this, groupCoalesceMaxSize,
+                TimeUnit.MILLISECONDS.toNanos(config.getGroupCoalesceMaxDelayMs())) : null;
+        this.elementDeduplicator = config.isDeduplicateElements() ? new ElementDeduplicator<E, R>(this) : null;
+        this.resultCache = config.getResultCacheConfig() != null ? newResultCache(config.getResultCacheConfig()) : null;
+        Preconditions.checkArgument(config.getElementDeadlineMs() >= 0, "elementDeadlineMs必须大于等于0。");
+        this.elementDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(config.getElementDeadlineMs());
+        int retryMaxAttempts = config.getRetryMaxAttempts();
+        Preconditions.checkArgument(retryMaxAttempts >= 0, "retryMaxAttempts必须大于等于0。");
+        Preconditions.checkArgument(config.getRetryBackoffMs() >= 0 && config.getRetryMaxBackoffMs() >= config.getRetryBackoffMs(),
+                "retryBackoffMs必须大于等于0且不大于retryMaxBackoffMs。");
+        // 实体最多处理的次数（含首次），小于等于1时不重试
+        this.retryScheduler = retryMaxAttempts > 1 ? new GroupRetryScheduler<E, G, R>(this, retryMaxAttempts,
+                TimeUnit.MILLISECONDS.toNanos(config.getRetryBackoffMs()),
+                TimeUnit.MILLISECONDS.toNanos(config.getRetryMaxBackoffMs()), config.isRetryBisectBatches()) : null;
         init();
     }
 
+    private static ExecutorService newConsumeExecutorService(int consumerThreads, boolean virtualConsumeThread) {
+        ThreadFactory threadFactory = virtualConsumeThread ? VirtualThreads.newThreadFactory("buffer-consume-") : null;
+        if (threadFactory == null) {
+            threadFactory = Executors.defaultThreadFactory();
+        }
+
+        return consumerThreads == 1
+                ? Executors.newSingleThreadExecutor(threadFactory) : Executors.newFixedThreadPool(consumerThreads, threadFactory);
+    }
+
+    private BufferResultCache<E, R> newResultCache(BufferResultCacheConfig<E, R> resultCacheConfig) {
+        return new BufferResultCache<E, R>(resultCacheConfig, new BufferResultCache.Loader<E, R>() {
+            @Override
+            public void load(BufferFutureTask<E, R> loadFutureTask) {
+                offerFutureTask(loadFutureTask);
+            }
+        });
+    }
+
+    static ScheduledThreadPoolExecutor newDelayExecutor(final String threadName) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
     private void init() {
         startBatchConsume();
     }
@@ -66,90 +342,679 @@ public class BufferGroupProcessor<E, G, R> {
             throw new NullPointerException();
         }
 
+        if (isShutdown()) {
+            return newRejectedFutureTask(element);
+        }
+
         BufferFutureTask<E, R> bufferFutureTask = newBufferFutureTask(element);
-        bufferQueue.put(bufferFutureTask);
+        if (isResolvedByResultCache(bufferFutureTask)) {
+            return bufferFutureTask;
+        }
+
+        enqueueBufferFutureTask(bufferFutureTask);
         return bufferFutureTask;
     }
 
-    public long getQueueSize() {
-        return bufferQueue.size();
+    /**
+     * 不阻塞地提交实体，缓冲队列已满时按溢出策略处理，BLOCK策略时以BufferOverflowException失败响应
+     */
+    public BufferFuture<R> trySubmit(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        if (isShutdown()) {
+            return newRejectedFutureTask(element);
+        }
+
+        BufferFutureTask<E, R> bufferFutureTask = newBufferFutureTask(element);
+        if (isResolvedByResultCache(bufferFutureTask)) {
+            return bufferFutureTask;
+        }
+
+        ConsumeLane<E, R> consumeLane = routeConsumeLane(bufferFutureTask);
+        if (consumeLane != null) {
+            offerBufferFutureTask(consumeLane, bufferFutureTask);
+        }
+        return bufferFutureTask;
     }
 
-    public boolean isRunning() {
-        return running.get();
+    /**
+     * 提交实体，缓冲队列已满时最多等待timeout，超时后按溢出策略处理，BLOCK策略时以BufferOverflowException失败响应
+     */
+    public BufferFuture<R> submit(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        if (isShutdown()) {
+            return newRejectedFutureTask(element);
+        }
+
+        BufferFutureTask<E, R> bufferFutureTask = newBufferFutureTask(element);
+        return submitBufferFutureTask(bufferFutureTask, timeout, unit);
     }
 
-    private BufferFutureTask<E, R> newBufferFutureTask(E element) {
-        return new BufferFutureTask<E, R>(element);
+    /**
+     * 提交带截止时间的实体，超过截止时间仍未交给分组处理时以BufferExpiredException失败响应、不再处理；
+     * 缓冲队列已满时最多等待到截止时间，之后按溢出策略处理
+     */
+    public BufferFuture<R> submitWithDeadline(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        if (isShutdown()) {
+            return newRejectedFutureTask(element);
+        }
+
+        BufferFutureTask<E, R> bufferFutureTask = newBufferFutureTask(element);
+        bufferFutureTask.setDeadlineNanos(System.nanoTime() + unit.toNanos(timeout));
+        return submitBufferFutureTask(bufferFutureTask, timeout, unit);
     }
 
-    private void startBatchConsume() {
-        consumeExecutorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                loopDoBatchConsume();
+    private BufferFuture<R> submitBufferFutureTask(BufferFutureTask<E, R> bufferFutureTask, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (isResolvedByResultCache(bufferFutureTask)) {
+            return bufferFutureTask;
+        }
+
+        ConsumeLane<E, R> consumeLane = routeConsumeLane(bufferFutureTask);
+        if (consumeLane == null) {
+            return bufferFutureTask;
+        }
+
+        if (consumeLane.bufferQueue.offer(bufferFutureTask, timeout, unit)) {
+            afterEnqueueBufferFutureTask(consumeLane, bufferFutureTask);
+        } else {
+            handleOverflowFutureTask(consumeLane, bufferFutureTask);
+        }
+        return bufferFutureTask;
+    }
+
+    /**
+     * 批量提交实体到缓冲处理器处理，每个消费分道一次写入缓冲队列；缓冲队列已满时BLOCK策略阻塞等待，
+     * 其他溢出策略逐个实体写入，写入失败的实体按溢出策略处理
+     *
+     * @return 汇总的Future，可通过getFutures获取每个实体的Future
+     * @throws NullPointerException 任一实体为null，此时不提交任何实体
+     */
+    @SuppressWarnings("unchecked")
+    public BufferBatchFuture<R> submitAll(Collection<? extends E> elements) throws InterruptedException {
+        // 先检查全部实体，避免部分实体已创建FutureTask或登记为结果缓存的加载实体后才失败
+        for (E element : elements) {
+            if (element == null) {
+                throw new NullPointerException();
             }
-        });
+        }
+
+        List<BufferFutureTask<E, R>> bufferFutureTasks = new ArrayList<>(elements.size());
+        if (isShutdown()) {
+            for (E element : elements) {
+                bufferFutureTasks.add(newRejectedFutureTask(element));
+            }
+            return new BufferBatchFutureTask<R>(bufferFutureTasks);
+        }
+
+        // 命中处理结果缓存的实体不写入缓冲队列
+        List<BufferFutureTask<E, R>> enqueueFutureTasks = resultCache != null
+                ? new ArrayList<BufferFutureTask<E, R>>(elements.size()) : bufferFutureTasks;
+        for (E element : elements) {
+            BufferFutureTask<E, R> bufferFutureTask = newBufferFutureTask(element);
+            bufferFutureTasks.add(bufferFutureTask);
+            if (resultCache != null && !resultCache.tryResolve(bufferFutureTask)) {
+                enqueueFutureTasks.add(bufferFutureTask);
+            }
+        }
+
+        if (enqueueFutureTasks.isEmpty()) {
+            return new BufferBatchFutureTask<R>(bufferFutureTasks);
+        }
+
+        if (consumeLanes.length == 1) {
+            putAllBufferFutureTasks(consumeLanes[0], enqueueFutureTasks);
+            return new BufferBatchFutureTask<R>(bufferFutureTasks);
+        }
+
+        // 按分组路由到消费分道后，每个分道批量写入
+        List<BufferFutureTask<E, R>>[] laneFutureTasks = new List[consumeLanes.length];
+        for (BufferFutureTask<E, R> bufferFutureTask : enqueueFutureTasks) {
+            int laneIndex = routeConsumeLaneIndex(bufferFutureTask);
+            if (laneIndex < 0) {
+                continue;
+            }
+            if (laneFutureTasks[laneIndex] == null) {
+                laneFutureTasks[laneIndex] = new ArrayList<>();
+            }
+            laneFutureTasks[laneIndex].add(bufferFutureTask);
+        }
+
+        for (int i = 0; i < consumeLanes.length; i++) {
+            if (laneFutureTasks[i] != null) {
+                putAllBufferFutureTasks(consumeLanes[i], laneFutureTasks[i]);
+            }
+        }
+        return new BufferBatchFutureTask<R>(bufferFutureTasks);
     }
 
-    private void loopDoBatchConsume() {
-        boolean isLoop = true;
-        while (isLoop) {
-            doBatchConsume();
+    private void putAllBufferFutureTasks(ConsumeLane<E, R> consumeLane, List<BufferFutureTask<E, R>> bufferFutureTasks)
+            throws InterruptedException {
+        if (overflowPolicy != BufferOverflowPolicy.BLOCK) {
+            for (BufferFutureTask<E, R> bufferFutureTask : bufferFutureTasks) {
+                offerBufferFutureTask(consumeLane, bufferFutureTask);
+            }
+            return;
+        }
+
+        // 按不超过缓冲队列容量分段写入并唤醒消费线程，避免整批等待队列空间时消费线程未被唤醒
+        for (List<BufferFutureTask<E, R>> partitionFutureTasks : Lists.partition(bufferFutureTasks, bufferQueueSize)) {
+            consumeLane.bufferQueue.putAll(partitionFutureTasks);
+            consumeLane.signalConsume();
+            metrics.recordSubmit(partitionFutureTasks.size());
+        }
+
+        // 提交与消费线程退出交错时，由提交线程完成拒绝响应
+        if (consumeLane.consumeExited) {
+            metrics.recordReject(bufferFutureTasks.size());
+            completeFails(bufferFutureTasks, newRejectedException());
         }
     }
 
-    private void doBatchConsume() {
-        final ReentrantLock lock = this.lock;
-        lock.lock();
+    /**
+     * 提交实体到缓冲处理器处理，不返回处理结果
+     * <p>
+     * 启用FutureTask对象池（futureTaskPoolSize大于0）时，FutureTask在处理完成后归还对象池复用。
+     *
+     * @throws RejectedExecutionException 缓冲处理器已关闭（包括写入缓冲队列时消费线程恰好退出），或缓冲队列已满且溢出策略拒绝了实体
+     */
+    public void execute(E element) throws InterruptedException {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        if (isShutdown()) {
+            metrics.recordReject(1);
+            throw new RejectedExecutionException(newRejectedException().getMessage());
+        }
+
+        // 结果缓存加载中的FutureTask会被其他实体跟随，不使用对象池
+        if (futureTaskPool == null || resultCache != null) {
+            BufferFutureTask<E, R> bufferFutureTask = newBufferFutureTask(element);
+            if (!isResolvedByResultCache(bufferFutureTask) && !enqueueBufferFutureTask(bufferFutureTask)) {
+                throw newExecuteRejectedException();
+            }
+            return;
+        }
+
+        BufferFutureTask<E, R> bufferFutureTask = futureTaskPool.acquire(element);
+        markSubmit(bufferFutureTask);
         try {
-            running.set(true);
-            while (hasQueueFutureTasks()) {
-                List<BufferFutureTask<E, R>> bufferFutureTasks = takeQueueFutureTasks();
-                doConsumeFutureTasks(bufferFutureTasks);
+            if (!enqueueBufferFutureTask(bufferFutureTask)) {
+                throw newExecuteRejectedException();
             }
         } finally {
-            running.set(false);
-            lock.unlock();
+            // 释放提交线程的引用，FutureTask完成后由处理流程释放另一个引用
+            futureTaskPool.release(bufferFutureTask);
         }
     }
 
-    private boolean hasQueueFutureTasks() {
-        return !bufferQueue.isEmpty();
+    /**
+     * 消费线程退出后拒绝的实体以关闭异常抛出，调用方可据此重新路由；其余为缓冲队列已满
+     */
+    private RejectedExecutionException newExecuteRejectedException() {
+        if (isShutdown()) {
+            return new RejectedExecutionException(newRejectedException().getMessage());
+        }
+        return new RejectedExecutionException(newOverflowException().getMessage());
+    }
+
+    /**
+     * 命中处理结果缓存或加入同key正在加载的实体
+     */
+    private boolean isResolvedByResultCache(BufferFutureTask<E, R> bufferFutureTask) {
+        return resultCache != null && resultCache.tryResolve(bufferFutureTask);
     }
 
-    private List<BufferFutureTask<E, R>> takeQueueFutureTasks() {
-        List<BufferFutureTask<E, R>> futureTasks = new ArrayList<>(consumeBatchSize);
+    /**
+     * 不阻塞地写入结果缓存的刷新实体或重新处理的去重实体，无法写入时以失败完成
+     */
+    void offerFutureTask(BufferFutureTask<E, R> bufferFutureTask) {
+        if (isShutdown()) {
+            bufferFutureTask.completeFail(newRejectedException());
+            return;
+        }
+
+        ConsumeLane<E, R> consumeLane = routeConsumeLane(bufferFutureTask);
+        if (consumeLane == null) {
+            return;
+        }
+
+        if (consumeLane.bufferQueue.offer(bufferFutureTask)) {
+            afterEnqueueBufferFutureTask(consumeLane, bufferFutureTask);
+        } else {
+            bufferFutureTask.completeFail(newOverflowException());
+        }
+    }
+
+    /**
+     * 路由消费分道后按溢出策略写入缓冲队列
+     *
+     * @return 写入缓冲队列、在提交线程中处理或分组失败返回true，溢出被拒绝或写入时消费线程已退出返回false
+     */
+    private boolean enqueueBufferFutureTask(BufferFutureTask<E, R> bufferFutureTask) throws InterruptedException {
+        ConsumeLane<E, R> consumeLane = routeConsumeLane(bufferFutureTask);
+        if (consumeLane == null) {
+            return true;
+        }
+
+        if (overflowPolicy != BufferOverflowPolicy.BLOCK) {
+            return offerBufferFutureTask(consumeLane, bufferFutureTask);
+        }
+
+        consumeLane.bufferQueue.put(bufferFutureTask);
+        return afterEnqueueBufferFutureTask(consumeLane, bufferFutureTask);
+    }
+
+    /**
+     * 路由实体的消费分道，分组失败时以失败响应并返回null
+     */
+    private ConsumeLane<E, R> routeConsumeLane(BufferFutureTask<E, R> bufferFutureTask) {
+        if (consumeLanes.length == 1) {
+            return consumeLanes[0];
+        }
+
+        int laneIndex = routeConsumeLaneIndex(bufferFutureTask);
+        return laneIndex >= 0 ? consumeLanes[laneIndex] : null;
+    }
+
+    /**
+     * 在提交线程中分组并按分组路由消费分道，分组结果记录在FutureTask中，消费时不再分组
+     */
+    private int routeConsumeLaneIndex(BufferFutureTask<E, R> bufferFutureTask) {
+        G group;
         try {
-            Queues.drain(bufferQueue, futureTasks, consumeBatchSize, consumeWaitTimeoutMs, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            // restore the interrupted status
-            Thread.currentThread().interrupt();
+            group = bufferGroupStrategy.doGroup(bufferFutureTask.getElement());
+        } catch (Exception ex) {
+            completeGroupFailTasks(Collections.singletonList(bufferFutureTask));
+            return -1;
+        }
+
+        bufferFutureTask.setGroup(group);
+        int hash = group != null ? group.hashCode() : 0;
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % consumeLanes.length;
+    }
+
+    private boolean offerBufferFutureTask(ConsumeLane<E, R> consumeLane, BufferFutureTask<E, R> bufferFutureTask) {
+        if (consumeLane.bufferQueue.offer(bufferFutureTask)) {
+            return afterEnqueueBufferFutureTask(consumeLane, bufferFutureTask);
+        }
+
+        return handleOverflowFutureTask(consumeLane, bufferFutureTask);
+    }
+
+    /**
+     * @return 提交与消费线程退出交错、由提交线程完成拒绝响应时返回false
+     */
+    private boolean afterEnqueueBufferFutureTask(ConsumeLane<E, R> consumeLane, BufferFutureTask<E, R> bufferFutureTask) {
+        consumeLane.signalConsume();
+        metrics.recordSubmit(1);
+
+        if (!consumeLane.consumeExited) {
+            return true;
+        }
+
+        // 提交与消费线程退出交错时，由提交线程完成拒绝响应；FutureTask可能仍在缓冲队列中，不再归还对象池。
+        // 退出前取出的实体已由消费线程处理完成时不再拒绝
+        if (bufferFutureTask.isPooled()) {
+            bufferFutureTask.detachPool();
+        }
+        if (!bufferFutureTask.completeFail(newRejectedException())) {
+            return true;
+        }
+        metrics.recordReject(1);
+        return false;
+    }
+
+    private boolean handleOverflowFutureTask(ConsumeLane<E, R> consumeLane, BufferFutureTask<E, R> bufferFutureTask) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                if (dropOldestAndOfferFutureTask(consumeLane, bufferFutureTask)) {
+                    return afterEnqueueBufferFutureTask(consumeLane, bufferFutureTask);
+                }
+                break;
+            case CALLER_RUNS:
+                runInCaller(consumeLane, bufferFutureTask);
+                return true;
+            default:
+                break;
+        }
+
+        metrics.recordReject(1);
+        bufferFutureTask.completeFail(newOverflowException());
+        return false;
+    }
+
+    private boolean dropOldestAndOfferFutureTask(ConsumeLane<E, R> consumeLane, BufferFutureTask<E, R> bufferFutureTask) {
+        // 构造时已检查DROP_OLDEST策略的缓冲队列可丢弃元素
+        DroppableBufferQueue<BufferFutureTask<E, R>> bufferQueue =
+                (DroppableBufferQueue<BufferFutureTask<E, R>>) consumeLane.bufferQueue;
+        for (int i = 0; i < MAX_DROP_OLDEST_TIMES; i++) {
+            BufferFutureTask<E, R> oldestFutureTask = bufferQueue.poll();
+            if (oldestFutureTask != null) {
+                metrics.recordReject(1);
+                oldestFutureTask.completeFail(new BufferOverflowException("[buffer-processor] 缓冲队列已满，丢弃最早的实体！"));
+            }
+
+            if (bufferQueue.offer(bufferFutureTask)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在提交线程中将实体作为单个实体的分组处理
+     */
+    @SuppressWarnings("unchecked")
+    private void runInCaller(ConsumeLane<E, R> consumeLane, BufferFutureTask<E, R> bufferFutureTask) {
+        List<BufferFutureTask<E, R>> bufferFutureTasks = Collections.singletonList(bufferFutureTask);
+        G group = null;
+        if (bufferFutureTask.isGrouped()) {
+            group = (G) bufferFutureTask.getGroup();
+        } else if (isHasBufferGroupStrategy()) {
+            try {
+                group = bufferGroupStrategy.doGroup(bufferFutureTask.getElement());
+            } catch (Exception ex) {
+                completeGroupFailTasks(bufferFutureTasks);
+                return;
+            }
+        }
+
+        new BufferGroupFuturesHandleTask<E, G, R>(this, group, bufferFutureTasks, consumeLane.consumeBatchController, null).run();
+    }
+
+    private BufferOverflowException newOverflowException() {
+        return new BufferOverflowException("[buffer-processor] 缓冲队列已满，拒绝提交的实体！");
+    }
+
+    /**
+     * 关闭处理器：拒绝新提交，已缓冲的实体会按批次分组处理完成后终止，不等待处理完成
+     */
+    public void shutdown() {
+        if (state.compareAndSet(STATE_RUNNING, STATE_SHUTDOWN)) {
+            unparkConsumers();
+        }
+    }
+
+    /**
+     * 立即停止处理器：拒绝新提交，中断消费及处理线程，已缓冲未处理的实体以失败响应
+     */
+    public void shutdownNow() {
+        int currentState = state.get();
+        while (currentState < STATE_STOP && !state.compareAndSet(currentState, STATE_STOP)) {
+            currentState = state.get();
+        }
+
+        unparkConsumers();
+        consumeExecutorService.shutdownNow();
+    }
+
+    private void unparkConsumers() {
+        for (ConsumeLane<E, R> consumeLane : consumeLanes) {
+            consumeLane.unparkConsumers();
+        }
+    }
+
+    /**
+     * 等待处理器终止，即缓冲的实体全部处理完成且消费及处理线程池终止
+     *
+     * @return 超时前已终止返回true
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!terminationLatch.await(timeout, unit)) {
+            return false;
+        }
+
+        return processExecutorService.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                && consumeExecutorService.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isShutdown() {
+        return state.get() != STATE_RUNNING;
+    }
+
+    public boolean isTerminated() {
+        return terminationLatch.getCount() == 0
+                && processExecutorService.isTerminated()
+                && consumeExecutorService.isTerminated();
+    }
+
+    public long getQueueSize() {
+        long queueSize = 0;
+        for (ConsumeLane<E, R> consumeLane : consumeLanes) {
+            queueSize += consumeLane.bufferQueue.size();
+        }
+        return queueSize;
+    }
+
+    /**
+     * 监控统计快照，未设置metricsFactory时为空快照
+     */
+    @Override
+    public BufferProcessorMetricsSnapshot getMetrics() {
+        return metrics.snapshot(getQueueSize());
+    }
+
+    /**
+     * 处理结果缓存的命中统计，未设置resultCache时为null
+     */
+    public CacheStats getResultCacheStats() {
+        return resultCache != null ? resultCache.stats() : null;
+    }
+
+    /**
+     * 将监控统计注册到JMX，处理器终止时注销
+     */
+    public void registerMetricsJmx(String name) {
+        metricsObjectName = BufferProcessorMetricsJmx.register(name, this);
+    }
+
+    public boolean isRunning() {
+        return runningConsumers.get() > 0;
+    }
+
+    private BufferFutureTask<E, R> newBufferFutureTask(E element) {
+        BufferFutureTask<E, R> bufferFutureTask = new BufferFutureTask<E, R>(element, callbackExecutor);
+        markSubmit(bufferFutureTask);
+        return bufferFutureTask;
+    }
+
+    /**
+     * 记录提交时间及默认截止时间
+     */
+    private void markSubmit(BufferFutureTask<E, R> bufferFutureTask) {
+        if (!metricsTiming && elementDeadlineNanos == 0) {
+            return;
+        }
+
+        long nowNanos = System.nanoTime();
+        bufferFutureTask.submitNanos = nowNanos;
+        if (elementDeadlineNanos > 0) {
+            bufferFutureTask.setDeadlineNanos(nowNanos + elementDeadlineNanos);
+        }
+    }
+
+    private BufferFutureTask<E, R> newRejectedFutureTask(E element) {
+        metrics.recordReject(1);
+        return BufferFutureTask.newFailedTask(element, newRejectedException());
+    }
+
+    BufferRejectedException newRejectedException() {
+        return new BufferRejectedException("[buffer-processor] 缓冲处理器已关闭，拒绝提交的实体！");
+    }
+
+    private void startBatchConsume() {
+        for (ConsumeLane<E, R> consumeLane : consumeLanes) {
+            for (ConsumeWorker<E, R> consumeWorker : consumeLane.consumeWorkers) {
+                consumeExecutorService.execute(consumeWorker);
+            }
+        }
+    }
+
+    boolean isStopped() {
+        return state.get() >= STATE_STOP;
+    }
+
+    /**
+     * 消费线程退出消费循环，分道的最后一个消费线程处理分道中剩余的实体，最后一个分道终止处理线程池
+     */
+    void terminateConsume(ConsumeLane<E, R> consumeLane) {
+        if (consumeLane.activeWorkers.decrementAndGet() > 0) {
+            return;
+        }
+
+        terminateConsumeLane(consumeLane);
+        if (activeConsumeLanes.decrementAndGet() > 0) {
+            return;
+        }
+
+        if (isStopped()) {
+            if (groupCoalescer != null) {
+                groupCoalescer.completeRejected();
+            }
+            if (retryScheduler != null) {
+                retryScheduler.completeRejected();
+            }
+            completeRejectedHandleTasks(processExecutorService.shutdownNow());
+            if (orderedGroupLanes != null) {
+                for (SerialExecutor orderedGroupLane : orderedGroupLanes) {
+                    completeRejectedHandleTasks(orderedGroupLane.drainTasks());
+                }
+            }
+        } else if (groupCoalescer != null || retryScheduler != null) {
+            // 合并分组的待处理实体在前一次处理完成后提交，重试的实体在退避后提交，全部处理任务完成后再关闭处理线程池
+            handlesDraining = true;
+            if (pendingHandles.get() == 0) {
+                shutdownProcessExecutor();
+            }
+        } else {
+            processExecutorService.shutdown();
+        }
+
+        consumeExecutorService.shutdown();
+        BufferProcessorMetricsJmx.unregister(metricsObjectName);
+        terminationLatch.countDown();
+    }
+
+    private void shutdownProcessExecutor() {
+        if (groupCoalescer != null) {
+            groupCoalescer.shutdownNow();
+        }
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+        processExecutorService.shutdown();
+    }
+
+    private void completeRejectedHandleTasks(List<Runnable> runnables) {
+        for (Runnable runnable : runnables) {
+            if (runnable instanceof BufferGroupFuturesHandleTask) {
+                ((BufferGroupFuturesHandleTask<?, ?, ?>) runnable).completeRejected();
+            }
+        }
+    }
+
+    private void terminateConsumeLane(ConsumeLane<E, R> consumeLane) {
+        consumeLane.consumeExited = true;
+
+        if (isStopped()) {
+            // 停止时，已缓冲未处理的实体以失败响应
+            List<BufferFutureTask<E, R>> bufferFutureTasks = consumeLane.takeAllQueueFutureTasks();
+            metrics.recordReject(bufferFutureTasks.size());
+            completeFails(bufferFutureTasks, newRejectedException());
+        } else {
+            // 关闭时，处理完退出消费循环前并发提交的实体
+            List<BufferFutureTask<E, R>> bufferFutureTasks = consumeLane.takeAllQueueFutureTasks();
+            for (List<BufferFutureTask<E, R>> batchFutureTasks : Lists.partition(bufferFutureTasks, consumeBatchSize)) {
+                doConsumeFutureTasks(consumeLane, batchFutureTasks);
+            }
         }
-        return futureTasks;
     }
 
-    private void doConsumeFutureTasks(List<BufferFutureTask<E, R>> toConsumeFutureTasks) {
+    void doConsumeFutureTasks(ConsumeLane<E, R> consumeLane, List<BufferFutureTask<E, R>> toConsumeFutureTasks) {
         if (toConsumeFutureTasks == null || toConsumeFutureTasks.isEmpty()) {
             return;
         }
 
+        toConsumeFutureTasks = removeAbandonedFutureTasks(toConsumeFutureTasks);
+        if (toConsumeFutureTasks.isEmpty()) {
+            return;
+        }
+
+        if (elementDeduplicator != null) {
+            toConsumeFutureTasks = elementDeduplicator.deduplicate(toConsumeFutureTasks);
+            if (toConsumeFutureTasks.isEmpty()) {
+                return;
+            }
+        }
+
+        ConsumeBatchController consumeBatchController = consumeLane.consumeBatchController;
         if (!isHasBufferGroupStrategy()) {
-            doHandleGroupFutureTasks(null, toConsumeFutureTasks);
+            metrics.recordBatch(toConsumeFutureTasks.size(), 1);
+            dispatchGroupFutureTasks(null, toConsumeFutureTasks, consumeBatchController);
+            return;
+        }
+
+        if (longGroupStrategy != null) {
+            doConsumeLongGroupFutureTasks(toConsumeFutureTasks, consumeBatchController);
             return;
         }
 
+        long groupStartNanos = metricsTiming ? System.nanoTime() : 0L;
         Map<G, List<BufferFutureTask<E, R>>> groupFutureTasksMap = doGroupFutureTasks(toConsumeFutureTasks);
+        if (metricsTiming) {
+            metrics.recordStage(BufferProcessStage.GROUP, System.nanoTime() - groupStartNanos);
+        }
+        metrics.recordBatch(toConsumeFutureTasks.size(), groupFutureTasksMap.size());
 
         for (Map.Entry<G, List<BufferFutureTask<E, R>>> groupEntry : groupFutureTasksMap.entrySet()) {
-            doHandleGroupFutureTasks(groupEntry.getKey(), groupEntry.getValue());
+            dispatchGroupFutureTasks(groupEntry.getKey(), groupEntry.getValue(), consumeBatchController);
         }
     }
 
+    /**
+     * 丢弃已取消或超过截止时间的实体，超过截止时间的以BufferExpiredException失败响应
+     *
+     * @return 需要处理的实体，没有丢弃时返回原列表
+     */
+    List<BufferFutureTask<E, R>> removeAbandonedFutureTasks(List<BufferFutureTask<E, R>> futureTasks) {
+        long nowNanos = System.nanoTime();
+        List<BufferFutureTask<E, R>> liveFutureTasks = null;
+        for (int i = 0; i < futureTasks.size(); i++) {
+            BufferFutureTask<E, R> futureTask = futureTasks.get(i);
+            if (!futureTask.isAbandoned(nowNanos)) {
+                if (liveFutureTasks != null) {
+                    liveFutureTasks.add(futureTask);
+                }
+                continue;
+            }
+
+            if (liveFutureTasks == null) {
+                liveFutureTasks = new ArrayList<>(futureTasks.subList(0, i));
+            }
+            metrics.recordAbandon(1);
+            futureTask.completeFail(new BufferExpiredException("[buffer-processor] 实体超过截止时间未处理，已丢弃！"));
+        }
+        return liveFutureTasks != null ? liveFutureTasks : futureTasks;
+    }
+
     private boolean isHasBufferGroupStrategy() {
         return bufferGroupStrategy != null;
     }
 
+    @SuppressWarnings("unchecked")
     private Map<G, List<BufferFutureTask<E, R>>> doGroupFutureTasks(List<BufferFutureTask<E, R>> toConsumeFutureTasks) {
         Map<G, List<BufferFutureTask<E, R>>> groupFutureTasksMap = Maps.newHashMap();
         List<BufferFutureTask<E, R>> groupFailFutureTasks = Lists.newArrayList();
@@ -157,12 +1022,17 @@ public class BufferGroupProcessor<E, G, R> {
         E element;
         G group;
         for (BufferFutureTask<E, R> futureTask : toConsumeFutureTasks) {
-            element = futureTask.getElement();
-            try {
-                group = bufferGroupStrategy.doGroup(element);
-            } catch (Exception ex) {
-                groupFailFutureTasks.add(futureTask);
-                continue;
+            if (futureTask.isGrouped()) {
+                // 提交时已分组
+                group = (G) futureTask.getGroup();
+            } else {
+                element = futureTask.getElement();
+                try {
+                    group = bufferGroupStrategy.doGroup(element);
+                } catch (Exception ex) {
+                    groupFailFutureTasks.add(futureTask);
+                    continue;
+                }
             }
 
             // 添加task到分组列表
@@ -181,86 +1051,137 @@ public class BufferGroupProcessor<E, G, R> {
         return groupFutureTasksMap;
     }
 
-    private void completeGroupFailTasks(List<BufferFutureTask<E, R>> groupFailFutureTasks) {
-        completeFails(groupFailFutureTasks, new GroupFailException("[buffer-processor] 实体分组失败！请检查缓冲分组策略配置。"));
-    }
+    /**
+     * 按long分组：复用的索引计数各分组的实体数，再计数排序到一个数组，各分组为其中的连续区间，不装箱分组、不创建HashMap
+     * 及分组列表；排序数组交给处理线程持有，每个批次分配一次，不能在批次间复用
+     */
+    @SuppressWarnings("unchecked")
+    private void doConsumeLongGroupFutureTasks(List<BufferFutureTask<E, R>> toConsumeFutureTasks,
+                                               ConsumeBatchController consumeBatchController) {
+        long groupStartNanos = metricsTiming ? System.nanoTime() : 0L;
+        int elementCount = toConsumeFutureTasks.size();
+        LongGroupIndex groupIndex = longGroupIndexes.get();
+        groupIndex.reset(elementCount);
 
-    private void doHandleGroupFutureTasks(G group, List<BufferFutureTask<E, R>> futureTasks) {
-        try {
-            // 提交任务到执行分组对象处理的线程池
-            processExecutorService.execute(new BufferGroupFuturesHandleTask(group, futureTasks));
-        } catch (Exception ex) {
-            // 提交任务失败处理，完成提交任务失败的异常响应
-            completeFails(futureTasks, ex);
+        List<BufferFutureTask<E, R>> groupFailFutureTasks = null;
+        for (int i = 0; i < elementCount; i++) {
+            BufferFutureTask<E, R> futureTask = toConsumeFutureTasks.get(i);
+            Object group = futureTask.isGrouped() ? futureTask.getGroup() : null;
+            try {
+                // 提交时已分组的直接使用其分组
+                groupIndex.add(i, group != null ? (Long) group : longGroupStrategy.doLongGroup(futureTask.getElement()));
+            } catch (Exception ex) {
+                groupIndex.addFail(i);
+                if (groupFailFutureTasks == null) {
+                    groupFailFutureTasks = new ArrayList<>();
+                }
+                groupFailFutureTasks.add(futureTask);
+            }
         }
-    }
 
-    private void completeFails(List<BufferFutureTask<E, R>> futureTasks, Exception ex) {
-        if (futureTasks == null || futureTasks.isEmpty()) {
-            return;
+        // 按批次顺序计数排序，同一分组的实体连续且保持批次顺序
+        int groupCount = groupIndex.getGroupCount();
+        BufferFutureTask<E, R>[] sortedFutureTasks = new BufferFutureTask[groupIndex.computeOffsets()];
+        for (int i = 0; i < elementCount; i++) {
+            int ordinal = groupIndex.getElementOrdinal(i);
+            if (ordinal >= 0) {
+                sortedFutureTasks[groupIndex.nextPosition(ordinal)] = toConsumeFutureTasks.get(i);
+            }
         }
 
-        for (BufferFutureTask<E, R> futureTask : futureTasks) {
-            futureTask.completeFail(ex);
+        if (groupFailFutureTasks != null) {
+            completeGroupFailTasks(groupFailFutureTasks);
         }
-    }
-
-    private class BufferGroupFuturesHandleTask implements Runnable {
-
-        private final G group;
+        if (metricsTiming) {
+            metrics.recordStage(BufferProcessStage.GROUP, System.nanoTime() - groupStartNanos);
+        }
+        metrics.recordBatch(elementCount, groupCount);
 
-        private final List<BufferFutureTask<E, R>> bufferFutureTasks;
+        List<BufferFutureTask<E, R>> sortedFutureTaskList = Arrays.asList(sortedFutureTasks);
+        for (int ordinal = 0; ordinal < groupCount; ordinal++) {
+            int offset = groupIndex.getGroupOffset(ordinal);
+            List<BufferFutureTask<E, R>> groupFutureTasks = sortedFutureTaskList.subList(offset,
+                    offset + groupIndex.getGroupSize(ordinal));
+            long group = groupIndex.getGroupKey(ordinal);
+            if (groupCoalescer != null) {
+                // 合并分组按分组对象索引
+                dispatchGroupFutureTasks((G) Long.valueOf(group), groupFutureTasks, consumeBatchController);
+            } else {
+                executeHandleTask(new BufferGroupFuturesHandleTask<E, G, R>(this, group, groupFutureTasks, consumeBatchController));
+            }
+        }
+    }
 
-        public BufferGroupFuturesHandleTask(G group, List<BufferFutureTask<E, R>> bufferFutureTasks) {
-            this.group = group;
-            this.bufferFutureTasks = bufferFutureTasks;
+    private void completeGroupFailTasks(List<BufferFutureTask<E, R>> groupFailFutureTasks) {
+        if (!groupFailFutureTasks.isEmpty()) {
+            metrics.recordGroupFail(groupFailFutureTasks.size());
         }
+        completeFails(groupFailFutureTasks, new GroupFailException("[buffer-processor] 实体分组失败！请检查缓冲分组策略配置。"));
+    }
 
-        @Override
-        public void run() {
+    private void dispatchGroupFutureTasks(G group, List<BufferFutureTask<E, R>> futureTasks,
+                                          ConsumeBatchController consumeBatchController) {
+        if (groupCoalescer != null) {
+            groupCoalescer.dispatch(group, futureTasks, consumeBatchController);
+        } else {
+            doHandleGroupFutureTasks(group, futureTasks, consumeBatchController, null);
+        }
+    }
 
-            // 准备待处理的分组对象
-            List<E> elements = getTaskElements();
+    void doHandleGroupFutureTasks(G group, List<BufferFutureTask<E, R>> futureTasks,
+                                  ConsumeBatchController consumeBatchController,
+                                  GroupCoalescer<E, G, R>.CoalescingGroup coalescingGroup) {
+        executeHandleTask(new BufferGroupFuturesHandleTask<E, G, R>(this, group, futureTasks, consumeBatchController,
+                coalescingGroup));
+    }
 
-            // 执行分组对象处理
-            Map<E, R> elementResultsMap;
-            try {
-                elementResultsMap = bufferGroupHandler.handle(group, elements);
-            } catch (Exception ex) {
-                // 完成分组对象处理异常结果响应
-                completeFails(bufferFutureTasks, ex);
-                return;
+    void executeHandleTask(BufferGroupFuturesHandleTask<E, G, R> handleTask) {
+        try {
+            // 提交任务到执行分组对象处理的线程池，按分组顺序处理时提交到分组的串行分道
+            if (orderedGroupLanes != null) {
+                routeOrderedGroupLane(handleTask.groupHashCode()).execute(handleTask);
+            } else {
+                processExecutorService.execute(handleTask);
             }
-
-            // 完成分组对象处理正常结果响应
-            completeSuccessResults(elementResultsMap);
+        } catch (Exception ex) {
+            // 提交任务失败处理，完成提交任务失败的异常响应
+            handleTask.completeFail(ex);
         }
+    }
 
-        private List<E> getTaskElements() {
-            List<E> elements = Lists.newArrayListWithCapacity(bufferFutureTasks.size());
-            for (BufferFutureTask<E, R> bufferFutureTask : bufferFutureTasks) {
-                elements.add(bufferFutureTask.getElement());
-            }
+    boolean isRetryEnabled() {
+        return retryScheduler != null;
+    }
 
-            return elements;
+    /**
+     * 合并分组处理任务、开启重试时的处理任务或重试任务完成，关闭中最后一个任务完成时关闭处理线程池
+     */
+    void finishPendingHandle() {
+        if (pendingHandles.decrementAndGet() == 0 && handlesDraining) {
+            shutdownProcessExecutor();
         }
+    }
 
-        private void completeSuccessResults(Map<E, R> elementResultsMap) {
-            if (elementResultsMap != null && !elementResultsMap.isEmpty()) {
-                // 完成响应Future结果为分组处理结果
-                for (BufferFutureTask<E, R> bufferFutureTask : bufferFutureTasks) {
-                    E element = bufferFutureTask.getElement();
-                    R result = elementResultsMap.get(element);
-                    bufferFutureTask.completeSuccess(result);
-                }
-            } else {
-                // 完成响应Future结果为null
-                for (BufferFutureTask<E, R> bufferFutureTask : bufferFutureTasks) {
-                    bufferFutureTask.completeSuccess(null);
-                }
-            }
+    SerialExecutor routeOrderedGroupLane(G group) {
+        return routeOrderedGroupLane(group != null ? group.hashCode() : 0);
+    }
+
+    /**
+     * long分组按Long.hashCode路由，与装箱后的分组路由到同一分道
+     */
+    private SerialExecutor routeOrderedGroupLane(int groupHashCode) {
+        int hash = groupHashCode ^ (groupHashCode >>> 16);
+        return orderedGroupLanes[(hash & Integer.MAX_VALUE) % orderedGroupLanes.length];
+    }
+
+    static <E, R> void completeFails(List<BufferFutureTask<E, R>> futureTasks, Exception ex) {
+        if (futureTasks == null || futureTasks.isEmpty()) {
+            return;
         }
 
+        for (BufferFutureTask<E, R> futureTask : futureTasks) {
+            futureTask.completeFail(ex);
+        }
     }
 
 }
@@ -1,7 +1,13 @@
 package com.github.andy.buffer.group;
 
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsFactory;
+import com.github.andy.buffer.group.metrics.NoopBufferProcessorMetrics;
+import com.github.andy.buffer.group.queue.BufferQueueFactory;
+import com.github.andy.buffer.group.queue.BufferQueues;
 import com.google.common.base.Preconditions;
 
+import java.util.concurrent.Executor;
+
 /**
  * Created by yanshanguang on 17/12/12.
  */
@@ -12,6 +18,30 @@ public class BufferGroupProcessorBuilder<E, G, R> {
     private int consumeWaitTimeoutMs;
     private BufferGroupStrategy<E, G> bufferGroupStrategy;
     private BufferGroupHandler<E, G, R> bufferGroupHandler;
+    private BufferGroupResultHandler<E, G, R> bufferGroupResultHandler;
+    private BufferQueueFactory bufferQueueFactory = BufferQueues.linkedBlocking();
+    private ConsumeIdleStrategy consumeIdleStrategy = ConsumeIdleStrategies.blocking();
+    private BufferOverflowPolicy overflowPolicy = BufferOverflowPolicy.BLOCK;
+    private ConsumeBatchControllerFactory consumeBatchControllerFactory = ConsumeBatchControllers.fixed();
+    private int futureTaskPoolSize;
+    private Executor callbackExecutor;
+    private BufferProcessorMetricsFactory metricsFactory = NoopBufferProcessorMetrics.factory();
+    private String metricsJmxName;
+    private boolean virtualConsumeThread;
+    private int consumerThreads = 1;
+    private boolean groupAffineConsumers;
+    private int orderedGroupLanes;
+    private int groupCoalesceMaxSize;
+    private int groupCoalesceMaxDelayMs;
+    private boolean deduplicateElements;
+    private BufferResultCacheConfig<E, R> resultCacheConfig;
+    private long elementDeadlineMs;
+    private BufferPriorityStrategy<E> bufferPriorityStrategy;
+    private int[] priorityWeights = {8, 1};
+    private int retryMaxAttempts;
+    private long retryBackoffMs = 100;
+    private long retryMaxBackoffMs = 10000;
+    private boolean retryBisectBatches;
     private BufferProcessExecutorFactory bufferProcessExecutorFactory;
 
     public BufferGroupProcessorBuilder<E, G, R> bufferQueueSize(int bufferQueueSize) {
@@ -39,6 +69,171 @@ public class BufferGroupProcessorBuilder<E, G, R> {
         return this;
     }
 
+    /**
+     * 逐个实体返回处理成功、失败或需重试的分组处理，代替bufferGroupHandler
+     */
+    public BufferGroupProcessorBuilder<E, G, R> bufferGroupResultHandler(BufferGroupResultHandler<E, G, R> bufferGroupResultHandler) {
+        this.bufferGroupResultHandler = bufferGroupResultHandler;
+        return this;
+    }
+
+    public BufferGroupProcessorBuilder<E, G, R> bufferQueueFactory(BufferQueueFactory bufferQueueFactory) {
+        this.bufferQueueFactory = bufferQueueFactory;
+        return this;
+    }
+
+    public BufferGroupProcessorBuilder<E, G, R> consumeIdleStrategy(ConsumeIdleStrategy consumeIdleStrategy) {
+        this.consumeIdleStrategy = consumeIdleStrategy;
+        return this;
+    }
+
+    public BufferGroupProcessorBuilder<E, G, R> overflowPolicy(BufferOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public BufferGroupProcessorBuilder<E, G, R> consumeBatchControllerFactory(ConsumeBatchControllerFactory consumeBatchControllerFactory) {
+        this.consumeBatchControllerFactory = consumeBatchControllerFactory;
+        return this;
+    }
+
+    public BufferGroupProcessorBuilder<E, G, R> futureTaskPoolSize(int futureTaskPoolSize) {
+        this.futureTaskPoolSize = futureTaskPoolSize;
+        return this;
+    }
+
+    public BufferGroupProcessorBuilder<E, G, R> callbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    public BufferGroupProcessorBuilder<E, G, R> metricsFactory(BufferProcessorMetricsFactory metricsFactory) {
+        this.metricsFactory = metricsFactory;
+        return this;
+    }
+
+    /**
+     * 设置后将监控统计注册到JMX，关闭处理器时注销
+     */
+    public BufferGroupProcessorBuilder<E, G, R> metricsJmxName(String metricsJmxName) {
+        this.metricsJmxName = metricsJmxName;
+        return this;
+    }
+
+    /**
+     * 消费线程使用虚拟线程，分组处理使用虚拟线程可设置bufferProcessExecutorFactory为VirtualThreadBufferProcessExecutorFactory
+     */
+    public BufferGroupProcessorBuilder<E, G, R> virtualConsumeThread(boolean virtualConsumeThread) {
+        this.virtualConsumeThread = virtualConsumeThread;
+        return this;
+    }
+
+    /**
+     * 每个缓冲处理器的消费线程数，多个消费线程并行取出互不重叠的批次
+     */
+    public BufferGroupProcessorBuilder<E, G, R> consumerThreads(int consumerThreads) {
+        this.consumerThreads = consumerThreads;
+        return this;
+    }
+
+    /**
+     * 多个消费线程时按分组路由，每个消费线程一个缓冲队列（容量为bufferQueueSize），同一分组的实体由同一消费线程按提交顺序取出
+     */
+    public BufferGroupProcessorBuilder<E, G, R> groupAffineConsumers(boolean groupAffineConsumers) {
+        this.groupAffineConsumers = groupAffineConsumers;
+        return this;
+    }
+
+    /**
+     * 按分组顺序处理：分组按hash固定到orderedGroupLanes个串行分道之一，同一分组的批次按提交顺序逐个处理、不会并发
+     */
+    public BufferGroupProcessorBuilder<E, G, R> orderedGroupLanes(int orderedGroupLanes) {
+        this.orderedGroupLanes = orderedGroupLanes;
+        return this;
+    }
+
+    /**
+     * 合并分组：分组处理中时，后续批次的实体暂存到前一次处理完成后合并为一次处理，最多合并groupCoalesceMaxSize个实体
+     */
+    public BufferGroupProcessorBuilder<E, G, R> groupCoalesceMaxSize(int groupCoalesceMaxSize) {
+        this.groupCoalesceMaxSize = groupCoalesceMaxSize;
+        return this;
+    }
+
+    /**
+     * 合并分组的待处理实体最长等待时间，超过后不再等待前一次处理完成
+     */
+    public BufferGroupProcessorBuilder<E, G, R> groupCoalesceMaxDelayMs(int groupCoalesceMaxDelayMs) {
+        this.groupCoalesceMaxDelayMs = groupCoalesceMaxDelayMs;
+        return this;
+    }
+
+    /**
+     * 去重：相等的实体在批次内及处理中只交给分组处理一次，重复实体的Future以同一结果完成
+     */
+    public BufferGroupProcessorBuilder<E, G, R> deduplicateElements(boolean deduplicateElements) {
+        this.deduplicateElements = deduplicateElements;
+        return this;
+    }
+
+    /**
+     * 处理结果缓存：命中的实体在提交时即完成，不进入缓冲队列
+     */
+    public BufferGroupProcessorBuilder<E, G, R> resultCache(BufferResultCacheConfig<E, R> resultCacheConfig) {
+        this.resultCacheConfig = resultCacheConfig;
+        return this;
+    }
+
+    /**
+     * 实体默认的处理截止时间：提交后超过该时间仍未交给分组处理的实体以BufferExpiredException失败响应，不再处理
+     */
+    public BufferGroupProcessorBuilder<E, G, R> elementDeadlineMs(long elementDeadlineMs) {
+        this.elementDeadlineMs = elementDeadlineMs;
+        return this;
+    }
+
+    /**
+     * 实体的优先级策略：各优先级分道缓冲，每批按priorityWeights的权重取出，高优先级先处理且低优先级不会被饿死
+     */
+    public BufferGroupProcessorBuilder<E, G, R> bufferPriorityStrategy(BufferPriorityStrategy<E> bufferPriorityStrategy) {
+        this.bufferPriorityStrategy = bufferPriorityStrategy;
+        return this;
+    }
+
+    /**
+     * 各优先级每批取出的权重，长度为优先级数，默认8:1
+     */
+    public BufferGroupProcessorBuilder<E, G, R> priorityWeights(int... priorityWeights) {
+        this.priorityWeights = priorityWeights;
+        return this;
+    }
+
+    /**
+     * 实体最多处理的次数（含首次）：大于1时，整个分组处理异常或返回需重试的实体在退避后重新处理，不重新进入缓冲队列
+     */
+    public BufferGroupProcessorBuilder<E, G, R> retryMaxAttempts(int retryMaxAttempts) {
+        this.retryMaxAttempts = retryMaxAttempts;
+        return this;
+    }
+
+    /**
+     * 重试的退避时间：首次重试等待retryBackoffMs，之后每次翻倍，不超过retryMaxBackoffMs
+     */
+    public BufferGroupProcessorBuilder<E, G, R> retryBackoff(long retryBackoffMs, long retryMaxBackoffMs) {
+        this.retryBackoffMs = retryBackoffMs;
+        this.retryMaxBackoffMs = retryMaxBackoffMs;
+        return this;
+    }
+
+    /**
+     * 整批重试达到retryMaxAttempts后对半拆分，逐步隔离导致整批失败的实体；
+     * 拆分后的批次各处理一次且不计入处理次数，拆分到单个实体仍失败时以异常完成
+     */
+    public BufferGroupProcessorBuilder<E, G, R> retryBisectBatches(boolean retryBisectBatches) {
+        this.retryBisectBatches = retryBisectBatches;
+        return this;
+    }
+
     public BufferGroupProcessorBuilder<E, G, R> bufferProcessExecutorFactory(BufferProcessExecutorFactory bufferProcessExecutorFactory) {
         this.bufferProcessExecutorFactory = bufferProcessExecutorFactory;
         return this;
@@ -46,7 +241,11 @@ public class BufferGroupProcessorBuilder<E, G, R> {
 
     public BufferGroupProcessor<E, G, R> build() {
         check();
-        return newBufferGroupProcessor();
+        BufferGroupProcessor<E, G, R> bufferGroupProcessor = newBufferGroupProcessor();
+        if (metricsJmxName != null) {
+            bufferGroupProcessor.registerMetricsJmx(metricsJmxName);
+        }
+        return bufferGroupProcessor;
     }
 
     private void check() {
@@ -60,9 +259,64 @@ public class BufferGroupProcessorBuilder<E, G, R> {
         Preconditions.checkArgument(consumeWaitTimeoutMs >= 0,
                 "必须设置项consumeWaitTimeoutMs必须大于等于0。");
 
-        Preconditions.checkArgument(bufferGroupHandler != null,
+        Preconditions.checkArgument(bufferGroupHandler != null || bufferGroupResultHandler != null,
                 "必须设置项bufferGroupHandler为Null。");
 
+        Preconditions.checkArgument(bufferGroupHandler == null || bufferGroupResultHandler == null,
+                "设置项bufferGroupHandler与bufferGroupResultHandler只能设置一个。");
+
+        Preconditions.checkArgument(bufferQueueFactory != null,
+                "设置项bufferQueueFactory为Null。");
+
+        Preconditions.checkArgument(consumeIdleStrategy != null,
+                "设置项consumeIdleStrategy为Null。");
+
+        Preconditions.checkArgument(overflowPolicy != null,
+                "设置项overflowPolicy为Null。");
+
+        Preconditions.checkArgument(consumeBatchControllerFactory != null,
+                "设置项consumeBatchControllerFactory为Null。");
+
+        Preconditions.checkArgument(futureTaskPoolSize >= 0,
+                "设置项futureTaskPoolSize必须大于等于0。");
+
+        Preconditions.checkArgument(metricsFactory != null,
+                "设置项metricsFactory为Null。");
+
+        Preconditions.checkArgument(consumerThreads > 0,
+                "设置项consumerThreads必须大于0。");
+
+        Preconditions.checkArgument(!groupAffineConsumers || bufferGroupStrategy != null,
+                "设置项groupAffineConsumers需要设置bufferGroupStrategy。");
+
+        Preconditions.checkArgument(orderedGroupLanes >= 0,
+                "设置项orderedGroupLanes必须大于等于0。");
+
+        Preconditions.checkArgument(orderedGroupLanes == 0 || consumerThreads == 1 || groupAffineConsumers,
+                "设置项orderedGroupLanes需要单个消费线程或开启groupAffineConsumers。");
+
+        Preconditions.checkArgument(groupCoalesceMaxSize >= 0,
+                "设置项groupCoalesceMaxSize必须大于等于0。");
+
+        Preconditions.checkArgument(groupCoalesceMaxDelayMs >= 0,
+                "设置项groupCoalesceMaxDelayMs必须大于等于0。");
+
+        Preconditions.checkArgument(elementDeadlineMs >= 0,
+                "设置项elementDeadlineMs必须大于等于0。");
+
+        Preconditions.checkArgument(priorityWeights != null && priorityWeights.length > 0,
+                "设置项priorityWeights不能为空。");
+        for (int priorityWeight : priorityWeights) {
+            Preconditions.checkArgument(priorityWeight > 0,
+                    "设置项priorityWeights中的权重必须大于0。");
+        }
+
+        Preconditions.checkArgument(retryMaxAttempts >= 0,
+                "设置项retryMaxAttempts必须大于等于0。");
+
+        Preconditions.checkArgument(retryBackoffMs >= 0 && retryMaxBackoffMs >= retryBackoffMs,
+                "设置项retryBackoffMs必须大于等于0且不大于retryMaxBackoffMs。");
+
     }
 
     private BufferGroupProcessor<E, G, R> newBufferGroupProcessor() {
@@ -70,8 +324,36 @@ public class BufferGroupProcessorBuilder<E, G, R> {
     }
 
     private BufferGroupProcessorCreator<E, G, R> newBufferProcessorCreator() {
-        return new BufferGroupProcessorCreator<E, G, R>(bufferQueueSize, consumeBatchSize,
-                consumeWaitTimeoutMs, bufferGroupStrategy, bufferGroupHandler, bufferProcessExecutorFactory);
+        BufferGroupProcessorConfig<E, G, R> config = new BufferGroupProcessorConfig<E, G, R>()
+                .setBufferQueueSize(bufferQueueSize)
+                .setConsumeBatchSize(consumeBatchSize)
+                .setConsumeWaitTimeoutMs(consumeWaitTimeoutMs)
+                .setBufferGroupStrategy(bufferGroupStrategy)
+                .setBufferGroupHandler(bufferGroupHandler)
+                .setBufferGroupResultHandler(bufferGroupResultHandler)
+                .setBufferQueueFactory(bufferQueueFactory)
+                .setConsumeIdleStrategy(consumeIdleStrategy)
+                .setOverflowPolicy(overflowPolicy)
+                .setConsumeBatchControllerFactory(consumeBatchControllerFactory)
+                .setFutureTaskPoolSize(futureTaskPoolSize)
+                .setCallbackExecutor(callbackExecutor)
+                .setMetricsFactory(metricsFactory)
+                .setVirtualConsumeThread(virtualConsumeThread)
+                .setConsumerThreads(consumerThreads)
+                .setGroupAffineConsumers(groupAffineConsumers)
+                .setOrderedGroupLanes(orderedGroupLanes)
+                .setGroupCoalesceMaxSize(groupCoalesceMaxSize)
+                .setGroupCoalesceMaxDelayMs(groupCoalesceMaxDelayMs)
+                .setDeduplicateElements(deduplicateElements)
+                .setResultCacheConfig(resultCacheConfig)
+                .setElementDeadlineMs(elementDeadlineMs)
+                .setBufferPriorityStrategy(bufferPriorityStrategy)
+                .setPriorityWeights(priorityWeights)
+                .setRetryMaxAttempts(retryMaxAttempts)
+                .setRetryBackoffMs(retryBackoffMs)
+                .setRetryMaxBackoffMs(retryMaxBackoffMs)
+                .setRetryBisectBatches(retryBisectBatches);
+        return new BufferGroupProcessorCreator<E, G, R>(config, bufferProcessExecutorFactory);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,353 @@
+package com.github.andy.buffer.group;
+
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsFactory;
+import com.github.andy.buffer.group.metrics.NoopBufferProcessorMetrics;
+import com.github.andy.buffer.group.queue.BufferQueueFactory;
+import com.github.andy.buffer.group.queue.BufferQueues;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 缓冲处理器的配置项，由Builder构建后交给BufferGroupProcessorCreator创建处理器，创建后不应再修改
+ */
+public class BufferGroupProcessorConfig<E, G, R> {
+
+    private int bufferQueueSize;
+    private int consumeBatchSize;
+    private int consumeWaitTimeoutMs;
+    private BufferGroupStrategy<E, G> bufferGroupStrategy;
+    private BufferGroupHandler<E, G, R> bufferGroupHandler;
+    private BufferGroupResultHandler<E, G, R> bufferGroupResultHandler;
+    private BufferQueueFactory bufferQueueFactory = BufferQueues.linkedBlocking();
+    private ConsumeIdleStrategy consumeIdleStrategy = ConsumeIdleStrategies.blocking();
+    private BufferOverflowPolicy overflowPolicy = BufferOverflowPolicy.BLOCK;
+    private ConsumeBatchControllerFactory consumeBatchControllerFactory = ConsumeBatchControllers.fixed();
+    private int futureTaskPoolSize;
+    private Executor callbackExecutor;
+    private BufferProcessorMetricsFactory metricsFactory = NoopBufferProcessorMetrics.factory();
+    private boolean virtualConsumeThread;
+    private int consumerThreads = 1;
+    private boolean groupAffineConsumers;
+    private int orderedGroupLanes;
+    private int groupCoalesceMaxSize;
+    private int groupCoalesceMaxDelayMs;
+    private boolean deduplicateElements;
+    private BufferResultCacheConfig<E, R> resultCacheConfig;
+    private long elementDeadlineMs;
+    private BufferPriorityStrategy<E> bufferPriorityStrategy;
+    private int[] priorityWeights = {8, 1};
+    private int retryMaxAttempts;
+    private long retryBackoffMs = 100;
+    private long retryMaxBackoffMs = 10000;
+    private boolean retryBisectBatches;
+
+    public int getBufferQueueSize() {
+        return bufferQueueSize;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setBufferQueueSize(int bufferQueueSize) {
+        this.bufferQueueSize = bufferQueueSize;
+        return this;
+    }
+
+    public int getConsumeBatchSize() {
+        return consumeBatchSize;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setConsumeBatchSize(int consumeBatchSize) {
+        this.consumeBatchSize = consumeBatchSize;
+        return this;
+    }
+
+    public int getConsumeWaitTimeoutMs() {
+        return consumeWaitTimeoutMs;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setConsumeWaitTimeoutMs(int consumeWaitTimeoutMs) {
+        this.consumeWaitTimeoutMs = consumeWaitTimeoutMs;
+        return this;
+    }
+
+    public BufferGroupStrategy<E, G> getBufferGroupStrategy() {
+        return bufferGroupStrategy;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setBufferGroupStrategy(BufferGroupStrategy<E, G> bufferGroupStrategy) {
+        this.bufferGroupStrategy = bufferGroupStrategy;
+        return this;
+    }
+
+    public BufferGroupHandler<E, G, R> getBufferGroupHandler() {
+        return bufferGroupHandler;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setBufferGroupHandler(BufferGroupHandler<E, G, R> bufferGroupHandler) {
+        this.bufferGroupHandler = bufferGroupHandler;
+        return this;
+    }
+
+    public BufferGroupResultHandler<E, G, R> getBufferGroupResultHandler() {
+        return bufferGroupResultHandler;
+    }
+
+    /**
+     * 设置逐个实体返回处理结果的分组处理，与bufferGroupHandler只能设置一个
+     */
+    public BufferGroupProcessorConfig<E, G, R> setBufferGroupResultHandler(BufferGroupResultHandler<E, G, R> bufferGroupResultHandler) {
+        this.bufferGroupResultHandler = bufferGroupResultHandler;
+        return this;
+    }
+
+    public BufferQueueFactory getBufferQueueFactory() {
+        return bufferQueueFactory;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setBufferQueueFactory(BufferQueueFactory bufferQueueFactory) {
+        this.bufferQueueFactory = bufferQueueFactory;
+        return this;
+    }
+
+    public ConsumeIdleStrategy getConsumeIdleStrategy() {
+        return consumeIdleStrategy;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setConsumeIdleStrategy(ConsumeIdleStrategy consumeIdleStrategy) {
+        this.consumeIdleStrategy = consumeIdleStrategy;
+        return this;
+    }
+
+    public BufferOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setOverflowPolicy(BufferOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public ConsumeBatchControllerFactory getConsumeBatchControllerFactory() {
+        return consumeBatchControllerFactory;
+    }
+
+    public BufferGroupProcessorConfig<E, G, R> setConsumeBatchControllerFactory(ConsumeBatchControllerFactory consumeBatchControllerFactory) {
+        this.consumeBatchControllerFactory = consumeBatchControllerFactory;
+        return this;
+    }
+
+    public int getFutureTaskPoolSize() {
+        return futureTaskPoolSize;
+    }
+
+    /**
+     * 设置execute提交时复用的FutureTask对象池大小，0表示不复用
+     */
+    public BufferGroupProcessorConfig<E, G, R> setFutureTaskPoolSize(int futureTaskPoolSize) {
+        this.futureTaskPoolSize = futureTaskPoolSize;
+        return this;
+    }
+
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * 设置BufferFuture完成回调的默认线程池，null表示在完成处理的线程中执行
+     */
+    public BufferGroupProcessorConfig<E, G, R> setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    public BufferProcessorMetricsFactory getMetricsFactory() {
+        return metricsFactory;
+    }
+
+    /**
+     * 设置监控统计的构建工厂，默认不统计
+     */
+    public BufferGroupProcessorConfig<E, G, R> setMetricsFactory(BufferProcessorMetricsFactory metricsFactory) {
+        this.metricsFactory = metricsFactory;
+        return this;
+    }
+
+    public boolean isVirtualConsumeThread() {
+        return virtualConsumeThread;
+    }
+
+    /**
+     * 设置消费线程是否使用虚拟线程，不支持虚拟线程的JVM上仍使用平台线程
+     */
+    public BufferGroupProcessorConfig<E, G, R> setVirtualConsumeThread(boolean virtualConsumeThread) {
+        this.virtualConsumeThread = virtualConsumeThread;
+        return this;
+    }
+
+    public int getConsumerThreads() {
+        return consumerThreads;
+    }
+
+    /**
+     * 设置消费线程数，默认1
+     */
+    public BufferGroupProcessorConfig<E, G, R> setConsumerThreads(int consumerThreads) {
+        this.consumerThreads = consumerThreads;
+        return this;
+    }
+
+    public boolean isGroupAffineConsumers() {
+        return groupAffineConsumers;
+    }
+
+    /**
+     * 设置多个消费线程时是否按分组路由，开启后每个消费线程一个缓冲队列，同一分组的实体由同一消费线程按提交顺序取出
+     */
+    public BufferGroupProcessorConfig<E, G, R> setGroupAffineConsumers(boolean groupAffineConsumers) {
+        this.groupAffineConsumers = groupAffineConsumers;
+        return this;
+    }
+
+    public int getOrderedGroupLanes() {
+        return orderedGroupLanes;
+    }
+
+    /**
+     * 设置按分组顺序处理的串行分道数，0表示不保证分组处理顺序
+     */
+    public BufferGroupProcessorConfig<E, G, R> setOrderedGroupLanes(int orderedGroupLanes) {
+        this.orderedGroupLanes = orderedGroupLanes;
+        return this;
+    }
+
+    public int getGroupCoalesceMaxSize() {
+        return groupCoalesceMaxSize;
+    }
+
+    /**
+     * 设置合并分组的最大待处理实体数，分组处理中时后续实体合并到下一次处理，0表示不合并
+     */
+    public BufferGroupProcessorConfig<E, G, R> setGroupCoalesceMaxSize(int groupCoalesceMaxSize) {
+        this.groupCoalesceMaxSize = groupCoalesceMaxSize;
+        return this;
+    }
+
+    public int getGroupCoalesceMaxDelayMs() {
+        return groupCoalesceMaxDelayMs;
+    }
+
+    /**
+     * 设置合并分组的待处理实体最长等待时间，0表示等待前一次处理完成
+     */
+    public BufferGroupProcessorConfig<E, G, R> setGroupCoalesceMaxDelayMs(int groupCoalesceMaxDelayMs) {
+        this.groupCoalesceMaxDelayMs = groupCoalesceMaxDelayMs;
+        return this;
+    }
+
+    public boolean isDeduplicateElements() {
+        return deduplicateElements;
+    }
+
+    /**
+     * 设置是否去重，开启后相等的实体在批次内及处理中只处理一次，重复实体以同一结果完成，实体需实现equals及hashCode
+     */
+    public BufferGroupProcessorConfig<E, G, R> setDeduplicateElements(boolean deduplicateElements) {
+        this.deduplicateElements = deduplicateElements;
+        return this;
+    }
+
+    public BufferResultCacheConfig<E, R> getResultCacheConfig() {
+        return resultCacheConfig;
+    }
+
+    /**
+     * 设置处理结果缓存，null表示不缓存
+     */
+    public BufferGroupProcessorConfig<E, G, R> setResultCacheConfig(BufferResultCacheConfig<E, R> resultCacheConfig) {
+        this.resultCacheConfig = resultCacheConfig;
+        return this;
+    }
+
+    public long getElementDeadlineMs() {
+        return elementDeadlineMs;
+    }
+
+    /**
+     * 设置实体默认的处理截止时间，提交后超过该时间仍未交给分组处理时丢弃，0表示无截止时间
+     */
+    public BufferGroupProcessorConfig<E, G, R> setElementDeadlineMs(long elementDeadlineMs) {
+        this.elementDeadlineMs = elementDeadlineMs;
+        return this;
+    }
+
+    public BufferPriorityStrategy<E> getBufferPriorityStrategy() {
+        return bufferPriorityStrategy;
+    }
+
+    /**
+     * 设置实体的优先级策略，null表示不分优先级
+     */
+    public BufferGroupProcessorConfig<E, G, R> setBufferPriorityStrategy(BufferPriorityStrategy<E> bufferPriorityStrategy) {
+        this.bufferPriorityStrategy = bufferPriorityStrategy;
+        return this;
+    }
+
+    public int[] getPriorityWeights() {
+        return priorityWeights;
+    }
+
+    /**
+     * 设置各优先级每批取出的权重，长度为优先级数，默认{8, 1}
+     */
+    public BufferGroupProcessorConfig<E, G, R> setPriorityWeights(int[] priorityWeights) {
+        this.priorityWeights = priorityWeights;
+        return this;
+    }
+
+    public int getRetryMaxAttempts() {
+        return retryMaxAttempts;
+    }
+
+    /**
+     * 设置实体最多处理的次数（含首次），大于1时开启重试
+     */
+    public BufferGroupProcessorConfig<E, G, R> setRetryMaxAttempts(int retryMaxAttempts) {
+        this.retryMaxAttempts = retryMaxAttempts;
+        return this;
+    }
+
+    public long getRetryBackoffMs() {
+        return retryBackoffMs;
+    }
+
+    /**
+     * 设置首次重试的退避时间，之后每次翻倍，默认100毫秒
+     */
+    public BufferGroupProcessorConfig<E, G, R> setRetryBackoffMs(long retryBackoffMs) {
+        this.retryBackoffMs = retryBackoffMs;
+        return this;
+    }
+
+    public long getRetryMaxBackoffMs() {
+        return retryMaxBackoffMs;
+    }
+
+    /**
+     * 设置重试的最大退避时间，默认10秒
+     */
+    public BufferGroupProcessorConfig<E, G, R> setRetryMaxBackoffMs(long retryMaxBackoffMs) {
+        this.retryMaxBackoffMs = retryMaxBackoffMs;
+        return this;
+    }
+
+    public boolean isRetryBisectBatches() {
+        return retryBisectBatches;
+    }
+
+    /**
+     * 设置整个分组重试达到最大处理次数后是否对半拆分后分别重试，以隔离导致失败的实体
+     */
+    public BufferGroupProcessorConfig<E, G, R> setRetryBisectBatches(boolean retryBisectBatches) {
+        this.retryBisectBatches = retryBisectBatches;
+        return this;
+    }
+
+}
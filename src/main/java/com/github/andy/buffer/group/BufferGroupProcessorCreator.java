@@ -12,11 +12,7 @@ public class BufferGroupProcessorCreator<E, G, R> {
     private static int DEFAULT_PROCESS_EXECUTOR_THREADS = 10;
     private static int DEFAULT_PROCESS_EXECUTOR_QUEUE_SIZE = 1000;
 
-    private final int bufferQueueSize;
-    private final int consumeBatchSize;
-    private final int consumeWaitTimeoutMs;
-    private final BufferGroupStrategy<E, G> bufferGroupStrategy;
-    private final BufferGroupHandler<E, G, R> bufferGroupHandler;
+    private final BufferGroupProcessorConfig<E, G, R> config;
     private final BufferProcessExecutorFactory bufferProcessExecutorFactory;
 
     public BufferGroupProcessorCreator(int bufferQueueSize,
@@ -25,17 +21,23 @@ public class BufferGroupProcessorCreator<E, G, R> {
                                        BufferGroupStrategy<E, G> bufferGroupStrategy,
                                        BufferGroupHandler<E, G, R> bufferGroupHandler,
                                        BufferProcessExecutorFactory bufferProcessExecutorFactory) {
-        this.bufferQueueSize = bufferQueueSize;
-        this.consumeBatchSize = consumeBatchSize;
-        this.consumeWaitTimeoutMs = consumeWaitTimeoutMs;
-        this.bufferGroupStrategy = bufferGroupStrategy;
-        this.bufferGroupHandler = bufferGroupHandler;
+        this(new BufferGroupProcessorConfig<E, G, R>()
+                        .setBufferQueueSize(bufferQueueSize)
+                        .setConsumeBatchSize(consumeBatchSize)
+                        .setConsumeWaitTimeoutMs(consumeWaitTimeoutMs)
+                        .setBufferGroupStrategy(bufferGroupStrategy)
+                        .setBufferGroupHandler(bufferGroupHandler),
+                bufferProcessExecutorFactory);
+    }
+
+    public BufferGroupProcessorCreator(BufferGroupProcessorConfig<E, G, R> config,
+                                       BufferProcessExecutorFactory bufferProcessExecutorFactory) {
+        this.config = config;
         this.bufferProcessExecutorFactory = bufferProcessExecutorFactory;
     }
 
     public BufferGroupProcessor<E, G, R> get() {
-        return new BufferGroupProcessor<E, G, R>(bufferQueueSize, consumeBatchSize,
-                consumeWaitTimeoutMs, bufferGroupStrategy, bufferGroupHandler, newBufferProcessExecutor());
+        return new BufferGroupProcessor<E, G, R>(config, newBufferProcessExecutor());
     }
 
     private ExecutorService newBufferProcessExecutor() {
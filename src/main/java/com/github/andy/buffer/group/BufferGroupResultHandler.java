@@ -0,0 +1,13 @@
+package com.github.andy.buffer.group;
+
+import java.util.List;
+
+/**
+ * 缓冲处理器中实体分组后真正逻辑处理，逐个实体返回处理成功、失败或需重试
+ * <p>
+ * 与BufferGroupHandler只能设置一个；handle抛出异常时整个分组失败。
+ */
+public interface BufferGroupResultHandler<E, G, R> {
+
+    BufferGroupHandleResult<E, R> handle(final G group, final List<E> elements) throws Exception;
+}
@@ -0,0 +1,14 @@
+package com.github.andy.buffer.group;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * long分组KEY的分组处理
+ * <p>
+ * 缓冲处理器使用该处理时以long分组调用handle(long, List)；handle(Long, List)应委托给handle(long, List)。
+ */
+public interface BufferLongGroupHandler<E, R> extends BufferGroupHandler<E, Long, R> {
+
+    Map<E, R> handle(final long group, final List<E> elements) throws Exception;
+}
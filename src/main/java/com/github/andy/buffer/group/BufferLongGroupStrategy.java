@@ -0,0 +1,12 @@
+package com.github.andy.buffer.group;
+
+/**
+ * long分组KEY的实体分组策略
+ * <p>
+ * 缓冲处理器使用该策略时消费线程按doLongGroup分组，分组不装箱、不创建HashMap；
+ * 提交时分组（groupAffineConsumers）等其他场景仍调用doGroup，doGroup应返回相同的分组。
+ */
+public interface BufferLongGroupStrategy<E> extends BufferGroupStrategy<E, Long> {
+
+    long doLongGroup(final E element) throws Exception;
+}
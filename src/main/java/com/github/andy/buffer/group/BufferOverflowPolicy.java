@@ -0,0 +1,28 @@
+package com.github.andy.buffer.group;
+
+/**
+ * 缓冲队列已满时提交实体的处理策略
+ */
+public enum BufferOverflowPolicy {
+
+    /**
+     * 阻塞等待队列空间（默认）；trySubmit及超时提交时等同于FAIL_FAST
+     */
+    BLOCK,
+
+    /**
+     * 立即以BufferOverflowException失败响应提交的实体
+     */
+    FAIL_FAST,
+
+    /**
+     * 丢弃队列中最早的实体并以BufferOverflowException失败响应，再写入提交的实体；
+     * 需要缓冲队列实现DroppableBufferQueue，MPSC环形缓冲队列不支持
+     */
+    DROP_OLDEST,
+
+    /**
+     * 在提交线程中将提交的实体作为单个实体的分组直接调用BufferGroupHandler处理
+     */
+    CALLER_RUNS
+}
@@ -0,0 +1,9 @@
+package com.github.andy.buffer.group;
+
+/**
+ * 缓冲处理器中实体的优先级策略，0为最高优先级
+ */
+public interface BufferPriorityStrategy<E> {
+
+    int getPriority(final E element) throws Exception;
+}
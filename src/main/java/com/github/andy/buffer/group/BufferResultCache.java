@@ -0,0 +1,248 @@
+package com.github.andy.buffer.group;
+
+import com.github.andy.buffer.group.exception.BufferRejectedException;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 缓冲处理器的处理结果缓存
+ * <p>
+ * 成功结果按expireAfterWriteMs过期，失败结果按negativeTtlMs过期；同key同时只有一个实体在加载，
+ * 其他未命中的实体等待其结果。
+ */
+class BufferResultCache<E, R> {
+
+    private final Function<? super E, ?> keyExtractor;
+
+    private final Cache<Object, CacheEntry<R>> cache;
+
+    /**
+     * 正在加载的key及加载的FutureTask
+     */
+    private final ConcurrentMap<Object, BufferFutureTask<E, R>> loadingFutureTasks = new ConcurrentHashMap<>();
+
+    private final long refreshAfterWriteNanos;
+
+    private final long negativeTtlNanos;
+
+    private final Loader<E, R> loader;
+
+    BufferResultCache(BufferResultCacheConfig<E, R> config, Loader<E, R> loader) {
+        Preconditions.checkArgument(config.getExpireAfterWriteMs() > 0, "resultCache的expireAfterWriteMs必须大于0。");
+        Preconditions.checkArgument(config.getRefreshAfterWriteMs() >= 0, "resultCache的refreshAfterWriteMs必须大于等于0。");
+        Preconditions.checkArgument(config.getNegativeTtlMs() >= 0, "resultCache的negativeTtlMs必须大于等于0。");
+
+        this.keyExtractor = config.getKeyExtractor();
+        this.refreshAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(config.getRefreshAfterWriteMs());
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getNegativeTtlMs());
+        this.loader = loader;
+
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+                .expireAfterWrite(config.getExpireAfterWriteMs(), TimeUnit.MILLISECONDS)
+                .recordStats();
+        if (config.getWeigher() != null) {
+            Preconditions.checkArgument(config.getMaximumWeight() > 0, "resultCache的maximumWeight必须大于0。");
+            cacheBuilder.maximumWeight(config.getMaximumWeight()).weigher(new EntryWeigher<R>(config.getWeigher()));
+        } else {
+            Preconditions.checkArgument(config.getMaximumSize() > 0, "resultCache的maximumSize必须大于0。");
+            cacheBuilder.maximumSize(config.getMaximumSize());
+        }
+        this.cache = cacheBuilder.build();
+    }
+
+    /**
+     * 命中缓存时以缓存结果完成FutureTask，同key正在加载时等待其结果，否则登记为该key的加载
+     *
+     * @return 已完成或等待加载结果时返回true，需要提交处理时返回false
+     */
+    boolean tryResolve(BufferFutureTask<E, R> bufferFutureTask) {
+        E element = bufferFutureTask.getElement();
+        Object key = getKey(element);
+        CacheEntry<R> cacheEntry = cache.getIfPresent(key);
+        if (cacheEntry != null) {
+            long nowNanos = System.nanoTime();
+            if (cacheEntry.failure == null) {
+                if (refreshAfterWriteNanos > 0 && nowNanos - cacheEntry.writeNanos >= refreshAfterWriteNanos) {
+                    refresh(element, key, cacheEntry);
+                }
+                bufferFutureTask.completeSuccess(cacheEntry.value);
+                return true;
+            }
+
+            if (nowNanos - cacheEntry.writeNanos < negativeTtlNanos) {
+                bufferFutureTask.completeFail(cacheEntry.failure);
+                return true;
+            }
+            cache.asMap().remove(key, cacheEntry);
+        }
+
+        BufferFutureTask<E, R> loadingFutureTask = loadingFutureTasks.putIfAbsent(key, bufferFutureTask);
+        if (loadingFutureTask == null) {
+            bufferFutureTask.addListener(new LoadListener(key, bufferFutureTask, null), null);
+            return false;
+        }
+
+        // 加载完成后移除登记前跟随时，回调立即以其结果完成
+        loadingFutureTask.addListener(new FollowListener(key, loadingFutureTask, bufferFutureTask), null);
+        return true;
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    private Object getKey(E element) {
+        return keyExtractor != null ? keyExtractor.apply(element) : element;
+    }
+
+    /**
+     * 提交实体异步刷新，同一缓存结果只刷新一次，刷新失败时保留原结果
+     */
+    private void refresh(E element, Object key, CacheEntry<R> cacheEntry) {
+        if (!cacheEntry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        BufferFutureTask<E, R> refreshFutureTask = new BufferFutureTask<E, R>(element);
+        if (loadingFutureTasks.putIfAbsent(key, refreshFutureTask) != null) {
+            // 已有加载中的实体，加载完成即刷新
+            return;
+        }
+
+        refreshFutureTask.addListener(new LoadListener(key, refreshFutureTask, cacheEntry), null);
+        loader.load(refreshFutureTask);
+    }
+
+    private static boolean isCacheableFailure(Exception ex) {
+        return !(ex instanceof BufferRejectedException) && !BufferFutureTask.isAbandonFailure(ex);
+    }
+
+    /**
+     * 提交刷新或重新加载的实体到缓冲处理器
+     */
+    interface Loader<E, R> {
+
+        /**
+         * 不阻塞地提交实体，无法提交时以失败完成
+         */
+        void load(BufferFutureTask<E, R> loadFutureTask);
+    }
+
+    private static final class CacheEntry<R> {
+
+        final R value;
+
+        final Exception failure;
+
+        final long writeNanos;
+
+        /**
+         * 是否已提交刷新
+         */
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CacheEntry(R value, Exception failure) {
+            this.value = value;
+            this.failure = failure;
+            this.writeNanos = System.nanoTime();
+        }
+    }
+
+    private static final class EntryWeigher<R> implements Weigher<Object, CacheEntry<R>> {
+
+        private final Weigher<Object, ? super R> weigher;
+
+        EntryWeigher(Weigher<Object, ? super R> weigher) {
+            this.weigher = weigher;
+        }
+
+        @Override
+        public int weigh(Object key, CacheEntry<R> cacheEntry) {
+            return cacheEntry.failure != null || cacheEntry.value == null ? 1 : weigher.weigh(key, cacheEntry.value);
+        }
+    }
+
+    /**
+     * 加载完成时先写入缓存再移除加载登记，避免同key重复加载
+     */
+    private class LoadListener implements BufferFutureListener<R> {
+
+        private final Object key;
+
+        private final BufferFutureTask<E, R> loadingFutureTask;
+
+        /**
+         * 刷新的原缓存结果，非刷新时为null
+         */
+        private final CacheEntry<R> refreshedEntry;
+
+        LoadListener(Object key, BufferFutureTask<E, R> loadingFutureTask, CacheEntry<R> refreshedEntry) {
+            this.key = key;
+            this.loadingFutureTask = loadingFutureTask;
+            this.refreshedEntry = refreshedEntry;
+        }
+
+        @Override
+        public void onSuccess(R result) {
+            cache.put(key, new CacheEntry<R>(result, null));
+            loadingFutureTasks.remove(key, loadingFutureTask);
+        }
+
+        @Override
+        public void onFailure(Exception ex) {
+            if (refreshedEntry != null) {
+                refreshedEntry.refreshing.set(false);
+            } else if (negativeTtlNanos > 0 && isCacheableFailure(ex)) {
+                cache.put(key, new CacheEntry<R>(null, ex));
+            }
+            loadingFutureTasks.remove(key, loadingFutureTask);
+        }
+    }
+
+    private class FollowListener implements BufferFutureListener<R> {
+
+        private final Object key;
+
+        private final BufferFutureTask<E, R> loadingFutureTask;
+
+        private final BufferFutureTask<E, R> bufferFutureTask;
+
+        FollowListener(Object key, BufferFutureTask<E, R> loadingFutureTask, BufferFutureTask<E, R> bufferFutureTask) {
+            this.key = key;
+            this.loadingFutureTask = loadingFutureTask;
+            this.bufferFutureTask = bufferFutureTask;
+        }
+
+        @Override
+        public void onSuccess(R result) {
+            bufferFutureTask.completeSuccess(result);
+        }
+
+        @Override
+        public void onFailure(Exception ex) {
+            if (BufferFutureTask.isAbandonFailure(ex)) {
+                // 加载的实体已取消或超过截止时间，移除其加载登记后重新查询缓存或加载
+                loadingFutureTasks.remove(key, loadingFutureTask);
+                if (!tryResolve(bufferFutureTask)) {
+                    loader.load(bufferFutureTask);
+                }
+                return;
+            }
+            bufferFutureTask.completeFail(ex);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.github.andy.buffer.group;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Weigher;
+
+/**
+ * 处理结果缓存配置
+ * <p>
+ * 命中缓存的实体在提交时即以缓存结果完成，不进入缓冲队列；未命中的实体与同key正在加载的实体共享一次处理结果。
+ */
+public class BufferResultCacheConfig<E, R> {
+
+    private Function<? super E, ?> keyExtractor;
+    private long maximumSize = 10000;
+    private long maximumWeight;
+    private Weigher<Object, ? super R> weigher;
+    private long expireAfterWriteMs = 60000;
+    private long refreshAfterWriteMs;
+    private long negativeTtlMs;
+
+    public Function<? super E, ?> getKeyExtractor() {
+        return keyExtractor;
+    }
+
+    /**
+     * 设置缓存key的提取函数，默认以实体为key，key需实现equals及hashCode
+     */
+    public BufferResultCacheConfig<E, R> setKeyExtractor(Function<? super E, ?> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+        return this;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 设置最大缓存条数，默认10000，设置weigher时不生效
+     */
+    public BufferResultCacheConfig<E, R> setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public Weigher<Object, ? super R> getWeigher() {
+        return weigher;
+    }
+
+    /**
+     * 设置最大缓存权重及结果权重的计算函数，失败结果的权重为1
+     */
+    public BufferResultCacheConfig<E, R> setMaximumWeight(long maximumWeight, Weigher<Object, ? super R> weigher) {
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        return this;
+    }
+
+    public long getExpireAfterWriteMs() {
+        return expireAfterWriteMs;
+    }
+
+    /**
+     * 设置结果写入后的过期时间，默认60秒
+     */
+    public BufferResultCacheConfig<E, R> setExpireAfterWriteMs(long expireAfterWriteMs) {
+        this.expireAfterWriteMs = expireAfterWriteMs;
+        return this;
+    }
+
+    public long getRefreshAfterWriteMs() {
+        return refreshAfterWriteMs;
+    }
+
+    /**
+     * 设置提前刷新时间，结果写入超过该时间后命中时仍返回缓存结果，同时提交实体异步刷新，0表示不刷新
+     */
+    public BufferResultCacheConfig<E, R> setRefreshAfterWriteMs(long refreshAfterWriteMs) {
+        this.refreshAfterWriteMs = refreshAfterWriteMs;
+        return this;
+    }
+
+    public long getNegativeTtlMs() {
+        return negativeTtlMs;
+    }
+
+    /**
+     * 设置处理失败结果的缓存时间，0表示不缓存失败结果；缓冲处理器拒绝及缓冲队列溢出的失败不缓存
+     */
+    public BufferResultCacheConfig<E, R> setNegativeTtlMs(long negativeTtlMs) {
+        this.negativeTtlMs = negativeTtlMs;
+        return this;
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.github.andy.buffer.group;
+
+/**
+ * 缓冲处理器消费批量大小及等待时长的控制器，每个缓冲处理器一个实例
+ */
+public interface ConsumeBatchController {
+
+    /**
+     * 本次从缓冲队列取出的最大实体数
+     */
+    int getBatchSize();
+
+    /**
+     * 本次取出实体不足批量大小时等待后续实体的最长时间
+     */
+    long getWaitTimeoutNanos();
+
+    /**
+     * 消费线程每次从缓冲队列取出实体后回调
+     *
+     * @param takenSize 本次取出的实体数
+     * @param queueSize 取出后缓冲队列中剩余的实体数
+     */
+    void onBatchTaken(int takenSize, int queueSize);
+
+    /**
+     * 每次分组处理完成后回调，可能被多个处理线程并发调用
+     *
+     * @param elementsSize 本次处理的实体数
+     * @param handleNanos  BufferGroupHandler.handle的耗时
+     */
+    void onGroupHandled(int elementsSize, long handleNanos);
+}
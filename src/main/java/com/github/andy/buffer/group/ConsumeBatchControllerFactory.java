@@ -0,0 +1,13 @@
+package com.github.andy.buffer.group;
+
+/**
+ * 缓冲处理器消费批量控制器的构建工厂
+ */
+public interface ConsumeBatchControllerFactory {
+
+    /**
+     * @param consumeBatchSize     配置的消费批量大小
+     * @param consumeWaitTimeoutMs 配置的消费等待时长
+     */
+    ConsumeBatchController create(int consumeBatchSize, int consumeWaitTimeoutMs);
+}
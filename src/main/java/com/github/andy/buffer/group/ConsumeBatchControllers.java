@@ -0,0 +1,86 @@
+package com.github.andy.buffer.group;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内置的消费批量控制器
+ */
+public final class ConsumeBatchControllers {
+
+    private static final ConsumeBatchControllerFactory FIXED = new ConsumeBatchControllerFactory() {
+        @Override
+        public ConsumeBatchController create(int consumeBatchSize, int consumeWaitTimeoutMs) {
+            return new FixedConsumeBatchController(consumeBatchSize, TimeUnit.MILLISECONDS.toNanos(consumeWaitTimeoutMs));
+        }
+    };
+
+    private ConsumeBatchControllers() {
+    }
+
+    /**
+     * 固定使用配置的consumeBatchSize和consumeWaitTimeoutMs（默认）
+     */
+    public static ConsumeBatchControllerFactory fixed() {
+        return FIXED;
+    }
+
+    /**
+     * 根据缓冲队列积压、实体到达速率和BufferGroupHandler处理耗时，在给定范围内自适应调整批量大小和等待时长，
+     * 以配置的consumeBatchSize和consumeWaitTimeoutMs为初始值
+     *
+     * @param minBatchSize  最小批量大小
+     * @param maxBatchSize  最大批量大小
+     * @param maxWaitTime   最长等待时长
+     * @param targetLatency 目标延迟，即等待时长与处理耗时之和的目标值
+     * @param unit          时间单位
+     */
+    public static ConsumeBatchControllerFactory adaptive(final int minBatchSize, final int maxBatchSize,
+                                                         final long maxWaitTime, final long targetLatency,
+                                                         final TimeUnit unit) {
+        Preconditions.checkArgument(minBatchSize > 0 && minBatchSize <= maxBatchSize,
+                "minBatchSize必须大于0且不大于maxBatchSize。");
+        Preconditions.checkArgument(maxWaitTime >= 0, "maxWaitTime必须大于等于0。");
+        Preconditions.checkArgument(targetLatency > 0, "targetLatency必须大于0。");
+        return new ConsumeBatchControllerFactory() {
+            @Override
+            public ConsumeBatchController create(int consumeBatchSize, int consumeWaitTimeoutMs) {
+                return new AdaptiveConsumeBatchController(minBatchSize, maxBatchSize,
+                        unit.toNanos(maxWaitTime), unit.toNanos(targetLatency),
+                        consumeBatchSize, TimeUnit.MILLISECONDS.toNanos(consumeWaitTimeoutMs));
+            }
+        };
+    }
+
+    private static class FixedConsumeBatchController implements ConsumeBatchController {
+
+        private final int batchSize;
+
+        private final long waitTimeoutNanos;
+
+        FixedConsumeBatchController(int batchSize, long waitTimeoutNanos) {
+            this.batchSize = batchSize;
+            this.waitTimeoutNanos = waitTimeoutNanos;
+        }
+
+        @Override
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        @Override
+        public long getWaitTimeoutNanos() {
+            return waitTimeoutNanos;
+        }
+
+        @Override
+        public void onBatchTaken(int takenSize, int queueSize) {
+        }
+
+        @Override
+        public void onGroupHandled(int elementsSize, long handleNanos) {
+        }
+    }
+
+}
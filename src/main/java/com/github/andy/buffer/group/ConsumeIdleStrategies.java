@@ -0,0 +1,93 @@
+package com.github.andy.buffer.group;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 内置的消费线程空闲等待策略
+ */
+public final class ConsumeIdleStrategies {
+
+    private static final ConsumeIdleStrategy BUSY_SPIN = new ConsumeIdleStrategy() {
+        @Override
+        public void idle(int idleTimes) {
+            // 不等待，持续轮询缓冲队列
+        }
+    };
+
+    private static final ConsumeIdleStrategy BLOCKING = new ConsumeIdleStrategy() {
+        @Override
+        public void idle(int idleTimes) {
+            // park直到有新实体提交时被唤醒
+            LockSupport.park(this);
+        }
+    };
+
+    private ConsumeIdleStrategies() {
+    }
+
+    /**
+     * 持续轮询，空闲时也会占满一个CPU核，仅适用于对延迟极度敏感且独占CPU的场景
+     */
+    public static ConsumeIdleStrategy busySpin() {
+        return BUSY_SPIN;
+    }
+
+    /**
+     * 空闲时阻塞等待，直到有新实体提交时被唤醒（默认策略）
+     */
+    public static ConsumeIdleStrategy blocking() {
+        return BLOCKING;
+    }
+
+    /**
+     * 空闲时依次执行自旋、yield，然后以指数递增的时长park，直到maxParkTime
+     *
+     * @param maxSpins    自旋次数
+     * @param maxYields   yield次数
+     * @param maxParkTime 单次park的最大时长
+     * @param unit        时间单位
+     */
+    public static ConsumeIdleStrategy backoff(int maxSpins, int maxYields, long maxParkTime, TimeUnit unit) {
+        return new BackoffIdleStrategy(maxSpins, maxYields, unit.toNanos(maxParkTime));
+    }
+
+    private static class BackoffIdleStrategy implements ConsumeIdleStrategy {
+
+        private static final long MIN_PARK_NANOS = 1000L;
+
+        private final int maxSpins;
+
+        private final int maxYields;
+
+        private final long maxParkNanos;
+
+        BackoffIdleStrategy(int maxSpins, int maxYields, long maxParkNanos) {
+            Preconditions.checkArgument(maxSpins >= 0, "maxSpins必须大于等于0。");
+            Preconditions.checkArgument(maxYields >= 0, "maxYields必须大于等于0。");
+            Preconditions.checkArgument(maxParkNanos >= MIN_PARK_NANOS, "maxParkTime必须大于等于1微秒。");
+            this.maxSpins = maxSpins;
+            this.maxYields = maxYields;
+            this.maxParkNanos = maxParkNanos;
+        }
+
+        @Override
+        public void idle(int idleTimes) {
+            if (idleTimes <= maxSpins) {
+                return;
+            }
+
+            if (idleTimes <= maxSpins + maxYields) {
+                Thread.yield();
+                return;
+            }
+
+            int parkTimes = Math.min(idleTimes - maxSpins - maxYields - 1, 30);
+            long parkNanos = MIN_PARK_NANOS << parkTimes;
+            LockSupport.parkNanos(this, parkNanos > 0 && parkNanos < maxParkNanos ? parkNanos : maxParkNanos);
+        }
+    }
+
+}
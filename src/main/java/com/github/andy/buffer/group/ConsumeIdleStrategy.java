@@ -0,0 +1,16 @@
+package com.github.andy.buffer.group;
+
+/**
+ * 缓冲处理器消费线程在缓冲队列为空时的空闲等待策略
+ * <p>
+ * 消费线程park等待期间，新提交的实体会通过unpark立即唤醒消费线程，不会增加空闲后首个实体的处理延迟。
+ */
+public interface ConsumeIdleStrategy {
+
+    /**
+     * 缓冲队列为空时执行一次空闲等待
+     *
+     * @param idleTimes 本轮连续空闲的次数，从1开始
+     */
+    void idle(int idleTimes);
+}
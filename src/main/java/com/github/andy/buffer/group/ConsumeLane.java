@@ -0,0 +1,105 @@
+package com.github.andy.buffer.group;
+
+import com.github.andy.buffer.group.queue.BufferQueue;
+import com.github.andy.buffer.group.queue.PriorityBufferQueue;
+import com.google.common.base.Function;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 消费分道：一个缓冲队列及消费它的消费线程
+ */
+class ConsumeLane<E, R> {
+
+    final BufferQueue<BufferFutureTask<E, R>> bufferQueue;
+
+    final ConsumeBatchController consumeBatchController;
+
+    /**
+     * 多个消费线程取出批次时互斥
+     */
+    final ReentrantLock lock = new ReentrantLock();
+
+    final ConsumeWorker<E, R>[] consumeWorkers;
+
+    /**
+     * 未退出消费循环的消费线程数
+     */
+    final AtomicInteger activeWorkers;
+
+    /**
+     * 分道的消费线程是否已全部退出消费循环，此后写入分道的实体由提交线程自行以失败响应
+     */
+    volatile boolean consumeExited;
+
+    @SuppressWarnings("unchecked")
+    ConsumeLane(BufferGroupProcessor<E, ?, R> processor, BufferGroupProcessorConfig<E, ?, R> config, int workers) {
+        this.bufferQueue = newBufferQueue(config);
+        this.consumeBatchController = config.getConsumeBatchControllerFactory()
+                .create(config.getConsumeBatchSize(), config.getConsumeWaitTimeoutMs());
+        this.consumeWorkers = new ConsumeWorker[workers];
+        for (int i = 0; i < workers; i++) {
+            consumeWorkers[i] = new ConsumeWorker<E, R>(processor, this);
+        }
+        this.activeWorkers = new AtomicInteger(workers);
+    }
+
+    /**
+     * 设置优先级策略时按优先级分道缓冲，无法取得优先级的实体按最低优先级
+     */
+    private static <E, R> BufferQueue<BufferFutureTask<E, R>> newBufferQueue(BufferGroupProcessorConfig<E, ?, R> config) {
+        final BufferPriorityStrategy<E> bufferPriorityStrategy = config.getBufferPriorityStrategy();
+        if (bufferPriorityStrategy == null) {
+            return config.getBufferQueueFactory().create(config.getBufferQueueSize());
+        }
+
+        final int lowestPriority = config.getPriorityWeights().length - 1;
+        return new PriorityBufferQueue<BufferFutureTask<E, R>>(config.getBufferQueueSize(), config.getPriorityWeights(),
+                new Function<BufferFutureTask<E, R>, Integer>() {
+                    @Override
+                    public Integer apply(BufferFutureTask<E, R> bufferFutureTask) {
+                        try {
+                            return bufferPriorityStrategy.getPriority(bufferFutureTask.getElement());
+                        } catch (Exception e) {
+                            return lowestPriority;
+                        }
+                    }
+                });
+    }
+
+    boolean hasQueueFutureTasks() {
+        return !bufferQueue.isEmpty();
+    }
+
+    List<BufferFutureTask<E, R>> takeAllQueueFutureTasks() {
+        List<BufferFutureTask<E, R>> futureTasks = new ArrayList<>();
+        bufferQueue.drainTo(futureTasks, Integer.MAX_VALUE);
+        return futureTasks;
+    }
+
+    /**
+     * 唤醒一个空闲等待的消费线程
+     */
+    void signalConsume() {
+        for (ConsumeWorker<E, R> consumeWorker : consumeWorkers) {
+            if (consumeWorker.consumeIdle) {
+                LockSupport.unpark(consumeWorker.consumeThread);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 唤醒全部消费线程，关闭或停止时使其尽快退出空闲等待
+     */
+    void unparkConsumers() {
+        for (ConsumeWorker<E, R> consumeWorker : consumeWorkers) {
+            LockSupport.unpark(consumeWorker.consumeThread);
+        }
+    }
+
+}
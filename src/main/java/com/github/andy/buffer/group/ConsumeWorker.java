@@ -0,0 +1,124 @@
+package com.github.andy.buffer.group;
+
+import com.github.andy.buffer.group.metrics.BufferProcessStage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 消费线程：循环从分道的缓冲队列取出批次交给处理器分组分发，队列为空时按空闲策略等待
+ */
+class ConsumeWorker<E, R> implements Runnable {
+
+    private final BufferGroupProcessor<E, ?, R> processor;
+
+    private final ConsumeLane<E, R> consumeLane;
+
+    /**
+     * 消费线程，用于空闲等待时被提交线程唤醒
+     */
+    volatile Thread consumeThread;
+
+    /**
+     * 消费线程是否处于空闲等待中
+     */
+    volatile boolean consumeIdle;
+
+    ConsumeWorker(BufferGroupProcessor<E, ?, R> processor, ConsumeLane<E, R> consumeLane) {
+        this.processor = processor;
+        this.consumeLane = consumeLane;
+    }
+
+    @Override
+    public void run() {
+        consumeThread = Thread.currentThread();
+
+        int idleTimes = 0;
+        boolean isLoop = true;
+        while (isLoop) {
+            if (processor.isStopped()) {
+                isLoop = false;
+            } else if (consumeLane.hasQueueFutureTasks()) {
+                idleTimes = 0;
+                doBatchConsume();
+            } else if (processor.isShutdown()) {
+                isLoop = false;
+            } else {
+                idleTimes = idleTimes < Integer.MAX_VALUE ? idleTimes + 1 : idleTimes;
+                idleConsume(idleTimes);
+            }
+        }
+
+        processor.terminateConsume(consumeLane);
+    }
+
+    private void idleConsume(int idleTimes) {
+        consumeIdle = true;
+        try {
+            // 标记空闲后再次检查队列，避免与提交线程的唤醒交错导致丢失唤醒
+            if (!consumeLane.hasQueueFutureTasks()) {
+                processor.consumeIdleStrategy.idle(idleTimes);
+            }
+        } finally {
+            consumeIdle = false;
+        }
+    }
+
+    private void doBatchConsume() {
+        processor.runningConsumers.incrementAndGet();
+        try {
+            while (consumeLane.hasQueueFutureTasks() && !processor.isStopped()) {
+                List<BufferFutureTask<E, R>> bufferFutureTasks = takeQueueFutureTasks();
+
+                // 取出一批后仍有缓冲的实体时，唤醒分道中其他空闲的消费线程并行分组分发
+                if (consumeLane.consumeWorkers.length > 1 && consumeLane.hasQueueFutureTasks()) {
+                    consumeLane.signalConsume();
+                }
+
+                processor.doConsumeFutureTasks(consumeLane, bufferFutureTasks);
+            }
+        } finally {
+            processor.runningConsumers.decrementAndGet();
+        }
+    }
+
+    /**
+     * 加锁取出一批实体，同一分道的多个消费线程取出的批次互不重叠，分组及分发在锁外并行
+     */
+    private List<BufferFutureTask<E, R>> takeQueueFutureTasks() {
+        final ReentrantLock lock = consumeLane.lock;
+        lock.lock();
+        try {
+            return doTakeQueueFutureTasks();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<BufferFutureTask<E, R>> doTakeQueueFutureTasks() {
+        ConsumeBatchController consumeBatchController = consumeLane.consumeBatchController;
+        int batchSize = consumeBatchController.getBatchSize();
+        List<BufferFutureTask<E, R>> futureTasks = new ArrayList<>(batchSize);
+        boolean metricsTiming = processor.metricsTiming;
+        long drainStartNanos = metricsTiming ? System.nanoTime() : 0L;
+        try {
+            consumeLane.bufferQueue.drain(futureTasks, batchSize, consumeBatchController.getWaitTimeoutNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            // restore the interrupted status
+            Thread.currentThread().interrupt();
+        }
+        consumeBatchController.onBatchTaken(futureTasks.size(), consumeLane.bufferQueue.size());
+
+        if (metricsTiming) {
+            long takenNanos = System.nanoTime();
+            processor.metrics.recordStage(BufferProcessStage.LINGER, takenNanos - drainStartNanos);
+            for (BufferFutureTask<E, R> futureTask : futureTasks) {
+                processor.metrics.recordStage(BufferProcessStage.QUEUE_WAIT, takenNanos - futureTask.submitNanos);
+            }
+        }
+        return futureTasks;
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.github.andy.buffer.group;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 实体去重：相等的实体（按equals）在批次内及处理中只处理一次，重复实体的Future以同一结果完成
+ */
+class ElementDeduplicator<E, R> {
+
+    private final BufferGroupProcessor<E, ?, R> processor;
+
+    /**
+     * 处理中的去重实体
+     */
+    private final ConcurrentMap<E, DedupElement> dedupElements = new ConcurrentHashMap<>();
+
+    ElementDeduplicator(BufferGroupProcessor<E, ?, R> processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * 去重：与处理中或批次内之前的实体相等时，等待其结果完成，不再处理
+     *
+     * @return 需要处理的实体
+     */
+    List<BufferFutureTask<E, R>> deduplicate(List<BufferFutureTask<E, R>> toConsumeFutureTasks) {
+        List<BufferFutureTask<E, R>> leaderFutureTasks = new ArrayList<>(toConsumeFutureTasks.size());
+        for (BufferFutureTask<E, R> futureTask : toConsumeFutureTasks) {
+            E element = futureTask.getElement();
+            for (; ; ) {
+                DedupElement dedupElement = dedupElements.get(element);
+                if (dedupElement == null) {
+                    DedupElement newDedupElement = new DedupElement(element);
+                    if (dedupElements.putIfAbsent(element, newDedupElement) == null) {
+                        // 在完成处理的线程中同步完成重复实体，先于FutureTask归还对象池
+                        futureTask.addListener(newDedupElement, null);
+                        leaderFutureTasks.add(futureTask);
+                        break;
+                    }
+                } else if (dedupElement.follow(futureTask)) {
+                    break;
+                }
+                // 相等实体已完成时重新获取
+            }
+        }
+        return leaderFutureTasks;
+    }
+
+    /**
+     * 处理中的去重实体：首个实体提交处理，相等的实体等待其结果
+     */
+    private class DedupElement implements BufferFutureListener<R> {
+
+        private final E element;
+
+        private List<BufferFutureTask<E, R>> followerFutureTasks;
+
+        private boolean completed;
+
+        DedupElement(E element) {
+            this.element = element;
+        }
+
+        /**
+         * @return 已完成时返回false
+         */
+        synchronized boolean follow(BufferFutureTask<E, R> futureTask) {
+            if (completed) {
+                return false;
+            }
+
+            if (followerFutureTasks == null) {
+                followerFutureTasks = new ArrayList<>();
+            }
+            followerFutureTasks.add(futureTask);
+            return true;
+        }
+
+        @Override
+        public void onSuccess(R result) {
+            List<BufferFutureTask<E, R>> futureTasks = complete();
+            if (futureTasks != null) {
+                for (BufferFutureTask<E, R> futureTask : futureTasks) {
+                    futureTask.completeSuccess(result);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(Exception ex) {
+            List<BufferFutureTask<E, R>> futureTasks = complete();
+            if (futureTasks == null) {
+                return;
+            }
+
+            if (BufferFutureTask.isAbandonFailure(ex)) {
+                // 首个实体已取消或超过截止时间，重复实体重新写入缓冲队列处理
+                for (BufferFutureTask<E, R> futureTask : futureTasks) {
+                    processor.offerFutureTask(futureTask);
+                }
+                return;
+            }
+
+            BufferGroupProcessor.completeFails(futureTasks, ex);
+        }
+
+        /**
+         * 先移除再标记完成，移除后相等的实体重新提交处理
+         */
+        private List<BufferFutureTask<E, R>> complete() {
+            dedupElements.remove(element, this);
+            synchronized (this) {
+                completed = true;
+                List<BufferFutureTask<E, R>> futureTasks = followerFutureTasks;
+                followerFutureTasks = null;
+                return futureTasks;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.github.andy.buffer.group;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并分组：分组处理中时，该分组后续批次的实体暂存在分组的待处理列表中，前一次处理完成后合并为一次处理；
+ * 待处理实体达到最大数量或最早实体等待超过最长等待时间时不再等待前一次处理完成，立即提交处理。
+ */
+class GroupCoalescer<E, G, R> {
+
+    /**
+     * 合并分组时null分组的key
+     */
+    private static final Object NULL_GROUP_KEY = new Object();
+
+    private final BufferGroupProcessor<E, G, R> processor;
+
+    /**
+     * 合并分组的最大待处理实体数
+     */
+    private final int maxSize;
+
+    /**
+     * 合并分组的最早待处理实体最长等待时间，0表示等待前一次处理完成
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * 处理中或有待处理实体的合并分组
+     */
+    private final ConcurrentMap<Object, CoalescingGroup> coalescingGroups = new ConcurrentHashMap<>();
+
+    /**
+     * 提交合并分组待处理实体的线程池：前一次处理完成后的提交及按最长等待时间的提交均在此执行，不占用处理线程
+     */
+    private final ScheduledThreadPoolExecutor flushExecutor = BufferGroupProcessor.newDelayExecutor("buffer-coalesce-flush");
+
+    GroupCoalescer(BufferGroupProcessor<E, G, R> processor, int maxSize, long maxDelayNanos) {
+        this.processor = processor;
+        this.maxSize = maxSize;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    /**
+     * 分组的实体加入合并分组，分组未在处理中时立即提交处理
+     */
+    void dispatch(G group, List<BufferFutureTask<E, R>> futureTasks, ConsumeBatchController consumeBatchController) {
+        Object groupKey = group != null ? group : NULL_GROUP_KEY;
+        for (; ; ) {
+            CoalescingGroup coalescingGroup = coalescingGroups.get(groupKey);
+            if (coalescingGroup == null) {
+                CoalescingGroup newCoalescingGroup = new CoalescingGroup(groupKey, group);
+                coalescingGroup = coalescingGroups.putIfAbsent(groupKey, newCoalescingGroup);
+                if (coalescingGroup == null) {
+                    coalescingGroup = newCoalescingGroup;
+                }
+            }
+
+            // 并发移除的合并分组重新获取
+            if (coalescingGroup.coalesce(futureTasks, consumeBatchController)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 停止时，合并分组中待处理的实体以失败响应
+     */
+    void completeRejected() {
+        for (Runnable runnable : flushExecutor.shutdownNow()) {
+            if (runnable instanceof GroupCoalescer.CoalescedDispatchTask) {
+                ((GroupCoalescer<?, ?, ?>.CoalescedDispatchTask) runnable).completeRejected();
+            }
+        }
+
+        for (CoalescingGroup coalescingGroup : coalescingGroups.values()) {
+            List<BufferFutureTask<E, R>> pendingFutureTasks = coalescingGroup.drainPending();
+            if (pendingFutureTasks != null) {
+                processor.metrics.recordReject(pendingFutureTasks.size());
+                BufferGroupProcessor.completeFails(pendingFutureTasks, processor.newRejectedException());
+            }
+        }
+    }
+
+    void shutdownNow() {
+        flushExecutor.shutdownNow();
+    }
+
+    /**
+     * 一个分组的合并状态：处理中的任务数及待处理的实体
+     */
+    class CoalescingGroup {
+
+        private final Object groupKey;
+
+        private final G group;
+
+        /**
+         * 已提交未完成的处理任务数
+         */
+        private int handling;
+
+        private List<BufferFutureTask<E, R>> pendingFutureTasks;
+
+        /**
+         * 最早待处理实体加入的时间
+         */
+        private long pendingStartNanos;
+
+        private ScheduledFuture<?> flushFuture;
+
+        private ConsumeBatchController consumeBatchController;
+
+        /**
+         * 已从coalescingGroups中移除，之后的实体需重新获取合并分组
+         */
+        private boolean removed;
+
+        CoalescingGroup(Object groupKey, G group) {
+            this.groupKey = groupKey;
+            this.group = group;
+        }
+
+        /**
+         * 分组未在处理中时立即提交处理，否则加入待处理列表
+         *
+         * @return 已被移除时返回false
+         */
+        boolean coalesce(List<BufferFutureTask<E, R>> futureTasks, ConsumeBatchController batchController) {
+            List<BufferFutureTask<E, R>> toHandleFutureTasks;
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+
+                consumeBatchController = batchController;
+                if (handling == 0) {
+                    beginHandle();
+                    toHandleFutureTasks = futureTasks;
+                } else {
+                    if (pendingFutureTasks == null) {
+                        pendingFutureTasks = new ArrayList<>(futureTasks);
+                        pendingStartNanos = System.nanoTime();
+                        scheduleFlush();
+                    } else {
+                        pendingFutureTasks.addAll(futureTasks);
+                    }
+
+                    toHandleFutureTasks = pendingFutureTasks.size() >= maxSize ? takePending() : null;
+                }
+            }
+
+            if (toHandleFutureTasks != null) {
+                processor.doHandleGroupFutureTasks(group, toHandleFutureTasks, batchController, this);
+            }
+            return true;
+        }
+
+        /**
+         * 处理任务完成，分组不再处理中时提交待处理实体，无待处理实体时移除
+         * <p>
+         * 在处理线程中调用，待处理实体转到flushExecutor提交，避免处理线程在提交时阻塞或在CallerRuns时嵌套执行。
+         */
+        void afterHandle() {
+            List<BufferFutureTask<E, R>> toHandleFutureTasks = null;
+            ConsumeBatchController batchController;
+            synchronized (this) {
+                handling--;
+                if (handling == 0) {
+                    if (pendingFutureTasks != null) {
+                        toHandleFutureTasks = takePending();
+                    } else {
+                        removed = true;
+                        coalescingGroups.remove(groupKey, this);
+                    }
+                }
+                batchController = consumeBatchController;
+            }
+
+            if (toHandleFutureTasks != null) {
+                CoalescedDispatchTask dispatchTask = new CoalescedDispatchTask(this, toHandleFutureTasks, batchController);
+                try {
+                    flushExecutor.execute(dispatchTask);
+                } catch (RejectedExecutionException ex) {
+                    dispatchTask.completeRejected();
+                }
+            }
+            processor.finishPendingHandle();
+        }
+
+        /**
+         * 最早待处理实体等待超过最长等待时间时提交
+         */
+        void flush() {
+            List<BufferFutureTask<E, R>> toHandleFutureTasks = null;
+            ConsumeBatchController batchController;
+            synchronized (this) {
+                if (pendingFutureTasks != null && System.nanoTime() - pendingStartNanos >= maxDelayNanos) {
+                    toHandleFutureTasks = takePending();
+                }
+                batchController = consumeBatchController;
+            }
+
+            if (toHandleFutureTasks != null) {
+                processor.doHandleGroupFutureTasks(group, toHandleFutureTasks, batchController, this);
+            }
+        }
+
+        synchronized List<BufferFutureTask<E, R>> drainPending() {
+            List<BufferFutureTask<E, R>> futureTasks = pendingFutureTasks;
+            pendingFutureTasks = null;
+            cancelFlush();
+            return futureTasks;
+        }
+
+        private void beginHandle() {
+            handling++;
+            processor.pendingHandles.incrementAndGet();
+        }
+
+        private List<BufferFutureTask<E, R>> takePending() {
+            List<BufferFutureTask<E, R>> futureTasks = pendingFutureTasks;
+            pendingFutureTasks = null;
+            cancelFlush();
+            beginHandle();
+            return futureTasks;
+        }
+
+        private void scheduleFlush() {
+            if (maxDelayNanos == 0) {
+                return;
+            }
+
+            try {
+                flushFuture = flushExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, maxDelayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // 已停止，待处理实体以失败响应
+            }
+        }
+
+        private void cancelFlush() {
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+        }
+    }
+
+    /**
+     * 提交合并分组在前一次处理完成后取出的待处理实体
+     */
+    private class CoalescedDispatchTask implements Runnable {
+
+        private final CoalescingGroup coalescingGroup;
+
+        private final List<BufferFutureTask<E, R>> futureTasks;
+
+        private final ConsumeBatchController consumeBatchController;
+
+        CoalescedDispatchTask(CoalescingGroup coalescingGroup, List<BufferFutureTask<E, R>> futureTasks,
+                              ConsumeBatchController consumeBatchController) {
+            this.coalescingGroup = coalescingGroup;
+            this.futureTasks = futureTasks;
+            this.consumeBatchController = consumeBatchController;
+        }
+
+        @Override
+        public void run() {
+            processor.doHandleGroupFutureTasks(coalescingGroup.group, futureTasks, consumeBatchController, coalescingGroup);
+        }
+
+        /**
+         * 停止时以失败响应
+         */
+        void completeRejected() {
+            processor.metrics.recordReject(futureTasks.size());
+            BufferGroupProcessor.completeFails(futureTasks, processor.newRejectedException());
+            coalescingGroup.afterHandle();
+        }
+    }
+
+}
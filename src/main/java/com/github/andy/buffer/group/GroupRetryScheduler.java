@@ -0,0 +1,248 @@
+package com.github.andy.buffer.group;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分组处理重试：处理异常或需重试的实体在退避后作为分组重新提交处理，不经过缓冲队列及合并分组；
+ * 开启拆分时整批重试用尽处理次数的分组对半拆分重试以隔离导致失败的实体。
+ */
+class GroupRetryScheduler<E, G, R> {
+
+    private final BufferGroupProcessor<E, G, R> processor;
+
+    /**
+     * 实体最多处理的次数（含首次）
+     */
+    private final int maxAttempts;
+
+    private final long backoffNanos;
+
+    private final long maxBackoffNanos;
+
+    /**
+     * 整个分组处理失败时是否对半拆分后分别重试
+     */
+    private final boolean bisectBatches;
+
+    /**
+     * 按退避时间提交重试的定时线程池
+     */
+    private final ScheduledThreadPoolExecutor retryExecutor = BufferGroupProcessor.newDelayExecutor("buffer-retry");
+
+    /**
+     * 等待退避时间的重试任务，停止时以失败响应
+     */
+    private final Set<RetryTask> pendingRetryTasks = Collections.newSetFromMap(new ConcurrentHashMap<RetryTask, Boolean>());
+
+    GroupRetryScheduler(BufferGroupProcessor<E, G, R> processor, int maxAttempts, long backoffNanos,
+                        long maxBackoffNanos, boolean bisectBatches) {
+        this.processor = processor;
+        this.maxAttempts = maxAttempts;
+        this.backoffNanos = backoffNanos;
+        this.maxBackoffNanos = maxBackoffNanos;
+        this.bisectBatches = bisectBatches;
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 整个分组处理失败：未达到最大处理次数的实体整批退避后重试；达到最大处理次数的实体开启拆分时对半拆分，否则以异常完成
+     * <p>
+     * 拆分深度与处理次数、退避次数分开记录：只有整批重试用尽处理次数后才拆分，拆分后的批次不计入处理次数，
+     * 各处理一次且按首次退避时间重试，再次整批失败时继续拆分，拆分到单个实体时以异常完成。
+     *
+     * @param bisectDepth 失败批次的拆分深度，未拆分的批次为0
+     */
+    void retryOrCompleteFails(G group, List<BufferFutureTask<E, R>> failedFutureTasks, Exception ex,
+                              ConsumeBatchController consumeBatchController, int bisectDepth) {
+        if (bisectDepth > 0) {
+            bisectOrCompleteFails(group, failedFutureTasks, ex, consumeBatchController, bisectDepth);
+            return;
+        }
+
+        List<BufferFutureTask<E, R>> retryFutureTasks = null;
+        List<BufferFutureTask<E, R>> exhaustedFutureTasks = null;
+        int maxFailedAttempts = 0;
+        for (BufferFutureTask<E, R> bufferFutureTask : failedFutureTasks) {
+            int failedAttempts = bufferFutureTask.recordFailedAttempt();
+            if (failedAttempts < maxAttempts) {
+                if (retryFutureTasks == null) {
+                    retryFutureTasks = new ArrayList<>();
+                }
+                retryFutureTasks.add(bufferFutureTask);
+                maxFailedAttempts = Math.max(maxFailedAttempts, failedAttempts);
+            } else {
+                if (exhaustedFutureTasks == null) {
+                    exhaustedFutureTasks = new ArrayList<>();
+                }
+                exhaustedFutureTasks.add(bufferFutureTask);
+            }
+        }
+
+        if (retryFutureTasks != null) {
+            scheduleRetry(group, Collections.singletonList(retryFutureTasks), nextRetryDelayNanos(maxFailedAttempts),
+                    consumeBatchController, 0);
+        }
+        if (exhaustedFutureTasks != null) {
+            if (bisectBatches) {
+                bisectOrCompleteFails(group, exhaustedFutureTasks, ex, consumeBatchController, 0);
+            } else {
+                processor.metrics.recordHandleFail(exhaustedFutureTasks.size());
+                BufferGroupProcessor.completeFails(exhaustedFutureTasks, ex);
+            }
+        }
+    }
+
+    /**
+     * 多个实体的批次对半拆分后依次重试，单个实体以异常完成
+     */
+    private void bisectOrCompleteFails(G group, List<BufferFutureTask<E, R>> failedFutureTasks, Exception ex,
+                                       ConsumeBatchController consumeBatchController, int bisectDepth) {
+        int size = failedFutureTasks.size();
+        if (size == 1) {
+            processor.metrics.recordHandleFail(1);
+            BufferGroupProcessor.completeFails(failedFutureTasks, ex);
+            return;
+        }
+
+        int half = size >>> 1;
+        List<List<BufferFutureTask<E, R>>> retryBatches = new ArrayList<>(2);
+        retryBatches.add(new ArrayList<>(failedFutureTasks.subList(0, half)));
+        retryBatches.add(new ArrayList<>(failedFutureTasks.subList(half, size)));
+        scheduleRetry(group, retryBatches, nextRetryDelayNanos(1), consumeBatchController, bisectDepth + 1);
+    }
+
+    /**
+     * 退避后将实体作为分组重新提交处理
+     * <p>
+     * 只在分组处理任务中调用；按分组顺序处理时暂停分组的串行分道，重试批次退避后排在分道最前面，分组后续批次在重试完成后处理。
+     *
+     * @param retryBatches 按顺序处理的重试批次
+     * @param bisectDepth  重试批次的拆分深度，未拆分的批次为0
+     */
+    void scheduleRetry(G group, List<List<BufferFutureTask<E, R>>> retryBatches, long delayNanos,
+                       ConsumeBatchController consumeBatchController, int bisectDepth) {
+        for (List<BufferFutureTask<E, R>> retryBatch : retryBatches) {
+            processor.metrics.recordRetry(retryBatch.size());
+        }
+        RetryTask retryTask = new RetryTask(group, retryBatches, consumeBatchController, bisectDepth);
+        if (processor.orderedGroupLanes != null) {
+            processor.routeOrderedGroupLane(group).hold();
+        }
+        processor.pendingHandles.incrementAndGet();
+        pendingRetryTasks.add(retryTask);
+        try {
+            retryExecutor.schedule(retryTask, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ex) {
+            if (pendingRetryTasks.remove(retryTask)) {
+                retryTask.completeRejected();
+            }
+        }
+    }
+
+    /**
+     * 第failedAttempts次失败后的退避时间，每次翻倍且不超过最大退避时间，在其一半到全部之间随机以错开同时失败的批次
+     */
+    long nextRetryDelayNanos(int failedAttempts) {
+        long delayNanos = backoffNanos;
+        for (int i = 1; i < failedAttempts && delayNanos < maxBackoffNanos; i++) {
+            delayNanos <<= 1;
+        }
+        delayNanos = Math.min(delayNanos, maxBackoffNanos);
+
+        long halfDelayNanos = delayNanos >>> 1;
+        return halfDelayNanos + ThreadLocalRandom.current().nextLong(delayNanos - halfDelayNanos + 1);
+    }
+
+    /**
+     * 停止时，等待退避时间的重试实体以失败响应
+     */
+    void completeRejected() {
+        retryExecutor.shutdownNow();
+        for (RetryTask retryTask : pendingRetryTasks) {
+            if (pendingRetryTasks.remove(retryTask)) {
+                retryTask.completeRejected();
+            }
+        }
+    }
+
+    void shutdownNow() {
+        retryExecutor.shutdownNow();
+    }
+
+    /**
+     * 等待退避时间的重试任务，由重试线程池或停止时的清理二者之一从pendingRetryTasks中移除后执行；拆分重试时包含两个批次
+     */
+    private class RetryTask implements Runnable {
+
+        private final G group;
+
+        private final List<List<BufferFutureTask<E, R>>> retryBatches;
+
+        private final ConsumeBatchController consumeBatchController;
+
+        private final int bisectDepth;
+
+        RetryTask(G group, List<List<BufferFutureTask<E, R>>> retryBatches, ConsumeBatchController consumeBatchController,
+                  int bisectDepth) {
+            this.group = group;
+            this.retryBatches = retryBatches;
+            this.consumeBatchController = consumeBatchController;
+            this.bisectDepth = bisectDepth;
+        }
+
+        @Override
+        public void run() {
+            if (!pendingRetryTasks.remove(this)) {
+                return;
+            }
+
+            try {
+                if (processor.orderedGroupLanes != null) {
+                    resumeOrderedGroupLane();
+                } else {
+                    for (List<BufferFutureTask<E, R>> retryBatch : retryBatches) {
+                        processor.executeHandleTask(new BufferGroupFuturesHandleTask<E, G, R>(processor, group,
+                                retryBatch, consumeBatchController, bisectDepth));
+                    }
+                }
+            } finally {
+                processor.finishPendingHandle();
+            }
+        }
+
+        /**
+         * 重试批次排在分组串行分道的最前面后恢复分道
+         */
+        private void resumeOrderedGroupLane() {
+            Runnable[] handleTasks = new Runnable[retryBatches.size()];
+            for (int i = 0; i < handleTasks.length; i++) {
+                handleTasks[i] = new BufferGroupFuturesHandleTask<E, G, R>(processor, group, retryBatches.get(i),
+                        consumeBatchController, bisectDepth);
+            }
+            processor.routeOrderedGroupLane(group).resume(handleTasks);
+        }
+
+        void completeRejected() {
+            for (List<BufferFutureTask<E, R>> retryBatch : retryBatches) {
+                processor.metrics.recordReject(retryBatch.size());
+                BufferGroupProcessor.completeFails(retryBatch, processor.newRejectedException());
+            }
+            if (processor.orderedGroupLanes != null) {
+                processor.routeOrderedGroupLane(group).resume();
+            }
+            processor.finishPendingHandle();
+        }
+    }
+
+}
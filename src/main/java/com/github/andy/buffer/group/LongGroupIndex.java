@@ -0,0 +1,150 @@
+package com.github.andy.buffer.group;
+
+import java.util.Arrays;
+
+/**
+ * 一批实体按long分组的索引，由消费线程独占并在批次间复用
+ * <p>
+ * 分组按首次出现的顺序编号，开放寻址表按批次大小扩容且只增不减，重置时只清除本批次使用过的位置；
+ * 计数后按分组编号计算各分组在排序结果中的起始位置，实体按批次顺序计数排序到各分组的连续区间。
+ */
+final class LongGroupIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * 开放寻址表，tableOrdinals为分组编号加1，0为空位
+     */
+    private long[] tableKeys = new long[INITIAL_CAPACITY];
+
+    private int[] tableOrdinals = new int[INITIAL_CAPACITY];
+
+    /**
+     * 按分组编号记录的分组KEY、实体数及在开放寻址表中的位置
+     */
+    private long[] groupKeys = new long[INITIAL_CAPACITY];
+
+    private int[] groupSizes = new int[INITIAL_CAPACITY];
+
+    private int[] groupTablePositions = new int[INITIAL_CAPACITY];
+
+    /**
+     * 按分组编号记录的分组在排序结果中的起始位置及下一个实体的位置
+     */
+    private int[] groupOffsets = new int[INITIAL_CAPACITY];
+
+    private int[] groupCursors = new int[INITIAL_CAPACITY];
+
+    /**
+     * 按批次中的位置记录的实体分组编号，-1为分组失败
+     */
+    private int[] elementOrdinals = new int[INITIAL_CAPACITY];
+
+    private int groupCount;
+
+    /**
+     * 清除上一批次的分组，保证容量足够elementCount个实体
+     */
+    void reset(int elementCount) {
+        for (int i = 0; i < groupCount; i++) {
+            tableOrdinals[groupTablePositions[i]] = 0;
+        }
+        groupCount = 0;
+
+        // 负载因子不超过0.5
+        if (elementCount * 2 > tableKeys.length) {
+            int capacity = Integer.highestOneBit(elementCount * 4 - 1);
+            tableKeys = new long[capacity];
+            tableOrdinals = new int[capacity];
+        }
+        if (elementCount > elementOrdinals.length) {
+            int capacity = Math.max(elementCount, elementOrdinals.length * 2);
+            elementOrdinals = new int[capacity];
+            groupKeys = Arrays.copyOf(groupKeys, capacity);
+            groupSizes = Arrays.copyOf(groupSizes, capacity);
+            groupTablePositions = Arrays.copyOf(groupTablePositions, capacity);
+            groupOffsets = new int[capacity];
+            groupCursors = new int[capacity];
+        }
+    }
+
+    /**
+     * 记录批次中第elementIndex个实体的分组
+     */
+    void add(int elementIndex, long groupKey) {
+        int mask = tableKeys.length - 1;
+        int i = indexOf(groupKey, mask);
+        for (; ; i = (i + 1) & mask) {
+            int ordinal = tableOrdinals[i] - 1;
+            if (ordinal < 0) {
+                ordinal = groupCount++;
+                tableKeys[i] = groupKey;
+                tableOrdinals[i] = ordinal + 1;
+                groupKeys[ordinal] = groupKey;
+                groupSizes[ordinal] = 0;
+                groupTablePositions[ordinal] = i;
+            } else if (tableKeys[i] != groupKey) {
+                continue;
+            }
+
+            groupSizes[ordinal]++;
+            elementOrdinals[elementIndex] = ordinal;
+            return;
+        }
+    }
+
+    /**
+     * 记录批次中第elementIndex个实体分组失败
+     */
+    void addFail(int elementIndex) {
+        elementOrdinals[elementIndex] = -1;
+    }
+
+    /**
+     * 按分组编号依次分配各分组的连续区间，全部实体添加后调用
+     *
+     * @return 分组成功的实体数
+     */
+    int computeOffsets() {
+        int offset = 0;
+        for (int ordinal = 0; ordinal < groupCount; ordinal++) {
+            groupOffsets[ordinal] = offset;
+            groupCursors[ordinal] = offset;
+            offset += groupSizes[ordinal];
+        }
+        return offset;
+    }
+
+    /**
+     * 分组的下一个实体在排序结果中的位置，按批次顺序调用时分组内保持批次顺序
+     */
+    int nextPosition(int ordinal) {
+        return groupCursors[ordinal]++;
+    }
+
+    int getGroupOffset(int ordinal) {
+        return groupOffsets[ordinal];
+    }
+
+    int getGroupCount() {
+        return groupCount;
+    }
+
+    long getGroupKey(int ordinal) {
+        return groupKeys[ordinal];
+    }
+
+    int getGroupSize(int ordinal) {
+        return groupSizes[ordinal];
+    }
+
+    int getElementOrdinal(int elementIndex) {
+        return elementOrdinals[elementIndex];
+    }
+
+    private static int indexOf(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.github.andy.buffer.group;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在委托线程池上按提交顺序逐个执行任务，同一时刻最多占用一个线程
+ * <p>
+ * 执行中的任务不会被重新提交到委托线程池，避免委托线程池关闭后丢弃未执行的任务；委托线程池拒绝时在提交线程中执行。
+ * <p>
+ * 执行中的任务可调用hold暂停后续任务，之后由resume将接续的任务排在最前面并恢复执行，用于延后重试时保持顺序。
+ */
+class SerialExecutor implements Executor {
+
+    private final Executor executor;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * resume时排在最前面的接续任务
+     */
+    private final Deque<Runnable> resumedTasks = new ConcurrentLinkedDeque<>();
+
+    /**
+     * 未恢复的暂停数，大于0时不执行任务
+     */
+    private final AtomicInteger holds = new AtomicInteger();
+
+    /**
+     * 是否已提交执行任务到委托线程池
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        tasks.offer(command);
+        schedule();
+    }
+
+    /**
+     * 暂停执行后续任务，只能在该执行器执行中的任务内调用，每次调用需对应一次resume
+     */
+    void hold() {
+        holds.incrementAndGet();
+    }
+
+    /**
+     * 恢复执行，接续任务按参数顺序排在所有任务之前
+     */
+    void resume(Runnable... firstTasks) {
+        for (int i = firstTasks.length - 1; i >= 0; i--) {
+            resumedTasks.addFirst(firstTasks[i]);
+        }
+        holds.decrementAndGet();
+        schedule();
+    }
+
+    private boolean hasRunnableTasks() {
+        return holds.get() == 0 && (!resumedTasks.isEmpty() || !tasks.isEmpty());
+    }
+
+    private Runnable pollTask() {
+        if (holds.get() > 0) {
+            return null;
+        }
+
+        Runnable task = resumedTasks.pollFirst();
+        return task != null ? task : tasks.poll();
+    }
+
+    private void schedule() {
+        if (hasRunnableTasks() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainer);
+            } catch (RejectedExecutionException ex) {
+                drain();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = pollTask()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException ignored) {
+                    // 任务异常不影响后续任务
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+
+        // 退出前并发提交或恢复的任务
+        schedule();
+    }
+
+    /**
+     * 取出排队未执行的任务，包括暂停中的任务
+     */
+    List<Runnable> drainTasks() {
+        List<Runnable> drainedTasks = new ArrayList<>();
+        Runnable task;
+        while ((task = resumedTasks.pollFirst()) != null) {
+            drainedTasks.add(task);
+        }
+        while ((task = tasks.poll()) != null) {
+            drainedTasks.add(task);
+        }
+        return drainedTasks;
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.github.andy.buffer.group;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多个缓冲处理器共享处理线程池的构建工厂
+ * <p>
+ * 每次create返回共享线程池上的一个视图，视图内任务排队在自己的队列中，最多同时占用maxConcurrency个共享线程，
+ * 每执行quantum个任务后重新排到共享线程池队尾，使各缓冲处理器轮流获得线程；空闲的线程可被繁忙的缓冲处理器使用。
+ * 线程数只与共享线程池有关，不随分片数增长。
+ * <p>
+ * 关闭视图只拒绝该缓冲处理器的新任务并等待其已提交任务完成，不会关闭共享线程池；共享线程池的线程为守护线程，
+ * 不再使用时可调用shutdown关闭。
+ */
+public class SharedBufferProcessExecutorFactory implements BufferProcessExecutorFactory {
+
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final int DEFAULT_QUANTUM = 16;
+
+    private final ExecutorService sharedExecutor;
+
+    private final int maxConcurrency;
+
+    private final int maxQueueSize;
+
+    private final int quantum;
+
+    public SharedBufferProcessExecutorFactory(ExecutorService sharedExecutor, int maxConcurrency, int maxQueueSize, int quantum) {
+        Preconditions.checkArgument(sharedExecutor != null, "sharedExecutor为Null。");
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency必须大于0。");
+        Preconditions.checkArgument(maxQueueSize > 0, "maxQueueSize必须大于0。");
+        Preconditions.checkArgument(quantum > 0, "quantum必须大于0。");
+        this.sharedExecutor = sharedExecutor;
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = maxQueueSize;
+        this.quantum = quantum;
+    }
+
+    /**
+     * 共享FIFO模式的ForkJoinPool，线程数为CPU核数，单个缓冲处理器最多同时占用maxConcurrency个线程
+     * <p>
+     * 适用于计算型的分组处理，分组处理中有阻塞IO时建议使用fixed。
+     */
+    public static SharedBufferProcessExecutorFactory workStealing(int maxConcurrency) {
+        return workStealing(Runtime.getRuntime().availableProcessors(), maxConcurrency);
+    }
+
+    /**
+     * 共享FIFO模式的ForkJoinPool，单个缓冲处理器最多同时占用maxConcurrency个线程
+     *
+     * @param parallelism 共享线程数
+     */
+    public static SharedBufferProcessExecutorFactory workStealing(int parallelism, int maxConcurrency) {
+        ExecutorService sharedExecutor = new ForkJoinPool(parallelism,
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        return new SharedBufferProcessExecutorFactory(sharedExecutor, maxConcurrency, DEFAULT_QUEUE_SIZE, DEFAULT_QUANTUM);
+    }
+
+    /**
+     * 共享固定线程数的线程池，单个缓冲处理器最多同时占用maxConcurrency个线程
+     *
+     * @param threads 共享线程数
+     */
+    public static SharedBufferProcessExecutorFactory fixed(int threads, int maxConcurrency) {
+        ExecutorService sharedExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "buffer-process-shared-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        return new SharedBufferProcessExecutorFactory(sharedExecutor, maxConcurrency, DEFAULT_QUEUE_SIZE, DEFAULT_QUANTUM);
+    }
+
+    @Override
+    public ExecutorService create() {
+        return new SharedExecutorView(sharedExecutor, maxConcurrency, maxQueueSize, quantum);
+    }
+
+    public ExecutorService getSharedExecutor() {
+        return sharedExecutor;
+    }
+
+    /**
+     * 关闭共享线程池，应在使用该工厂的缓冲处理器全部终止后调用
+     */
+    public void shutdown() {
+        sharedExecutor.shutdown();
+    }
+
+    /**
+     * 共享线程池上的视图，任务超出maxQueueSize时在提交线程中执行
+     */
+    private static class SharedExecutorView extends AbstractExecutorService {
+
+        private final Executor sharedExecutor;
+
+        private final int maxConcurrency;
+
+        private final int maxQueueSize;
+
+        private final int quantum;
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 排队及执行中的任务数
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * 占用共享线程的Worker数
+         */
+        private final AtomicInteger workers = new AtomicInteger();
+
+        private final CountDownLatch terminationLatch = new CountDownLatch(1);
+
+        private volatile boolean shutdown;
+
+        SharedExecutorView(Executor sharedExecutor, int maxConcurrency, int maxQueueSize, int quantum) {
+            this.sharedExecutor = sharedExecutor;
+            this.maxConcurrency = maxConcurrency;
+            this.maxQueueSize = maxQueueSize;
+            this.quantum = quantum;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command == null) {
+                throw new NullPointerException();
+            }
+
+            // 先计入pending再检查关闭，与tryTerminate交错时二者至少有一方看到对方，关闭后不会再执行新任务
+            int currentPending = pending.incrementAndGet();
+            if (shutdown) {
+                pending.decrementAndGet();
+                tryTerminate();
+                throw new RejectedExecutionException("[buffer-processor] 处理线程池已关闭！");
+            }
+
+            if (currentPending > maxQueueSize) {
+                // 排队已满时在提交线程中执行，与默认线程池的CallerRunsPolicy一致
+                try {
+                    command.run();
+                } finally {
+                    pending.decrementAndGet();
+                    tryTerminate();
+                }
+                return;
+            }
+
+            tasks.offer(command);
+            tryStartWorker();
+        }
+
+        private void tryStartWorker() {
+            for (; ; ) {
+                int current = workers.get();
+                if (current >= maxConcurrency || tasks.isEmpty()) {
+                    return;
+                }
+
+                if (workers.compareAndSet(current, current + 1)) {
+                    scheduleWorker(new Worker());
+                    return;
+                }
+            }
+        }
+
+        private void scheduleWorker(Worker worker) {
+            try {
+                sharedExecutor.execute(worker);
+            } catch (RejectedExecutionException ex) {
+                // 共享线程池已关闭时在提交线程中执行
+                worker.run();
+            }
+        }
+
+        /**
+         * Worker退出，退出后若有新任务入队则重新启动
+         */
+        private void exitWorker() {
+            workers.decrementAndGet();
+            tryStartWorker();
+            tryTerminate();
+        }
+
+        private void tryTerminate() {
+            if (shutdown && pending.get() == 0) {
+                terminationLatch.countDown();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            tryTerminate();
+        }
+
+        /**
+         * 关闭并返回排队未执行的任务，不中断共享线程中正在执行的任务
+         */
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> drainedTasks = new ArrayList<>();
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                drainedTasks.add(task);
+                pending.decrementAndGet();
+            }
+            tryTerminate();
+            return drainedTasks;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return terminationLatch.getCount() == 0;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return terminationLatch.await(timeout, unit);
+        }
+
+        private class Worker implements Runnable {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < quantum; i++) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        exitWorker();
+                        return;
+                    }
+
+                    try {
+                        task.run();
+                    } catch (RuntimeException ignored) {
+                        // 任务异常不影响同一视图的后续任务
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                }
+
+                // 执行quantum个任务后让出共享线程，重新排到共享线程池队尾
+                if (tasks.isEmpty()) {
+                    exitWorker();
+                } else {
+                    scheduleWorker(this);
+                }
+            }
+        }
+    }
+
+}
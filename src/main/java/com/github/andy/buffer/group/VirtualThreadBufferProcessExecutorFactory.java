@@ -0,0 +1,207 @@
+package com.github.andy.buffer.group;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分组处理任务使用虚拟线程执行的线程池构建工厂，适用于阻塞IO的分组处理
+ * <p>
+ * 以信号量限制同时执行的虚拟线程数代替线程池大小，超出并发上限的任务在内部队列中排队，由执行中的虚拟线程依次取出执行；
+ * 排队数达到maxQueueSize时在提交线程中执行，与默认线程池的CallerRunsPolicy一致，形成反压。
+ * 提交不会阻塞等待许可，分组处理中再提交任务也不会死锁。
+ * 不支持虚拟线程的JVM上回退为按需创建的守护平台线程，同样受并发上限限制。
+ */
+public class VirtualThreadBufferProcessExecutorFactory implements BufferProcessExecutorFactory {
+
+    private static final AtomicInteger FACTORY_NUMBER = new AtomicInteger(1);
+
+    private final int maxConcurrency;
+
+    private final int maxQueueSize;
+
+    private final String threadNamePrefix;
+
+    /**
+     * 排队数上限与并发上限相同
+     *
+     * @param maxConcurrency 单个缓冲处理器同时执行的最大分组处理数
+     */
+    public VirtualThreadBufferProcessExecutorFactory(int maxConcurrency) {
+        this(maxConcurrency, maxConcurrency);
+    }
+
+    /**
+     * @param maxConcurrency 单个缓冲处理器同时执行的最大分组处理数
+     * @param maxQueueSize   超出并发上限时排队的最大任务数
+     */
+    public VirtualThreadBufferProcessExecutorFactory(int maxConcurrency, int maxQueueSize) {
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency必须大于0。");
+        Preconditions.checkArgument(maxQueueSize > 0, "maxQueueSize必须大于0。");
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = maxQueueSize;
+        this.threadNamePrefix = "buffer-process-" + FACTORY_NUMBER.getAndIncrement() + "-";
+    }
+
+    @Override
+    public ExecutorService create() {
+        return new ConcurrencyLimitedExecutor(newThreadPerTaskExecutor(), maxConcurrency, maxQueueSize);
+    }
+
+    private ExecutorService newThreadPerTaskExecutor() {
+        ThreadFactory threadFactory = VirtualThreads.newThreadFactory(threadNamePrefix);
+        if (threadFactory != null) {
+            ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor(threadFactory);
+            if (executor != null) {
+                return executor;
+            }
+        }
+
+        // 不支持虚拟线程时回退为平台线程
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadNamePrefix + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 以信号量限制并发的线程池
+     * <p>
+     * 每个许可对应一个执行中的线程，线程循环取出排队的任务直到队列为空后归还许可。
+     */
+    private static class ConcurrencyLimitedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService executor;
+
+        private final Semaphore permits;
+
+        private final int maxQueueSize;
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 排队中的任务数
+         */
+        private final AtomicInteger queued = new AtomicInteger();
+
+        ConcurrencyLimitedExecutor(ExecutorService executor, int maxConcurrency, int maxQueueSize) {
+            this.executor = executor;
+            this.permits = new Semaphore(maxConcurrency);
+            this.maxQueueSize = maxQueueSize;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command == null) {
+                throw new NullPointerException();
+            }
+
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("[buffer-processor] 处理线程池已关闭！");
+            }
+
+            if (queued.get() >= maxQueueSize) {
+                // 排队已满时在提交线程中执行，与默认线程池的CallerRunsPolicy一致
+                command.run();
+                return;
+            }
+
+            queued.incrementAndGet();
+            tasks.offer(command);
+            try {
+                tryStartDrainer();
+            } catch (RejectedExecutionException ex) {
+                // 已被其他线程取出执行时视为提交成功
+                if (tasks.remove(command)) {
+                    queued.decrementAndGet();
+                    throw ex;
+                }
+            }
+        }
+
+        /**
+         * 有排队的任务且有空闲许可时启动线程执行
+         */
+        private void tryStartDrainer() {
+            while (!tasks.isEmpty() && permits.tryAcquire()) {
+                try {
+                    executor.execute(new Drainer());
+                } catch (RuntimeException ex) {
+                    permits.release();
+                    throw ex;
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            executor.shutdownNow();
+            List<Runnable> remainingTasks = new ArrayList<>();
+            for (Runnable task; (task = tasks.poll()) != null; ) {
+                queued.decrementAndGet();
+                remainingTasks.add(task);
+            }
+            return remainingTasks;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+
+        private class Drainer implements Runnable {
+
+            @Override
+            public void run() {
+                boolean completed = false;
+                try {
+                    // 归还许可后重新检查队列，避免归还前入队的任务因未取得许可而滞留；关闭后仍在当前线程执行完已提交的任务
+                    do {
+                        for (Runnable task; (task = tasks.poll()) != null; ) {
+                            queued.decrementAndGet();
+                            task.run();
+                        }
+                        permits.release();
+                    } while (!tasks.isEmpty() && permits.tryAcquire());
+                    completed = true;
+                } finally {
+                    if (!completed) {
+                        permits.release();
+                        try {
+                            tryStartDrainer();
+                        } catch (RejectedExecutionException ex) {
+                            // 已关闭时由其他执行中的线程取出剩余任务
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
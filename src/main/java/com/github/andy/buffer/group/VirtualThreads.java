@@ -0,0 +1,90 @@
+package com.github.andy.buffer.group;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 通过反射使用JDK 21的虚拟线程，编译及运行于更早的JVM时不可用
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL_METHOD;
+
+    private static final Method BUILDER_NAME_METHOD;
+
+    private static final Method BUILDER_FACTORY_METHOD;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR_METHOD;
+
+    private static final boolean SUPPORTED;
+
+    static {
+        Method ofVirtualMethod = null;
+        Method builderNameMethod = null;
+        Method builderFactoryMethod = null;
+        Method newThreadPerTaskExecutorMethod = null;
+        boolean supported = false;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+            builderNameMethod = builderClass.getMethod("name", String.class, long.class);
+            builderFactoryMethod = builderClass.getMethod("factory");
+            newThreadPerTaskExecutorMethod = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+
+            // JDK 19、20未开启预览特性时调用会抛出异常
+            ofVirtualMethod.invoke(null);
+            supported = true;
+        } catch (Exception ignored) {
+            // 不支持虚拟线程
+        }
+
+        OF_VIRTUAL_METHOD = ofVirtualMethod;
+        BUILDER_NAME_METHOD = builderNameMethod;
+        BUILDER_FACTORY_METHOD = builderFactoryMethod;
+        NEW_THREAD_PER_TASK_EXECUTOR_METHOD = newThreadPerTaskExecutorMethod;
+        SUPPORTED = supported;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * 创建虚拟线程的ThreadFactory，不支持时返回null
+     *
+     * @param namePrefix 线程名前缀，后接从0开始的序号
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        if (!SUPPORTED) {
+            return null;
+        }
+
+        try {
+            Object builder = OF_VIRTUAL_METHOD.invoke(null);
+            builder = BUILDER_NAME_METHOD.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY_METHOD.invoke(builder);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * 每个任务使用一个新线程执行的线程池，不支持时返回null
+     */
+    static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR_METHOD.invoke(null, threadFactory);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.github.andy.buffer.group.exception;
+
+/**
+ * 实体超过截止时间仍未交给分组处理，被丢弃的异常
+ */
+public class BufferExpiredException extends BufferRejectedException {
+
+    public BufferExpiredException(String message) {
+        super(message);
+    }
+
+    public BufferExpiredException(Throwable cause) {
+        super(cause);
+    }
+
+    public BufferExpiredException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
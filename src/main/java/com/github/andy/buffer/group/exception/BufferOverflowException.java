@@ -0,0 +1,20 @@
+package com.github.andy.buffer.group.exception;
+
+/**
+ * 缓冲队列已满，按溢出策略拒绝或丢弃实体的异常
+ */
+public class BufferOverflowException extends BufferRejectedException {
+
+    public BufferOverflowException(String message) {
+        super(message);
+    }
+
+    public BufferOverflowException(Throwable cause) {
+        super(cause);
+    }
+
+    public BufferOverflowException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.github.andy.buffer.group.exception;
+
+/**
+ * 缓冲处理器拒绝处理实体的异常，如处理器已关闭后提交的实体
+ */
+public class BufferRejectedException extends BufferException {
+
+    public BufferRejectedException(String message) {
+        super(message);
+    }
+
+    public BufferRejectedException(Throwable cause) {
+        super(cause);
+    }
+
+    public BufferRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.github.andy.buffer.group.metrics;
+
+/**
+ * 缓冲处理器处理实体的各个阶段
+ */
+public enum BufferProcessStage {
+
+    /**
+     * 实体写入缓冲队列到被消费线程取出，按实体统计
+     */
+    QUEUE_WAIT,
+
+    /**
+     * 消费线程从缓冲队列取出一批实体的耗时，包括不足批量时等待后续实体的时间，按批次统计
+     */
+    LINGER,
+
+    /**
+     * 一批实体分组的耗时，按批次统计
+     */
+    GROUP,
+
+    /**
+     * 分组处理任务提交到处理线程池到开始执行，按分组统计
+     */
+    EXECUTOR_WAIT,
+
+    /**
+     * BufferGroupHandler.handle的耗时，按分组统计
+     */
+    HANDLE,
+
+    /**
+     * 分组处理后完成每个实体Future响应的耗时，按分组统计
+     */
+    COMPLETION
+}
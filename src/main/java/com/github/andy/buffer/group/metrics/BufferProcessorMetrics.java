@@ -0,0 +1,62 @@
+package com.github.andy.buffer.group.metrics;
+
+/**
+ * 缓冲处理器的监控统计SPI，每个缓冲处理器一个实例，各方法会被提交线程、消费线程和处理线程并发调用，实现需无锁且开销低
+ */
+public interface BufferProcessorMetrics {
+
+    /**
+     * 是否统计各阶段耗时，返回false时缓冲处理器不会读取时钟
+     */
+    boolean isTimingEnabled();
+
+    /**
+     * 实体写入缓冲队列
+     */
+    void recordSubmit(int count);
+
+    /**
+     * 实体被拒绝或丢弃，如处理器已关闭、缓冲队列已满
+     */
+    void recordReject(int count);
+
+    /**
+     * 消费线程取出一批实体并分组
+     *
+     * @param batchSize  本批实体数
+     * @param groupCount 本批分组数
+     */
+    void recordBatch(int batchSize, int groupCount);
+
+    /**
+     * 阶段耗时
+     */
+    void recordStage(BufferProcessStage stage, long nanos);
+
+    /**
+     * 实体分组失败
+     */
+    void recordGroupFail(int count);
+
+    /**
+     * 分组处理失败的实体
+     */
+    void recordHandleFail(int count);
+
+    /**
+     * 已取消或超过截止时间，未交给分组处理即丢弃的实体
+     */
+    void recordAbandon(int count);
+
+    /**
+     * 处理失败后重新提交处理的实体，每次重试计数一次
+     */
+    void recordRetry(int count);
+
+    /**
+     * 当前统计快照，不支持时返回空快照
+     *
+     * @param queueSize 当前缓冲队列中的实体数
+     */
+    BufferProcessorMetricsSnapshot snapshot(long queueSize);
+}
@@ -0,0 +1,9 @@
+package com.github.andy.buffer.group.metrics;
+
+/**
+ * 缓冲处理器监控统计的构建工厂，每个缓冲处理器创建一个实例
+ */
+public interface BufferProcessorMetricsFactory {
+
+    BufferProcessorMetrics create();
+}
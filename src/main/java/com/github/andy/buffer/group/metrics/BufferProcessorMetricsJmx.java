@@ -0,0 +1,136 @@
+package com.github.andy.buffer.group.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 将缓冲处理器的监控统计注册到平台MBeanServer，ObjectName为com.github.andy.buffer:type=BufferProcessor,name=名称
+ */
+public final class BufferProcessorMetricsJmx implements BufferProcessorMetricsMXBean {
+
+    private static final String DOMAIN = "com.github.andy.buffer";
+
+    private final BufferProcessorMetricsSource source;
+
+    private BufferProcessorMetricsJmx(BufferProcessorMetricsSource source) {
+        this.source = source;
+    }
+
+    /**
+     * 注册监控统计，返回的ObjectName用于注销
+     */
+    public static ObjectName register(String name, BufferProcessorMetricsSource source) {
+        try {
+            ObjectName objectName = newObjectName(name);
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(new BufferProcessorMetricsJmx(source), objectName);
+            return objectName;
+        } catch (JMException ex) {
+            throw new IllegalStateException("[buffer-processor] 注册JMX监控统计失败：" + name, ex);
+        }
+    }
+
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException ignored) {
+            // 注销失败不影响关闭
+        }
+    }
+
+    private static ObjectName newObjectName(String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=BufferProcessor,name=" + ObjectName.quote(name));
+    }
+
+    private BufferProcessorMetricsSnapshot snapshot() {
+        return source.getMetrics();
+    }
+
+    @Override
+    public long getQueueSize() {
+        return snapshot().getQueueSize();
+    }
+
+    @Override
+    public long getSubmitCount() {
+        return snapshot().getSubmitCount();
+    }
+
+    @Override
+    public long getRejectCount() {
+        return snapshot().getRejectCount();
+    }
+
+    @Override
+    public long getGroupFailCount() {
+        return snapshot().getGroupFailCount();
+    }
+
+    @Override
+    public long getHandleFailCount() {
+        return snapshot().getHandleFailCount();
+    }
+
+    @Override
+    public long getAbandonCount() {
+        return snapshot().getAbandonCount();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return snapshot().getRetryCount();
+    }
+
+    @Override
+    public HistogramSnapshot getBatchSize() {
+        return snapshot().getBatchSize();
+    }
+
+    @Override
+    public HistogramSnapshot getGroupCount() {
+        return snapshot().getGroupCount();
+    }
+
+    @Override
+    public HistogramSnapshot getQueueWaitNanos() {
+        return snapshot().getStageNanos(BufferProcessStage.QUEUE_WAIT);
+    }
+
+    @Override
+    public HistogramSnapshot getLingerNanos() {
+        return snapshot().getStageNanos(BufferProcessStage.LINGER);
+    }
+
+    @Override
+    public HistogramSnapshot getGroupNanos() {
+        return snapshot().getStageNanos(BufferProcessStage.GROUP);
+    }
+
+    @Override
+    public HistogramSnapshot getExecutorWaitNanos() {
+        return snapshot().getStageNanos(BufferProcessStage.EXECUTOR_WAIT);
+    }
+
+    @Override
+    public HistogramSnapshot getHandleNanos() {
+        return snapshot().getStageNanos(BufferProcessStage.HANDLE);
+    }
+
+    @Override
+    public HistogramSnapshot getCompletionNanos() {
+        return snapshot().getStageNanos(BufferProcessStage.COMPLETION);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.github.andy.buffer.group.metrics;
+
+/**
+ * 缓冲处理器监控统计的JMX接口，耗时单位纳秒
+ */
+public interface BufferProcessorMetricsMXBean {
+
+    long getQueueSize();
+
+    long getSubmitCount();
+
+    long getRejectCount();
+
+    long getGroupFailCount();
+
+    long getHandleFailCount();
+
+    long getAbandonCount();
+
+    long getRetryCount();
+
+    HistogramSnapshot getBatchSize();
+
+    HistogramSnapshot getGroupCount();
+
+    HistogramSnapshot getQueueWaitNanos();
+
+    HistogramSnapshot getLingerNanos();
+
+    HistogramSnapshot getGroupNanos();
+
+    HistogramSnapshot getExecutorWaitNanos();
+
+    HistogramSnapshot getHandleNanos();
+
+    HistogramSnapshot getCompletionNanos();
+}
@@ -0,0 +1,153 @@
+package com.github.andy.buffer.group.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 缓冲处理器的监控统计快照，分片处理器合并各分片的快照
+ */
+public class BufferProcessorMetricsSnapshot {
+
+    public static final BufferProcessorMetricsSnapshot EMPTY = new BufferProcessorMetricsSnapshot(0, 0, 0, 0, 0, 0, 0,
+            HistogramSnapshot.EMPTY, HistogramSnapshot.EMPTY, new EnumMap<BufferProcessStage, HistogramSnapshot>(BufferProcessStage.class));
+
+    private final long queueSize;
+
+    private final long submitCount;
+
+    private final long rejectCount;
+
+    private final long groupFailCount;
+
+    private final long handleFailCount;
+
+    private final long abandonCount;
+
+    private final long retryCount;
+
+    private final HistogramSnapshot batchSize;
+
+    private final HistogramSnapshot groupCount;
+
+    private final Map<BufferProcessStage, HistogramSnapshot> stageNanos;
+
+    public BufferProcessorMetricsSnapshot(long queueSize, long submitCount, long rejectCount, long groupFailCount,
+                                          long handleFailCount, long abandonCount, long retryCount,
+                                          HistogramSnapshot batchSize, HistogramSnapshot groupCount,
+                                          Map<BufferProcessStage, HistogramSnapshot> stageNanos) {
+        this.queueSize = queueSize;
+        this.submitCount = submitCount;
+        this.rejectCount = rejectCount;
+        this.groupFailCount = groupFailCount;
+        this.handleFailCount = handleFailCount;
+        this.abandonCount = abandonCount;
+        this.retryCount = retryCount;
+        this.batchSize = batchSize;
+        this.groupCount = groupCount;
+        this.stageNanos = stageNanos;
+    }
+
+    /**
+     * 取快照时缓冲队列中的实体数
+     */
+    public long getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * 写入缓冲队列的实体总数
+     */
+    public long getSubmitCount() {
+        return submitCount;
+    }
+
+    /**
+     * 被拒绝或丢弃的实体总数
+     */
+    public long getRejectCount() {
+        return rejectCount;
+    }
+
+    /**
+     * 分组失败的实体总数
+     */
+    public long getGroupFailCount() {
+        return groupFailCount;
+    }
+
+    /**
+     * 分组处理失败的实体总数
+     */
+    public long getHandleFailCount() {
+        return handleFailCount;
+    }
+
+    /**
+     * 已取消或超过截止时间，未交给分组处理即丢弃的实体总数
+     */
+    public long getAbandonCount() {
+        return abandonCount;
+    }
+
+    /**
+     * 处理失败后重新提交处理的实体总数，每次重试计数一次
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * 每批实体数的分布
+     */
+    public HistogramSnapshot getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 每批分组数的分布
+     */
+    public HistogramSnapshot getGroupCount() {
+        return groupCount;
+    }
+
+    /**
+     * 阶段耗时的分布，单位纳秒
+     */
+    public HistogramSnapshot getStageNanos(BufferProcessStage stage) {
+        HistogramSnapshot snapshot = stageNanos.get(stage);
+        return snapshot != null ? snapshot : HistogramSnapshot.EMPTY;
+    }
+
+    public BufferProcessorMetricsSnapshot merge(BufferProcessorMetricsSnapshot other) {
+        Map<BufferProcessStage, HistogramSnapshot> mergedStageNanos = new EnumMap<>(BufferProcessStage.class);
+        for (BufferProcessStage stage : BufferProcessStage.values()) {
+            mergedStageNanos.put(stage, getStageNanos(stage).merge(other.getStageNanos(stage)));
+        }
+
+        return new BufferProcessorMetricsSnapshot(queueSize + other.queueSize, submitCount + other.submitCount,
+                rejectCount + other.rejectCount, groupFailCount + other.groupFailCount,
+                handleFailCount + other.handleFailCount, abandonCount + other.abandonCount,
+                retryCount + other.retryCount,
+                batchSize.merge(other.batchSize),
+                groupCount.merge(other.groupCount), mergedStageNanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{queueSize=").append(queueSize)
+                .append(", submitCount=").append(submitCount)
+                .append(", rejectCount=").append(rejectCount)
+                .append(", groupFailCount=").append(groupFailCount)
+                .append(", handleFailCount=").append(handleFailCount)
+                .append(", abandonCount=").append(abandonCount)
+                .append(", retryCount=").append(retryCount)
+                .append(", batchSize=").append(batchSize)
+                .append(", groupCount=").append(groupCount);
+        for (BufferProcessStage stage : BufferProcessStage.values()) {
+            sb.append(", ").append(stage).append("=").append(getStageNanos(stage));
+        }
+        return sb.append("}").toString();
+    }
+
+}
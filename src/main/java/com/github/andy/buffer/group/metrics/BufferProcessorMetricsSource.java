@@ -0,0 +1,9 @@
+package com.github.andy.buffer.group.metrics;
+
+/**
+ * 可提供监控统计快照的缓冲处理器
+ */
+public interface BufferProcessorMetricsSource {
+
+    BufferProcessorMetricsSnapshot getMetrics();
+}
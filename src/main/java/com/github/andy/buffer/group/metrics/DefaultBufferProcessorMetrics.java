@@ -0,0 +1,106 @@
+package com.github.andy.buffer.group.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 默认的无锁监控统计，计数使用LongAdder，分布使用对数线性直方图
+ */
+public class DefaultBufferProcessorMetrics implements BufferProcessorMetrics {
+
+    private static final BufferProcessorMetricsFactory FACTORY = new BufferProcessorMetricsFactory() {
+        @Override
+        public BufferProcessorMetrics create() {
+            return new DefaultBufferProcessorMetrics();
+        }
+    };
+
+    private final LongAdder submitCount = new LongAdder();
+
+    private final LongAdder rejectCount = new LongAdder();
+
+    private final LongAdder groupFailCount = new LongAdder();
+
+    private final LongAdder handleFailCount = new LongAdder();
+
+    private final LongAdder abandonCount = new LongAdder();
+
+    private final LongAdder retryCount = new LongAdder();
+
+    private final LongHistogram batchSize = new LongHistogram();
+
+    private final LongHistogram groupCount = new LongHistogram();
+
+    private final LongHistogram[] stageNanos;
+
+    public DefaultBufferProcessorMetrics() {
+        BufferProcessStage[] stages = BufferProcessStage.values();
+        stageNanos = new LongHistogram[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            stageNanos[i] = new LongHistogram();
+        }
+    }
+
+    public static BufferProcessorMetricsFactory factory() {
+        return FACTORY;
+    }
+
+    @Override
+    public boolean isTimingEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordSubmit(int count) {
+        submitCount.add(count);
+    }
+
+    @Override
+    public void recordReject(int count) {
+        rejectCount.add(count);
+    }
+
+    @Override
+    public void recordBatch(int batchSize, int groupCount) {
+        this.batchSize.record(batchSize);
+        this.groupCount.record(groupCount);
+    }
+
+    @Override
+    public void recordStage(BufferProcessStage stage, long nanos) {
+        stageNanos[stage.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void recordGroupFail(int count) {
+        groupFailCount.add(count);
+    }
+
+    @Override
+    public void recordHandleFail(int count) {
+        handleFailCount.add(count);
+    }
+
+    @Override
+    public void recordAbandon(int count) {
+        abandonCount.add(count);
+    }
+
+    @Override
+    public void recordRetry(int count) {
+        retryCount.add(count);
+    }
+
+    @Override
+    public BufferProcessorMetricsSnapshot snapshot(long queueSize) {
+        Map<BufferProcessStage, HistogramSnapshot> stageSnapshots = new EnumMap<>(BufferProcessStage.class);
+        for (BufferProcessStage stage : BufferProcessStage.values()) {
+            stageSnapshots.put(stage, stageNanos[stage.ordinal()].snapshot());
+        }
+
+        return new BufferProcessorMetricsSnapshot(queueSize, submitCount.sum(), rejectCount.sum(),
+                groupFailCount.sum(), handleFailCount.sum(), abandonCount.sum(), retryCount.sum(), batchSize.snapshot(), groupCount.snapshot(), stageSnapshots);
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.github.andy.buffer.group.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * 直方图统计快照，可合并多个缓冲处理器的统计
+ */
+public class HistogramSnapshot {
+
+    private static final long[] EMPTY_BUCKETS = new long[LongHistogram.BUCKET_COUNT];
+
+    static final HistogramSnapshot EMPTY = new HistogramSnapshot(0, 0, 0, EMPTY_BUCKETS);
+
+    private final long count;
+
+    private final long sum;
+
+    private final long max;
+
+    /**
+     * 分桶计数，JMX客户端重建的快照为null，此时使用重建时的百分位数
+     */
+    private final long[] buckets;
+
+    private final long p50;
+
+    private final long p90;
+
+    private final long p99;
+
+    HistogramSnapshot(long count, long sum, long max, long[] buckets) {
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+        this.buckets = buckets;
+        this.p50 = bucketPercentile(0.5);
+        this.p90 = bucketPercentile(0.9);
+        this.p99 = bucketPercentile(0.99);
+    }
+
+    /**
+     * 供JMX客户端重建快照，不含分布，保留重建时的百分位数
+     */
+    @ConstructorProperties({"count", "mean", "max", "p50", "p90", "p99"})
+    public HistogramSnapshot(long count, double mean, long max, long p50, long p90, long p99) {
+        this.count = count;
+        this.sum = (long) (mean * count);
+        this.max = max;
+        this.buckets = null;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * 百分位数的近似值，不含分布的快照取不小于quantile的最近的p50/p90/p99
+     *
+     * @param quantile 0到1之间
+     */
+    public long percentile(double quantile) {
+        if (buckets == null) {
+            return quantile <= 0.5 ? p50 : quantile <= 0.9 ? p90 : quantile <= 0.99 ? p99 : max;
+        }
+        return bucketPercentile(quantile);
+    }
+
+    private long bucketPercentile(double quantile) {
+        if (count == 0 || buckets == null) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(LongHistogram.bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 合并统计；任一方不含分布时，合并后的百分位数取两者中较大的值作为上界
+     */
+    public HistogramSnapshot merge(HistogramSnapshot other) {
+        if (buckets == null || other.buckets == null) {
+            long mergedCount = count + other.count;
+            return new HistogramSnapshot(mergedCount, mergedCount == 0 ? 0 : (double) (sum + other.sum) / mergedCount,
+                    Math.max(max, other.max), Math.max(p50, other.p50), Math.max(p90, other.p90), Math.max(p99, other.p99));
+        }
+
+        long[] mergedBuckets = new long[LongHistogram.BUCKET_COUNT];
+        for (int i = 0; i < mergedBuckets.length; i++) {
+            mergedBuckets[i] = buckets[i] + other.buckets[i];
+        }
+        return new HistogramSnapshot(count + other.count, sum + other.sum, Math.max(max, other.max), mergedBuckets);
+    }
+
+    @Override
+    public String toString() {
+        return "{count=" + count + ", mean=" + (long) getMean() + ", p50=" + getP50() + ", p90=" + getP90()
+                + ", p99=" + getP99() + ", max=" + max + "}";
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.github.andy.buffer.group.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的对数线性直方图，每个2的幂区间分为4个桶，相对误差不超过25%
+ */
+class LongHistogram {
+
+    static final int BUCKET_COUNT = 256;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    HistogramSnapshot snapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = buckets.get(i);
+        }
+        return new HistogramSnapshot(count.sum(), sum.sum(), max.get(), bucketCounts);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 4) {
+            return (int) value;
+        }
+
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - 2)) & 3;
+        return 4 + (msb - 2) * 4 + sub;
+    }
+
+    /**
+     * 桶内的最大值
+     */
+    static long bucketUpperBound(int index) {
+        if (index < 4) {
+            return index;
+        }
+
+        int msb = (index - 4) / 4 + 2;
+        int sub = (index - 4) % 4;
+        return (((4L | sub) + 1) << (msb - 2)) - 1;
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.github.andy.buffer.group.metrics;
+
+/**
+ * 不做统计的监控实现（默认），缓冲处理器不读取时钟
+ */
+public final class NoopBufferProcessorMetrics implements BufferProcessorMetrics {
+
+    public static final NoopBufferProcessorMetrics INSTANCE = new NoopBufferProcessorMetrics();
+
+    private static final BufferProcessorMetricsFactory FACTORY = new BufferProcessorMetricsFactory() {
+        @Override
+        public BufferProcessorMetrics create() {
+            return INSTANCE;
+        }
+    };
+
+    private NoopBufferProcessorMetrics() {
+    }
+
+    public static BufferProcessorMetricsFactory factory() {
+        return FACTORY;
+    }
+
+    @Override
+    public boolean isTimingEnabled() {
+        return false;
+    }
+
+    @Override
+    public void recordSubmit(int count) {
+    }
+
+    @Override
+    public void recordReject(int count) {
+    }
+
+    @Override
+    public void recordBatch(int batchSize, int groupCount) {
+    }
+
+    @Override
+    public void recordStage(BufferProcessStage stage, long nanos) {
+    }
+
+    @Override
+    public void recordGroupFail(int count) {
+    }
+
+    @Override
+    public void recordHandleFail(int count) {
+    }
+
+    @Override
+    public void recordAbandon(int count) {
+    }
+
+    @Override
+    public void recordRetry(int count) {
+    }
+
+    @Override
+    public BufferProcessorMetricsSnapshot snapshot(long queueSize) {
+        return BufferProcessorMetricsSnapshot.EMPTY;
+    }
+
+}
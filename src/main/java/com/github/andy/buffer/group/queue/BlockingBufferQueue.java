@@ -0,0 +1,69 @@
+package com.github.andy.buffer.group.queue;
+
+import com.google.common.collect.Queues;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于BlockingQueue的缓冲队列
+ */
+public class BlockingBufferQueue<T> implements DroppableBufferQueue<T> {
+
+    private final BlockingQueue<T> queue;
+
+    public BlockingBufferQueue(BlockingQueue<T> queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public boolean offer(T element) {
+        return queue.offer(element);
+    }
+
+    @Override
+    public void put(T element) throws InterruptedException {
+        queue.put(element);
+    }
+
+    @Override
+    public boolean offer(T element, long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.offer(element, timeout, unit);
+    }
+
+    @Override
+    public void putAll(List<? extends T> elements) throws InterruptedException {
+        // BlockingQueue没有批量写入，逐个写入
+        for (T element : elements) {
+            queue.put(element);
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> buffer, int maxElements) {
+        return queue.drainTo(buffer, maxElements);
+    }
+
+    @Override
+    public T poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public int drain(Collection<? super T> buffer, int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        return Queues.drain(queue, buffer, maxElements, timeout, unit);
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.github.andy.buffer.group.queue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓冲处理器的缓冲队列，多个提交线程写入，消费线程批量取出
+ */
+public interface BufferQueue<T> {
+
+    /**
+     * 写入元素，队列已满时立即返回false
+     */
+    boolean offer(T element);
+
+    /**
+     * 写入元素，队列已满时阻塞等待
+     */
+    void put(T element) throws InterruptedException;
+
+    /**
+     * 写入元素，队列已满时最多等待timeout
+     */
+    boolean offer(T element, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * 按顺序批量写入元素，队列空间不足时阻塞等待
+     */
+    void putAll(List<? extends T> elements) throws InterruptedException;
+
+    /**
+     * 不等待地取出最多maxElements个元素
+     *
+     * @return 取出的元素个数
+     */
+    int drainTo(Collection<? super T> buffer, int maxElements);
+
+    /**
+     * 取出最多maxElements个元素，不足时在timeout内等待后续写入的元素
+     *
+     * @return 取出的元素个数
+     */
+    int drain(Collection<? super T> buffer, int maxElements, long timeout, TimeUnit unit) throws InterruptedException;
+
+    int size();
+
+    boolean isEmpty();
+}
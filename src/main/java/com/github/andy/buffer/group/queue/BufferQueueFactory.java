@@ -0,0 +1,9 @@
+package com.github.andy.buffer.group.queue;
+
+/**
+ * 缓冲处理器的缓冲队列的构建工厂
+ */
+public interface BufferQueueFactory {
+
+    <T> BufferQueue<T> create(int capacity);
+}
@@ -0,0 +1,41 @@
+package com.github.andy.buffer.group.queue;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 内置的缓冲队列构建工厂
+ */
+public final class BufferQueues {
+
+    private static final BufferQueueFactory LINKED_BLOCKING = new BufferQueueFactory() {
+        @Override
+        public <T> BufferQueue<T> create(int capacity) {
+            return new BlockingBufferQueue<T>(new LinkedBlockingQueue<T>(capacity));
+        }
+    };
+
+    private static final BufferQueueFactory MPSC_RING = new BufferQueueFactory() {
+        @Override
+        public <T> BufferQueue<T> create(int capacity) {
+            return new MpscRingBufferQueue<T>(capacity);
+        }
+    };
+
+    private BufferQueues() {
+    }
+
+    /**
+     * 基于LinkedBlockingQueue的缓冲队列（默认）
+     */
+    public static BufferQueueFactory linkedBlocking() {
+        return LINKED_BLOCKING;
+    }
+
+    /**
+     * 预分配数组的无锁多生产者单消费者环形缓冲队列，适用于大量线程并发提交的高吞吐场景
+     */
+    public static BufferQueueFactory mpscRing() {
+        return MPSC_RING;
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.github.andy.buffer.group.queue;
+
+/**
+ * 支持由非消费线程丢弃元素的缓冲队列，溢出策略DROP_OLDEST需要缓冲队列实现此接口
+ */
+public interface DroppableBufferQueue<T> extends BufferQueue<T> {
+
+    /**
+     * 由非消费线程取出最早的元素，队列为空时返回null
+     */
+    T poll();
+}
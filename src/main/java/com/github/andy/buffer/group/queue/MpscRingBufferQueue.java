@@ -0,0 +1,221 @@
+package com.github.andy.buffer.group.queue;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 预分配数组的无锁多生产者单消费者环形缓冲队列
+ * <p>
+ * 提交线程通过CAS领取写入位置后写入槽位，写入不分配节点也不加锁，批量写入时一次CAS领取多个连续位置；
+ * 消费线程顺序取出已写入的槽位，整批取出后只推进一次消费索引。
+ * 只允许一个线程同时取出元素。
+ */
+public class MpscRingBufferQueue<T> implements BufferQueue<T> {
+
+    private static final int MAX_SPINS = 64;
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final AtomicReferenceArray<T> buffer;
+
+    private final int mask;
+
+    private final int capacity;
+
+    /**
+     * 下一个待领取的写入位置
+     */
+    private final AtomicLong producerIndex = new AtomicLong();
+
+    /**
+     * 下一个待取出的位置，只由消费线程推进
+     */
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    public MpscRingBufferQueue(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= (1 << 30), "capacity必须大于0且不大于2^30。");
+        int bufferSize = Integer.highestOneBit(capacity);
+        if (bufferSize < capacity) {
+            bufferSize <<= 1;
+        }
+
+        this.buffer = new AtomicReferenceArray<>(bufferSize);
+        this.mask = bufferSize - 1;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index - consumerIndex.get() >= capacity) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+
+        buffer.lazySet(offset(index), element);
+        return true;
+    }
+
+    @Override
+    public void put(T element) throws InterruptedException {
+        int waitTimes = 0;
+        while (!offer(element)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            backoff(++waitTimes, MAX_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public boolean offer(T element, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(element)) {
+            return true;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int waitTimes = 0;
+        while (!offer(element)) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            backoff(++waitTimes, Math.min(remainingNanos, MAX_PARK_NANOS));
+        }
+        return true;
+    }
+
+    @Override
+    public void putAll(List<? extends T> elements) throws InterruptedException {
+        // 领取位置前检查，避免领取后未写入的槽位阻塞消费
+        for (T element : elements) {
+            if (element == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        int size = elements.size();
+        int written = 0;
+        int waitTimes = 0;
+        while (written < size) {
+            // 一次领取剩余空间内尽可能多的连续位置
+            long index;
+            int claimed;
+            do {
+                index = producerIndex.get();
+                long free = capacity - (index - consumerIndex.get());
+                claimed = (int) Math.min(free, size - written);
+            } while (claimed > 0 && !producerIndex.compareAndSet(index, index + claimed));
+
+            if (claimed <= 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                backoff(++waitTimes, MAX_PARK_NANOS);
+                continue;
+            }
+
+            for (int i = 0; i < claimed; i++) {
+                buffer.lazySet(offset(index + i), elements.get(written + i));
+            }
+            written += claimed;
+            waitTimes = 0;
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> buffer, int maxElements) {
+        long index = consumerIndex.get();
+        int count = 0;
+        while (count < maxElements) {
+            int offset = offset(index + count);
+            T element = this.buffer.get(offset);
+            if (element == null) {
+                // 空队列或已领取位置但未写入完成
+                break;
+            }
+
+            this.buffer.lazySet(offset, null);
+            buffer.add(element);
+            count++;
+        }
+
+        if (count > 0) {
+            consumerIndex.lazySet(index + count);
+        }
+        return count;
+    }
+
+    @Override
+    public int drain(Collection<? super T> buffer, int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        int count = drainTo(buffer, maxElements);
+        if (count >= maxElements || timeout <= 0) {
+            return count;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int waitTimes = 0;
+        while (count < maxElements) {
+            int drained = drainTo(buffer, maxElements - count);
+            if (drained > 0) {
+                count += drained;
+                waitTimes = 0;
+                continue;
+            }
+
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                break;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            backoff(++waitTimes, Math.min(remainingNanos, MAX_PARK_NANOS));
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        long size = producerIndex.get() - consumerIndex.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return producerIndex.get() == consumerIndex.get();
+    }
+
+    private int offset(long index) {
+        return (int) index & mask;
+    }
+
+    private static void backoff(int waitTimes, long maxParkNanos) {
+        if (waitTimes <= MAX_SPINS) {
+            return;
+        }
+
+        if (waitTimes <= MAX_SPINS * 2) {
+            Thread.yield();
+            return;
+        }
+
+        LockSupport.parkNanos(maxParkNanos);
+    }
+
+}
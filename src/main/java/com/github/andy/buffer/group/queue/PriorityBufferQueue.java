@@ -0,0 +1,244 @@
+package com.github.andy.buffer.group.queue;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按优先级分道的缓冲队列，优先级0最高
+ * <p>
+ * 各优先级共享capacity个位置；取出一批时按权重分配各优先级的份额，有元素的优先级至少分到1个，
+ * 高优先级优先取出且低优先级不会被饿死，份额未用完时剩余位置按优先级从高到低补足。
+ * 队列已满时poll取出最低优先级中最早的元素，DROP_OLDEST策略优先丢弃低优先级的元素。
+ * 只允许一个线程同时取出元素。
+ */
+public class PriorityBufferQueue<T> implements DroppableBufferQueue<T> {
+
+    private final Queue<T>[] levelQueues;
+
+    private final int[] weights;
+
+    private final Function<? super T, Integer> priorityFunction;
+
+    private final int capacity;
+
+    /**
+     * 剩余的写入位置，写入前获取，取出后释放
+     */
+    private final Semaphore permits;
+
+    /**
+     * 在drain中等待元素的消费线程，写入后唤醒
+     */
+    private volatile Thread drainWaiter;
+
+    /**
+     * @param capacity         各优先级共享的容量
+     * @param weights          各优先级的权重，长度为优先级数，权重需大于0
+     * @param priorityFunction 元素的优先级，超出范围时按最近的优先级
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityBufferQueue(int capacity, int[] weights, Function<? super T, Integer> priorityFunction) {
+        Preconditions.checkArgument(capacity > 0, "capacity必须大于0。");
+        Preconditions.checkArgument(weights != null && weights.length > 0, "weights不能为空。");
+        Preconditions.checkArgument(priorityFunction != null, "priorityFunction为Null。");
+        for (int weight : weights) {
+            Preconditions.checkArgument(weight > 0, "weights中的权重必须大于0。");
+        }
+
+        this.levelQueues = new Queue[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            levelQueues[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.weights = weights.clone();
+        this.priorityFunction = priorityFunction;
+        this.capacity = capacity;
+        this.permits = new Semaphore(capacity);
+    }
+
+    @Override
+    public boolean offer(T element) {
+        int level = levelOf(element);
+        if (!permits.tryAcquire()) {
+            return false;
+        }
+        enqueue(level, element);
+        return true;
+    }
+
+    @Override
+    public void put(T element) throws InterruptedException {
+        int level = levelOf(element);
+        permits.acquire();
+        enqueue(level, element);
+    }
+
+    @Override
+    public boolean offer(T element, long timeout, TimeUnit unit) throws InterruptedException {
+        int level = levelOf(element);
+        if (!permits.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        enqueue(level, element);
+        return true;
+    }
+
+    @Override
+    public void putAll(List<? extends T> elements) throws InterruptedException {
+        // 获取位置前计算全部元素的优先级，优先级函数抛出异常时不占用位置
+        int[] levels = new int[elements.size()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = levelOf(elements.get(i));
+        }
+
+        // 超过容量的批次分段写入，避免一次获取的位置数超过容量而永远等待
+        int from = 0;
+        while (from < elements.size()) {
+            int to = Math.min(elements.size(), from + capacity);
+            permits.acquire(to - from);
+            for (int i = from; i < to; i++) {
+                levelQueues[levels[i]].offer(elements.get(i));
+            }
+            signalDrainWaiter();
+            from = to;
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> buffer, int maxElements) {
+        int totalWeight = 0;
+        for (int i = 0; i < levelQueues.length; i++) {
+            if (!levelQueues[i].isEmpty()) {
+                totalWeight += weights[i];
+            }
+        }
+        if (totalWeight == 0) {
+            return 0;
+        }
+
+        // 按权重分配有元素的优先级的份额，至少1个
+        int count = 0;
+        for (int i = 0; i < levelQueues.length && count < maxElements; i++) {
+            if (!levelQueues[i].isEmpty()) {
+                int quota = (int) Math.max(1L, (long) maxElements * weights[i] / totalWeight);
+                count += pollLevel(i, buffer, Math.min(quota, maxElements - count));
+            }
+        }
+
+        // 剩余位置按优先级从高到低补足
+        for (int i = 0; i < levelQueues.length && count < maxElements; i++) {
+            count += pollLevel(i, buffer, maxElements - count);
+        }
+
+        permits.release(count);
+        return count;
+    }
+
+    @Override
+    public T poll() {
+        for (int i = levelQueues.length - 1; i >= 0; i--) {
+            T element = levelQueues[i].poll();
+            if (element != null) {
+                permits.release();
+                return element;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int drain(Collection<? super T> buffer, int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        int count = drainTo(buffer, maxElements);
+        if (count >= maxElements || timeout <= 0) {
+            return count;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (count < maxElements) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                break;
+            }
+
+            drainWaiter = Thread.currentThread();
+            try {
+                // 登记后再次检查，避免与写入线程的唤醒交错导致丢失唤醒
+                if (isEmpty()) {
+                    LockSupport.parkNanos(this, remainingNanos);
+                }
+            } finally {
+                drainWaiter = null;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            count += drainTo(buffer, maxElements - count);
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return capacity - permits.availablePermits();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Queue<T> levelQueue : levelQueues) {
+            if (!levelQueue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void enqueue(int level, T element) {
+        levelQueues[level].offer(element);
+        signalDrainWaiter();
+    }
+
+    private static void checkNotNull(Object element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    private void signalDrainWaiter() {
+        Thread waiter = drainWaiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * 在获取位置前调用，元素为null或优先级函数抛出异常时不占用位置
+     */
+    private int levelOf(T element) {
+        checkNotNull(element);
+        Integer priority = priorityFunction.apply(element);
+        if (priority == null || priority < 0) {
+            return 0;
+        }
+        return Math.min(priority, levelQueues.length - 1);
+    }
+
+    private int pollLevel(int level, Collection<? super T> buffer, int maxElements) {
+        Queue<T> levelQueue = levelQueues[level];
+        int count = 0;
+        T element;
+        while (count < maxElements && (element = levelQueue.poll()) != null) {
+            buffer.add(element);
+            count++;
+        }
+        return count;
+    }
+
+}
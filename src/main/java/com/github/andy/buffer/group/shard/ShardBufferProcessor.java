@@ -1,23 +1,82 @@
 package com.github.andy.buffer.group.shard;
 
+import com.github.andy.buffer.group.BufferBatchFuture;
+import com.github.andy.buffer.group.BufferBatchFutureTask;
 import com.github.andy.buffer.group.BufferFuture;
 import com.github.andy.buffer.group.BufferGroupProcessor;
+import com.github.andy.buffer.group.BufferGroupProcessorCreator;
+import com.github.andy.buffer.group.exception.BufferRejectedException;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsJmx;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsSnapshot;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsSource;
+
+import com.google.common.base.Preconditions;
+
+import javax.management.ObjectName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Shard实体缓冲分组处理器
  * <p>
+ * 由Builder创建时可通过resize在运行时增减分片：新增的分片追加在末尾，移除的分片总是末尾的分片，
+ * 配合ShardBufferProcessorStrategies.consistentHash路由时只有约1/N的实体改变路由。
+ * 被移除的分片不再接收新实体，已缓冲的实体在原分片中处理完成后终止；并发提交到被移除分片的实体按新的分片重新路由。
+ * 调整分片数前后同一路由的实体不保证处理顺序。
+ * <p>
  * Created by yanshanguang on 17/12/11.
  */
-public class ShardBufferProcessor<E, G, R> {
+public class ShardBufferProcessor<E, G, R> implements BufferProcessorMetricsSource {
 
-    private final BufferGroupProcessor<E, G, R>[] bufferProcessors;
+    /**
+     * 当前接收实体的分片，调整分片数时整体替换
+     */
+    private volatile BufferGroupProcessor<E, G, R>[] bufferProcessors;
 
     private final ShardBufferProcessorStrategy<E> shardBufferProcessorStrategy;
 
+    /**
+     * 创建新增分片的创建器，为null时不支持调整分片数
+     */
+    private final BufferGroupProcessorCreator<E, G, R> bufferProcessorCreator;
+
+    /**
+     * 已移除、正在处理剩余实体的分片
+     */
+    private final List<BufferGroupProcessor<E, G, R>> retiringProcessors = new CopyOnWriteArrayList<>();
+
+    /**
+     * 已移除并终止的分片合并后的监控统计
+     */
+    private volatile BufferProcessorMetricsSnapshot retiredMetrics = BufferProcessorMetricsSnapshot.EMPTY;
+
+    private final Object resizeLock = new Object();
+
+    private volatile boolean shutdown;
+
+    /**
+     * 注册到JMX的汇总监控统计，关闭时注销
+     */
+    private volatile ObjectName metricsObjectName;
+
     public ShardBufferProcessor(BufferGroupProcessor<E, G, R>[] bufferProcessors,
                                 ShardBufferProcessorStrategy<E> shardBufferProcessorStrategy) {
+        this(bufferProcessors, shardBufferProcessorStrategy, null);
+    }
+
+    public ShardBufferProcessor(BufferGroupProcessor<E, G, R>[] bufferProcessors,
+                                ShardBufferProcessorStrategy<E> shardBufferProcessorStrategy,
+                                BufferGroupProcessorCreator<E, G, R> bufferProcessorCreator) {
         this.bufferProcessors = bufferProcessors;
         this.shardBufferProcessorStrategy = shardBufferProcessorStrategy;
+        this.bufferProcessorCreator = bufferProcessorCreator;
     }
 
     public static <E, G, R> ShardBufferProcessorBuilder<E, G, R> newBuilder() {
@@ -32,15 +91,326 @@ public class ShardBufferProcessor<E, G, R> {
      * @throws InterruptedException
      */
     public BufferFuture<R> submit(E element) throws InterruptedException {
-        BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
-        return processor.submit(element);
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            BufferFuture<R> future = processor.submit(element);
+            if (!isRetiredRejected(processor, future)) {
+                return future;
+            }
+        }
+    }
+
+    /**
+     * 不阻塞地提交请求数据，缓冲队列已满时按溢出策略处理
+     *
+     * @param element
+     * @return
+     */
+    public BufferFuture<R> trySubmit(E element) {
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            BufferFuture<R> future = processor.trySubmit(element);
+            if (!isRetiredRejected(processor, future)) {
+                return future;
+            }
+        }
+    }
+
+    /**
+     * 提交请求数据，缓冲队列已满时最多等待timeout，超时后按溢出策略处理
+     *
+     * @param element
+     * @param timeout
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     */
+    public BufferFuture<R> submit(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            BufferFuture<R> future = processor.submit(element, timeout, unit);
+            if (!isRetiredRejected(processor, future)) {
+                return future;
+            }
+        }
+    }
+
+    /**
+     * 提交带截止时间的请求数据，超过截止时间仍未交给分组处理时丢弃
+     */
+    public BufferFuture<R> submitWithDeadline(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            BufferFuture<R> future = processor.submitWithDeadline(element, timeout, unit);
+            if (!isRetiredRejected(processor, future)) {
+                return future;
+            }
+        }
+    }
+
+    /**
+     * 批量提交请求数据到缓冲处理器入口，一次遍历按分片路由，每个分片的缓冲处理器批量写入一次
+     *
+     * @param elements
+     * @return 汇总的Future，可通过getFutures按提交顺序获取每个实体的Future
+     * @throws InterruptedException
+     * @throws NullPointerException 任一实体为null，此时不提交任何实体
+     */
+    @SuppressWarnings("unchecked")
+    public BufferBatchFuture<R> submitAll(Collection<? extends E> elements) throws InterruptedException {
+        // 先检查全部实体，避免部分实体已路由或提交后才失败
+        for (E element : elements) {
+            if (element == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        BufferGroupProcessor<E, G, R>[] bufferProcessors = this.bufferProcessors;
+        int processorsCount = bufferProcessors.length;
+        int[] elementProcessorIndexes = new int[elements.size()];
+        List<E>[] processorElements = new List[processorsCount];
+
+        // 按分片路由实体
+        int elementIndex = 0;
+        for (E element : elements) {
+            int processorsIndex = routeProcessorIndex(bufferProcessors, element);
+            if (processorElements[processorsIndex] == null) {
+                processorElements[processorsIndex] = new ArrayList<>();
+            }
+            processorElements[processorsIndex].add(element);
+            elementProcessorIndexes[elementIndex++] = processorsIndex;
+        }
+
+        // 每个分片批量提交
+        List<BufferFuture<R>>[] processorFutures = new List[processorsCount];
+        for (int i = 0; i < processorsCount; i++) {
+            if (processorElements[i] != null) {
+                processorFutures[i] = bufferProcessors[i].submitAll(processorElements[i]).getFutures();
+            }
+        }
+
+        // 按提交顺序合并每个实体的Future，被并发移除的分片拒绝的实体按新的分片重新提交
+        int[] processorCursors = new int[processorsCount];
+        List<BufferFuture<R>> futures = new ArrayList<>(elementProcessorIndexes.length);
+        for (int processorsIndex : elementProcessorIndexes) {
+            int cursor = processorCursors[processorsIndex]++;
+            BufferFuture<R> future = processorFutures[processorsIndex].get(cursor);
+            if (isRetiredRejected(bufferProcessors[processorsIndex], future)) {
+                future = submit(processorElements[processorsIndex].get(cursor));
+            }
+            futures.add(future);
+        }
+        return new BufferBatchFutureTask<R>(futures);
+    }
+
+    /**
+     * 提交请求数据到缓冲处理器，不返回处理结果
+     *
+     * @param element
+     * @throws InterruptedException
+     */
+    public void execute(E element) throws InterruptedException {
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            try {
+                processor.execute(element);
+                return;
+            } catch (RejectedExecutionException ex) {
+                if (!processor.isShutdown() || shutdown) {
+                    throw ex;
+                }
+                // 分片已被并发移除，按新的分片重新路由
+            }
+        }
     }
 
     public int getProcessorCount() {
         return bufferProcessors.length;
     }
 
+    /**
+     * 增加一个分片
+     *
+     * @return 调整后的分片数
+     */
+    public int addProcessor() {
+        synchronized (resizeLock) {
+            return resize(bufferProcessors.length + 1);
+        }
+    }
+
+    /**
+     * 移除末尾的一个分片，被移除的分片处理完已缓冲的实体后终止
+     *
+     * @return 调整后的分片数
+     */
+    public int removeProcessor() {
+        synchronized (resizeLock) {
+            return resize(bufferProcessors.length - 1);
+        }
+    }
+
+    /**
+     * 调整分片数：增加时在末尾追加新分片，减少时移除末尾的分片，被移除的分片处理完已缓冲的实体后终止
+     *
+     * @return 调整后的分片数
+     */
+    public int resize(int processorsCount) {
+        Preconditions.checkArgument(processorsCount > 0, "[ShardBufferProcessor] 分片数必须大于0。");
+        Preconditions.checkState(bufferProcessorCreator != null, "[ShardBufferProcessor] 未设置分片创建器，不支持调整分片数。");
+
+        synchronized (resizeLock) {
+            Preconditions.checkState(!shutdown, "[ShardBufferProcessor] 缓冲处理器已关闭，不能调整分片数。");
+            pruneRetiredProcessors();
+
+            BufferGroupProcessor<E, G, R>[] currentProcessors = bufferProcessors;
+            int currentCount = currentProcessors.length;
+            if (processorsCount == currentCount) {
+                return currentCount;
+            }
+
+            BufferGroupProcessor<E, G, R>[] newProcessors = Arrays.copyOf(currentProcessors, processorsCount);
+            for (int i = currentCount; i < processorsCount; i++) {
+                newProcessors[i] = bufferProcessorCreator.get();
+            }
+            bufferProcessors = newProcessors;
+
+            // 先切换路由再关闭被移除的分片，关闭后并发提交到其中的实体按新的分片重新路由
+            for (int i = processorsCount; i < currentCount; i++) {
+                retiringProcessors.add(currentProcessors[i]);
+                currentProcessors[i].shutdown();
+            }
+            return processorsCount;
+        }
+    }
+
+    /**
+     * 关闭全部分片的缓冲处理器，已缓冲的实体处理完成后终止
+     */
+    public void shutdown() {
+        synchronized (resizeLock) {
+            shutdown = true;
+        }
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessors) {
+            bufferProcessor.shutdown();
+        }
+        BufferProcessorMetricsJmx.unregister(metricsObjectName);
+    }
+
+    /**
+     * 立即停止全部分片的缓冲处理器，已缓冲未处理的实体以失败响应
+     */
+    public void shutdownNow() {
+        synchronized (resizeLock) {
+            shutdown = true;
+        }
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessors) {
+            bufferProcessor.shutdownNow();
+        }
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : retiringProcessors) {
+            retiringProcessor.shutdownNow();
+        }
+        BufferProcessorMetricsJmx.unregister(metricsObjectName);
+    }
+
+    /**
+     * 全部分片缓冲处理器合并后的监控统计快照
+     */
+    @Override
+    public BufferProcessorMetricsSnapshot getMetrics() {
+        BufferProcessorMetricsSnapshot snapshot = retiredMetrics;
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessors) {
+            snapshot = snapshot.merge(bufferProcessor.getMetrics());
+        }
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : retiringProcessors) {
+            snapshot = snapshot.merge(retiringProcessor.getMetrics());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 获取指定分片缓冲处理器的监控统计快照
+     */
+    public BufferProcessorMetricsSnapshot getMetrics(int processorIndex) {
+        return bufferProcessors[processorIndex].getMetrics();
+    }
+
+    /**
+     * 将合并后的监控统计注册到JMX，关闭时注销
+     */
+    public void registerMetricsJmx(String name) {
+        metricsObjectName = BufferProcessorMetricsJmx.register(name, this);
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessors) {
+            if (!bufferProcessor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : retiringProcessors) {
+            if (!retiringProcessor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessors) {
+            if (!bufferProcessor.isTerminated()) {
+                return false;
+            }
+        }
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : retiringProcessors) {
+            if (!retiringProcessor.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 已终止的被移除分片合并监控统计后释放
+     */
+    private void pruneRetiredProcessors() {
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : retiringProcessors) {
+            if (retiringProcessor.isTerminated()) {
+                retiredMetrics = retiredMetrics.merge(retiringProcessor.getMetrics());
+                retiringProcessors.remove(retiringProcessor);
+            }
+        }
+    }
+
+    /**
+     * 实体被提交时已移除的分片拒绝，需按新的分片重新路由
+     */
+    private boolean isRetiredRejected(BufferGroupProcessor<E, G, R> processor, BufferFuture<R> future) {
+        if (!future.isDone() || !processor.isShutdown() || shutdown) {
+            return false;
+        }
+
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException ex) {
+            return ex.getCause() != null && ex.getCause().getClass() == BufferRejectedException.class;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
     private BufferGroupProcessor<E, G, R> routeProcessor(E element) {
+        BufferGroupProcessor<E, G, R>[] bufferProcessors = this.bufferProcessors;
+        return bufferProcessors[routeProcessorIndex(bufferProcessors, element)];
+    }
+
+    private int routeProcessorIndex(BufferGroupProcessor<E, G, R>[] bufferProcessors, E element) {
         int processorsCount = bufferProcessors.length;
         int processorsIndex = shardBufferProcessorStrategy.routeIDX(processorsCount, element);
 
@@ -48,7 +418,7 @@ public class ShardBufferProcessor<E, G, R> {
             throw new RuntimeException("[ShardBufferProcessor] 路由缓冲处理器的索引不在实际索引范围内！");
         }
 
-        return bufferProcessors[processorsIndex];
+        return processorsIndex;
     }
 
 }
\ No newline at end of file
@@ -1,11 +1,14 @@
 package com.github.andy.buffer.group.shard;
 
-import com.github.andy.buffer.group.BufferGroupHandler;
-import com.github.andy.buffer.group.BufferGroupProcessorCreator;
-import com.github.andy.buffer.group.BufferGroupStrategy;
-import com.github.andy.buffer.group.BufferProcessExecutorFactory;
+import com.github.andy.buffer.group.*;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsFactory;
+import com.github.andy.buffer.group.metrics.NoopBufferProcessorMetrics;
+import com.github.andy.buffer.group.queue.BufferQueueFactory;
+import com.github.andy.buffer.group.queue.BufferQueues;
 import com.google.common.base.Preconditions;
 
+import java.util.concurrent.Executor;
+
 /**
  * Created by yanshanguang on 18/1/30.
  */
@@ -16,10 +19,40 @@ public class ShardBufferProcessorBuilderV2<E, G, R, SK> {
     private int consumeWaitTimeoutMs;
     private BufferGroupStrategy<E, G> bufferGroupStrategy;
     private BufferGroupHandler<E, G, R> bufferGroupHandler;
+    private BufferGroupResultHandler<E, G, R> bufferGroupResultHandler;
+    private BufferQueueFactory bufferQueueFactory = BufferQueues.linkedBlocking();
+    private ConsumeIdleStrategy consumeIdleStrategy = ConsumeIdleStrategies.blocking();
+    private BufferOverflowPolicy overflowPolicy = BufferOverflowPolicy.BLOCK;
+    private ConsumeBatchControllerFactory consumeBatchControllerFactory = ConsumeBatchControllers.fixed();
+    private int futureTaskPoolSize;
+    private Executor callbackExecutor;
+    private BufferProcessorMetricsFactory metricsFactory = NoopBufferProcessorMetrics.factory();
+    private String metricsJmxName;
+    private boolean virtualConsumeThread;
+    private int consumerThreads = 1;
+    private boolean groupAffineConsumers;
+    private int orderedGroupLanes;
+    private int groupCoalesceMaxSize;
+    private int groupCoalesceMaxDelayMs;
+    private boolean deduplicateElements;
+    private BufferResultCacheConfig<E, R> resultCacheConfig;
+    private long elementDeadlineMs;
+    private BufferPriorityStrategy<E> bufferPriorityStrategy;
+    private int[] priorityWeights = {8, 1};
+    private int retryMaxAttempts;
+    private long retryBackoffMs = 100;
+    private long retryMaxBackoffMs = 10000;
+    private boolean retryBisectBatches;
     private BufferProcessExecutorFactory bufferProcessExecutorFactory;
     private ShardBufferProcessorIniter<E, G, R, SK> shardBufferProcessorIniter;
     private ShardBufferProcessorStrategyV2<E, SK> shardBufferProcessorStrategy;
     private BufferProcessorNotFoundCallback<E, G, R, SK> bufferProcessorNotFoundCallback;
+    private long processorIdleTtlMs;
+    private int maxProcessors;
+    private int hotKeySplits;
+    private long hotKeyThreshold;
+    private boolean autoCreateProcessors;
+    private boolean threadLocalRouteCache;
 
     public ShardBufferProcessorBuilderV2<E, G, R, SK> bufferQueueSize(int bufferQueueSize) {
         this.bufferQueueSize = bufferQueueSize;
@@ -46,6 +79,171 @@ public class ShardBufferProcessorBuilderV2<E, G, R, SK> {
         return this;
     }
 
+    /**
+     * 逐个实体返回处理成功、失败或需重试的分组处理，代替bufferGroupHandler
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> bufferGroupResultHandler(BufferGroupResultHandler<E, G, R> bufferGroupResultHandler) {
+        this.bufferGroupResultHandler = bufferGroupResultHandler;
+        return this;
+    }
+
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> bufferQueueFactory(BufferQueueFactory bufferQueueFactory) {
+        this.bufferQueueFactory = bufferQueueFactory;
+        return this;
+    }
+
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> consumeIdleStrategy(ConsumeIdleStrategy consumeIdleStrategy) {
+        this.consumeIdleStrategy = consumeIdleStrategy;
+        return this;
+    }
+
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> overflowPolicy(BufferOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> consumeBatchControllerFactory(ConsumeBatchControllerFactory consumeBatchControllerFactory) {
+        this.consumeBatchControllerFactory = consumeBatchControllerFactory;
+        return this;
+    }
+
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> futureTaskPoolSize(int futureTaskPoolSize) {
+        this.futureTaskPoolSize = futureTaskPoolSize;
+        return this;
+    }
+
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> callbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> metricsFactory(BufferProcessorMetricsFactory metricsFactory) {
+        this.metricsFactory = metricsFactory;
+        return this;
+    }
+
+    /**
+     * 设置后将监控统计注册到JMX，关闭处理器时注销
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> metricsJmxName(String metricsJmxName) {
+        this.metricsJmxName = metricsJmxName;
+        return this;
+    }
+
+    /**
+     * 消费线程使用虚拟线程，分组处理使用虚拟线程可设置bufferProcessExecutorFactory为VirtualThreadBufferProcessExecutorFactory
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> virtualConsumeThread(boolean virtualConsumeThread) {
+        this.virtualConsumeThread = virtualConsumeThread;
+        return this;
+    }
+
+    /**
+     * 每个缓冲处理器的消费线程数，多个消费线程并行取出互不重叠的批次
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> consumerThreads(int consumerThreads) {
+        this.consumerThreads = consumerThreads;
+        return this;
+    }
+
+    /**
+     * 多个消费线程时按分组路由，每个消费线程一个缓冲队列（容量为bufferQueueSize），同一分组的实体由同一消费线程按提交顺序取出
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> groupAffineConsumers(boolean groupAffineConsumers) {
+        this.groupAffineConsumers = groupAffineConsumers;
+        return this;
+    }
+
+    /**
+     * 按分组顺序处理：分组按hash固定到orderedGroupLanes个串行分道之一，同一分组的批次按提交顺序逐个处理、不会并发
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> orderedGroupLanes(int orderedGroupLanes) {
+        this.orderedGroupLanes = orderedGroupLanes;
+        return this;
+    }
+
+    /**
+     * 合并分组：分组处理中时，后续批次的实体暂存到前一次处理完成后合并为一次处理，最多合并groupCoalesceMaxSize个实体
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> groupCoalesceMaxSize(int groupCoalesceMaxSize) {
+        this.groupCoalesceMaxSize = groupCoalesceMaxSize;
+        return this;
+    }
+
+    /**
+     * 合并分组的待处理实体最长等待时间，超过后不再等待前一次处理完成
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> groupCoalesceMaxDelayMs(int groupCoalesceMaxDelayMs) {
+        this.groupCoalesceMaxDelayMs = groupCoalesceMaxDelayMs;
+        return this;
+    }
+
+    /**
+     * 去重：相等的实体在批次内及处理中只交给分组处理一次，重复实体的Future以同一结果完成
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> deduplicateElements(boolean deduplicateElements) {
+        this.deduplicateElements = deduplicateElements;
+        return this;
+    }
+
+    /**
+     * 处理结果缓存：命中的实体在提交时即完成，不进入缓冲队列
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> resultCache(BufferResultCacheConfig<E, R> resultCacheConfig) {
+        this.resultCacheConfig = resultCacheConfig;
+        return this;
+    }
+
+    /**
+     * 实体默认的处理截止时间：提交后超过该时间仍未交给分组处理的实体以BufferExpiredException失败响应，不再处理
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> elementDeadlineMs(long elementDeadlineMs) {
+        this.elementDeadlineMs = elementDeadlineMs;
+        return this;
+    }
+
+    /**
+     * 实体的优先级策略：各优先级分道缓冲，每批按priorityWeights的权重取出，高优先级先处理且低优先级不会被饿死
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> bufferPriorityStrategy(BufferPriorityStrategy<E> bufferPriorityStrategy) {
+        this.bufferPriorityStrategy = bufferPriorityStrategy;
+        return this;
+    }
+
+    /**
+     * 各优先级每批取出的权重，长度为优先级数，默认8:1
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> priorityWeights(int... priorityWeights) {
+        this.priorityWeights = priorityWeights;
+        return this;
+    }
+
+    /**
+     * 实体最多处理的次数（含首次）：大于1时，整个分组处理异常或返回需重试的实体在退避后重新处理，不重新进入缓冲队列
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> retryMaxAttempts(int retryMaxAttempts) {
+        this.retryMaxAttempts = retryMaxAttempts;
+        return this;
+    }
+
+    /**
+     * 重试的退避时间：首次重试等待retryBackoffMs，之后每次翻倍，不超过retryMaxBackoffMs
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> retryBackoff(long retryBackoffMs, long retryMaxBackoffMs) {
+        this.retryBackoffMs = retryBackoffMs;
+        this.retryMaxBackoffMs = retryMaxBackoffMs;
+        return this;
+    }
+
+    /**
+     * 整批重试达到retryMaxAttempts后对半拆分，逐步隔离导致整批失败的实体；
+     * 拆分后的批次各处理一次且不计入处理次数，拆分到单个实体仍失败时以异常完成
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> retryBisectBatches(boolean retryBisectBatches) {
+        this.retryBisectBatches = retryBisectBatches;
+        return this;
+    }
+
     public ShardBufferProcessorBuilderV2<E, G, R, SK> bufferProcessExecutorFactory(BufferProcessExecutorFactory bufferProcessExecutorFactory) {
         this.bufferProcessExecutorFactory = bufferProcessExecutorFactory;
         return this;
@@ -66,13 +264,67 @@ public class ShardBufferProcessorBuilderV2<E, G, R, SK> {
         return this;
     }
 
+    /**
+     * 分片缓冲处理器超过该时间未被路由时回收，下一次路由时重新创建，0为不回收
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> processorIdleTtlMs(long processorIdleTtlMs) {
+        this.processorIdleTtlMs = processorIdleTtlMs;
+        return this;
+    }
+
+    /**
+     * 已创建的分片缓冲处理器数量上限，超过时近似按最久未被路由回收缓冲处理器，0为不限制
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> maxProcessors(int maxProcessors) {
+        this.maxProcessors = maxProcessors;
+        return this;
+    }
+
+    /**
+     * 热点分片KEY拆分的子处理器数，0为不拆分
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> hotKeySplits(int hotKeySplits) {
+        this.hotKeySplits = hotKeySplits;
+        return this;
+    }
+
+    /**
+     * 分片KEY每秒到达数达到该值时视为热点，其实体分散到hotKeySplits个子处理器
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> hotKeyThreshold(long hotKeyThreshold) {
+        this.hotKeyThreshold = hotKeyThreshold;
+        return this;
+    }
+
+    /**
+     * 路由到不存在的分片KEY时原子地创建缓冲处理器，不需要设置bufferProcessorNotFoundCallback
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> autoCreateProcessors(boolean autoCreateProcessors) {
+        this.autoCreateProcessors = autoCreateProcessors;
+        return this;
+    }
+
+    /**
+     * 每个线程缓存最近一次路由的分片KEY，连续提交同一分片KEY时不查找Map
+     */
+    public ShardBufferProcessorBuilderV2<E, G, R, SK> threadLocalRouteCache(boolean threadLocalRouteCache) {
+        this.threadLocalRouteCache = threadLocalRouteCache;
+        return this;
+    }
+
     public ShardBufferProcessorV2<E, G, R, SK> build() {
         check();
 
         // 构建及初始化缓冲处理器的容器
         ShardBufferProcessorContainer<E, G, R, SK> bufferProcessorContainer = newAndInitBufferProcessorContainer();
 
-        return new ShardBufferProcessorV2<E, G, R, SK>(bufferProcessorContainer, shardBufferProcessorStrategy, bufferProcessorNotFoundCallback);
+        ShardBufferProcessorV2<E, G, R, SK> shardBufferProcessor = new ShardBufferProcessorV2<E, G, R, SK>(
+                bufferProcessorContainer, shardBufferProcessorStrategy, bufferProcessorNotFoundCallback, newHotKeySplitter(),
+                autoCreateProcessors);
+        if (metricsJmxName != null) {
+            shardBufferProcessor.registerMetricsJmx(metricsJmxName);
+        }
+        return shardBufferProcessor;
     }
 
     private void check() {
@@ -86,12 +338,76 @@ public class ShardBufferProcessorBuilderV2<E, G, R, SK> {
         Preconditions.checkArgument(consumeWaitTimeoutMs >= 0,
                 "必须设置项consumeWaitTimeoutMs必须大于等于0。");
 
-        Preconditions.checkArgument(bufferGroupHandler != null,
+        Preconditions.checkArgument(bufferGroupHandler != null || bufferGroupResultHandler != null,
                 "必须设置项bufferGroupHandler为Null。");
 
+        Preconditions.checkArgument(bufferGroupHandler == null || bufferGroupResultHandler == null,
+                "设置项bufferGroupHandler与bufferGroupResultHandler只能设置一个。");
+
+        Preconditions.checkArgument(bufferQueueFactory != null,
+                "设置项bufferQueueFactory为Null。");
+
+        Preconditions.checkArgument(consumeIdleStrategy != null,
+                "设置项consumeIdleStrategy为Null。");
+
+        Preconditions.checkArgument(overflowPolicy != null,
+                "设置项overflowPolicy为Null。");
+
+        Preconditions.checkArgument(consumeBatchControllerFactory != null,
+                "设置项consumeBatchControllerFactory为Null。");
+
+        Preconditions.checkArgument(futureTaskPoolSize >= 0,
+                "设置项futureTaskPoolSize必须大于等于0。");
+
+        Preconditions.checkArgument(metricsFactory != null,
+                "设置项metricsFactory为Null。");
+
+        Preconditions.checkArgument(consumerThreads > 0,
+                "设置项consumerThreads必须大于0。");
+
+        Preconditions.checkArgument(!groupAffineConsumers || bufferGroupStrategy != null,
+                "设置项groupAffineConsumers需要设置bufferGroupStrategy。");
+
+        Preconditions.checkArgument(orderedGroupLanes >= 0,
+                "设置项orderedGroupLanes必须大于等于0。");
+
+        Preconditions.checkArgument(orderedGroupLanes == 0 || consumerThreads == 1 || groupAffineConsumers,
+                "设置项orderedGroupLanes需要单个消费线程或开启groupAffineConsumers。");
+
+        Preconditions.checkArgument(groupCoalesceMaxSize >= 0,
+                "设置项groupCoalesceMaxSize必须大于等于0。");
+
+        Preconditions.checkArgument(groupCoalesceMaxDelayMs >= 0,
+                "设置项groupCoalesceMaxDelayMs必须大于等于0。");
+
+        Preconditions.checkArgument(elementDeadlineMs >= 0,
+                "设置项elementDeadlineMs必须大于等于0。");
+
+        Preconditions.checkArgument(priorityWeights != null && priorityWeights.length > 0,
+                "设置项priorityWeights不能为空。");
+        for (int priorityWeight : priorityWeights) {
+            Preconditions.checkArgument(priorityWeight > 0,
+                    "设置项priorityWeights中的权重必须大于0。");
+        }
+
+        Preconditions.checkArgument(retryMaxAttempts >= 0,
+                "设置项retryMaxAttempts必须大于等于0。");
+
+        Preconditions.checkArgument(retryBackoffMs >= 0 && retryMaxBackoffMs >= retryBackoffMs,
+                "设置项retryBackoffMs必须大于等于0且不大于retryMaxBackoffMs。");
+
         Preconditions.checkArgument(shardBufferProcessorStrategy != null,
                 "必须设置项shardBufferProcessorStrategy为Null。");
 
+        Preconditions.checkArgument(processorIdleTtlMs >= 0,
+                "设置项processorIdleTtlMs必须大于等于0。");
+
+        Preconditions.checkArgument(maxProcessors >= 0,
+                "设置项maxProcessors必须大于等于0。");
+
+        Preconditions.checkArgument(hotKeySplits == 0 || (hotKeySplits > 1 && hotKeyThreshold > 0),
+                "设置项hotKeySplits必须为0或大于1，且设置hotKeySplits时hotKeyThreshold必须大于0。");
+
     }
 
     private ShardBufferProcessorContainer<E, G, R, SK> newAndInitBufferProcessorContainer() {
@@ -107,12 +423,51 @@ public class ShardBufferProcessorBuilderV2<E, G, R, SK> {
     private ShardBufferProcessorContainer<E, G, R, SK> newBufferProcessorContainer() {
         // 创建缓冲处理器的构造器
         BufferGroupProcessorCreator<E, G, R> bufferProcessorCreator = newBufferProcessorCreator();
-        return new ShardBufferProcessorContainer<>(bufferProcessorCreator);
+        return new ShardBufferProcessorContainer<>(bufferProcessorCreator, processorIdleTtlMs, maxProcessors, threadLocalRouteCache);
     }
 
     private BufferGroupProcessorCreator<E, G, R> newBufferProcessorCreator() {
-        return new BufferGroupProcessorCreator<E, G, R>(bufferQueueSize, consumeBatchSize,
-                consumeWaitTimeoutMs, bufferGroupStrategy, bufferGroupHandler, bufferProcessExecutorFactory);
+        BufferGroupProcessorConfig<E, G, R> config = new BufferGroupProcessorConfig<E, G, R>()
+                .setBufferQueueSize(bufferQueueSize)
+                .setConsumeBatchSize(consumeBatchSize)
+                .setConsumeWaitTimeoutMs(consumeWaitTimeoutMs)
+                .setBufferGroupStrategy(bufferGroupStrategy)
+                .setBufferGroupHandler(bufferGroupHandler)
+                .setBufferGroupResultHandler(bufferGroupResultHandler)
+                .setBufferQueueFactory(bufferQueueFactory)
+                .setConsumeIdleStrategy(consumeIdleStrategy)
+                .setOverflowPolicy(overflowPolicy)
+                .setConsumeBatchControllerFactory(consumeBatchControllerFactory)
+                .setFutureTaskPoolSize(futureTaskPoolSize)
+                .setCallbackExecutor(callbackExecutor)
+                .setMetricsFactory(metricsFactory)
+                .setVirtualConsumeThread(virtualConsumeThread)
+                .setConsumerThreads(consumerThreads)
+                .setGroupAffineConsumers(groupAffineConsumers)
+                .setOrderedGroupLanes(orderedGroupLanes)
+                .setGroupCoalesceMaxSize(groupCoalesceMaxSize)
+                .setGroupCoalesceMaxDelayMs(groupCoalesceMaxDelayMs)
+                .setDeduplicateElements(deduplicateElements)
+                .setResultCacheConfig(resultCacheConfig)
+                .setElementDeadlineMs(elementDeadlineMs)
+                .setBufferPriorityStrategy(bufferPriorityStrategy)
+                .setPriorityWeights(priorityWeights)
+                .setRetryMaxAttempts(retryMaxAttempts)
+                .setRetryBackoffMs(retryBackoffMs)
+                .setRetryMaxBackoffMs(retryMaxBackoffMs)
+                .setRetryBisectBatches(retryBisectBatches);
+        return new BufferGroupProcessorCreator<E, G, R>(config, bufferProcessExecutorFactory);
+    }
+
+    /**
+     * 需要保持分组顺序时，热点分片KEY按分组路由子处理器
+     */
+    private ShardHotKeySplitter<E, SK> newHotKeySplitter() {
+        if (hotKeySplits == 0) {
+            return null;
+        }
+        boolean groupOrdered = orderedGroupLanes > 0 || groupAffineConsumers;
+        return new ShardHotKeySplitter<E, SK>(hotKeySplits, hotKeyThreshold, groupOrdered ? bufferGroupStrategy : null);
     }
 
     private void initBufferProcessors(ShardBufferProcessorContainer<E, G, R, SK> bufferProcessorContainer) {
@@ -2,28 +2,241 @@ package com.github.andy.buffer.group.shard;
 
 import com.github.andy.buffer.group.BufferGroupProcessor;
 import com.github.andy.buffer.group.BufferGroupProcessorCreator;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsSnapshot;
+import com.google.common.base.Preconditions;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ShardBufferProcessor的处理器的管理容器
  * <p>
+ * 设置processorIdleTtlMs时，超过该时间未被路由的缓冲处理器被回收；设置maxProcessors时，已创建的缓冲处理器超过该数量，
+ * 按二次机会队列回收近期未被路由的缓冲处理器。被回收的缓冲处理器处理完已缓冲的实体后终止；getOrCreate创建的分片KEY
+ * 在其缓冲处理器全部被回收后从容器中移除，下一次getOrCreate时重新创建，add添加的分片KEY保留在容器中，下一次get时重新创建。
+ * <p>
  * Created by yanshanguang on 18/1/31.
  */
 public class ShardBufferProcessorContainer<E, G, R, SK> {
 
+    /**
+     * 记录路由时间的精度，同一精度内的多次路由只记录一次，避免热点分片频繁写入
+     */
+    private static final long ACCESS_PRECISION_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final ConcurrentMap<SK, BufferProcessorLazyer> bufferProcessorsMap = new ConcurrentHashMap<>();
 
+    /**
+     * Long及Integer分片KEY的Lazyer索引，按long或int查找时不装箱；同一容器的分片KEY类型相同，两者不会冲突
+     */
+    private final ShardLongKeyMap<BufferProcessorLazyer> longKeyLazyers = new ShardLongKeyMap<>();
+
+    /**
+     * 每个线程最近一次路由的分片KEY及其Lazyer，连续提交同一分片KEY时不查找Map，未开启时为null
+     */
+    private final ThreadLocal<LastRoute> lastRoutes;
+
     private final BufferGroupProcessorCreator<E, G, R> bufferProcessorCreator;
 
+    /**
+     * 缓冲处理器的空闲回收时间，0为不回收
+     */
+    private final long processorIdleTtlNanos;
+
+    /**
+     * 已创建缓冲处理器的数量上限，0为不限制
+     */
+    private final int maxProcessors;
+
+    /**
+     * 已创建的缓冲处理器数量
+     */
+    private final AtomicInteger createdCount = new AtomicInteger();
+
+    /**
+     * 已创建缓冲处理器的Lazyer按创建顺序排队，超过数量上限时从队首取出：期间被路由过的清除标记后排到队尾，否则回收；
+     * 未设置maxProcessors时不使用
+     */
+    private final Queue<BufferProcessorLazyer> evictionQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 定时回收空闲缓冲处理器，未设置processorIdleTtlMs时为null
+     */
+    private final ScheduledThreadPoolExecutor idleEvictExecutor;
+
+    /**
+     * 已回收、正在处理剩余实体的缓冲处理器
+     */
+    private final List<BufferGroupProcessor<E, G, R>> retiringProcessors = new CopyOnWriteArrayList<>();
+
+    /**
+     * 已回收并终止的缓冲处理器合并后的监控统计
+     */
+    private volatile BufferProcessorMetricsSnapshot retiredMetrics = BufferProcessorMetricsSnapshot.EMPTY;
+
+    /**
+     * 容器是否已关闭，关闭后新创建的缓冲处理器会被立即关闭
+     */
+    private volatile boolean shutdown;
+
     public ShardBufferProcessorContainer(BufferGroupProcessorCreator<E, G, R> bufferProcessorCreator) {
+        this(bufferProcessorCreator, 0, 0);
+    }
+
+    /**
+     * @param processorIdleTtlMs 缓冲处理器的空闲回收时间，0为不回收
+     * @param maxProcessors      已创建缓冲处理器的数量上限，0为不限制
+     */
+    public ShardBufferProcessorContainer(BufferGroupProcessorCreator<E, G, R> bufferProcessorCreator,
+                                         long processorIdleTtlMs, int maxProcessors) {
+        this(bufferProcessorCreator, processorIdleTtlMs, maxProcessors, false);
+    }
+
+    /**
+     * @param processorIdleTtlMs    缓冲处理器的空闲回收时间，0为不回收
+     * @param maxProcessors         已创建缓冲处理器的数量上限，0为不限制
+     * @param threadLocalRouteCache 是否缓存每个线程最近一次路由的分片KEY
+     */
+    public ShardBufferProcessorContainer(BufferGroupProcessorCreator<E, G, R> bufferProcessorCreator,
+                                         long processorIdleTtlMs, int maxProcessors, boolean threadLocalRouteCache) {
+        Preconditions.checkArgument(processorIdleTtlMs >= 0, "processorIdleTtlMs必须大于等于0。");
+        Preconditions.checkArgument(maxProcessors >= 0, "maxProcessors必须大于等于0。");
+
         this.bufferProcessorCreator = bufferProcessorCreator;
+        this.processorIdleTtlNanos = TimeUnit.MILLISECONDS.toNanos(processorIdleTtlMs);
+        this.maxProcessors = maxProcessors;
+        this.idleEvictExecutor = processorIdleTtlMs > 0 ? newIdleEvictExecutor(processorIdleTtlMs) : null;
+        this.lastRoutes = threadLocalRouteCache ? new ThreadLocal<LastRoute>() {
+            @Override
+            protected LastRoute initialValue() {
+                return new LastRoute();
+            }
+        } : null;
+    }
+
+    private ScheduledThreadPoolExecutor newIdleEvictExecutor(long processorIdleTtlMs) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "buffer-processor-idle-evict");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // 每半个空闲回收时间检查一次，缓冲处理器最迟在空闲1.5倍回收时间后被回收
+        long periodMs = Math.max(1, processorIdleTtlMs / 2);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleProcessors();
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        return executor;
     }
 
     public BufferGroupProcessor<E, G, R> get(SK shardKey) {
+        for (; ; ) {
+            BufferProcessorLazyer lazyer = getLazyer(shardKey);
+            if (lazyer == null) {
+                return null;
+            }
+
+            // Lazyer被并发移除时重新查找
+            BufferGroupProcessor<E, G, R> bufferProcessor = lazyer.get();
+            if (bufferProcessor != null) {
+                return bufferProcessor;
+            }
+        }
+    }
+
+    /**
+     * 按long分片KEY获取缓冲处理器，分片KEY为Long时使用，不装箱
+     */
+    @SuppressWarnings("unchecked")
+    public BufferGroupProcessor<E, G, R> get(long shardKey) {
+        BufferProcessorLazyer lazyer = longKeyLazyers.get(shardKey);
+        BufferGroupProcessor<E, G, R> bufferProcessor = lazyer != null ? lazyer.get() : null;
+        return bufferProcessor != null ? bufferProcessor : get((SK) Long.valueOf(shardKey));
+    }
+
+    /**
+     * 按int分片KEY获取缓冲处理器，分片KEY为Integer时使用，不装箱
+     */
+    @SuppressWarnings("unchecked")
+    public BufferGroupProcessor<E, G, R> get(int shardKey) {
+        BufferProcessorLazyer lazyer = longKeyLazyers.get(shardKey);
+        BufferGroupProcessor<E, G, R> bufferProcessor = lazyer != null ? lazyer.get() : null;
+        return bufferProcessor != null ? bufferProcessor : get((SK) Integer.valueOf(shardKey));
+    }
+
+    /**
+     * 获取缓冲处理器，分片KEY不存在时原子地添加，并发获取同一分片KEY只创建一个缓冲处理器
+     */
+    public BufferGroupProcessor<E, G, R> getOrCreate(SK shardKey) {
+        for (; ; ) {
+            BufferProcessorLazyer lazyer = getLazyer(shardKey);
+            if (lazyer == null) {
+                lazyer = addLazyer(shardKey);
+            }
+
+            // Lazyer被并发移除时重新添加
+            BufferGroupProcessor<E, G, R> bufferProcessor = lazyer.get();
+            if (bufferProcessor != null) {
+                return bufferProcessor;
+            }
+        }
+    }
+
+    /**
+     * 按long分片KEY获取缓冲处理器，分片KEY不存在时原子地添加，分片KEY为Long时使用
+     */
+    @SuppressWarnings("unchecked")
+    public BufferGroupProcessor<E, G, R> getOrCreate(long shardKey) {
+        BufferProcessorLazyer lazyer = longKeyLazyers.get(shardKey);
+        BufferGroupProcessor<E, G, R> bufferProcessor = lazyer != null ? lazyer.get() : null;
+        return bufferProcessor != null ? bufferProcessor : getOrCreate((SK) Long.valueOf(shardKey));
+    }
+
+    /**
+     * 按int分片KEY获取缓冲处理器，分片KEY不存在时原子地添加，分片KEY为Integer时使用
+     */
+    @SuppressWarnings("unchecked")
+    public BufferGroupProcessor<E, G, R> getOrCreate(int shardKey) {
+        BufferProcessorLazyer lazyer = longKeyLazyers.get(shardKey);
+        BufferGroupProcessor<E, G, R> bufferProcessor = lazyer != null ? lazyer.get() : null;
+        return bufferProcessor != null ? bufferProcessor : getOrCreate((SK) Integer.valueOf(shardKey));
+    }
+
+    /**
+     * 获取热点分片KEY拆分的子处理器，子处理器0即该分片KEY的缓冲处理器，其余子处理器在首次获取时创建
+     */
+    public BufferGroupProcessor<E, G, R> get(SK shardKey, int splitIndex) {
+        BufferProcessorLazyer lazyer = bufferProcessorsMap.get(shardKey);
+        if (lazyer == null) {
+            return null;
+        }
+        return splitIndex == 0 ? lazyer.get() : lazyer.getSplitLazyer(splitIndex).get();
+    }
+
+    /**
+     * 获取已创建的缓冲处理器，未创建或已回收时返回null，不记录为路由
+     */
+    public BufferGroupProcessor<E, G, R> getIfCreated(SK shardKey) {
         BufferProcessorLazyer lazyer = bufferProcessorsMap.get(shardKey);
-        return lazyer != null ? lazyer.get() : null;
+        return lazyer != null ? lazyer.getIfCreated() : null;
     }
 
     public boolean isExist(SK shardKey) {
@@ -34,34 +247,474 @@ public class ShardBufferProcessorContainer<E, G, R, SK> {
         return !isExist(shardKey);
     }
 
+    /**
+     * 添加分片KEY，缓冲处理器被回收后分片KEY仍保留在容器中
+     */
     public void add(SK shardKey) {
-        if (isExist(shardKey)) {
-            return;
+        for (; ; ) {
+            BufferProcessorLazyer lazyer = bufferProcessorsMap.get(shardKey);
+            if (lazyer == null) {
+                // 添加缓冲处理器的Lazyer到Map中
+                lazyer = addLazyer(shardKey);
+            }
+            if (lazyer.retain()) {
+                return;
+            }
         }
-
-        // 添加缓冲处理器的Lazyer到Map中
-        bufferProcessorsMap.putIfAbsent(shardKey, new BufferProcessorLazyer());
     }
 
+    /**
+     * 获取容器中的分片KEY数量，getOrCreate创建的分片KEY被回收后不再计入
+     */
     public int getProcessorCount() {
         return bufferProcessorsMap.size();
     }
 
+    /**
+     * 获取已创建且未回收的缓冲处理器数量
+     */
+    public int getCreatedProcessorCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * 获取已创建的缓冲处理器，包括热点分片KEY拆分的子处理器
+     */
+    public List<BufferGroupProcessor<E, G, R>> getCreatedProcessors() {
+        List<BufferGroupProcessor<E, G, R>> bufferProcessors = new ArrayList<>(bufferProcessorsMap.size());
+        for (BufferProcessorLazyer lazyer : allLazyers()) {
+            BufferGroupProcessor<E, G, R> bufferProcessor = lazyer.getIfCreated();
+            if (bufferProcessor != null) {
+                bufferProcessors.add(bufferProcessor);
+            }
+        }
+
+        return bufferProcessors;
+    }
+
+    /**
+     * 获取指定分片KEY已创建的缓冲处理器，包括热点拆分的子处理器
+     */
+    public List<BufferGroupProcessor<E, G, R>> getCreatedProcessors(SK shardKey) {
+        List<BufferGroupProcessor<E, G, R>> bufferProcessors = new ArrayList<>();
+        BufferProcessorLazyer lazyer = bufferProcessorsMap.get(shardKey);
+        if (lazyer != null) {
+            List<BufferProcessorLazyer> lazyers = new ArrayList<>();
+            lazyer.collectLazyers(lazyers);
+            for (BufferProcessorLazyer shardLazyer : lazyers) {
+                BufferGroupProcessor<E, G, R> bufferProcessor = shardLazyer.getIfCreated();
+                if (bufferProcessor != null) {
+                    bufferProcessors.add(bufferProcessor);
+                }
+            }
+        }
+
+        return bufferProcessors;
+    }
+
+    /**
+     * 获取已回收、正在处理剩余实体的缓冲处理器
+     */
+    public List<BufferGroupProcessor<E, G, R>> getRetiringProcessors() {
+        return new ArrayList<>(retiringProcessors);
+    }
+
+    /**
+     * 已回收并终止的缓冲处理器合并后的监控统计
+     */
+    public BufferProcessorMetricsSnapshot getRetiredMetrics() {
+        return retiredMetrics;
+    }
+
+    /**
+     * 回收超过空闲回收时间未被路由的缓冲处理器
+     */
+    public void evictIdleProcessors() {
+        if (processorIdleTtlNanos <= 0 || shutdown) {
+            return;
+        }
+
+        long nowNanos = System.nanoTime();
+        for (BufferProcessorLazyer lazyer : allLazyers()) {
+            lazyer.evictIfIdle(nowNanos);
+        }
+
+        // 清除回收队列中已被回收的Lazyer，避免未超过数量上限时队列持有已移除的Lazyer
+        if (maxProcessors > 0) {
+            for (Iterator<BufferProcessorLazyer> iterator = evictionQueue.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().dequeueIfEvicted()) {
+                    iterator.remove();
+                }
+            }
+        }
+        pruneRetiredProcessors();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        if (idleEvictExecutor != null) {
+            idleEvictExecutor.shutdownNow();
+        }
+        for (BufferProcessorLazyer lazyer : allLazyers()) {
+            lazyer.shutdown();
+        }
+    }
+
+    public void shutdownNow() {
+        shutdown = true;
+        if (idleEvictExecutor != null) {
+            idleEvictExecutor.shutdownNow();
+        }
+        for (BufferProcessorLazyer lazyer : allLazyers()) {
+            lazyer.shutdownNow();
+        }
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : retiringProcessors) {
+            retiringProcessor.shutdownNow();
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * 已创建的缓冲处理器超过数量上限时，从回收队列队首起回收近期未被路由的缓冲处理器；
+     * 最多轮转两遍已创建的缓冲处理器，全部持续被路由时本次不再回收
+     */
+    private void evictExceededProcessors(BufferProcessorLazyer createdLazyer) {
+        int remainingPolls = createdCount.get() * 2;
+        while (createdCount.get() > maxProcessors && !shutdown && remainingPolls-- > 0) {
+            BufferProcessorLazyer lazyer = evictionQueue.poll();
+            if (lazyer == null) {
+                break;
+            }
+            lazyer.evictOrRequeue(createdLazyer);
+        }
+        pruneRetiredProcessors();
+    }
+
+    private BufferProcessorLazyer getLazyer(SK shardKey) {
+        if (lastRoutes == null) {
+            return bufferProcessorsMap.get(shardKey);
+        }
+
+        LastRoute lastRoute = lastRoutes.get();
+        if (lastRoute.lazyer != null && !lastRoute.lazyer.removed && lastRoute.shardKey.equals(shardKey)) {
+            return lastRoute.lazyer;
+        }
+
+        BufferProcessorLazyer lazyer = bufferProcessorsMap.get(shardKey);
+        if (lazyer != null) {
+            lastRoute.shardKey = shardKey;
+            lastRoute.lazyer = lazyer;
+        }
+        return lazyer;
+    }
+
+    /**
+     * 添加分片KEY的Lazyer，已存在且未被移除时返回已有的Lazyer；Long及Integer分片KEY同时加入long索引
+     */
+    private BufferProcessorLazyer addLazyer(SK shardKey) {
+        BufferProcessorLazyer lazyer = new BufferProcessorLazyer(shardKey, null);
+        for (; ; ) {
+            BufferProcessorLazyer existLazyer = bufferProcessorsMap.putIfAbsent(shardKey, lazyer);
+            if (existLazyer == null) {
+                break;
+            }
+            if (!existLazyer.removed) {
+                return existLazyer;
+            }
+            if (bufferProcessorsMap.replace(shardKey, existLazyer, lazyer)) {
+                break;
+            }
+        }
+
+        if (shardKey instanceof Long || shardKey instanceof Integer) {
+            long longShardKey = ((Number) shardKey).longValue();
+            longKeyLazyers.put(longShardKey, lazyer);
+            // 加入long索引前已被移除时，移除方可能未看到索引中的Lazyer
+            if (lazyer.removed) {
+                longKeyLazyers.remove(longShardKey, lazyer);
+            }
+        }
+        return lazyer;
+    }
+
+    /**
+     * 全部分片KEY的缓冲处理器及热点拆分子处理器的Lazyer
+     */
+    private List<BufferProcessorLazyer> allLazyers() {
+        List<BufferProcessorLazyer> lazyers = new ArrayList<>(bufferProcessorsMap.size());
+        for (BufferProcessorLazyer lazyer : bufferProcessorsMap.values()) {
+            lazyer.collectLazyers(lazyers);
+        }
+        return lazyers;
+    }
+
+    /**
+     * 已终止的被回收缓冲处理器合并监控统计后释放
+     */
+    private synchronized void pruneRetiredProcessors() {
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : retiringProcessors) {
+            if (retiringProcessor.isTerminated()) {
+                retiredMetrics = retiredMetrics.merge(retiringProcessor.getMetrics());
+                retiringProcessors.remove(retiringProcessor);
+            }
+        }
+    }
+
+    private class LastRoute {
+
+        private SK shardKey;
+
+        private BufferProcessorLazyer lazyer;
+    }
+
+    /**
+     * 分片KEY或热点拆分子处理器的缓冲处理器，同一分片KEY的Lazyer以分片KEY的Lazyer为锁创建及回收缓冲处理器
+     */
     private class BufferProcessorLazyer {
 
+        private final SK shardKey;
+
+        /**
+         * 分片KEY的Lazyer，热点拆分子处理器的Lazyer指向其所属分片KEY的Lazyer
+         */
+        private final BufferProcessorLazyer root;
+
         private volatile BufferGroupProcessor<E, G, R> bufferProcessor;
 
+        /**
+         * 最近一次被路由的时间
+         */
+        private volatile long lastAccessNanos;
+
+        /**
+         * 进入回收队列后是否被路由过，回收时被路由过的Lazyer清除标记后重新排队
+         */
+        private volatile boolean accessed;
+
+        /**
+         * 是否在回收队列中，以root为锁读写
+         */
+        private boolean queued;
+
+        /**
+         * 是否由add添加，回收缓冲处理器后不从容器中移除，以root为锁读写
+         */
+        private boolean retained;
+
+        /**
+         * 是否已从容器中移除，移除后不再创建缓冲处理器
+         */
+        private volatile boolean removed;
+
+        /**
+         * 热点拆分的子处理器的Lazyer，下标即子处理器索引，下标0不使用
+         */
+        private volatile BufferProcessorLazyer[] splitLazyers;
+
+        BufferProcessorLazyer(SK shardKey, BufferProcessorLazyer root) {
+            this.shardKey = shardKey;
+            this.root = root != null ? root : this;
+        }
+
+        /**
+         * 获取缓冲处理器，未创建时创建；所属分片KEY已从容器中移除时返回null，由调用方重新查找
+         */
         public BufferGroupProcessor<E, G, R> get() {
+            if (processorIdleTtlNanos > 0 || maxProcessors > 0) {
+                long nowNanos = System.nanoTime();
+                if (nowNanos - lastAccessNanos >= ACCESS_PRECISION_NANOS) {
+                    lastAccessNanos = nowNanos;
+                }
+                if (maxProcessors > 0 && !accessed) {
+                    accessed = true;
+                }
+            }
+
+            BufferGroupProcessor<E, G, R> bufferProcessor = this.bufferProcessor;
             if (bufferProcessor == null) {
-                synchronized (this) {
+                boolean created = false;
+                synchronized (root) {
+                    bufferProcessor = this.bufferProcessor;
                     if (bufferProcessor == null) {
+                        if (root.removed) {
+                            return null;
+                        }
+
                         bufferProcessor = bufferProcessorCreator.get();
+                        lastAccessNanos = System.nanoTime();
+                        this.bufferProcessor = bufferProcessor;
+                        createdCount.incrementAndGet();
+                        created = true;
+                        if (maxProcessors > 0) {
+                            accessed = false;
+                            if (!queued) {
+                                queued = true;
+                                evictionQueue.offer(this);
+                            }
+                        }
+                        // 与容器关闭并发创建的处理器，创建后立即关闭
+                        if (shutdown) {
+                            bufferProcessor.shutdown();
+                        }
                     }
                 }
+
+                if (created && maxProcessors > 0) {
+                    evictExceededProcessors(this);
+                }
             }
 
             return bufferProcessor;
         }
+
+        public BufferGroupProcessor<E, G, R> getIfCreated() {
+            return bufferProcessor;
+        }
+
+        @SuppressWarnings("unchecked")
+        public BufferProcessorLazyer getSplitLazyer(int splitIndex) {
+            BufferProcessorLazyer[] splitLazyers = this.splitLazyers;
+            if (splitLazyers == null || splitIndex >= splitLazyers.length) {
+                synchronized (this) {
+                    splitLazyers = this.splitLazyers;
+                    if (splitLazyers == null || splitIndex >= splitLazyers.length) {
+                        int fromIndex = splitLazyers == null ? 1 : splitLazyers.length;
+                        splitLazyers = splitLazyers == null
+                                ? (BufferProcessorLazyer[]) Array.newInstance(BufferProcessorLazyer.class, splitIndex + 1)
+                                : Arrays.copyOf(splitLazyers, splitIndex + 1);
+                        for (int i = fromIndex; i <= splitIndex; i++) {
+                            splitLazyers[i] = new BufferProcessorLazyer(shardKey, this);
+                        }
+                        this.splitLazyers = splitLazyers;
+                    }
+                }
+            }
+            return splitLazyers[splitIndex];
+        }
+
+        public void collectLazyers(List<BufferProcessorLazyer> lazyers) {
+            lazyers.add(this);
+            BufferProcessorLazyer[] splitLazyers = this.splitLazyers;
+            if (splitLazyers != null) {
+                for (int i = 1; i < splitLazyers.length; i++) {
+                    lazyers.add(splitLazyers[i]);
+                }
+            }
+        }
+
+        /**
+         * 标记为由add添加，已被移除时返回false，由调用方重新添加
+         */
+        public boolean retain() {
+            synchronized (root) {
+                if (removed) {
+                    return false;
+                }
+                retained = true;
+                return true;
+            }
+        }
+
+        public void evictIfIdle(long nowNanos) {
+            synchronized (root) {
+                if (bufferProcessor != null && nowNanos - lastAccessNanos >= processorIdleTtlNanos) {
+                    evict();
+                }
+            }
+        }
+
+        /**
+         * 从回收队列中取出后调用：被路由过或是刚创建的Lazyer清除标记后重新排队，否则回收
+         */
+        public void evictOrRequeue(BufferProcessorLazyer createdLazyer) {
+            synchronized (root) {
+                queued = false;
+                if (bufferProcessor == null) {
+                    return;
+                }
+
+                if (accessed || this == createdLazyer) {
+                    accessed = false;
+                    queued = true;
+                    evictionQueue.offer(this);
+                    return;
+                }
+                evict();
+            }
+        }
+
+        /**
+         * 缓冲处理器已被回收时标记为不在回收队列中，由调用方从队列中删除
+         */
+        public boolean dequeueIfEvicted() {
+            synchronized (root) {
+                if (bufferProcessor != null || !queued) {
+                    return false;
+                }
+                queued = false;
+                return true;
+            }
+        }
+
+        /**
+         * 先移除再关闭，关闭后并发提交到其中的实体由调用方重新get路由到新创建的缓冲处理器
+         */
+        public void evict() {
+            synchronized (root) {
+                BufferGroupProcessor<E, G, R> evictedProcessor = bufferProcessor;
+                if (evictedProcessor == null || shutdown) {
+                    return;
+                }
+
+                bufferProcessor = null;
+                createdCount.decrementAndGet();
+                retiringProcessors.add(evictedProcessor);
+                evictedProcessor.shutdown();
+                root.removeIfEvicted();
+            }
+        }
+
+        /**
+         * 分片KEY及其子处理器的缓冲处理器全部被回收后，getOrCreate创建的分片KEY从容器中移除，以root为锁调用
+         */
+        private void removeIfEvicted() {
+            if (retained || removed || bufferProcessor != null) {
+                return;
+            }
+            BufferProcessorLazyer[] splitLazyers = this.splitLazyers;
+            if (splitLazyers != null) {
+                for (int i = 1; i < splitLazyers.length; i++) {
+                    if (splitLazyers[i].bufferProcessor != null) {
+                        return;
+                    }
+                }
+            }
+
+            removed = true;
+            bufferProcessorsMap.remove(shardKey, this);
+            if (shardKey instanceof Long || shardKey instanceof Integer) {
+                longKeyLazyers.remove(((Number) shardKey).longValue(), this);
+            }
+        }
+
+        public void shutdown() {
+            synchronized (root) {
+                if (bufferProcessor != null) {
+                    bufferProcessor.shutdown();
+                }
+            }
+        }
+
+        public void shutdownNow() {
+            synchronized (root) {
+                if (bufferProcessor != null) {
+                    bufferProcessor.shutdownNow();
+                }
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
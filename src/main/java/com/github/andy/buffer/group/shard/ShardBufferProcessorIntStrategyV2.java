@@ -0,0 +1,11 @@
+package com.github.andy.buffer.group.shard;
+
+/**
+ * int分片KEY的ShardBufferProcessor路由策略V2
+ * <p>
+ * ShardBufferProcessorV2使用该策略时按routeIntSK路由，查找缓冲处理器不装箱；routeSK应返回相同的KEY。
+ */
+public interface ShardBufferProcessorIntStrategyV2<E> extends ShardBufferProcessorStrategyV2<E, Integer> {
+
+    int routeIntSK(final E element);
+}
@@ -0,0 +1,37 @@
+package com.github.andy.buffer.group.shard;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+
+/**
+ * 内置的Shard路由策略
+ */
+public final class ShardBufferProcessorStrategies {
+
+    private ShardBufferProcessorStrategies() {
+    }
+
+    /**
+     * 按实体的hashCode一致性hash路由（jump consistent hash），分片数由N调整为N+1时只有约1/(N+1)的实体改变路由，
+     * 且只会改路由到新增的分片；不需要维护hash环，路由时不分配对象
+     */
+    public static <E> ShardBufferProcessorStrategy<E> consistentHash() {
+        return consistentHash(null);
+    }
+
+    /**
+     * 按keyExtractor提取的key一致性hash路由，相同key的实体路由到同一分片
+     */
+    public static <E> ShardBufferProcessorStrategy<E> consistentHash(final Function<? super E, ?> keyExtractor) {
+        return new ShardBufferProcessorStrategy<E>() {
+            @Override
+            public int routeIDX(int processorsCount, E element) {
+                Object key = keyExtractor != null ? keyExtractor.apply(element) : element;
+                Preconditions.checkArgument(key != null, "[ShardBufferProcessor] 一致性hash路由的key为Null。");
+                return Hashing.consistentHash(key.hashCode(), processorsCount);
+            }
+        };
+    }
+
+}
@@ -1,14 +1,37 @@
 package com.github.andy.buffer.group.shard;
 
-import com.github.andy.buffer.group.BufferFuture;
-import com.github.andy.buffer.group.BufferGroupProcessor;
+import com.github.andy.buffer.group.*;
+import com.github.andy.buffer.group.exception.BufferOverflowException;
+import com.github.andy.buffer.group.exception.BufferRejectedException;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsJmx;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsSnapshot;
+import com.github.andy.buffer.group.metrics.BufferProcessorMetricsSource;
+
+import javax.management.ObjectName;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Shard实体缓冲分组处理器V2
  * <p>
+ * 设置processorIdleTtlMs或maxProcessors时，空闲或超出数量上限的分片缓冲处理器被回收，处理完已缓冲的实体后终止，
+ * 下一次路由到该分片时重新创建；并发提交到被回收缓冲处理器的实体重新路由。autoCreateProcessors创建的分片KEY
+ * 被回收后从容器中移除，容器只保留活跃的分片KEY。
+ * <p>
+ * 路由策略实现ShardBufferProcessorLongStrategyV2或ShardBufferProcessorIntStrategyV2时按long或int分片KEY查找缓冲处理器，不装箱；设置autoCreateProcessors时
+ * 分片KEY不存在则原子地创建缓冲处理器，不需要bufferProcessorNotFoundCallback；设置threadLocalRouteCache时
+ * 每个线程缓存最近一次路由的分片KEY，适合连续提交同一分片KEY的生产者。
+ * <p>
+ * 设置hotKeySplits及hotKeyThreshold时，每秒到达数超过阈值的分片KEY的实体分散到多个子处理器，见{@link ShardHotKeySplitter}；
+ * 按分组拆分时同一分组有未完成的实体期间固定路由到同一子处理器，分片KEY在热点与非热点之间切换时保持分组的顺序处理。
+ * <p>
  * Created by yanshanguang on 18/1/30.
  */
-public class ShardBufferProcessorV2<E, G, R, SK> {
+public class ShardBufferProcessorV2<E, G, R, SK> implements BufferProcessorMetricsSource {
 
     private final ShardBufferProcessorContainer<E, G, R, SK> bufferProcessorContainer;
 
@@ -16,12 +39,71 @@ public class ShardBufferProcessorV2<E, G, R, SK> {
 
     private final BufferProcessorNotFoundCallback<E, G, R, SK> bufferProcessorNotFoundCallback;
 
+    /**
+     * 热点分片KEY的拆分路由，为null时不拆分
+     */
+    private final ShardHotKeySplitter<E, SK> hotKeySplitter;
+
+    /**
+     * 热点拆分按分组保持顺序时，每个实体按分组固定的子处理器路由
+     */
+    private final boolean groupPinned;
+
+    /**
+     * 路由策略为long分片KEY时按long路由，否则为null
+     */
+    private final ShardBufferProcessorLongStrategyV2<E> longShardBufferProcessorStrategy;
+
+    /**
+     * 路由策略为int分片KEY时按int路由，否则为null
+     */
+    private final ShardBufferProcessorIntStrategyV2<E> intShardBufferProcessorStrategy;
+
+    /**
+     * 分片KEY不存在时是否原子地创建缓冲处理器，不调用bufferProcessorNotFoundCallback
+     */
+    private final boolean autoCreateProcessors;
+
+    /**
+     * 按分片KEY串行调用bufferProcessorNotFoundCallback，避免并发路由到同一不存在的分片KEY时重复执行；
+     * 不同分片KEY的回调互不等待，回调结束后移除
+     */
+    private final ConcurrentMap<SK, Object> notFoundLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 注册到JMX的汇总监控统计，关闭时注销
+     */
+    private volatile ObjectName metricsObjectName;
+
     public ShardBufferProcessorV2(ShardBufferProcessorContainer<E, G, R, SK> bufferProcessorContainer,
                                   ShardBufferProcessorStrategyV2<E, SK> shardBufferProcessorStrategy,
                                   BufferProcessorNotFoundCallback<E, G, R, SK> bufferProcessorNotFoundCallback) {
+        this(bufferProcessorContainer, shardBufferProcessorStrategy, bufferProcessorNotFoundCallback, null);
+    }
+
+    public ShardBufferProcessorV2(ShardBufferProcessorContainer<E, G, R, SK> bufferProcessorContainer,
+                                  ShardBufferProcessorStrategyV2<E, SK> shardBufferProcessorStrategy,
+                                  BufferProcessorNotFoundCallback<E, G, R, SK> bufferProcessorNotFoundCallback,
+                                  ShardHotKeySplitter<E, SK> hotKeySplitter) {
+        this(bufferProcessorContainer, shardBufferProcessorStrategy, bufferProcessorNotFoundCallback, hotKeySplitter, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ShardBufferProcessorV2(ShardBufferProcessorContainer<E, G, R, SK> bufferProcessorContainer,
+                                  ShardBufferProcessorStrategyV2<E, SK> shardBufferProcessorStrategy,
+                                  BufferProcessorNotFoundCallback<E, G, R, SK> bufferProcessorNotFoundCallback,
+                                  ShardHotKeySplitter<E, SK> hotKeySplitter,
+                                  boolean autoCreateProcessors) {
         this.bufferProcessorContainer = bufferProcessorContainer;
         this.shardBufferProcessorStrategy = shardBufferProcessorStrategy;
         this.bufferProcessorNotFoundCallback = bufferProcessorNotFoundCallback;
+        this.hotKeySplitter = hotKeySplitter;
+        this.groupPinned = hotKeySplitter != null && hotKeySplitter.isGroupOrdered();
+        this.longShardBufferProcessorStrategy = shardBufferProcessorStrategy instanceof ShardBufferProcessorLongStrategyV2
+                ? (ShardBufferProcessorLongStrategyV2<E>) shardBufferProcessorStrategy : null;
+        this.intShardBufferProcessorStrategy = shardBufferProcessorStrategy instanceof ShardBufferProcessorIntStrategyV2
+                ? (ShardBufferProcessorIntStrategyV2<E>) shardBufferProcessorStrategy : null;
+        this.autoCreateProcessors = autoCreateProcessors;
     }
 
     public static <E, G, R, SK> ShardBufferProcessorBuilderV2<E, G, R, SK> newBuilder() {
@@ -36,29 +118,513 @@ public class ShardBufferProcessorV2<E, G, R, SK> {
      * @throws InterruptedException
      */
     public BufferFuture<R> submit(E element) throws InterruptedException {
-        BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
-        return processor.submit(element);
+        if (isShutdown()) {
+            return BufferFutureTask.newFailedTask(element, newRejectedException());
+        }
+
+        if (groupPinned) {
+            return submitPinned(element, new ProcessorSubmitter<E, G, R>() {
+                @Override
+                BufferFuture<R> submit(BufferGroupProcessor<E, G, R> processor, E element) throws InterruptedException {
+                    return processor.submit(element);
+                }
+            });
+        }
+
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            BufferFuture<R> future = processor.submit(element);
+            if (!isEvictedRejected(processor, future)) {
+                return future;
+            }
+        }
     }
 
+    /**
+     * 不阻塞地提交请求数据，缓冲队列已满时按溢出策略处理
+     *
+     * @param element
+     * @return
+     */
+    public BufferFuture<R> trySubmit(E element) {
+        if (isShutdown()) {
+            return BufferFutureTask.newFailedTask(element, newRejectedException());
+        }
+
+        if (groupPinned) {
+            try {
+                return submitPinned(element, new ProcessorSubmitter<E, G, R>() {
+                    @Override
+                    BufferFuture<R> submit(BufferGroupProcessor<E, G, R> processor, E element) {
+                        return processor.trySubmit(element);
+                    }
+                });
+            } catch (InterruptedException ex) {
+                // trySubmit不阻塞，不会被中断
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            BufferFuture<R> future = processor.trySubmit(element);
+            if (!isEvictedRejected(processor, future)) {
+                return future;
+            }
+        }
+    }
+
+    /**
+     * 提交请求数据，缓冲队列已满时最多等待timeout，超时后按溢出策略处理
+     *
+     * @param element
+     * @param timeout
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     */
+    public BufferFuture<R> submit(E element, final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (isShutdown()) {
+            return BufferFutureTask.newFailedTask(element, newRejectedException());
+        }
+
+        if (groupPinned) {
+            return submitPinned(element, new ProcessorSubmitter<E, G, R>() {
+                @Override
+                BufferFuture<R> submit(BufferGroupProcessor<E, G, R> processor, E element) throws InterruptedException {
+                    return processor.submit(element, timeout, unit);
+                }
+            });
+        }
+
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            BufferFuture<R> future = processor.submit(element, timeout, unit);
+            if (!isEvictedRejected(processor, future)) {
+                return future;
+            }
+        }
+    }
+
+    /**
+     * 提交带截止时间的请求数据，超过截止时间仍未交给分组处理时丢弃
+     */
+    public BufferFuture<R> submitWithDeadline(E element, final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (isShutdown()) {
+            return BufferFutureTask.newFailedTask(element, newRejectedException());
+        }
+
+        if (groupPinned) {
+            // 重新路由时截止时间从首次提交开始计算
+            final long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+            return submitPinned(element, new ProcessorSubmitter<E, G, R>() {
+                @Override
+                BufferFuture<R> submit(BufferGroupProcessor<E, G, R> processor, E element) throws InterruptedException {
+                    return processor.submitWithDeadline(element, deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            });
+        }
+
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            BufferFuture<R> future = processor.submitWithDeadline(element, timeout, unit);
+            if (!isEvictedRejected(processor, future)) {
+                return future;
+            }
+        }
+    }
+
+    /**
+     * 批量提交请求数据到缓冲处理器入口，一次遍历按分片路由，每个分片的缓冲处理器批量写入一次
+     *
+     * @param elements
+     * @return 汇总的Future，可通过getFutures按提交顺序获取每个实体的Future
+     * @throws InterruptedException
+     * @throws NullPointerException 任一实体为null，此时不提交任何实体
+     */
+    public BufferBatchFuture<R> submitAll(Collection<? extends E> elements) throws InterruptedException {
+        // 先检查全部实体，避免部分实体已路由或提交后才失败
+        for (E element : elements) {
+            if (element == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        if (isShutdown()) {
+            List<BufferFuture<R>> futures = new ArrayList<>(elements.size());
+            for (E element : elements) {
+                futures.add(BufferFutureTask.<E, R>newFailedTask(element, newRejectedException()));
+            }
+            return new BufferBatchFutureTask<R>(futures);
+        }
+
+        // 按分片路由实体，同一缓冲处理器的实体归到一起
+        Map<BufferGroupProcessor<E, G, R>, List<E>> processorElementsMap = new IdentityHashMap<>();
+        List<BufferGroupProcessor<E, G, R>> elementProcessors = new ArrayList<>(elements.size());
+        List<ShardHotKeySplitter.GroupPin> elementGroupPins = groupPinned
+                ? new ArrayList<ShardHotKeySplitter.GroupPin>(elements.size()) : null;
+        for (E element : elements) {
+            BufferGroupProcessor<E, G, R> processor;
+            if (groupPinned) {
+                SK shardKey = shardBufferProcessorStrategy.routeSK(element);
+                ShardHotKeySplitter.GroupPin groupPin = hotKeySplitter.pinSplit(shardKey, element);
+                elementGroupPins.add(groupPin);
+                processor = routePinnedProcessor(shardKey, element, groupPin);
+            } else {
+                processor = routeProcessor(element);
+            }
+            List<E> processorElements = processorElementsMap.get(processor);
+            if (processorElements == null) {
+                processorElements = new ArrayList<>();
+                processorElementsMap.put(processor, processorElements);
+            }
+            processorElements.add(element);
+            elementProcessors.add(processor);
+        }
+
+        // 每个分片批量提交
+        Map<BufferGroupProcessor<E, G, R>, Iterator<BufferFuture<R>>> processorFuturesMap = new IdentityHashMap<>();
+        try {
+            for (Map.Entry<BufferGroupProcessor<E, G, R>, List<E>> entry : processorElementsMap.entrySet()) {
+                processorFuturesMap.put(entry.getKey(), entry.getKey().submitAll(entry.getValue()).getFutures().iterator());
+            }
+        } catch (InterruptedException | RuntimeException ex) {
+            if (groupPinned) {
+                unpinSubmitted(elementProcessors, elementGroupPins, processorFuturesMap);
+            }
+            throw ex;
+        }
+
+        // 按提交顺序合并每个实体的Future，被并发回收的缓冲处理器拒绝的实体重新路由提交
+        List<BufferFuture<R>> futures = new ArrayList<>(elementProcessors.size());
+        int elementIndex = 0;
+        for (E element : elements) {
+            ShardHotKeySplitter.GroupPin groupPin = groupPinned ? elementGroupPins.get(elementIndex) : null;
+            BufferGroupProcessor<E, G, R> processor = elementProcessors.get(elementIndex++);
+            BufferFuture<R> future = processorFuturesMap.get(processor).next();
+            if (isEvictedRejected(processor, future)) {
+                if (groupPinned) {
+                    hotKeySplitter.unpin(groupPin);
+                }
+                future = submit(element);
+            } else if (groupPinned) {
+                hotKeySplitter.unpinOnDone(groupPin, future);
+            }
+            futures.add(future);
+        }
+        return new BufferBatchFutureTask<R>(futures);
+    }
+
+    /**
+     * 批量提交中断时，已提交的实体完成后释放分组的固定，未提交的立即释放
+     */
+    private void unpinSubmitted(List<BufferGroupProcessor<E, G, R>> elementProcessors,
+                                List<ShardHotKeySplitter.GroupPin> elementGroupPins,
+                                Map<BufferGroupProcessor<E, G, R>, Iterator<BufferFuture<R>>> processorFuturesMap) {
+        for (int i = 0; i < elementProcessors.size(); i++) {
+            Iterator<BufferFuture<R>> processorFutures = processorFuturesMap.get(elementProcessors.get(i));
+            if (processorFutures != null) {
+                hotKeySplitter.unpinOnDone(elementGroupPins.get(i), processorFutures.next());
+            } else {
+                hotKeySplitter.unpin(elementGroupPins.get(i));
+            }
+        }
+    }
+
+    /**
+     * 提交请求数据到缓冲处理器，不返回处理结果
+     *
+     * @param element
+     * @throws InterruptedException
+     */
+    public void execute(E element) throws InterruptedException {
+        if (isShutdown()) {
+            throw new RejectedExecutionException("[ShardBufferProcessor] 缓冲处理器已关闭，拒绝提交的实体！");
+        }
+
+        // 按分组固定子处理器时需在实体完成后释放固定，以submit提交
+        if (groupPinned) {
+            BufferFuture<R> future = submit(element);
+            if (future.isDone()) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof BufferRejectedException || ex.getCause() instanceof BufferOverflowException) {
+                        throw new RejectedExecutionException(ex.getCause().getMessage());
+                    }
+                }
+            }
+            return;
+        }
+
+        for (; ; ) {
+            BufferGroupProcessor<E, G, R> processor = routeProcessor(element);
+            try {
+                processor.execute(element);
+                return;
+            } catch (RejectedExecutionException ex) {
+                if (!processor.isShutdown() || isShutdown()) {
+                    throw ex;
+                }
+                // 缓冲处理器已被并发回收，重新路由到新创建的缓冲处理器
+            }
+        }
+    }
+
+    /**
+     * 容器中的分片KEY数量，自动创建的分片KEY被回收后不再计入
+     */
     public int getProcessorCount() {
         return bufferProcessorContainer.getProcessorCount();
     }
 
+    /**
+     * 已创建且未被回收的分片缓冲处理器数量
+     */
+    public int getCreatedProcessorCount() {
+        return bufferProcessorContainer.getCreatedProcessorCount();
+    }
+
+    /**
+     * 关闭全部分片的缓冲处理器，已缓冲的实体处理完成后终止
+     */
+    public void shutdown() {
+        bufferProcessorContainer.shutdown();
+        BufferProcessorMetricsJmx.unregister(metricsObjectName);
+    }
+
+    /**
+     * 立即停止全部分片的缓冲处理器，已缓冲未处理的实体以失败响应
+     */
+    public void shutdownNow() {
+        bufferProcessorContainer.shutdownNow();
+        BufferProcessorMetricsJmx.unregister(metricsObjectName);
+    }
+
+    /**
+     * 已创建及已回收的分片缓冲处理器合并后的监控统计快照
+     */
+    @Override
+    public BufferProcessorMetricsSnapshot getMetrics() {
+        BufferProcessorMetricsSnapshot snapshot = bufferProcessorContainer.getRetiredMetrics();
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessorContainer.getCreatedProcessors()) {
+            snapshot = snapshot.merge(bufferProcessor.getMetrics());
+        }
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : bufferProcessorContainer.getRetiringProcessors()) {
+            snapshot = snapshot.merge(retiringProcessor.getMetrics());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 获取指定分片缓冲处理器的监控统计快照，合并热点拆分的子处理器，未创建或已回收时为空
+     */
+    public BufferProcessorMetricsSnapshot getMetrics(SK shardKey) {
+        BufferProcessorMetricsSnapshot snapshot = BufferProcessorMetricsSnapshot.EMPTY;
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessorContainer.getCreatedProcessors(shardKey)) {
+            snapshot = snapshot.merge(bufferProcessor.getMetrics());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 分片KEY当前是否为热点，未开启热点拆分时总是false
+     */
+    public boolean isHotKey(SK shardKey) {
+        return hotKeySplitter != null && hotKeySplitter.isHotKey(shardKey);
+    }
+
+    /**
+     * 热点拆分按分组固定子处理器时，有未完成实体的分组数，未按分组固定时总是0
+     */
+    public int getPinnedGroupCount() {
+        return groupPinned ? hotKeySplitter.getPinnedGroupCount() : 0;
+    }
+
+    /**
+     * 将合并后的监控统计注册到JMX，关闭时注销
+     */
+    public void registerMetricsJmx(String name) {
+        metricsObjectName = BufferProcessorMetricsJmx.register(name, this);
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessorContainer.getCreatedProcessors()) {
+            if (!bufferProcessor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : bufferProcessorContainer.getRetiringProcessors()) {
+            if (!retiringProcessor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isShutdown() {
+        return bufferProcessorContainer.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        if (!isShutdown()) {
+            return false;
+        }
+
+        for (BufferGroupProcessor<E, G, R> bufferProcessor : bufferProcessorContainer.getCreatedProcessors()) {
+            if (!bufferProcessor.isTerminated()) {
+                return false;
+            }
+        }
+        for (BufferGroupProcessor<E, G, R> retiringProcessor : bufferProcessorContainer.getRetiringProcessors()) {
+            if (!retiringProcessor.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private BufferRejectedException newRejectedException() {
+        return new BufferRejectedException("[ShardBufferProcessor] 缓冲处理器已关闭，拒绝提交的实体！");
+    }
+
+    /**
+     * 实体被提交时缓冲处理器已被回收而拒绝，需重新路由到新创建的缓冲处理器
+     */
+    private boolean isEvictedRejected(BufferGroupProcessor<E, G, R> processor, BufferFuture<R> future) {
+        if (!future.isDone() || !processor.isShutdown() || isShutdown()) {
+            return false;
+        }
+
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException ex) {
+            return ex.getCause() != null && ex.getCause().getClass() == BufferRejectedException.class;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
     private BufferGroupProcessor<E, G, R> routeProcessor(E element) {
 
+        // long分片KEY且不拆分热点时按long路由，不装箱
+        if (longShardBufferProcessorStrategy != null && hotKeySplitter == null) {
+            long longShardKey = longShardBufferProcessorStrategy.routeLongSK(element);
+            BufferGroupProcessor<E, G, R> bufferProcessor = autoCreateProcessors
+                    ? bufferProcessorContainer.getOrCreate(longShardKey) : bufferProcessorContainer.get(longShardKey);
+            if (bufferProcessor != null) {
+                return bufferProcessor;
+            }
+        }
+
+        // int分片KEY且不拆分热点时按int路由，不装箱
+        if (intShardBufferProcessorStrategy != null && hotKeySplitter == null) {
+            int intShardKey = intShardBufferProcessorStrategy.routeIntSK(element);
+            BufferGroupProcessor<E, G, R> bufferProcessor = autoCreateProcessors
+                    ? bufferProcessorContainer.getOrCreate(intShardKey) : bufferProcessorContainer.get(intShardKey);
+            if (bufferProcessor != null) {
+                return bufferProcessor;
+            }
+        }
+
         // 路由缓冲处理器的KEY
         SK shardKey = shardBufferProcessorStrategy.routeSK(element);
 
         // 用路由KEY取缓冲处理器
-        BufferGroupProcessor<E, G, R> bufferProcessor = bufferProcessorContainer.get(shardKey);
+        BufferGroupProcessor<E, G, R> bufferProcessor = autoCreateProcessors
+                ? bufferProcessorContainer.getOrCreate(shardKey) : bufferProcessorContainer.get(shardKey);
+
+        if (bufferProcessor == null) {
+            bufferProcessor = routeNotFoundProcessor(shardKey, element);
+        }
 
-        if (bufferProcessor != null) {
-            return bufferProcessor;
+        // 热点分片KEY的实体分散到子处理器
+        if (hotKeySplitter != null) {
+            return routeSplitProcessor(shardKey, hotKeySplitter.routeSplit(shardKey, element), bufferProcessor);
         }
 
+        return bufferProcessor;
+    }
+
+    /**
+     * 按分组固定的子处理器路由，分组失败时路由到分片KEY原有的缓冲处理器
+     */
+    private BufferGroupProcessor<E, G, R> routePinnedProcessor(SK shardKey, E element, ShardHotKeySplitter.GroupPin groupPin) {
+        BufferGroupProcessor<E, G, R> bufferProcessor = autoCreateProcessors
+                ? bufferProcessorContainer.getOrCreate(shardKey) : bufferProcessorContainer.get(shardKey);
+        if (bufferProcessor == null) {
+            bufferProcessor = routeNotFoundProcessor(shardKey, element);
+        }
+        return routeSplitProcessor(shardKey, groupPin != null ? groupPin.getSplitIndex() : 0, bufferProcessor);
+    }
+
+    private BufferGroupProcessor<E, G, R> routeSplitProcessor(SK shardKey, int splitIndex,
+                                                             BufferGroupProcessor<E, G, R> bufferProcessor) {
+        if (splitIndex > 0) {
+            BufferGroupProcessor<E, G, R> splitProcessor = bufferProcessorContainer.get(shardKey, splitIndex);
+            if (splitProcessor != null) {
+                return splitProcessor;
+            }
+        }
+        return bufferProcessor;
+    }
+
+    /**
+     * 按分组固定子处理器提交，实体完成后释放固定；被并发回收的缓冲处理器拒绝时释放固定后重新路由
+     */
+    private BufferFuture<R> submitPinned(E element, ProcessorSubmitter<E, G, R> submitter) throws InterruptedException {
+        for (; ; ) {
+            SK shardKey = shardBufferProcessorStrategy.routeSK(element);
+            ShardHotKeySplitter.GroupPin groupPin = hotKeySplitter.pinSplit(shardKey, element);
+            BufferGroupProcessor<E, G, R> processor;
+            BufferFuture<R> future = null;
+            try {
+                processor = routePinnedProcessor(shardKey, element, groupPin);
+                future = submitter.submit(processor, element);
+            } finally {
+                if (future == null) {
+                    hotKeySplitter.unpin(groupPin);
+                }
+            }
+
+            if (!isEvictedRejected(processor, future)) {
+                hotKeySplitter.unpinOnDone(groupPin, future);
+                return future;
+            }
+            hotKeySplitter.unpin(groupPin);
+        }
+    }
+
+    /**
+     * 提交到路由的缓冲处理器
+     */
+    private abstract static class ProcessorSubmitter<E, G, R> {
+
+        abstract BufferFuture<R> submit(BufferGroupProcessor<E, G, R> processor, E element) throws InterruptedException;
+    }
+
+    private BufferGroupProcessor<E, G, R> routeNotFoundProcessor(SK shardKey, E element) {
+        BufferGroupProcessor<E, G, R> bufferProcessor = null;
         if (bufferProcessorNotFoundCallback != null) {
-            bufferProcessorNotFoundCallback.execute(bufferProcessorContainer, element);
-            bufferProcessor = bufferProcessorContainer.get(shardKey);
+            Object notFoundLock = new Object();
+            Object existLock = notFoundLocks.putIfAbsent(shardKey, notFoundLock);
+            if (existLock != null) {
+                notFoundLock = existLock;
+            }
+            try {
+                synchronized (notFoundLock) {
+                    // 等待锁期间其他线程可能已添加该分片KEY
+                    bufferProcessor = bufferProcessorContainer.get(shardKey);
+                    if (bufferProcessor == null) {
+                        bufferProcessorNotFoundCallback.execute(bufferProcessorContainer, element);
+                        bufferProcessor = bufferProcessorContainer.get(shardKey);
+                    }
+                }
+            } finally {
+                notFoundLocks.remove(shardKey, notFoundLock);
+            }
         }
 
         if (bufferProcessor == null) {
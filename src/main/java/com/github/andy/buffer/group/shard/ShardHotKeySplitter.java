@@ -0,0 +1,277 @@
+package com.github.andy.buffer.group.shard;
+
+import com.github.andy.buffer.group.BufferFuture;
+import com.github.andy.buffer.group.BufferFutureListener;
+import com.github.andy.buffer.group.BufferGroupStrategy;
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 热点分片KEY的拆分路由
+ * <p>
+ * 按分片KEY统计每秒的到达数，达到hotKeyThreshold时视为热点，降到阈值一半以下时恢复；
+ * 热点分片KEY的实体分散到hotKeySplits个子处理器，子处理器0即该分片KEY原有的缓冲处理器。
+ * <p>
+ * 设置了bufferGroupStrategy时同一分组的实体总是路由到同一个子处理器，保持分组的顺序处理：由pinSplit路由，
+ * 分组有未完成的实体时后续实体固定路由到这些实体所在的子处理器，全部完成后才按当前的热点状态切换，
+ * 分片KEY在热点与非热点之间切换时同一分组不会在两个缓冲处理器中并发处理。
+ */
+public class ShardHotKeySplitter<E, SK> {
+
+    private static final int SKETCH_WIDTH = 1024;
+
+    private static final long SKETCH_WINDOW_MS = 1000;
+
+    private final ShardKeyFrequencySketch sketch = new ShardKeyFrequencySketch(SKETCH_WIDTH, SKETCH_WINDOW_MS);
+
+    /**
+     * 当前的热点分片KEY
+     */
+    private final ConcurrentMap<SK, Boolean> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 有未完成实体的分组及其固定的子处理器，未设置bufferGroupStrategy时不使用
+     */
+    private final ConcurrentMap<GroupPinKey, GroupPin> groupPins = new ConcurrentHashMap<>();
+
+    private final int hotKeySplits;
+
+    private final long hotKeyThreshold;
+
+    private final BufferGroupStrategy<E, ?> bufferGroupStrategy;
+
+    /**
+     * @param hotKeySplits        热点分片KEY拆分的子处理器数
+     * @param hotKeyThreshold     分片KEY每秒到达数达到该值时视为热点
+     * @param bufferGroupStrategy 需要保持分组顺序时按分组路由子处理器，为null时随机路由
+     */
+    public ShardHotKeySplitter(int hotKeySplits, long hotKeyThreshold, BufferGroupStrategy<E, ?> bufferGroupStrategy) {
+        Preconditions.checkArgument(hotKeySplits > 1, "hotKeySplits必须大于1。");
+        Preconditions.checkArgument(hotKeyThreshold > 0, "hotKeyThreshold必须大于0。");
+
+        this.hotKeySplits = hotKeySplits;
+        this.hotKeyThreshold = hotKeyThreshold;
+        this.bufferGroupStrategy = bufferGroupStrategy;
+    }
+
+    /**
+     * 是否按分组保持顺序，是时应使用pinSplit路由
+     */
+    public boolean isGroupOrdered() {
+        return bufferGroupStrategy != null;
+    }
+
+    /**
+     * 记录实体的到达并路由子处理器，不保持分组顺序
+     *
+     * @return 子处理器的索引，非热点分片KEY为0
+     */
+    public int routeSplit(SK shardKey, E element) {
+        if (!recordArrival(shardKey)) {
+            return 0;
+        }
+
+        if (bufferGroupStrategy == null) {
+            return ThreadLocalRandom.current().nextInt(hotKeySplits);
+        }
+
+        Object group;
+        try {
+            group = bufferGroupStrategy.doGroup(element);
+        } catch (Exception ex) {
+            // 分组失败的实体由原有的缓冲处理器处理分组失败
+            return 0;
+        }
+        return group != null ? splitOf(group) : 0;
+    }
+
+    /**
+     * 记录实体的到达并按分组路由子处理器，分组有未完成的实体时路由到其所在的子处理器
+     * <p>
+     * 返回的固定需在实体提交后调用{@link #unpinOnDone}，提交失败时调用{@link #unpin}；分组失败时返回null，路由到子处理器0。
+     */
+    public GroupPin pinSplit(SK shardKey, E element) {
+        boolean hot = recordArrival(shardKey);
+
+        Object group;
+        try {
+            group = bufferGroupStrategy.doGroup(element);
+        } catch (Exception ex) {
+            return null;
+        }
+
+        int splitIndex = hot && group != null ? splitOf(group) : 0;
+        GroupPinKey pinKey = new GroupPinKey(shardKey, group);
+        for (; ; ) {
+            GroupPin groupPin = groupPins.get(pinKey);
+            if (groupPin == null) {
+                GroupPin newGroupPin = new GroupPin(pinKey, splitIndex);
+                groupPin = groupPins.putIfAbsent(pinKey, newGroupPin);
+                if (groupPin == null) {
+                    return newGroupPin;
+                }
+            }
+
+            // 已全部完成并移除的固定重新获取
+            synchronized (groupPin) {
+                if (groupPin.pending > 0) {
+                    groupPin.pending++;
+                    return groupPin;
+                }
+            }
+        }
+    }
+
+    /**
+     * 实体完成后释放分组的固定
+     */
+    public void unpinOnDone(final GroupPin groupPin, BufferFuture<?> future) {
+        if (groupPin == null) {
+            return;
+        }
+
+        future.addListener(new BufferFutureListener<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                unpin(groupPin);
+            }
+
+            @Override
+            public void onFailure(Exception ex) {
+                unpin(groupPin);
+            }
+        }, null);
+    }
+
+    /**
+     * 释放分组的一次固定，分组没有未完成的实体时移除
+     */
+    public void unpin(GroupPin groupPin) {
+        if (groupPin == null) {
+            return;
+        }
+
+        synchronized (groupPin) {
+            if (--groupPin.pending > 0) {
+                return;
+            }
+        }
+        groupPins.remove(groupPin.pinKey, groupPin);
+    }
+
+    public boolean isHotKey(SK shardKey) {
+        return hotKeys.containsKey(shardKey);
+    }
+
+    public int getHotKeySplits() {
+        return hotKeySplits;
+    }
+
+    /**
+     * 有未完成实体而固定了子处理器的分组数
+     */
+    public int getPinnedGroupCount() {
+        return groupPins.size();
+    }
+
+    /**
+     * 记录到达并更新热点状态
+     *
+     * @return 是否为热点分片KEY
+     */
+    private boolean recordArrival(SK shardKey) {
+        if (sketch.tryAge()) {
+            pruneHotKeys();
+        }
+
+        // 计数每秒减半，每秒到达r个时估计值在r到2r之间：达到2倍阈值时每秒至少阈值个，低于阈值时每秒不足阈值一半
+        long estimate = sketch.increment(shardKey);
+        if (estimate >= hotKeyThreshold * 2) {
+            if (!hotKeys.containsKey(shardKey)) {
+                hotKeys.put(shardKey, Boolean.TRUE);
+            }
+            return true;
+        }
+        if (!hotKeys.containsKey(shardKey)) {
+            return false;
+        }
+        if (estimate < hotKeyThreshold) {
+            hotKeys.remove(shardKey);
+            return false;
+        }
+        return true;
+    }
+
+    private int splitOf(Object group) {
+        int hash = group.hashCode() * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % hotKeySplits;
+    }
+
+    /**
+     * 移除已不再到达的热点分片KEY
+     */
+    private void pruneHotKeys() {
+        for (SK hotKey : hotKeys.keySet()) {
+            if (sketch.estimate(hotKey) < hotKeyThreshold) {
+                hotKeys.remove(hotKey);
+            }
+        }
+    }
+
+    /**
+     * 分组固定到的子处理器
+     */
+    public static final class GroupPin {
+
+        private final GroupPinKey pinKey;
+
+        private final int splitIndex;
+
+        /**
+         * 未完成的实体数，归零后移除，不再增加
+         */
+        private int pending = 1;
+
+        GroupPin(GroupPinKey pinKey, int splitIndex) {
+            this.pinKey = pinKey;
+            this.splitIndex = splitIndex;
+        }
+
+        public int getSplitIndex() {
+            return splitIndex;
+        }
+    }
+
+    private static final class GroupPinKey {
+
+        private final Object shardKey;
+
+        private final Object group;
+
+        GroupPinKey(Object shardKey, Object group) {
+            this.shardKey = shardKey;
+            this.group = group;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof GroupPinKey)) {
+                return false;
+            }
+            GroupPinKey other = (GroupPinKey) obj;
+            return shardKey.equals(other.shardKey) && (group == null ? other.group == null : group.equals(other.group));
+        }
+
+        @Override
+        public int hashCode() {
+            return shardKey.hashCode() * 31 + (group != null ? group.hashCode() : 0);
+        }
+    }
+
+}
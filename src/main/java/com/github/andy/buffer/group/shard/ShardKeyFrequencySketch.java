@@ -0,0 +1,177 @@
+package com.github.andy.buffer.group.shard;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分片KEY到达频率的Count-Min Sketch
+ * <p>
+ * 每个统计周期结束时计数减半，估计值约为最近一个周期的到达数的1到2倍；哈希冲突只会高估，不会低估。
+ * <p>
+ * 到达先累计在线程本地的计数表中，同一分片KEY累计LOCAL_FLUSH_COUNT次或本地表满时合并写入共享计数器，
+ * 热点分片KEY的每次到达不再竞争共享计数器；估计值包含当前线程未合并的计数，其他线程未合并的计数最多延迟LOCAL_FLUSH_COUNT次。
+ */
+class ShardKeyFrequencySketch {
+
+    private static final int DEPTH = 4;
+
+    private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+
+    /**
+     * 线程本地计数表的槽位数，为2的幂
+     */
+    private static final int LOCAL_SLOTS = 16;
+
+    /**
+     * 同一分片KEY在线程本地累计到该次数时合并写入
+     */
+    private static final int LOCAL_FLUSH_COUNT = 32;
+
+    private final AtomicLongArray counters;
+
+    private final int widthMask;
+
+    private final long windowNanos;
+
+    private final AtomicLong windowStartNanos;
+
+    private final ThreadLocal<LocalCounts> localCounts = new ThreadLocal<LocalCounts>() {
+        @Override
+        protected LocalCounts initialValue() {
+            return new LocalCounts();
+        }
+    };
+
+    /**
+     * @param width      每行的计数器数，向上取整为2的幂
+     * @param windowMs   统计周期
+     */
+    ShardKeyFrequencySketch(int width, long windowMs) {
+        int tableWidth = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.counters = new AtomicLongArray(DEPTH * tableWidth);
+        this.widthMask = tableWidth - 1;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.windowStartNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 记录一次到达
+     *
+     * @return 记录后的到达频率估计值
+     */
+    long increment(Object key) {
+        int hash = key.hashCode();
+        LocalCounts local = localCounts.get();
+        int slot = local.slotOf(hash);
+        if (slot < 0) {
+            // 本地表满时全部合并后重新查找
+            flush(local);
+            slot = local.slotOf(hash);
+        }
+
+        int localCount = ++local.counts[slot];
+        if (localCount < LOCAL_FLUSH_COUNT) {
+            return estimate(hash) + localCount;
+        }
+
+        local.counts[slot] = 0;
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, counters.addAndGet(indexOf(hash, i), localCount));
+        }
+        return estimate;
+    }
+
+    /**
+     * 到达频率估计值，不记录到达，不包含各线程未合并的计数
+     */
+    long estimate(Object key) {
+        return estimate(key.hashCode());
+    }
+
+    private long estimate(int hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, counters.get(indexOf(hash, i)));
+        }
+        return estimate;
+    }
+
+    /**
+     * 统计周期结束时计数减半，同一周期只有一个线程执行
+     *
+     * @return 是否由当前线程结束了统计周期
+     */
+    boolean tryAge() {
+        long startNanos = windowStartNanos.get();
+        long nowNanos = System.nanoTime();
+        if (nowNanos - startNanos < windowNanos || !windowStartNanos.compareAndSet(startNanos, nowNanos)) {
+            return false;
+        }
+
+        // 与并发的计数交错时可能丢失少量计数，只影响估计精度
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >> 1);
+        }
+        return true;
+    }
+
+    private void flush(LocalCounts local) {
+        for (int slot = 0; slot < LOCAL_SLOTS; slot++) {
+            int count = local.counts[slot];
+            if (count > 0) {
+                for (int i = 0; i < DEPTH; i++) {
+                    counters.addAndGet(indexOf(local.hashes[slot], i), count);
+                }
+            }
+        }
+        local.clear();
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        h ^= h >>> 16;
+        return row * (widthMask + 1) + (h & widthMask);
+    }
+
+    /**
+     * 线程本地未合并的计数，按hash开放寻址
+     */
+    private static final class LocalCounts {
+
+        final int[] hashes = new int[LOCAL_SLOTS];
+
+        final int[] counts = new int[LOCAL_SLOTS];
+
+        final boolean[] used = new boolean[LOCAL_SLOTS];
+
+        /**
+         * @return hash所在的槽位，不存在时占用空槽位，表满时返回-1
+         */
+        int slotOf(int hash) {
+            int mask = LOCAL_SLOTS - 1;
+            int start = (hash ^ (hash >>> 16)) & mask;
+            for (int i = 0; i < LOCAL_SLOTS; i++) {
+                int slot = (start + i) & mask;
+                if (!used[slot]) {
+                    used[slot] = true;
+                    hashes[slot] = hash;
+                    return slot;
+                }
+                if (hashes[slot] == hash) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        void clear() {
+            for (int slot = 0; slot < LOCAL_SLOTS; slot++) {
+                used[slot] = false;
+                counts[slot] = 0;
+            }
+        }
+    }
+
+}
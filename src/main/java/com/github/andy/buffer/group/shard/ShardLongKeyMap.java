@@ -0,0 +1,148 @@
+package com.github.andy.buffer.group.shard;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * long分片KEY的开放寻址Map，读不加锁、不装箱，写加锁
+ * <p>
+ * 写入时先写KEY再以volatile写入值，读到值即可读到对应的KEY；删除时值替换为墓碑，读时跳过墓碑继续探测，
+ * 墓碑位置不复用，扩容或重建时整体替换为不含墓碑的新表。
+ */
+class ShardLongKeyMap<V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final Object TOMBSTONE = new Object();
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    private int size;
+
+    /**
+     * 表中的墓碑数，与size一起计入负载
+     */
+    private int tombstones;
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        Table table = this.table;
+        int mask = table.keys.length - 1;
+        for (int i = Table.indexOf(key, mask); ; i = (i + 1) & mask) {
+            Object value = table.values.get(i);
+            if (value == null) {
+                return null;
+            }
+            if (value != TOMBSTONE && table.keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    /**
+     * KEY已存在时保留原值
+     *
+     * @return KEY对应的值
+     */
+    synchronized V putIfAbsent(long key, V value) {
+        V existValue = get(key);
+        if (existValue != null) {
+            return existValue;
+        }
+
+        addAbsent(key, value);
+        return value;
+    }
+
+    /**
+     * KEY已存在时替换原值
+     */
+    synchronized void put(long key, V value) {
+        Table table = this.table;
+        int i = table.find(key);
+        if (i >= 0) {
+            table.values.set(i, value);
+            return;
+        }
+
+        addAbsent(key, value);
+    }
+
+    /**
+     * KEY对应的值为value时删除
+     */
+    synchronized boolean remove(long key, V value) {
+        Table table = this.table;
+        int i = table.find(key);
+        if (i < 0 || table.values.get(i) != value) {
+            return false;
+        }
+
+        table.values.set(i, TOMBSTONE);
+        size--;
+        tombstones++;
+        return true;
+    }
+
+    private void addAbsent(long key, V value) {
+        // 负载因子不超过0.5，保证探测链较短且总有空位；有效KEY不超过容量的1/4时只清除墓碑不扩容
+        if ((size + tombstones + 1) * 2 > table.keys.length) {
+            int capacity = (size + 1) * 4 > table.keys.length ? table.keys.length * 2 : table.keys.length;
+            Table newTable = new Table(capacity);
+            for (int i = 0; i < table.keys.length; i++) {
+                Object tableValue = table.values.get(i);
+                if (tableValue != null && tableValue != TOMBSTONE) {
+                    newTable.put(table.keys[i], tableValue);
+                }
+            }
+            table = newTable;
+            tombstones = 0;
+        }
+
+        table.put(key, value);
+        size++;
+    }
+
+    private static final class Table {
+
+        final long[] keys;
+
+        final AtomicReferenceArray<Object> values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+        }
+
+        /**
+         * KEY所在的位置，不存在时返回-1
+         */
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int i = indexOf(key, mask); ; i = (i + 1) & mask) {
+                Object value = values.get(i);
+                if (value == null) {
+                    return -1;
+                }
+                if (value != TOMBSTONE && keys[i] == key) {
+                    return i;
+                }
+            }
+        }
+
+        void put(long key, Object value) {
+            int mask = keys.length - 1;
+            int i = indexOf(key, mask);
+            while (values.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values.set(i, value);
+        }
+
+        static int indexOf(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+
+}
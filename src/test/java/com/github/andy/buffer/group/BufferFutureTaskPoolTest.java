@@ -0,0 +1,180 @@
+package com.github.andy.buffer.group;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class BufferFutureTaskPoolTest {
+
+    @Test
+    public void releaseReturnsTaskOnlyAfterBothHolders() {
+        BufferFutureTaskPool<String, String> pool = new BufferFutureTaskPool<>(4);
+        BufferFutureTask<String, String> futureTask = pool.acquire("a");
+        assertTrue(futureTask.isPooled());
+
+        // 提交线程释放后仍在处理中，不能被复用
+        pool.release(futureTask);
+        BufferFutureTask<String, String> otherFutureTask = pool.acquire("b");
+        assertNotSame(futureTask, otherFutureTask);
+
+        // 完成时释放处理流程的引用后归还
+        futureTask.completeSuccess("a");
+        BufferFutureTask<String, String> reusedFutureTask = pool.acquire("c");
+        assertSame(futureTask, reusedFutureTask);
+        assertEquals("c", reusedFutureTask.getElement());
+        assertFalse(reusedFutureTask.isDone());
+    }
+
+    @Test
+    public void completeTwiceReleasesOnce() {
+        BufferFutureTaskPool<String, String> pool = new BufferFutureTaskPool<>(4);
+        BufferFutureTask<String, String> futureTask = pool.acquire("a");
+        pool.release(futureTask);
+        futureTask.completeSuccess("a");
+        futureTask.completeFail(new IllegalStateException());
+
+        assertSame(futureTask, pool.acquire("b"));
+        assertNotSame(futureTask, pool.acquire("c"));
+    }
+
+    @Test
+    public void detachedTaskIsNotReturned() {
+        BufferFutureTaskPool<String, String> pool = new BufferFutureTaskPool<>(4);
+        BufferFutureTask<String, String> futureTask = pool.acquire("a");
+        futureTask.detachPool();
+        futureTask.completeFail(new IllegalStateException());
+        pool.release(futureTask);
+
+        assertNotSame(futureTask, pool.acquire("b"));
+    }
+
+    @Test
+    public void fullPoolDropsReleasedTask() {
+        BufferFutureTaskPool<String, String> pool = new BufferFutureTaskPool<>(2);
+        List<BufferFutureTask<String, String>> futureTasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futureTasks.add(pool.acquire("a" + i));
+        }
+        for (BufferFutureTask<String, String> futureTask : futureTasks) {
+            pool.release(futureTask);
+            futureTask.completeSuccess(null);
+        }
+
+        assertSame(futureTasks.get(0), pool.acquire("b0"));
+        assertSame(futureTasks.get(1), pool.acquire("b1"));
+        BufferFutureTask<String, String> created = pool.acquire("b2");
+        assertFalse(futureTasks.contains(created));
+    }
+
+    @Test
+    public void singleSlotPoolReusesTask() {
+        BufferFutureTaskPool<String, String> pool = new BufferFutureTaskPool<>(1);
+        for (int i = 0; i < 4; i++) {
+            BufferFutureTask<String, String> first = pool.acquire("a");
+            BufferFutureTask<String, String> second = pool.acquire("b");
+            pool.release(first);
+            first.completeSuccess(null);
+            pool.release(second);
+            second.completeSuccess(null);
+        }
+
+        assertNotNull(pool.acquire("c"));
+    }
+
+    /**
+     * execute与shutdown交错时，复用的FutureTask不会在处理中被其他实体覆盖：每个实体最多处理一次；
+     * 写入时消费线程恰好退出的实体以RejectedExecutionException拒绝，不会被静默丢弃
+     */
+    @Test
+    public void reuseUnderShutdownRace() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            final ConcurrentMap<Integer, Boolean> handledElements = new ConcurrentHashMap<>();
+            final AtomicReference<String> error = new AtomicReference<>();
+            final BufferGroupProcessor<Integer, Integer, Integer> processor = BufferGroupProcessor.<Integer, Integer, Integer>newBuilder()
+                    .bufferQueueSize(256)
+                    .consumeBatchSize(16)
+                    .consumeWaitTimeoutMs(1)
+                    .futureTaskPoolSize(64)
+                    .bufferGroupStrategy(new BufferGroupStrategy<Integer, Integer>() {
+                        @Override
+                        public Integer doGroup(Integer element) {
+                            return element % 8;
+                        }
+                    })
+                    .bufferGroupHandler(new BufferGroupHandler<Integer, Integer, Integer>() {
+                        @Override
+                        public Map<Integer, Integer> handle(Integer group, List<Integer> elements) {
+                            Map<Integer, Integer> results = new HashMap<>();
+                            for (Integer element : elements) {
+                                if (element == null || element % 8 != group) {
+                                    error.compareAndSet(null, "group " + group + " element " + element);
+                                } else if (handledElements.putIfAbsent(element, Boolean.TRUE) != null) {
+                                    error.compareAndSet(null, "duplicate element " + element);
+                                }
+                                results.put(element, element);
+                            }
+                            return results;
+                        }
+                    })
+                    .build();
+
+            final int submitters = 4;
+            final int perSubmitter = 5000;
+            final AtomicInteger accepted = new AtomicInteger();
+            final CountDownLatch started = new CountDownLatch(submitters);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < submitters; i++) {
+                final int base = i * perSubmitter;
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        for (int j = 0; j < perSubmitter; j++) {
+                            try {
+                                processor.execute(base + j);
+                                accepted.incrementAndGet();
+                            } catch (RejectedExecutionException ex) {
+                                // 关闭后拒绝
+                            } catch (InterruptedException ex) {
+                                return;
+                            }
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+
+            started.await();
+            Thread.sleep(round % 5);
+            if (round % 2 == 0) {
+                processor.shutdown();
+            } else {
+                processor.shutdownNow();
+            }
+            for (Thread thread : threads) {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+
+            assertTrue(processor.awaitTermination(10, TimeUnit.SECONDS));
+            assertNull(error.get(), error.get());
+            if (round % 2 == 0) {
+                // 关闭时未抛出拒绝异常的实体全部处理
+                assertTrue(handledElements.size() >= accepted.get());
+            }
+        }
+    }
+
+}
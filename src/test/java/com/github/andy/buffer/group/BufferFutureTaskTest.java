@@ -0,0 +1,245 @@
+package com.github.andy.buffer.group;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class BufferFutureTaskTest {
+
+    @Test
+    public void firstCompletionWins() throws Exception {
+        BufferFutureTask<String, String> futureTask = new BufferFutureTask<>("a");
+        futureTask.completeSuccess("ok");
+        assertFalse(futureTask.completeFail(new IllegalStateException()));
+        assertFalse(futureTask.cancel());
+
+        assertTrue(futureTask.isDone());
+        assertFalse(futureTask.isCancelled());
+        assertEquals("ok", futureTask.get());
+    }
+
+    @Test
+    public void nullResultIsReported() throws Exception {
+        BufferFutureTask<String, String> futureTask = new BufferFutureTask<>("a");
+        futureTask.completeSuccess(null);
+        assertTrue(futureTask.isDone());
+        assertNull(futureTask.get(0, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void failureIsWrappedInExecutionException() throws Exception {
+        BufferFutureTask<String, String> futureTask = new BufferFutureTask<>("a");
+        IllegalStateException failure = new IllegalStateException();
+        assertTrue(futureTask.completeFail(failure));
+        try {
+            futureTask.get();
+            fail();
+        } catch (ExecutionException ex) {
+            assertSame(failure, ex.getCause());
+        }
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelledGetThrowsCancellation() throws Exception {
+        BufferFutureTask<String, String> futureTask = new BufferFutureTask<>("a");
+        assertTrue(futureTask.cancel());
+        assertTrue(futureTask.isCancelled());
+        futureTask.get();
+    }
+
+    @Test
+    public void timedGetTimesOutAndLeavesTaskUsable() throws Exception {
+        BufferFutureTask<String, String> futureTask = new BufferFutureTask<>("a");
+        try {
+            futureTask.get(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+            // 超时的等待节点已移除
+        }
+        futureTask.completeSuccess("ok");
+        assertEquals("ok", futureTask.get(0, TimeUnit.NANOSECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void interruptedWaiterDoesNotBlockCompletion() throws Exception {
+        final BufferFutureTask<String, String> futureTask = new BufferFutureTask<>("a");
+        final AtomicReference<Throwable> waiterResult = new AtomicReference<>();
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    futureTask.get();
+                } catch (Throwable ex) {
+                    waiterResult.set(ex);
+                }
+            }
+        });
+        waiter.start();
+        Thread.sleep(20);
+        waiter.interrupt();
+        waiter.join();
+
+        assertTrue(waiterResult.get() instanceof InterruptedException);
+        futureTask.completeSuccess("ok");
+        assertEquals("ok", futureTask.get());
+    }
+
+    @Test
+    public void listenersFireOnceBeforeAndAfterCompletion() {
+        BufferFutureTask<String, String> futureTask = new BufferFutureTask<>("a");
+        final AtomicInteger successes = new AtomicInteger();
+        BufferFutureListener<String> listener = new BufferFutureListener<String>() {
+            @Override
+            public void onSuccess(String result) {
+                assertEquals("ok", result);
+                successes.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(Exception ex) {
+                fail();
+            }
+        };
+
+        futureTask.addListener(listener, null);
+        futureTask.completeSuccess("ok");
+        futureTask.completeSuccess("again");
+        futureTask.addListener(listener, null);
+
+        assertEquals(2, successes.get());
+    }
+
+    @Test
+    public void rejectingListenerExecutorRunsInCompletingThread() {
+        BufferFutureTask<String, String> futureTask = new BufferFutureTask<>("a");
+        final AtomicReference<Thread> listenerThread = new AtomicReference<>();
+        futureTask.addListener(new BufferFutureListener<String>() {
+            @Override
+            public void onSuccess(String result) {
+                listenerThread.set(Thread.currentThread());
+            }
+
+            @Override
+            public void onFailure(Exception ex) {
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+
+        futureTask.completeSuccess("ok");
+        assertSame(Thread.currentThread(), listenerThread.get());
+    }
+
+    /**
+     * 并发完成时只有一次完成生效，全部等待线程及回调都得到该结果
+     */
+    @Test(timeout = 30000)
+    public void concurrentCompletionReleasesAllWaiters() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            final BufferFutureTask<Integer, Integer> futureTask = new BufferFutureTask<>(round);
+            final int completers = 4;
+            final int waiters = 4;
+            final CyclicBarrier barrier = new CyclicBarrier(completers + waiters);
+            final AtomicInteger wins = new AtomicInteger();
+            final AtomicInteger notified = new AtomicInteger();
+            final AtomicReference<Integer> listenedResult = new AtomicReference<>();
+            final CountDownLatch waited = new CountDownLatch(waiters);
+            final List<Integer> waitedResults = new ArrayList<>();
+            futureTask.addListener(new BufferFutureListener<Integer>() {
+                @Override
+                public void onSuccess(Integer result) {
+                    listenedResult.set(result);
+                    notified.incrementAndGet();
+                }
+
+                @Override
+                public void onFailure(Exception ex) {
+                    notified.incrementAndGet();
+                }
+            }, null);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < completers; i++) {
+                final int result = i;
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        await(barrier);
+                        if (result % 2 == 0) {
+                            if (futureTask.completeFail(new IllegalStateException())) {
+                                wins.incrementAndGet();
+                            }
+                        } else if (!futureTask.isDone()) {
+                            futureTask.completeSuccess(result);
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < waiters; i++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        await(barrier);
+                        Integer result;
+                        try {
+                            result = futureTask.get();
+                        } catch (Exception ex) {
+                            result = -1;
+                        }
+                        synchronized (waitedResults) {
+                            waitedResults.add(result);
+                        }
+                        waited.countDown();
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+
+            assertTrue(waited.await(10, TimeUnit.SECONDS));
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            Integer expected;
+            try {
+                expected = futureTask.get();
+                assertEquals(0, wins.get());
+                assertEquals(expected, listenedResult.get());
+            } catch (ExecutionException ex) {
+                expected = -1;
+                assertEquals(1, wins.get());
+            }
+            assertEquals(1, notified.get());
+            for (Integer waitedResult : waitedResults) {
+                assertEquals(expected, waitedResult);
+            }
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.github.andy.buffer.group;
+
+import com.github.andy.buffer.group.exception.BufferRejectedException;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BufferGroupProcessorCoalesceTest {
+
+    /**
+     * 实体0的处理不响应中断地阻塞到release，分组1的哨兵实体被分组时其之前的批次已全部加入合并分组
+     */
+    private static final int SENTINEL = 100;
+
+    private final CountDownLatch handling = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final CountDownLatch sentinelGrouped = new CountDownLatch(1);
+
+    private final List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+
+    /**
+     * 分组处理中时后续批次的实体暂存，处理完成后合并为一次处理
+     */
+    @Test(timeout = 10000)
+    public void mergesBatchesWhileHandling() throws Exception {
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBuilder().groupCoalesceMaxSize(100).build();
+        try {
+            BufferFuture<Integer> inFlight = processor.submit(0);
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+            List<BufferFuture<Integer>> futures = submitEach(processor, 1, 2, 3);
+            awaitSentinelGrouped(processor);
+
+            release.countDown();
+            assertEquals(Integer.valueOf(0), inFlight.get(5, TimeUnit.SECONDS));
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.valueOf(i + 1), futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1, 2, 3)), groupCalls());
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 待处理实体达到groupCoalesceMaxSize时不等待前一次处理完成，立即提交处理
+     */
+    @Test(timeout = 10000)
+    public void flushesAtMaxSize() throws Exception {
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBuilder().groupCoalesceMaxSize(2).build();
+        try {
+            BufferFuture<Integer> inFlight = processor.submit(0);
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+            List<BufferFuture<Integer>> futures = submitEach(processor, 1, 2);
+
+            assertEquals(Integer.valueOf(1), futures.get(0).get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(2), futures.get(1).get(5, TimeUnit.SECONDS));
+            assertFalse(inFlight.isDone());
+            assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1, 2)), groupCalls());
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 最早待处理实体等待超过groupCoalesceMaxDelayMs时不等待前一次处理完成，立即提交处理
+     */
+    @Test(timeout = 10000)
+    public void flushesAtMaxDelay() throws Exception {
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBuilder()
+                .groupCoalesceMaxSize(100)
+                .groupCoalesceMaxDelayMs(20)
+                .build();
+        try {
+            BufferFuture<Integer> inFlight = processor.submit(0);
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+            BufferFuture<Integer> delayed = processor.submit(1);
+
+            assertEquals(Integer.valueOf(1), delayed.get(5, TimeUnit.SECONDS));
+            assertFalse(inFlight.isDone());
+            assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1)), groupCalls());
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 立即停止时合并分组中待处理的实体以BufferRejectedException失败，不等待处理中的实体完成
+     */
+    @Test(timeout = 10000)
+    public void failsPendingOnShutdownNow() throws Exception {
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBuilder().groupCoalesceMaxSize(100).build();
+        try {
+            BufferFuture<Integer> inFlight = processor.submit(0);
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+            List<BufferFuture<Integer>> futures = submitEach(processor, 1, 2);
+            awaitSentinelGrouped(processor);
+
+            processor.shutdownNow();
+            for (BufferFuture<Integer> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail();
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof BufferRejectedException);
+                }
+            }
+            assertFalse(inFlight.isDone());
+            assertEquals(Arrays.asList(Arrays.asList(0)), groupCalls());
+        } finally {
+            release.countDown();
+            processor.shutdownNow();
+        }
+    }
+
+    private List<BufferFuture<Integer>> submitEach(BufferGroupProcessor<Integer, Integer, Integer> processor,
+                                                   Integer... elements) throws InterruptedException {
+        List<BufferFuture<Integer>> futures = new ArrayList<>();
+        for (Integer element : elements) {
+            futures.add(processor.submit(element));
+        }
+        return futures;
+    }
+
+    private void awaitSentinelGrouped(BufferGroupProcessor<Integer, Integer, Integer> processor) throws Exception {
+        BufferFuture<Integer> sentinel = processor.submit(SENTINEL);
+        assertTrue(sentinelGrouped.await(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(SENTINEL), sentinel.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 分组0的每次处理的实体
+     */
+    private List<List<Integer>> groupCalls() {
+        List<List<Integer>> groupCalls = new ArrayList<>();
+        for (List<Integer> call : calls) {
+            if (!call.contains(SENTINEL)) {
+                groupCalls.add(call);
+            }
+        }
+        return groupCalls;
+    }
+
+    /**
+     * 每批取出一个实体，哨兵实体为分组1，其余为分组0
+     */
+    private BufferGroupProcessorBuilder<Integer, Integer, Integer> newBuilder() {
+        return BufferGroupProcessor.<Integer, Integer, Integer>newBuilder()
+                .bufferQueueSize(64)
+                .consumeBatchSize(1)
+                .consumeWaitTimeoutMs(1)
+                .bufferGroupStrategy(new BufferGroupStrategy<Integer, Integer>() {
+                    @Override
+                    public Integer doGroup(Integer element) {
+                        if (element == SENTINEL) {
+                            sentinelGrouped.countDown();
+                            return 1;
+                        }
+                        return 0;
+                    }
+                })
+                .bufferGroupHandler(new BufferGroupHandler<Integer, Integer, Integer>() {
+                    @Override
+                    public Map<Integer, Integer> handle(Integer group, List<Integer> elements) throws Exception {
+                        calls.add(new ArrayList<>(elements));
+                        if (elements.contains(0)) {
+                            handling.countDown();
+                            Uninterruptibles.awaitUninterruptibly(release);
+                        }
+                        Map<Integer, Integer> results = new HashMap<>();
+                        for (Integer element : elements) {
+                            results.put(element, element);
+                        }
+                        return results;
+                    }
+                })
+                .bufferProcessExecutorFactory(new BufferProcessExecutorFactory() {
+                    @Override
+                    public ExecutorService create() {
+                        return Executors.newFixedThreadPool(4);
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.github.andy.buffer.group;
+
+import com.github.andy.buffer.group.exception.BufferOverflowException;
+import com.github.andy.buffer.group.queue.BufferQueues;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BufferGroupProcessorDropOldestTest {
+
+    /**
+     * 缓冲队列已满时丢弃最早的实体并以BufferOverflowException失败，写入提交的实体
+     */
+    @Test(timeout = 10000)
+    public void dropsOldestWhenFull() throws Exception {
+        final CountDownLatch handling = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBuilder(handling, release)
+                .overflowPolicy(BufferOverflowPolicy.DROP_OLDEST)
+                .build();
+        try {
+            // 处理线程及消费线程都阻塞在处理中后，缓冲队列不再被取出
+            BufferFuture<Integer> blocking = processor.submit(0);
+            BufferFuture<Integer> consuming = processor.submit(-1);
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+
+            BufferFuture<Integer> oldest = processor.trySubmit(1);
+            BufferFuture<Integer> second = processor.trySubmit(2);
+            BufferFuture<Integer> newest = processor.trySubmit(3);
+            try {
+                oldest.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof BufferOverflowException);
+            }
+
+            release.countDown();
+            assertEquals(Integer.valueOf(0), blocking.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(-1), consuming.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(2), second.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(3), newest.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsQueueThatCannotDrop() {
+        newBuilder(new CountDownLatch(1), new CountDownLatch(0))
+                .bufferQueueFactory(BufferQueues.mpscRing())
+                .overflowPolicy(BufferOverflowPolicy.DROP_OLDEST)
+                .build();
+    }
+
+    /**
+     * 单线程处理且处理线程忙时在消费线程中处理，release之前处理线程及消费线程阻塞在处理中
+     */
+    private BufferGroupProcessorBuilder<Integer, Integer, Integer> newBuilder(final CountDownLatch handling,
+                                                                              final CountDownLatch release) {
+        return BufferGroupProcessor.<Integer, Integer, Integer>newBuilder()
+                .bufferQueueSize(2)
+                .consumeBatchSize(1)
+                .consumeWaitTimeoutMs(1)
+                .bufferGroupHandler(new BufferGroupHandler<Integer, Integer, Integer>() {
+                    @Override
+                    public Map<Integer, Integer> handle(Integer group, List<Integer> elements) throws Exception {
+                        handling.countDown();
+                        release.await();
+                        Map<Integer, Integer> results = new HashMap<>();
+                        for (Integer element : elements) {
+                            results.put(element, element);
+                        }
+                        return results;
+                    }
+                })
+                .bufferProcessExecutorFactory(new BufferProcessExecutorFactory() {
+                    @Override
+                    public ExecutorService create() {
+                        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+                                new ThreadPoolExecutor.CallerRunsPolicy());
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.github.andy.buffer.group;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BufferGroupProcessorResultCacheTest {
+
+    /**
+     * 加载中的实体完成前，同key的实体跟随其结果，只处理一次
+     */
+    @Test(timeout = 10000)
+    public void followersShareLoaderResult() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger handled = new AtomicInteger();
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newCachedProcessor(release, handled);
+        try {
+            BufferFuture<Integer> loader = processor.submit(1);
+            BufferBatchFuture<Integer> followers = processor.submitAll(Arrays.asList(1, 1));
+            assertFalse(loader.isDone());
+
+            release.countDown();
+            assertEquals(Integer.valueOf(10), loader.get(5, TimeUnit.SECONDS));
+            for (BufferFuture<Integer> future : followers.getFutures()) {
+                assertEquals(Integer.valueOf(10), future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, handled.get());
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 批量提交中间含null实体时，之前的实体不登记为加载，之后同key的提交正常加载而不是等待永远不完成的加载
+     */
+    @Test(timeout = 10000)
+    public void nullElementDoesNotLeaveLoaderRegistered() throws Exception {
+        CountDownLatch release = new CountDownLatch(0);
+        AtomicInteger handled = new AtomicInteger();
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newCachedProcessor(release, handled);
+        try {
+            try {
+                processor.submitAll(Arrays.asList(1, 2, null, 3));
+                fail();
+            } catch (NullPointerException expected) {
+                // 不提交任何实体
+            }
+
+            assertEquals(Integer.valueOf(10), processor.submit(1).get(5, TimeUnit.SECONDS));
+            BufferBatchFuture<Integer> batchFuture = processor.submitAll(Arrays.asList(2, 2, 3));
+            List<BufferFuture<Integer>> futures = batchFuture.getFutures();
+            assertEquals(Integer.valueOf(20), futures.get(0).get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(20), futures.get(1).get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(30), futures.get(2).get(5, TimeUnit.SECONDS));
+            assertEquals(3, handled.get());
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    private BufferGroupProcessor<Integer, Integer, Integer> newCachedProcessor(final CountDownLatch release,
+                                                                               final AtomicInteger handled) {
+        return BufferGroupProcessor.<Integer, Integer, Integer>newBuilder()
+                .bufferQueueSize(64)
+                .consumeBatchSize(8)
+                .consumeWaitTimeoutMs(1)
+                .resultCache(new BufferResultCacheConfig<Integer, Integer>()
+                        .setMaximumSize(100)
+                        .setExpireAfterWriteMs(60000))
+                .bufferGroupHandler(new BufferGroupHandler<Integer, Integer, Integer>() {
+                    @Override
+                    public Map<Integer, Integer> handle(Integer group, List<Integer> elements) throws Exception {
+                        release.await();
+                        handled.addAndGet(elements.size());
+                        Map<Integer, Integer> results = new HashMap<>();
+                        for (Integer element : elements) {
+                            results.put(element, element * 10);
+                        }
+                        return results;
+                    }
+                })
+                .build();
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.github.andy.buffer.group;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BufferGroupProcessorRetryTest {
+
+    /**
+     * 整批处理异常时先整批重试，未达到最大处理次数前不拆分
+     */
+    @Test(timeout = 10000)
+    public void retriesWholeBatchBeforeBisecting() throws Exception {
+        final AtomicInteger failures = new AtomicInteger(2);
+        final List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBuilder(calls, new Handling() {
+            @Override
+            public void handle(List<Integer> elements) throws Exception {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("unavailable");
+                }
+            }
+        }).retryMaxAttempts(3).build();
+        try {
+            List<BufferFuture<Integer>> futures = processor.submitAll(Arrays.asList(1, 2, 3, 4)).getFutures();
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.valueOf(i + 1), futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(3, calls.size());
+            for (List<Integer> call : calls) {
+                assertEquals(Arrays.asList(1, 2, 3, 4), call);
+            }
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 整批重试用尽处理次数后对半拆分，只有导致失败的实体以异常完成，拆分后的批次各处理一次
+     */
+    @Test(timeout = 10000)
+    public void bisectsAfterAttemptsToIsolateFailingElement() throws Exception {
+        final List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBuilder(calls, new Handling() {
+            @Override
+            public void handle(List<Integer> elements) throws Exception {
+                if (elements.contains(3)) {
+                    throw new IllegalStateException("poison");
+                }
+            }
+        }).retryMaxAttempts(2).build();
+        try {
+            List<BufferFuture<Integer>> futures = processor.submitAll(Arrays.asList(1, 2, 3, 4)).getFutures();
+            assertEquals(Integer.valueOf(1), futures.get(0).get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(2), futures.get(1).get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(4), futures.get(3).get(5, TimeUnit.SECONDS));
+            try {
+                futures.get(2).get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException ex) {
+                assertEquals("poison", ex.getCause().getMessage());
+            }
+
+            // 整批2次，拆分为[1, 2]、[3, 4]，再拆分为[3]、[4]
+            assertEquals(6, calls.size());
+            assertEquals(Arrays.asList(1, 2, 3, 4), calls.get(0));
+            assertEquals(Arrays.asList(1, 2, 3, 4), calls.get(1));
+            List<List<Integer>> bisectedCalls = new ArrayList<>(calls.subList(2, 6));
+            assertTrue(bisectedCalls.contains(Arrays.asList(1, 2)));
+            assertTrue(bisectedCalls.contains(Arrays.asList(3, 4)));
+            assertTrue(bisectedCalls.contains(Arrays.asList(3)));
+            assertTrue(bisectedCalls.contains(Arrays.asList(4)));
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 未开启拆分时整批达到最大处理次数后全部以异常完成
+     */
+    @Test(timeout = 10000)
+    public void failsWholeBatchWithoutBisect() throws Exception {
+        final List<List<Integer>> calls = new CopyOnWriteArrayList<>();
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBuilder(calls, new Handling() {
+            @Override
+            public void handle(List<Integer> elements) throws Exception {
+                throw new IllegalStateException("down");
+            }
+        }).retryMaxAttempts(3).retryBisectBatches(false).build();
+        try {
+            List<BufferFuture<Integer>> futures = processor.submitAll(Arrays.asList(1, 2, 3, 4)).getFutures();
+            for (BufferFuture<Integer> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail();
+                } catch (ExecutionException ex) {
+                    assertEquals("down", ex.getCause().getMessage());
+                }
+            }
+            assertEquals(3, calls.size());
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    private interface Handling {
+
+        void handle(List<Integer> elements) throws Exception;
+    }
+
+    /**
+     * 一批取出全部4个实体且归为同一分组，记录每次处理的实体
+     */
+    private BufferGroupProcessorBuilder<Integer, Integer, Integer> newBuilder(final List<List<Integer>> calls,
+                                                                              final Handling handling) {
+        return BufferGroupProcessor.<Integer, Integer, Integer>newBuilder()
+                .bufferQueueSize(64)
+                .consumeBatchSize(4)
+                .consumeWaitTimeoutMs(1000)
+                .retryBackoff(1, 2)
+                .retryBisectBatches(true)
+                .bufferGroupStrategy(new BufferGroupStrategy<Integer, Integer>() {
+                    @Override
+                    public Integer doGroup(Integer element) {
+                        return 0;
+                    }
+                })
+                .bufferGroupHandler(new BufferGroupHandler<Integer, Integer, Integer>() {
+                    @Override
+                    public Map<Integer, Integer> handle(Integer group, List<Integer> elements) throws Exception {
+                        calls.add(new ArrayList<>(elements));
+                        handling.handle(elements);
+                        Map<Integer, Integer> results = new HashMap<>();
+                        for (Integer element : elements) {
+                            results.put(element, element);
+                        }
+                        return results;
+                    }
+                });
+    }
+
+}
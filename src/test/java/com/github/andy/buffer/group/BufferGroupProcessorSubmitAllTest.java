@@ -0,0 +1,170 @@
+package com.github.andy.buffer.group;
+
+import com.github.andy.buffer.group.exception.BufferOverflowException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BufferGroupProcessorSubmitAllTest {
+
+    /**
+     * 处理被阻塞、缓冲队列已满时，FAIL_FAST策略的批量提交不阻塞，写不下的实体以BufferOverflowException失败
+     */
+    @Test(timeout = 10000)
+    public void submitAllAppliesOverflowPolicy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBlockedProcessor(BufferOverflowPolicy.FAIL_FAST, release);
+        try {
+            List<Integer> elements = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                elements.add(i);
+            }
+            BufferBatchFuture<Integer> batchFuture = processor.submitAll(elements);
+
+            int overflowed = 0;
+            for (BufferFuture<Integer> future : batchFuture.getFutures()) {
+                if (future.isDone() && isOverflowed(future)) {
+                    overflowed++;
+                }
+            }
+            assertTrue(overflowed > 0);
+
+            release.countDown();
+            int succeeded = 0;
+            for (BufferFuture<Integer> future : batchFuture.getFutures()) {
+                if (!isOverflowed(future)) {
+                    succeeded++;
+                }
+            }
+            assertEquals(elements.size(), overflowed + succeeded);
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 取消批量提交的Future时取消每个实体的Future
+     */
+    @Test(timeout = 10000)
+    public void batchCancelCancelsElements() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BufferGroupProcessor<Integer, Integer, Integer> processor = newBlockedProcessor(BufferOverflowPolicy.BLOCK, release);
+        try {
+            List<Integer> elements = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                elements.add(i);
+            }
+            BufferBatchFuture<Integer> batchFuture = processor.submitAll(elements);
+
+            assertTrue(batchFuture.cancel());
+            assertTrue(batchFuture.isCancelled());
+            for (BufferFuture<Integer> future : batchFuture.getFutures()) {
+                assertTrue(future.isCancelled());
+            }
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 含null实体时运行中及关闭后都抛出NullPointerException，不提交其他实体
+     */
+    @Test(timeout = 10000)
+    public void nullElementRejectsWholeBatch() throws Exception {
+        final AtomicInteger handled = new AtomicInteger();
+        BufferGroupProcessor<Integer, Integer, Integer> processor = BufferGroupProcessor.<Integer, Integer, Integer>newBuilder()
+                .bufferQueueSize(16)
+                .consumeBatchSize(4)
+                .consumeWaitTimeoutMs(1)
+                .bufferGroupHandler(new BufferGroupHandler<Integer, Integer, Integer>() {
+                    @Override
+                    public Map<Integer, Integer> handle(Integer group, List<Integer> elements) throws Exception {
+                        handled.addAndGet(elements.size());
+                        return null;
+                    }
+                })
+                .build();
+        try {
+            try {
+                processor.submitAll(Arrays.asList(1, null, 2));
+                fail();
+            } catch (NullPointerException expected) {
+                // 不提交任何实体
+            }
+            assertEquals(0, processor.getQueueSize());
+        } finally {
+            processor.shutdown();
+        }
+
+        try {
+            processor.submitAll(Arrays.asList(1, null));
+            fail();
+        } catch (NullPointerException expected) {
+            // 关闭后同样检查实体
+        }
+        assertTrue(processor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, handled.get());
+    }
+
+    /**
+     * 单线程处理且处理线程忙时在消费线程中处理，release之前消费线程阻塞在处理中，缓冲队列不再被取出
+     */
+    private BufferGroupProcessor<Integer, Integer, Integer> newBlockedProcessor(BufferOverflowPolicy overflowPolicy,
+                                                                                final CountDownLatch release) {
+        return BufferGroupProcessor.<Integer, Integer, Integer>newBuilder()
+                .bufferQueueSize(4)
+                .consumeBatchSize(1)
+                .consumeWaitTimeoutMs(1)
+                .overflowPolicy(overflowPolicy)
+                .bufferGroupStrategy(new BufferGroupStrategy<Integer, Integer>() {
+                    @Override
+                    public Integer doGroup(Integer element) {
+                        return element;
+                    }
+                })
+                .bufferGroupHandler(new BufferGroupHandler<Integer, Integer, Integer>() {
+                    @Override
+                    public Map<Integer, Integer> handle(Integer group, List<Integer> elements) throws Exception {
+                        release.await();
+                        Map<Integer, Integer> results = new HashMap<>();
+                        for (Integer element : elements) {
+                            results.put(element, element);
+                        }
+                        return results;
+                    }
+                })
+                .bufferProcessExecutorFactory(new BufferProcessExecutorFactory() {
+                    @Override
+                    public ExecutorService create() {
+                        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+                                new ThreadPoolExecutor.CallerRunsPolicy());
+                    }
+                })
+                .build();
+    }
+
+    private static boolean isOverflowed(BufferFuture<Integer> future) throws InterruptedException {
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException ex) {
+            return ex.getCause() instanceof BufferOverflowException;
+        }
+    }
+
+}
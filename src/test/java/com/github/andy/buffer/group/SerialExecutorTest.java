@@ -0,0 +1,151 @@
+package com.github.andy.buffer.group;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SerialExecutorTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test(timeout = 30000)
+    public void runsTasksInOrderOneAtATime() throws Exception {
+        ExecutorService delegate = Executors.newFixedThreadPool(4);
+        try {
+            final SerialExecutor serialExecutor = new SerialExecutor(delegate);
+            final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final int taskCount = 10000;
+            final CountDownLatch done = new CountDownLatch(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                final int seq = i;
+                serialExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int nowRunning = running.incrementAndGet();
+                        if (nowRunning > maxRunning.get()) {
+                            maxRunning.set(nowRunning);
+                        }
+                        executed.add(seq);
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+
+            assertTrue(done.await(20, TimeUnit.SECONDS));
+            assertEquals(1, maxRunning.get());
+            for (int i = 0; i < taskCount; i++) {
+                assertEquals(Integer.valueOf(i), executed.get(i));
+            }
+        } finally {
+            delegate.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectedDelegateRunsInCaller() {
+        SerialExecutor serialExecutor = new SerialExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        final List<Thread> threads = new ArrayList<>();
+        serialExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                threads.add(Thread.currentThread());
+            }
+        });
+
+        assertEquals(Collections.singletonList(Thread.currentThread()), threads);
+    }
+
+    @Test
+    public void failingTaskDoesNotStopLaterTasks() {
+        SerialExecutor serialExecutor = new SerialExecutor(DIRECT_EXECUTOR);
+        final AtomicInteger executed = new AtomicInteger();
+        serialExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        serialExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                executed.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, executed.get());
+    }
+
+    /**
+     * 执行中的任务暂停后，后续提交的任务等待恢复，恢复时接续任务按顺序排在最前面
+     */
+    @Test
+    public void resumedTasksRunBeforeQueuedTasks() {
+        final SerialExecutor serialExecutor = new SerialExecutor(DIRECT_EXECUTOR);
+        final List<String> executed = new ArrayList<>();
+        serialExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                executed.add("held");
+                serialExecutor.hold();
+            }
+        });
+        serialExecutor.execute(newRecordTask(executed, "queued1"));
+        serialExecutor.execute(newRecordTask(executed, "queued2"));
+        assertEquals(Collections.singletonList("held"), executed);
+
+        serialExecutor.resume(newRecordTask(executed, "resumed1"), newRecordTask(executed, "resumed2"));
+
+        assertEquals(Arrays.asList("held", "resumed1", "resumed2", "queued1", "queued2"), executed);
+    }
+
+    @Test
+    public void drainTasksIncludesHeldTasks() {
+        final SerialExecutor serialExecutor = new SerialExecutor(DIRECT_EXECUTOR);
+        serialExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                serialExecutor.hold();
+            }
+        });
+        Runnable queuedTask = newRecordTask(new ArrayList<String>(), "queued");
+        serialExecutor.execute(queuedTask);
+
+        List<Runnable> drainedTasks = serialExecutor.drainTasks();
+        assertEquals(Collections.singletonList(queuedTask), drainedTasks);
+    }
+
+    private static Runnable newRecordTask(final List<String> executed, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                executed.add(name);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.github.andy.buffer.group.queue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class MpscRingBufferQueueTest {
+
+    @Test
+    public void offerRespectsCapacityNotPowerOfTwo() {
+        MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(3);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertEquals(3, queue.size());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, queue.drainTo(drained, 1));
+        assertTrue(queue.offer(4));
+        assertFalse(queue.offer(5));
+    }
+
+    @Test
+    public void drainKeepsOrderAcrossWrapAround() {
+        MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(4);
+        List<Integer> drained = new ArrayList<>();
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(queue.offer(next++));
+            }
+            assertEquals(3, queue.drainTo(drained, 3));
+        }
+        queue.drainTo(drained, Integer.MAX_VALUE);
+
+        assertEquals(next, drained.size());
+        for (int i = 0; i < next; i++) {
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.drainTo(drained, 1));
+    }
+
+    @Test
+    public void offerWithTimeoutFailsWhenFull() throws Exception {
+        MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(1);
+        assertTrue(queue.offer(1));
+        long startNanos = System.nanoTime();
+        assertFalse(queue.offer(2, 20, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    /**
+     * 单消费者队列不允许非消费线程取出元素，不能用于DROP_OLDEST策略
+     */
+    @Test
+    public void isNotDroppable() {
+        BufferQueue<Integer> queue = new MpscRingBufferQueue<>(4);
+        assertFalse(queue instanceof DroppableBufferQueue);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void putAllRejectsNullBeforeClaiming() throws Exception {
+        MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(4);
+        try {
+            queue.putAll(Arrays.asList(1, null));
+        } finally {
+            // 未领取位置，不会留下阻塞消费的空槽位
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void drainWaitsForLateElement() throws Exception {
+        final MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<>(4);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                queue.offer(1);
+            }
+        });
+        producer.start();
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, queue.drain(drained, 2, 5, TimeUnit.SECONDS));
+        producer.join();
+    }
+
+    /**
+     * 多个提交线程put及超过容量的putAll与消费线程并发：不丢失、不重复，每个提交线程的元素保持写入顺序
+     */
+    @Test(timeout = 30000)
+    public void concurrentProducersKeepPerProducerOrder() throws Exception {
+        final MpscRingBufferQueue<long[]> queue = new MpscRingBufferQueue<>(64);
+        final int producers = 4;
+        final int perProducer = 50000;
+        final CountDownLatch started = new CountDownLatch(producers);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        int seq = 0;
+                        while (seq < perProducer) {
+                            // 奇数提交线程批量写入，批次大于容量
+                            if (producer % 2 == 1) {
+                                List<long[]> batch = new ArrayList<>();
+                                for (int i = 0; i < 100 && seq < perProducer; i++) {
+                                    batch.add(new long[]{producer, seq++});
+                                }
+                                queue.putAll(batch);
+                            } else {
+                                queue.put(new long[]{producer, seq++});
+                            }
+                        }
+                    } catch (Throwable ex) {
+                        error.compareAndSet(null, ex);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        started.await();
+        long[] nextSeqs = new long[producers];
+        List<long[]> drained = new ArrayList<>();
+        int total = 0;
+        while (total < producers * perProducer && error.get() == null) {
+            drained.clear();
+            total += queue.drain(drained, 128, 1, TimeUnit.MILLISECONDS);
+            for (long[] element : drained) {
+                int producer = (int) element[0];
+                assertEquals(nextSeqs[producer], element[1]);
+                nextSeqs[producer]++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(error.get());
+        for (long nextSeq : nextSeqs) {
+            assertEquals(perProducer, nextSeq);
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.github.andy.buffer.group.queue;
+
+import com.google.common.base.Function;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PriorityBufferQueueTest {
+
+    /**
+     * 元素为{优先级, 序号}
+     */
+    private static final Function<int[], Integer> PRIORITY = new Function<int[], Integer>() {
+        @Override
+        public Integer apply(int[] element) {
+            return element[0];
+        }
+    };
+
+    @Test
+    public void drainSplitsBatchByWeight() {
+        PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(64, new int[]{3, 1}, PRIORITY);
+        offer(queue, 0, 8);
+        offer(queue, 1, 8);
+
+        List<int[]> drained = new ArrayList<>();
+        assertEquals(4, queue.drainTo(drained, 4));
+        assertEquals(Arrays.asList(0, 0, 0, 1), priorities(drained));
+    }
+
+    @Test
+    public void lowPriorityIsNotStarved() {
+        PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(64, new int[]{100, 1}, PRIORITY);
+        offer(queue, 0, 20);
+        offer(queue, 1, 1);
+
+        List<int[]> drained = new ArrayList<>();
+        queue.drainTo(drained, 10);
+        assertTrue(priorities(drained).contains(1));
+    }
+
+    @Test
+    public void unusedQuotaIsFilledFromHighPriority() {
+        PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(64, new int[]{1, 1}, PRIORITY);
+        offer(queue, 0, 10);
+        offer(queue, 1, 1);
+
+        List<int[]> drained = new ArrayList<>();
+        assertEquals(8, queue.drainTo(drained, 8));
+        assertEquals(Arrays.asList(0, 0, 0, 0, 1, 0, 0, 0), priorities(drained));
+    }
+
+    @Test
+    public void sameLevelKeepsOrder() {
+        PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(64, new int[]{1}, PRIORITY);
+        offer(queue, 0, 10);
+
+        List<int[]> drained = new ArrayList<>();
+        queue.drainTo(drained, 10);
+        for (int i = 0; i < drained.size(); i++) {
+            assertEquals(i, drained.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void levelsShareCapacity() {
+        PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(3, new int[]{1, 1}, PRIORITY);
+        assertTrue(queue.offer(new int[]{0, 0}));
+        assertTrue(queue.offer(new int[]{1, 0}));
+        assertTrue(queue.offer(new int[]{1, 1}));
+        assertFalse(queue.offer(new int[]{0, 1}));
+        assertEquals(3, queue.size());
+
+        List<int[]> drained = new ArrayList<>();
+        queue.drainTo(drained, 1);
+        assertTrue(queue.offer(new int[]{0, 1}));
+    }
+
+    @Test
+    public void outOfRangePrioritiesAreClamped() {
+        PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(8, new int[]{1, 1}, PRIORITY);
+        queue.offer(new int[]{5, 0});
+        queue.offer(new int[]{-1, 0});
+
+        // 超出范围的归入最低优先级，由poll最先取出
+        assertEquals(5, queue.poll()[0]);
+        assertEquals(-1, queue.poll()[0]);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void pollTakesOldestOfLowestPriority() {
+        PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(8, new int[]{1, 1}, PRIORITY);
+        queue.offer(new int[]{0, 0});
+        queue.offer(new int[]{1, 0});
+        queue.offer(new int[]{1, 1});
+
+        int[] polled = queue.poll();
+        assertEquals(1, polled[0]);
+        assertEquals(0, polled[1]);
+        assertEquals(2, queue.size());
+    }
+
+    @Test(timeout = 10000)
+    public void putAllLargerThanCapacityCompletesWhileDraining() throws Exception {
+        final PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(4, new int[]{1}, PRIORITY);
+        final List<int[]> elements = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            elements.add(new int[]{0, i});
+        }
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.putAll(elements);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+
+        List<int[]> drained = new ArrayList<>();
+        while (drained.size() < elements.size()) {
+            queue.drain(drained, 4, 10, TimeUnit.MILLISECONDS);
+        }
+        producer.join();
+
+        for (int i = 0; i < drained.size(); i++) {
+            assertEquals(i, drained.get(i)[1]);
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void drainWakesOnLateElement() throws Exception {
+        final PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(4, new int[]{1}, PRIORITY);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                queue.offer(new int[]{0, 0});
+            }
+        });
+        producer.start();
+
+        List<int[]> drained = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        assertEquals(1, queue.drain(drained, 1, 5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1));
+        producer.join();
+    }
+
+    /**
+     * 优先级函数抛出异常时不占用位置，容量不会逐渐减少
+     */
+    @Test(timeout = 10000)
+    public void failingPriorityFunctionDoesNotLeakCapacity() throws Exception {
+        PriorityBufferQueue<int[]> queue = new PriorityBufferQueue<>(2, new int[]{1, 1}, new Function<int[], Integer>() {
+            @Override
+            public Integer apply(int[] element) {
+                if (element[1] < 0) {
+                    throw new IllegalArgumentException();
+                }
+                return element[0];
+            }
+        });
+        int[] failing = new int[]{0, -1};
+        for (int i = 0; i < 4; i++) {
+            try {
+                queue.offer(failing);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // 未占用位置
+            }
+            try {
+                queue.put(failing);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // 未占用位置
+            }
+            try {
+                queue.putAll(Arrays.asList(new int[]{0, 0}, failing));
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // 整批未写入
+            }
+        }
+
+        assertEquals(0, queue.size());
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer(new int[]{0, 0}));
+        queue.put(new int[]{1, 0});
+        assertFalse(queue.offer(new int[]{0, 1}));
+    }
+
+    private static void offer(PriorityBufferQueue<int[]> queue, int priority, int count) {
+        for (int i = 0; i < count; i++) {
+            assertTrue(queue.offer(new int[]{priority, i}));
+        }
+    }
+
+    private static List<Integer> priorities(List<int[]> elements) {
+        List<Integer> priorities = new ArrayList<>();
+        for (int[] element : elements) {
+            priorities.add(element[0]);
+        }
+        return priorities;
+    }
+
+}
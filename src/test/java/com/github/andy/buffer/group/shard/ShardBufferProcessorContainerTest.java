@@ -0,0 +1,147 @@
+package com.github.andy.buffer.group.shard;
+
+import com.github.andy.buffer.group.BufferGroupHandler;
+import com.github.andy.buffer.group.BufferGroupProcessor;
+import com.github.andy.buffer.group.BufferGroupProcessorCreator;
+import com.github.andy.buffer.group.BufferGroupStrategy;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ShardBufferProcessorContainerTest {
+
+    /**
+     * 空闲的缓冲处理器被回收后，getOrCreate创建的分片KEY从容器中移除，再次getOrCreate时重新创建
+     */
+    @Test(timeout = 10000)
+    public void idleProcessorIsEvictedAndKeyRemoved() throws Exception {
+        ShardBufferProcessorContainer<Integer, Integer, Integer, String> container =
+                new ShardBufferProcessorContainer<>(newCreator(), 200, 0);
+        try {
+            BufferGroupProcessor<Integer, Integer, Integer> processor = container.getOrCreate("a");
+            assertEquals(1, container.getProcessorCount());
+
+            TimeUnit.MILLISECONDS.sleep(250);
+            container.evictIdleProcessors();
+            assertTrue(processor.isShutdown());
+            assertTrue(container.isNotExist("a"));
+            assertEquals(0, container.getProcessorCount());
+            assertEquals(0, container.getCreatedProcessorCount());
+            assertNull(container.get("a"));
+
+            BufferGroupProcessor<Integer, Integer, Integer> recreated = container.getOrCreate("a");
+            assertNotSame(processor, recreated);
+            assertFalse(recreated.isShutdown());
+            assertEquals(Integer.valueOf(7), recreated.submit(7).get(5, TimeUnit.SECONDS));
+            assertEquals(1, container.getProcessorCount());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    /**
+     * add添加的分片KEY在缓冲处理器被回收后仍保留，下一次get时重新创建
+     */
+    @Test(timeout = 10000)
+    public void addedKeyIsRetainedAfterEviction() throws Exception {
+        ShardBufferProcessorContainer<Integer, Integer, Integer, String> container =
+                new ShardBufferProcessorContainer<>(newCreator(), 200, 0);
+        try {
+            container.add("a");
+            BufferGroupProcessor<Integer, Integer, Integer> processor = container.get("a");
+
+            TimeUnit.MILLISECONDS.sleep(250);
+            container.evictIdleProcessors();
+            assertTrue(processor.isShutdown());
+            assertTrue(container.isExist("a"));
+            assertNull(container.getIfCreated("a"));
+
+            BufferGroupProcessor<Integer, Integer, Integer> recreated = container.get("a");
+            assertNotSame(processor, recreated);
+            assertFalse(recreated.isShutdown());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    /**
+     * 超过数量上限时回收近期未被路由的缓冲处理器，近期被路由的缓冲处理器保留
+     */
+    @Test(timeout = 10000)
+    public void evictsLeastRecentlyRoutedAtCap() throws Exception {
+        ShardBufferProcessorContainer<Integer, Integer, Integer, String> container =
+                new ShardBufferProcessorContainer<>(newCreator(), 0, 2);
+        try {
+            BufferGroupProcessor<Integer, Integer, Integer> a = container.getOrCreate("a");
+            BufferGroupProcessor<Integer, Integer, Integer> b = container.getOrCreate("b");
+            assertSame(a, container.getOrCreate("a"));
+            BufferGroupProcessor<Integer, Integer, Integer> c = container.getOrCreate("c");
+
+            assertTrue(b.isShutdown());
+            assertFalse(a.isShutdown());
+            assertFalse(c.isShutdown());
+            assertTrue(container.isNotExist("b"));
+            assertEquals(2, container.getProcessorCount());
+            assertEquals(2, container.getCreatedProcessorCount());
+
+            BufferGroupProcessor<Integer, Integer, Integer> recreated = container.getOrCreate("b");
+            assertNotSame(b, recreated);
+            assertFalse(recreated.isShutdown());
+            assertEquals(2, container.getProcessorCount());
+            assertEquals(2, container.getCreatedProcessorCount());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    /**
+     * 按long分片KEY路由时被回收的分片KEY同样从long索引中移除，再次路由时重新创建
+     */
+    @Test(timeout = 10000)
+    public void longKeyIsRemovedAndRecreated() throws Exception {
+        ShardBufferProcessorContainer<Integer, Integer, Integer, Long> container =
+                new ShardBufferProcessorContainer<>(newCreator(), 0, 1);
+        try {
+            BufferGroupProcessor<Integer, Integer, Integer> first = container.getOrCreate(1L);
+            assertSame(first, container.get(1L));
+            container.getOrCreate(2L);
+
+            assertTrue(first.isShutdown());
+            assertTrue(container.isNotExist(1L));
+            assertNull(container.get(1L));
+
+            BufferGroupProcessor<Integer, Integer, Integer> recreated = container.getOrCreate(1L);
+            assertNotSame(first, recreated);
+            assertSame(recreated, container.get(1L));
+            assertEquals(1, container.getProcessorCount());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    private BufferGroupProcessorCreator<Integer, Integer, Integer> newCreator() {
+        return new BufferGroupProcessorCreator<>(64, 8, 1,
+                new BufferGroupStrategy<Integer, Integer>() {
+                    @Override
+                    public Integer doGroup(Integer element) {
+                        return 0;
+                    }
+                },
+                new BufferGroupHandler<Integer, Integer, Integer>() {
+                    @Override
+                    public Map<Integer, Integer> handle(Integer group, List<Integer> elements) throws Exception {
+                        Map<Integer, Integer> results = new HashMap<>();
+                        for (Integer element : elements) {
+                            results.put(element, element);
+                        }
+                        return results;
+                    }
+                }, null);
+    }
+
+}
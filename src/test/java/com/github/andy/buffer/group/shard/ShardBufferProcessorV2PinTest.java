@@ -0,0 +1,193 @@
+package com.github.andy.buffer.group.shard;
+
+import com.github.andy.buffer.group.BufferFuture;
+import com.github.andy.buffer.group.BufferGroupHandler;
+import com.github.andy.buffer.group.BufferProcessExecutorFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ShardBufferProcessorV2PinTest {
+
+    /**
+     * 分组有未完成的实体时，分片KEY变为热点后同一分组的实体仍由同一个子处理器处理
+     */
+    @Test(timeout = 10000)
+    public void sameGroupStaysOnOneSubProcessorWhilePending() throws Exception {
+        int element = ShardHotKeySplitterTest.findHotSplitElement(4);
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger createdProcessors = new AtomicInteger();
+        ShardBufferProcessorV2<Integer, Integer, String, String> processor = newBuilder(handling, release, createdProcessors)
+                .bufferQueueSize(64)
+                .orderedGroupLanes(1)
+                .build();
+        try {
+            List<BufferFuture<String>> futures = new ArrayList<>();
+            futures.add(processor.submit(element));
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i <= 5; i++) {
+                futures.add(processor.submit(element + i));
+            }
+            assertTrue(processor.isHotKey("a"));
+            assertEquals(1, processor.getPinnedGroupCount());
+
+            release.countDown();
+            String firstHandler = futures.get(0).get(5, TimeUnit.SECONDS);
+            for (BufferFuture<String> future : futures) {
+                assertEquals(firstHandler, future.get(5, TimeUnit.SECONDS));
+            }
+            awaitNoPinnedGroups(processor);
+
+            // 全部完成后按热点路由到其他子处理器
+            assertNotEquals(firstHandler, processor.submit(element + 6).get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 批量提交时路由到的缓冲处理器被并发回收而拒绝，释放固定后重新路由，完成后不残留固定
+     */
+    @Test(timeout = 10000)
+    public void pinReleasedWhenEvictedProcessorRejects() throws Exception {
+        AtomicInteger createdProcessors = new AtomicInteger();
+        ShardBufferProcessorV2<Integer, Integer, String, String> processor = newBuilder(new CountDownLatch(1),
+                new CountDownLatch(0), createdProcessors)
+                .bufferQueueSize(64)
+                .orderedGroupLanes(1)
+                .maxProcessors(1)
+                .build();
+        try {
+            // 路由b时回收a，a的实体被拒绝后重新路由到新创建的缓冲处理器
+            List<BufferFuture<String>> futures = processor.submitAll(Arrays.asList(1, 1001)).getFutures();
+            futures.get(0).get(5, TimeUnit.SECONDS);
+            futures.get(1).get(5, TimeUnit.SECONDS);
+            assertEquals(3, createdProcessors.get());
+            awaitNoPinnedGroups(processor);
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    /**
+     * 批量提交被中断时，已提交的实体完成后释放固定，未提交的立即释放
+     */
+    @Test(timeout = 10000)
+    public void pinReleasedWhenSubmitAllInterrupted() throws Exception {
+        CountDownLatch handling = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        final ShardBufferProcessorV2<Integer, Integer, String, String> processor = newBuilder(handling, release,
+                new AtomicInteger())
+                .bufferQueueSize(1)
+                .groupAffineConsumers(true)
+                .build();
+        try {
+            // b的处理线程及消费线程阻塞在处理中，缓冲队列已满
+            List<BufferFuture<String>> futures = new ArrayList<>();
+            futures.add(processor.submit(1001));
+            futures.add(processor.submit(1002));
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+            futures.add(processor.submit(1004));
+
+            final AtomicReference<Exception> submitFailure = new AtomicReference<>();
+            Thread submitter = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        processor.submitAll(Arrays.asList(1, 1003));
+                    } catch (Exception ex) {
+                        submitFailure.set(ex);
+                    }
+                }
+            };
+            submitter.start();
+            while (submitter.getState() != Thread.State.WAITING && submitter.isAlive()) {
+                Thread.yield();
+            }
+            submitter.interrupt();
+            submitter.join(5000);
+            assertTrue(submitFailure.get() instanceof InterruptedException);
+
+            release.countDown();
+            for (BufferFuture<String> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            awaitNoPinnedGroups(processor);
+        } finally {
+            release.countDown();
+            processor.shutdown();
+        }
+    }
+
+    private static void awaitNoPinnedGroups(ShardBufferProcessorV2<?, ?, ?, ?> processor) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (processor.getPinnedGroupCount() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        assertEquals(0, processor.getPinnedGroupCount());
+    }
+
+    /**
+     * 大于等于1000的实体分片到b，其余分片到a；按百位分组，热点阈值为1，处理结果为处理线程名。
+     * 单线程处理且处理线程忙时在消费线程中处理，release之前消费线程阻塞在处理中
+     */
+    private ShardBufferProcessorBuilderV2<Integer, Integer, String, String> newBuilder(final CountDownLatch handling,
+                                                                                      final CountDownLatch release,
+                                                                                      final AtomicInteger createdProcessors) {
+        return ShardBufferProcessorV2.<Integer, Integer, String, String>newBuilder()
+                .consumeBatchSize(1)
+                .consumeWaitTimeoutMs(1)
+                .hotKeySplits(4)
+                .hotKeyThreshold(1)
+                .autoCreateProcessors(true)
+                .shardBufferProcessorStrategy(new ShardBufferProcessorStrategyV2<Integer, String>() {
+                    @Override
+                    public String routeSK(Integer element) {
+                        return element >= 1000 ? "b" : "a";
+                    }
+                })
+                .bufferGroupStrategy(ShardHotKeySplitterTest.GROUP_BY_HUNDREDS)
+                .bufferGroupHandler(new BufferGroupHandler<Integer, Integer, String>() {
+                    @Override
+                    public Map<Integer, String> handle(Integer group, List<Integer> elements) throws Exception {
+                        handling.countDown();
+                        release.await();
+                        Map<Integer, String> results = new HashMap<>();
+                        for (Integer element : elements) {
+                            results.put(element, Thread.currentThread().getName());
+                        }
+                        return results;
+                    }
+                })
+                .bufferProcessExecutorFactory(new BufferProcessExecutorFactory() {
+                    @Override
+                    public ExecutorService create() {
+                        final String name = "processor-" + createdProcessors.incrementAndGet();
+                        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+                                new ThreadFactory() {
+                                    @Override
+                                    public Thread newThread(Runnable runnable) {
+                                        return new Thread(runnable, name);
+                                    }
+                                }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.github.andy.buffer.group.shard;
+
+import com.github.andy.buffer.group.BufferFutureTask;
+import com.github.andy.buffer.group.BufferGroupStrategy;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShardHotKeySplitterTest {
+
+    /**
+     * 实体按百位分组
+     */
+    static final BufferGroupStrategy<Integer, Integer> GROUP_BY_HUNDREDS = new BufferGroupStrategy<Integer, Integer>() {
+        @Override
+        public Integer doGroup(Integer element) {
+            return element % 1000 / 100;
+        }
+    };
+
+    /**
+     * 分片KEY变为热点后路由到非0子处理器的分组中的实体
+     */
+    static int findHotSplitElement(int hotKeySplits) {
+        ShardHotKeySplitter<Integer, String> splitter = new ShardHotKeySplitter<>(hotKeySplits, 1, GROUP_BY_HUNDREDS);
+        for (int element = 0; ; element += 100) {
+            splitter.routeSplit("probe", element);
+            if (splitter.routeSplit("probe", element) != 0) {
+                return element;
+            }
+        }
+    }
+
+    /**
+     * 分组有未完成的实体时，分片KEY变为热点后仍固定在原子处理器，全部释放后才按热点路由
+     */
+    @Test
+    public void pinKeepsSplitWhilePending() {
+        int element = findHotSplitElement(4);
+        ShardHotKeySplitter<Integer, String> splitter = new ShardHotKeySplitter<>(4, 1, GROUP_BY_HUNDREDS);
+
+        ShardHotKeySplitter.GroupPin first = splitter.pinSplit("k", element);
+        assertEquals(0, first.getSplitIndex());
+        ShardHotKeySplitter.GroupPin second = splitter.pinSplit("k", element + 1);
+        assertTrue(splitter.isHotKey("k"));
+        assertSame(first, second);
+        assertEquals(1, splitter.getPinnedGroupCount());
+
+        splitter.unpin(first);
+        assertEquals(1, splitter.getPinnedGroupCount());
+        splitter.unpin(second);
+        assertEquals(0, splitter.getPinnedGroupCount());
+
+        ShardHotKeySplitter.GroupPin released = splitter.pinSplit("k", element + 2);
+        assertNotSame(first, released);
+        assertNotEquals(0, released.getSplitIndex());
+        splitter.unpinOnDone(released, BufferFutureTask.<Integer, Integer>newFailedTask(element + 2, new Exception()));
+        assertEquals(0, splitter.getPinnedGroupCount());
+    }
+
+}
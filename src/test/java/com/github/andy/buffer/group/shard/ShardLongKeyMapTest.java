@@ -0,0 +1,54 @@
+package com.github.andy.buffer.group.shard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShardLongKeyMapTest {
+
+    @Test
+    public void removeOnlyMatchingValue() {
+        ShardLongKeyMap<String> map = new ShardLongKeyMap<>();
+        assertEquals("a", map.putIfAbsent(1L, "a"));
+        assertEquals("a", map.putIfAbsent(1L, "b"));
+        assertFalse(map.remove(1L, "b"));
+        assertTrue(map.remove(1L, "a"));
+        assertNull(map.get(1L));
+        assertFalse(map.remove(1L, "a"));
+
+        map.put(1L, "c");
+        map.put(1L, "d");
+        assertEquals("d", map.get(1L));
+    }
+
+    /**
+     * 反复添加删除时墓碑不影响探测，重建后全部有效KEY仍可读到
+     */
+    @Test
+    public void tombstonesKeepProbeChainsAndAreCleared() {
+        // 按值的引用删除，预先装箱
+        Long[] values = new Long[1000];
+        for (int key = 0; key < values.length; key++) {
+            values[key] = (long) key;
+        }
+
+        ShardLongKeyMap<Long> map = new ShardLongKeyMap<>();
+        for (long round = 0; round < 10; round++) {
+            for (int key = 0; key < values.length; key++) {
+                map.putIfAbsent(key * 31 + round, values[key]);
+            }
+            for (int key = 0; key < values.length; key += 2) {
+                assertTrue(map.remove(key * 31 + round, values[key]));
+            }
+            for (int key = 0; key < values.length; key++) {
+                assertEquals(key % 2 == 0 ? null : values[key], map.get(key * 31 + round));
+            }
+        }
+        for (long round = 0; round < 10; round++) {
+            for (int key = 1; key < values.length; key += 2) {
+                assertEquals(values[key], map.get(key * 31 + round));
+            }
+        }
+    }
+
+}